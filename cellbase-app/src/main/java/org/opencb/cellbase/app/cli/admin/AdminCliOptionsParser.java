@@ -153,6 +153,14 @@ public class AdminCliOptionsParser extends CliOptionsParser {
         @Parameter(names = {"--num-threads"}, description = "Number of threads used for loading data into the database", arity = 1)
         public int numThreads = 2;
 
+        @Parameter(names = {"--num-decompress-threads"}, description = "Number of threads used for decompressing input files,"
+                + " only bgzip compressed files can be decompressed in parallel", arity = 1)
+        public int numDecompressThreads = 2;
+
+        @Parameter(names = {"--batch-size"}, description = "Size in MB of the batches of documents written to the database",
+                arity = 1)
+        public int batchSize = 8;
+
         @Parameter(names = {"--index"}, description = "After loading, add index to the database", arity = 0)
         public boolean index;
 
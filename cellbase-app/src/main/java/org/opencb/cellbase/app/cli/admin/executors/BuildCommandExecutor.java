@@ -20,6 +20,7 @@ import com.beust.jcommander.ParameterException;
 import org.apache.commons.lang.StringUtils;
 import org.opencb.cellbase.app.cli.CommandExecutor;
 import org.opencb.cellbase.app.cli.admin.AdminCliOptionsParser;
+import org.opencb.cellbase.core.common.PackedSequenceFile;
 import org.opencb.cellbase.core.config.SpeciesConfiguration;
 import org.opencb.cellbase.core.exception.CellbaseException;
 import org.opencb.cellbase.core.serializer.CellBaseFileSerializer;
@@ -254,7 +255,9 @@ public class BuildCommandExecutor extends CommandExecutor {
         copyVersionFiles(Collections.singletonList(downloadFolder.resolve("genome/genomeVersion.json")));
         Path fastaFile = getFastaReferenceGenome();
         CellBaseSerializer serializer = new CellBaseJsonFileSerializer(buildFolder, "genome_sequence");
-        return new GenomeSequenceFastaBuilder(fastaFile, serializer);
+        // <output>/<species>_<assembly>/genome_sequence.cbseq, as expected by GenomeManager when the annotation
+        // genomeSequenceDir is set to the build output directory
+        return new GenomeSequenceFastaBuilder(fastaFile, buildFolder.getParent().resolve(PackedSequenceFile.FILE_NAME), serializer);
     }
 
     private CellBaseBuilder buildGene() throws CellbaseException {
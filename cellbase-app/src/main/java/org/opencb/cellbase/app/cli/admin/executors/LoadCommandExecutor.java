@@ -50,6 +50,8 @@ public class LoadCommandExecutor extends CommandExecutor {
     private String[] innerFields;
     private String loader;
     private int numThreads;
+    private int numDecompressThreads;
+    private int batchSize;
     private boolean createIndexes;
     private IndexManager indexManager;
 
@@ -90,7 +92,7 @@ public class LoadCommandExecutor extends CommandExecutor {
                 configuration.getDatabases().getMongodb().getOptions().put("authenticationDatabase",
                         loadCommandOptions.loaderParams.get("authenticationDatabase"));
             }
-            loadRunner = new LoadRunner(loader, database, numThreads, configuration);
+            loadRunner = new LoadRunner(loader, database, numThreads, numDecompressThreads, batchSize, configuration);
             if (createIndexes) {
                 indexManager = new IndexManager(configuration);
             }
@@ -234,6 +236,21 @@ public class LoadCommandExecutor extends CommandExecutor {
             logger.warn("Incorrect number of numThreads, it must be a positive value. This has been set to '{}'", numThreads);
         }
 
+        if (loadCommandOptions.numDecompressThreads > 0) {
+            numDecompressThreads = loadCommandOptions.numDecompressThreads;
+        } else {
+            numDecompressThreads = 1;
+            logger.warn("Incorrect number of decompress threads, it must be a positive value. This has been set to '{}'",
+                    numDecompressThreads);
+        }
+
+        if (loadCommandOptions.batchSize > 0) {
+            batchSize = loadCommandOptions.batchSize;
+        } else {
+            batchSize = LoadRunner.DEFAULT_BATCH_SIZE_MB;
+            logger.warn("Incorrect batch size, it must be a positive value. This has been set to '{}' MB", batchSize);
+        }
+
         if (field != null) {
             if (loadCommandOptions.data == null) {
                 logger.error("--data option cannot be empty. Please provide a valid value for the --data parameter.");
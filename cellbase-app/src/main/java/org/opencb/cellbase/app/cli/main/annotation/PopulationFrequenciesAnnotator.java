@@ -16,13 +16,11 @@
 
 package org.opencb.cellbase.app.cli.main.annotation;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.MapperFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.PopulationFrequency;
 import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.cellbase.app.cli.main.annotation.indexers.PopulationFrequencyCodec;
+import org.opencb.cellbase.app.cli.main.annotation.indexers.PopulationFrequencyVariantIndexer;
 import org.opencb.cellbase.core.variant.PopulationFrequencyPhasedQueryManager;
 import org.opencb.cellbase.lib.variant.annotation.VariantAnnotator;
 import org.opencb.commons.datastore.core.QueryOptions;
@@ -45,23 +43,19 @@ public class PopulationFrequenciesAnnotator implements VariantAnnotator {
 
     private String fileName;
     private RocksDB dbIndex;
+    private PopulationFrequencyVariantIndexer variantIndexer;
     private RandomAccessFile reader;
     private final QueryOptions queryOptions;
 
 
-    private static ObjectMapper mapper = new ObjectMapper();
-    private static ObjectWriter jsonObjectWriter;
     private static PopulationFrequencyPhasedQueryManager phasedQueryManager
             = new PopulationFrequencyPhasedQueryManager();
 
-    static {
-        mapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
-        jsonObjectWriter = mapper.writer();
-    }
-
-    public PopulationFrequenciesAnnotator(String fileName, RocksDB dbIndex, QueryOptions queryOptions) {
+    public PopulationFrequenciesAnnotator(String fileName, PopulationFrequencyVariantIndexer variantIndexer,
+                                          QueryOptions queryOptions) {
         this.fileName = fileName;
-        this.dbIndex = dbIndex;
+        this.variantIndexer = variantIndexer;
+        this.dbIndex = variantIndexer.getDbIndex();
         this.queryOptions = queryOptions;
     }
 
@@ -82,10 +76,7 @@ public class PopulationFrequenciesAnnotator implements VariantAnnotator {
      */
     public void run(List<Variant> variantList) {
 
-        List<CellBaseDataResult<Variant>> variantCellBaseDataResult = new ArrayList<>(variantList.size());
-        for (Variant variant: variantList) {
-            variantCellBaseDataResult.add(getPopulationFrequencies(variant));
-        }
+        List<CellBaseDataResult<Variant>> variantCellBaseDataResult = getPopulationFrequencies(variantList);
 
         if (queryOptions.get(IGNORE_PHASE) != null && !queryOptions.getBoolean(IGNORE_PHASE)) {
             variantCellBaseDataResult = phasedQueryManager.run(variantList, variantCellBaseDataResult);
@@ -93,7 +84,7 @@ public class PopulationFrequenciesAnnotator implements VariantAnnotator {
 
         for (int i = 0; i < variantList.size(); i++) {
             if (variantCellBaseDataResult != null && variantCellBaseDataResult.get(i).getResults() != null
-                    && variantCellBaseDataResult.get(i).getResults().isEmpty()) {
+                    && !variantCellBaseDataResult.get(i).getResults().isEmpty()) {
                 // Assuming if it gets to this point the variant has VariantAnnotation
                 // Only one variant  can be returned per query to RocksDB
                 List<PopulationFrequency> populationFrequencies
@@ -115,42 +106,53 @@ public class PopulationFrequenciesAnnotator implements VariantAnnotator {
         }
     }
 
-    private CellBaseDataResult<Variant> getPopulationFrequencies(Variant variant) {
-        CellBaseDataResult<Variant> populationFrequencyCellBaseDataResult = new CellBaseDataResult<>();
-        populationFrequencyCellBaseDataResult.setId(variant.toString());
+    private List<CellBaseDataResult<Variant>> getPopulationFrequencies(List<Variant> variantList) {
+        List<CellBaseDataResult<Variant>> cellBaseDataResultList = new ArrayList<>(variantList.size());
         long start = System.currentTimeMillis();
-        try {
-            byte[] variantKey = variant.toString().getBytes();
-            byte[] dbContent = dbIndex.get(variantKey);
-            if (dbContent != null) {
-                Variant variant1 = mapper.readValue(dbContent, Variant.class);
-                flagVisitedVariant(variantKey, variant1);
 
-                populationFrequencyCellBaseDataResult.setResults(Collections.singletonList(variant1));
-                populationFrequencyCellBaseDataResult.setNumTotalResults(1);
-                populationFrequencyCellBaseDataResult.setNumResults(1);
-            }
-        } catch (RocksDBException | IOException e) {
+        List<byte[]> variantKeys = new ArrayList<>(variantList.size());
+        for (Variant variant : variantList) {
+            variantKeys.add(variant.toString().getBytes());
+        }
+        List<byte[]> dbContents = null;
+        try {
+            dbContents = dbIndex.multiGetAsList(variantKeys);
+        } catch (RocksDBException e) {
             e.printStackTrace();
         }
 
-        long end = System.currentTimeMillis();
-        populationFrequencyCellBaseDataResult.setTime((int) (end - start));
+        int time = (int) (System.currentTimeMillis() - start);
+        for (int i = 0; i < variantList.size(); i++) {
+            CellBaseDataResult<Variant> populationFrequencyCellBaseDataResult = new CellBaseDataResult<>();
+            populationFrequencyCellBaseDataResult.setId(variantList.get(i).toString());
+            populationFrequencyCellBaseDataResult.setResults(Collections.emptyList());
+            byte[] dbContent = dbContents != null ? dbContents.get(i) : null;
+            if (dbContent != null) {
+                try {
+                    Variant variant1 = toVariant(variantList.get(i), dbContent);
+                    variantIndexer.flagVisitedVariant(PopulationFrequencyCodec.decodeOrdinal(dbContent));
+
+                    populationFrequencyCellBaseDataResult.setResults(Collections.singletonList(variant1));
+                    populationFrequencyCellBaseDataResult.setNumTotalResults(1);
+                    populationFrequencyCellBaseDataResult.setNumResults(1);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            populationFrequencyCellBaseDataResult.setTime(time);
+            cellBaseDataResultList.add(populationFrequencyCellBaseDataResult);
+        }
 
-        return populationFrequencyCellBaseDataResult;
+        return cellBaseDataResultList;
     }
 
-    private void flagVisitedVariant(byte[] key, Variant variant) {
-        // The annotation.additionalAttributes field is initialized with an empty map to flag this variant as
-        // already visited
-        variant.getAnnotation().setAdditionalAttributes(Collections.emptyMap());
-        try {
-            dbIndex.put(key, jsonObjectWriter.writeValueAsBytes(variant));
-        } catch (RocksDBException e) {
-            e.printStackTrace();
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
-        }
+    private Variant toVariant(Variant variant, byte[] dbContent) throws IOException {
+        Variant variant1 = new Variant(variant.getChromosome(), variant.getStart(), variant.getEnd(), variant.getReference(),
+                variant.getAlternate());
+        VariantAnnotation variantAnnotation = new VariantAnnotation();
+        variantAnnotation.setPopulationFrequencies(PopulationFrequencyCodec.decodePopulationFrequencies(dbContent));
+        variant1.setAnnotation(variantAnnotation);
+        return variant1;
     }
 
     public boolean close() {
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.app.cli.main.annotation.indexers;
+
+import org.opencb.biodata.models.variant.avro.PopulationFrequency;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary encoding of the values stored in the population frequency RocksDB index. The population frequencies are
+ * kept apart from the rest of the variant, so that lookups decode just the frequencies. Layout:
+ * <pre>
+ *   int     variant ordinal, used to flag the variant as visited
+ *   bytes   variant without population frequencies as JSON (int length + bytes, length -1 for null)
+ *   int     number of population frequencies
+ *   for each population frequency:
+ *     string  study, population, refAllele, altAllele (int length + UTF-8 bytes, length -1 for null)
+ *     byte    bitmask of the non-null frequencies
+ *     float   refAlleleFreq, altAlleleFreq, refHomGenotypeFreq, hetGenotypeFreq, altHomGenotypeFreq (only non-null)
+ * </pre>
+ */
+public final class PopulationFrequencyCodec {
+
+    /**
+     * Version of the layout, stored in the index by the {@link PopulationFrequencyVariantIndexer}. Must be changed with
+     * any change of the layout so that existing indexes are re-created.
+     */
+    public static final String FORMAT = "2";
+    private static final int NUM_FREQUENCIES = 5;
+
+    private PopulationFrequencyCodec() {
+    }
+
+    public static byte[] encode(int ordinal, byte[] variant, List<PopulationFrequency> populationFrequencies)
+            throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(12 + (variant != null ? variant.length : 0)
+                + populationFrequencies.size() * 48);
+        DataOutputStream outputStream = new DataOutputStream(byteArrayOutputStream);
+        outputStream.writeInt(ordinal);
+        writeBytes(outputStream, variant);
+        outputStream.writeInt(populationFrequencies.size());
+        for (PopulationFrequency populationFrequency : populationFrequencies) {
+            writeString(outputStream, populationFrequency.getStudy());
+            writeString(outputStream, populationFrequency.getPopulation());
+            writeString(outputStream, populationFrequency.getRefAllele());
+            writeString(outputStream, populationFrequency.getAltAllele());
+
+            Float[] frequencies = getFrequencies(populationFrequency);
+            int mask = 0;
+            for (int i = 0; i < NUM_FREQUENCIES; i++) {
+                if (frequencies[i] != null) {
+                    mask |= 1 << i;
+                }
+            }
+            outputStream.writeByte(mask);
+            for (Float frequency : frequencies) {
+                if (frequency != null) {
+                    outputStream.writeFloat(frequency);
+                }
+            }
+        }
+        outputStream.flush();
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    public static int decodeOrdinal(byte[] value) {
+        return ByteBuffer.wrap(value).getInt();
+    }
+
+    public static byte[] decodeVariant(byte[] value) throws IOException {
+        DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(value));
+        // Skip ordinal
+        inputStream.readInt();
+        return readBytes(inputStream);
+    }
+
+    public static List<PopulationFrequency> decodePopulationFrequencies(byte[] value) throws IOException {
+        DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(value));
+        // Skip ordinal and variant
+        inputStream.readInt();
+        int variantLength = inputStream.readInt();
+        if (variantLength > 0) {
+            inputStream.skipBytes(variantLength);
+        }
+        int size = inputStream.readInt();
+        List<PopulationFrequency> populationFrequencies = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            // Study and population names are repeated across all the variants
+            String study = intern(readString(inputStream));
+            String population = intern(readString(inputStream));
+            String refAllele = readString(inputStream);
+            String altAllele = readString(inputStream);
+
+            int mask = inputStream.readUnsignedByte();
+            Float[] frequencies = new Float[NUM_FREQUENCIES];
+            for (int j = 0; j < NUM_FREQUENCIES; j++) {
+                if ((mask & (1 << j)) != 0) {
+                    frequencies[j] = inputStream.readFloat();
+                }
+            }
+            populationFrequencies.add(new PopulationFrequency(study, population, refAllele, altAllele, frequencies[0],
+                    frequencies[1], frequencies[2], frequencies[3], frequencies[4]));
+        }
+        return populationFrequencies;
+    }
+
+    private static Float[] getFrequencies(PopulationFrequency populationFrequency) {
+        return new Float[]{populationFrequency.getRefAlleleFreq(), populationFrequency.getAltAlleleFreq(),
+                populationFrequency.getRefHomGenotypeFreq(), populationFrequency.getHetGenotypeFreq(),
+                populationFrequency.getAltHomGenotypeFreq()};
+    }
+
+    private static void writeString(DataOutputStream outputStream, String string) throws IOException {
+        writeBytes(outputStream, string == null ? null : string.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeBytes(DataOutputStream outputStream, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            outputStream.writeInt(-1);
+        } else {
+            outputStream.writeInt(bytes.length);
+            outputStream.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream inputStream) throws IOException {
+        byte[] bytes = readBytes(inputStream);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(DataInputStream inputStream) throws IOException {
+        int length = inputStream.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        inputStream.readFully(bytes);
+        return bytes;
+    }
+
+    private static String intern(String string) {
+        return string == null ? null : string.intern();
+    }
+}
@@ -22,23 +22,43 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.opencb.biodata.formats.variant.io.VariantReader;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.PopulationFrequency;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
 import org.opencb.cellbase.core.variant.AnnotationBasedPhasedQueryManager;
 import org.rocksdb.RocksDBException;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
 
 import java.io.IOException;
-import java.util.List;
+import java.util.*;
 
 public class PopulationFrequencyVariantIndexer extends VariantIndexer {
     private static final String EMPTY_ALLELE_STRING = "";
     private static final char SHIFTED_POSITION_CHARACTER = '-';
     private static final char UKNOWN_NUCLEOTIDE = 'n';
 
+    private int numVariants;
+    // Variants in the index found within the input file, set by the PopulationFrequenciesAnnotator. Kept in memory
+    // rather than in the index to avoid re-writing the values
+    private final BitSet visitedVariants;
+
     public PopulationFrequencyVariantIndexer(VariantReader variantReader, int maxOpenFiles, boolean forceCreate) {
         super(variantReader, maxOpenFiles, forceCreate);
+        this.numVariants = 0;
+        this.visitedVariants = new BitSet();
+    }
+
+    @Override
+    protected String getFormat() {
+        return PopulationFrequencyCodec.FORMAT;
     }
 
     @Override
     protected void updateIndex(List<Variant> variantList) throws IOException, RocksDBException {
+        // Population frequencies of the batch are grouped by variant first, so that existing entries are read with a
+        // single multiGet and all of them written with a single WriteBatch
+        Map<String, List<PopulationFrequency>> batchPopulationFrequencies = new LinkedHashMap<>();
+        // As before, the rest of the fields are taken from the first occurrence of each variant
+        Map<String, Variant> batchVariants = new HashMap<>();
         for (Variant variant : variantList) {
             // If MNV then edit alternate allele to include a string tha represents all variants forming the MNV
             String haplotypeString = AnnotationBasedPhasedQueryManager.getSampleAttribute(variant,
@@ -51,21 +71,93 @@ public class PopulationFrequencyVariantIndexer extends VariantIndexer {
                 }
             }
 
-            byte[] dbContent = dbIndex.get(variant.toString().getBytes());
-            Variant variantToIndex;
-
-            if (dbContent == null) {
-                variantToIndex = variant;
-            } else {
-                variantToIndex = jsonObjectMapper.readValue(dbContent, Variant.class);
+            batchPopulationFrequencies.computeIfAbsent(variant.toString(), k -> new ArrayList<>())
+                    .addAll(variant.getAnnotation().getPopulationFrequencies());
+            batchVariants.putIfAbsent(variant.toString(), variant);
+        }
 
-                // Add all pop frequencies from current variant
-                variantToIndex
-                        .getAnnotation()
-                        .getPopulationFrequencies().addAll(variant.getAnnotation().getPopulationFrequencies());
+        List<byte[]> keys = new ArrayList<>(batchPopulationFrequencies.size());
+        for (String key : batchPopulationFrequencies.keySet()) {
+            keys.add(key.getBytes());
+        }
+        List<byte[]> dbContents = dbIndex.multiGetAsList(keys);
+
+        try (WriteBatch writeBatch = new WriteBatch(); WriteOptions writeOptions = new WriteOptions()) {
+            int i = 0;
+            for (Map.Entry<String, List<PopulationFrequency>> entry : batchPopulationFrequencies.entrySet()) {
+                byte[] dbContent = dbContents.get(i);
+                int ordinal;
+                byte[] variantJson;
+                List<PopulationFrequency> populationFrequenciesToIndex;
+                if (dbContent == null) {
+                    ordinal = numVariants++;
+                    variantJson = toJsonWithoutPopulationFrequencies(batchVariants.get(entry.getKey()));
+                    populationFrequenciesToIndex = entry.getValue();
+                } else {
+                    ordinal = PopulationFrequencyCodec.decodeOrdinal(dbContent);
+                    variantJson = PopulationFrequencyCodec.decodeVariant(dbContent);
+                    populationFrequenciesToIndex = PopulationFrequencyCodec.decodePopulationFrequencies(dbContent);
+                    // Add all pop frequencies from current variant
+                    populationFrequenciesToIndex.addAll(entry.getValue());
+                }
+                writeBatch.put(keys.get(i), PopulationFrequencyCodec.encode(ordinal, variantJson, populationFrequenciesToIndex));
+                i++;
             }
+            dbIndex.write(writeOptions, writeBatch);
+        }
+    }
+
+    /**
+     * Rebuilds the variant of an index entry as found in the population frequencies file, ids and the rest of the
+     * fields included.
+     *
+     * @param key index key
+     * @param dbContent index value
+     * @return the variant with its population frequencies
+     * @throws IOException if the value can not be decoded
+     */
+    public Variant getVariant(byte[] key, byte[] dbContent) throws IOException {
+        byte[] variantJson = PopulationFrequencyCodec.decodeVariant(dbContent);
+        Variant variant = variantJson != null
+                ? jsonObjectMapper.readValue(variantJson, Variant.class)
+                : new Variant(new String(key));
+        VariantAnnotation variantAnnotation = variant.getAnnotation();
+        if (variantAnnotation == null) {
+            variantAnnotation = new VariantAnnotation();
+            variantAnnotation.setChromosome(variant.getChromosome());
+            variantAnnotation.setStart(variant.getStart());
+            variantAnnotation.setReference(variant.getReference());
+            variantAnnotation.setAlternate(variant.getAlternate());
+            variant.setAnnotation(variantAnnotation);
+        }
+        variantAnnotation.setPopulationFrequencies(PopulationFrequencyCodec.decodePopulationFrequencies(dbContent));
+        return variant;
+    }
+
+    private byte[] toJsonWithoutPopulationFrequencies(Variant variant) throws IOException {
+        // Population frequencies are encoded apart
+        List<PopulationFrequency> populationFrequencies = variant.getAnnotation().getPopulationFrequencies();
+        variant.getAnnotation().setPopulationFrequencies(null);
+        try {
+            return jsonObjectWriter.writeValueAsBytes(variant);
+        } finally {
+            variant.getAnnotation().setPopulationFrequencies(populationFrequencies);
+        }
+    }
+
+    /**
+     * Flags a variant of the index as found in the input file.
+     * @param ordinal variant ordinal, as stored in the index value
+     */
+    public void flagVisitedVariant(int ordinal) {
+        synchronized (visitedVariants) {
+            visitedVariants.set(ordinal);
+        }
+    }
 
-            dbIndex.put(variantToIndex.toString().getBytes(), jsonObjectWriter.writeValueAsBytes(variantToIndex));
+    public boolean isVisitedVariant(int ordinal) {
+        synchronized (visitedVariants) {
+            return visitedVariants.get(ordinal);
         }
     }
 
@@ -30,11 +30,15 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
 public abstract class VariantIndexer {
 
+    // Key of the index format version, never a variant key. Only written once the index is complete
+    private static final byte[] FORMAT_KEY = "#format".getBytes();
+
     protected ObjectMapper jsonObjectMapper;
     protected ObjectWriter jsonObjectWriter;
 
@@ -68,6 +72,24 @@ public abstract class VariantIndexer {
         return dbLocation;
     }
 
+    /**
+     * Index values of a version other than the current one can not be read, so such indexes are re-created rather
+     * than reused.
+     *
+     * @return version of the format of the index values, null if the format is not versioned
+     */
+    protected String getFormat() {
+        return null;
+    }
+
+    /**
+     * @param key index key
+     * @return true if the key holds the index format version rather than a variant
+     */
+    public static boolean isFormatKey(byte[] key) {
+        return Arrays.equals(FORMAT_KEY, key);
+    }
+
     public void open() {
         Object[] dbConnection = getDBConnection();
         dbIndex = (RocksDB) dbConnection[0];
@@ -82,7 +104,8 @@ public abstract class VariantIndexer {
 
     private Object[] getDBConnection() {
         String dbLocation = variantReader.getVariantFileMetadata().getPath() + ".idx";
-        boolean indexingNeeded = forceCreate || !Files.exists(Paths.get(dbLocation));
+        boolean exists = Files.exists(Paths.get(dbLocation));
+        boolean indexingNeeded = forceCreate || !exists;
         // a static method that loads the RocksDB C++ library.
         RocksDB.loadLibrary();
         // the Options class contains a set of configurable DB options
@@ -95,10 +118,24 @@ public abstract class VariantIndexer {
         RocksDB db = null;
         try {
             // a factory method that returns a RocksDB instance
+            if (!indexingNeeded) {
+                db = RocksDB.openReadOnly(options, dbLocation);
+                if (getFormat() != null) {
+                    byte[] format = db.get(FORMAT_KEY);
+                    if (format == null || !getFormat().equals(new String(format))) {
+                        logger.info("Index {} is incomplete or of format {} instead of {}, it will be re-created", dbLocation,
+                                format == null ? null : new String(format), getFormat());
+                        db.close();
+                        indexingNeeded = true;
+                    }
+                }
+            }
             if (indexingNeeded) {
+                // Values are merged with those already in the index, so any previous index is removed first
+                if (exists) {
+                    RocksDB.destroyDB(dbLocation, options);
+                }
                 db = RocksDB.open(options, dbLocation);
-            } else {
-                db = RocksDB.openReadOnly(options, dbLocation);
             }
             // do something
         } catch (RocksDBException e) {
@@ -137,6 +174,9 @@ public abstract class VariantIndexer {
                 }
                 variantList = variantReader.read();
             }
+            if (getFormat() != null) {
+                dbIndex.put(FORMAT_KEY, getFormat().getBytes());
+            }
         } else {
             logger.info("Index already present. Skipping index creation for {}",
                     variantReader.getVariantFileMetadata().getPath());
@@ -39,6 +39,7 @@ import org.opencb.cellbase.app.cli.CommandExecutor;
 import org.opencb.cellbase.app.cli.main.CellBaseCliOptionsParser;
 import org.opencb.cellbase.app.cli.main.annotation.*;
 import org.opencb.cellbase.app.cli.main.annotation.indexers.CustomAnnotationVariantIndexer;
+import org.opencb.cellbase.app.cli.main.annotation.indexers.PopulationFrequencyCodec;
 import org.opencb.cellbase.app.cli.main.annotation.indexers.PopulationFrequencyVariantIndexer;
 import org.opencb.cellbase.app.cli.main.annotation.indexers.VariantIndexer;
 import org.opencb.cellbase.client.config.ClientConfiguration;
@@ -320,20 +321,23 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
 
                 // Population frequencies rocks db will always be the last one in the list. DO NOT change the name of the
                 // rocksIterator variable - for some unexplainable reason Java VM crashes if it's named "iterator"
-                RocksIterator rocksIterator = variantIndexerList.get(variantIndexerList.size() - 1)
+                PopulationFrequencyVariantIndexer populationFrequencyVariantIndexer
+                        = (PopulationFrequencyVariantIndexer) variantIndexerList.get(variantIndexerList.size() - 1);
+                RocksIterator rocksIterator = populationFrequencyVariantIndexer
                         .getDbIndex()
                         .newIterator();
 
-                ObjectMapper mapper = new ObjectMapper();
                 logger.info("Writing variants with frequencies that were not found within the input file {} to {}",
                         populationFrequenciesFile.toString(), output.toString());
                 int counter = 0;
                 for (rocksIterator.seekToFirst(); rocksIterator.isValid(); rocksIterator.next()) {
-                    Variant variant = mapper.readValue(rocksIterator.value(), Variant.class);
-                    // The additional attributes field initialized with an empty map is used as the flag to indicate that
-                    // this variant was not visited during the annotation process
-                    if (variant.getAnnotation().getAdditionalAttributes() == null) {
-                        dataWriter.write(variant);
+                    if (VariantIndexer.isFormatKey(rocksIterator.key())) {
+                        continue;
+                    }
+                    byte[] dbContent = rocksIterator.value();
+                    // Variants found in the input file were flagged as visited during the annotation process
+                    if (!populationFrequencyVariantIndexer.isVisitedVariant(PopulationFrequencyCodec.decodeOrdinal(dbContent))) {
+                        dataWriter.write(populationFrequencyVariantIndexer.getVariant(rocksIterator.key(), dbContent));
                     }
 
                     counter++;
@@ -462,7 +466,7 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
             // Rocks db indexer for population frequencies  is always the last in the list
             int i = variantIndexerList.size() - 1;
             variantAnnotatorList.add(new PopulationFrequenciesAnnotator(populationFrequenciesFile.toString(),
-                    variantIndexerList.get(i).getDbIndex(), serverQueryOptions));
+                    (PopulationFrequencyVariantIndexer) variantIndexerList.get(i), serverQueryOptions));
 
         }
 
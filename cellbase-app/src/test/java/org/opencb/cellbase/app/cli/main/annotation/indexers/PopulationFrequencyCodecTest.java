@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.app.cli.main.annotation.indexers;
+
+import org.junit.jupiter.api.Test;
+import org.opencb.biodata.models.variant.avro.PopulationFrequency;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PopulationFrequencyCodecTest {
+
+    @Test
+    public void testEncodeDecode() throws Exception {
+        List<PopulationFrequency> populationFrequencies = Arrays.asList(
+                new PopulationFrequency("1kG_phase3", "AFR", "AAnn--", "--nngg", 0.8f, 0.1f, null, null, null),
+                new PopulationFrequency("GNOMAD_GENOMES", "AMR", "T", "G", 0.98062956f, 0.01937046f, 0.9f, 0.05f, 0.05f),
+                new PopulationFrequency("GNOMAD_GENOMES", "ALL", "", null, null, 1f, null, 0f, null));
+
+        byte[] variant = "{\"id\":\"rs123\",\"names\":[\"rs123\"]}".getBytes(StandardCharsets.UTF_8);
+        byte[] value = PopulationFrequencyCodec.encode(42, variant, populationFrequencies);
+        assertEquals(42, PopulationFrequencyCodec.decodeOrdinal(value));
+        assertArrayEquals(variant, PopulationFrequencyCodec.decodeVariant(value));
+        assertEquals(populationFrequencies, PopulationFrequencyCodec.decodePopulationFrequencies(value));
+    }
+
+    @Test
+    public void testEncodeEmpty() throws Exception {
+        byte[] value = PopulationFrequencyCodec.encode(0, null, Collections.emptyList());
+        assertEquals(0, PopulationFrequencyCodec.decodeOrdinal(value));
+        assertNull(PopulationFrequencyCodec.decodeVariant(value));
+        assertTrue(PopulationFrequencyCodec.decodePopulationFrequencies(value).isEmpty());
+    }
+}
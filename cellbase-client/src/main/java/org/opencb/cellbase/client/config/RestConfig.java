@@ -24,7 +24,12 @@ import java.util.List;
 public class RestConfig {
 
     private List<String> hosts;
+    // Connect timeout in milliseconds
     private int timeout;
+    // Read timeout in milliseconds, 0 waits for as long as the server takes to answer, e.g. slow annotation batches
+    private int readTimeout;
+    // Threads shared by all the clients of a CellBaseClient to run REST call batches, 0 for the default
+    private int numThreads;
 
     public RestConfig() {
     }
@@ -39,6 +44,8 @@ public class RestConfig {
         final StringBuilder sb = new StringBuilder("RestConfig{");
         sb.append("hosts=").append(hosts);
         sb.append(", timeout=").append(timeout);
+        sb.append(", readTimeout=").append(readTimeout);
+        sb.append(", numThreads=").append(numThreads);
         sb.append('}');
         return sb.toString();
     }
@@ -60,4 +67,22 @@ public class RestConfig {
         this.timeout = timeout;
         return this;
     }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public RestConfig setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+        return this;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public RestConfig setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+        return this;
+    }
 }
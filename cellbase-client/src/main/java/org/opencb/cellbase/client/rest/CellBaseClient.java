@@ -19,20 +19,26 @@ package org.opencb.cellbase.client.rest;
 import org.apache.commons.lang3.StringUtils;
 import org.opencb.cellbase.client.config.ClientConfiguration;
 
+import java.io.Closeable;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Supplier;
 
 /**
  * Created by imedina on 12/05/16.
  */
-public class CellBaseClient {
+public class CellBaseClient implements Closeable {
 
     private String species;
     private String assembly;
     private ClientConfiguration clientConfiguration;
 
     private final Map<String, ParentRestClient> clients;
+    // Shared by all the clients, bounds the number of concurrent REST calls of this CellBaseClient
+    private final ExecutorService executorService;
+    // Shared by all the clients, so that outstanding calls to each host are counted across clients
+    private final HostBalancer hostBalancer;
 
 
     public CellBaseClient(ClientConfiguration clientConfiguration) {
@@ -60,7 +66,9 @@ public class CellBaseClient {
                     + " when building a CellBase client and cannot be empty");
         }
         clients = new ConcurrentHashMap<>();
-
+        int numThreads = clientConfiguration.getRest().getNumThreads();
+        executorService = ParentRestClient.newExecutorService(numThreads > 0 ? numThreads : ParentRestClient.DEFAULT_NUM_THREADS);
+        hostBalancer = new HostBalancer(clientConfiguration.getRest().getHosts());
     }
 
     public GeneClient getGeneClient() {
@@ -102,7 +110,20 @@ public class CellBaseClient {
     @SuppressWarnings("unchecked")
     private <T extends ParentRestClient> T getClient(String key, Supplier<T> constructorIfAbsent) {
         // Avoid concurrent modifications
-        return (T) clients.computeIfAbsent(key, s -> constructorIfAbsent.get());
+        return (T) clients.computeIfAbsent(key, s -> {
+            T client = constructorIfAbsent.get();
+            client.setExecutorService(executorService);
+            client.setHostBalancer(hostBalancer);
+            return client;
+        });
+    }
+
+    /**
+     * Stops the threads running REST call batches, clients of this CellBaseClient can not be used afterwards.
+     */
+    @Override
+    public void close() {
+        executorService.shutdown();
     }
 
 
@@ -117,6 +138,10 @@ public class CellBaseClient {
     }
 
 
+    public HostBalancer getHostBalancer() {
+        return hostBalancer;
+    }
+
     public String getSpecies() {
         return species;
     }
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.client.rest;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.opencb.cellbase.core.result.CellBaseDataResult;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.UnaryOperator;
+
+/**
+ * Iterates over the CellBaseDataResults of a REST call, one per id, without building the whole response. Ids are
+ * requested in batches, one batch at a time, and the results of each batch are read from the HTTP response stream as
+ * they are consumed, so only the current result is held in memory.
+ *
+ * Unlike the CellBaseDataResponse methods, results are not paged: each CellBaseDataResult holds up to the 'limit' query
+ * option results. Errors are thrown as UncheckedIOException or JAX-RS exceptions, ids of failed calls are not skipped.
+ */
+public class CellBaseDataResultIterator<T> implements Iterator<CellBaseDataResult<T>>, Closeable {
+
+    @FunctionalInterface
+    interface BatchReader {
+        /**
+         * @param ids ids of the batch
+         * @return a parser over the CellBaseDataResponse of the batch
+         * @throws IOException if the REST call fails
+         */
+        JsonParser open(List<String> ids) throws IOException;
+    }
+
+    private final List<String> idList;
+    private final int batchSize;
+    private final BatchReader batchReader;
+    private final ObjectReader resultReader;
+    private final UnaryOperator<CellBaseDataResult<T>> resultMapper;
+
+    private int numRequestedIds;
+    private JsonParser parser;
+    private CellBaseDataResult<T> next;
+
+    CellBaseDataResultIterator(List<String> idList, int batchSize, BatchReader batchReader, ObjectReader resultReader,
+                               UnaryOperator<CellBaseDataResult<T>> resultMapper) {
+        this.idList = idList;
+        this.batchSize = batchSize;
+        this.batchReader = batchReader;
+        this.resultReader = resultReader;
+        this.resultMapper = resultMapper;
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (next == null) {
+                if (parser == null) {
+                    if (numRequestedIds >= idList.size()) {
+                        return false;
+                    }
+                    int to = Math.min(numRequestedIds + batchSize, idList.size());
+                    parser = batchReader.open(idList.subList(numRequestedIds, to));
+                    numRequestedIds = to;
+                    if (!moveToResponses()) {
+                        closeParser();
+                        continue;
+                    }
+                }
+                if (parser.nextToken() == JsonToken.START_OBJECT) {
+                    CellBaseDataResult<T> result = resultReader.readValue(parser);
+                    next = resultMapper != null ? resultMapper.apply(result) : result;
+                } else {
+                    // End of the responses of the batch
+                    closeParser();
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public CellBaseDataResult<T> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        CellBaseDataResult<T> result = next;
+        next = null;
+        return result;
+    }
+
+    /**
+     * Stops reading, the HTTP response of the current batch is closed.
+     */
+    @Override
+    public void close() {
+        try {
+            closeParser();
+        } catch (IOException e) {
+            // Nothing else to release
+        }
+        numRequestedIds = idList.size();
+        next = null;
+    }
+
+    /**
+     * Skips the fields of the CellBaseDataResponse up to the start of its 'responses' array.
+     * @return false if the response has no results
+     * @throws IOException if the response can not be read
+     */
+    private boolean moveToResponses() throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("responses".equals(field)) {
+                return token == JsonToken.START_ARRAY;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    private void closeParser() throws IOException {
+        if (parser != null) {
+            JsonParser jsonParser = parser;
+            parser = null;
+            jsonParser.close();
+        }
+    }
+}
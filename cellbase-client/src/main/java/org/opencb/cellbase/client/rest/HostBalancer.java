@@ -0,0 +1,218 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.client.rest;
+
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spreads REST calls over the hosts of the client configuration. Each call goes to the available host with the fewest
+ * outstanding calls, weighted by its average latency (EWMA). Hosts that fail or time out are ejected for a backoff that
+ * doubles with every consecutive failure; once it expires a single probe call is let through, and the host is back in
+ * the pool if the probe succeeds.
+ */
+public class HostBalancer {
+
+    public static final long DEFAULT_EJECTION_TIME = 1000;
+    public static final long MAX_EJECTION_TIME = 60000;
+    // Weight of the last call in the average latency
+    private static final double EWMA_DECAY = 0.3;
+
+    private final List<Host> hosts;
+    private final long ejectionTime;
+    private final Logger logger;
+
+    public HostBalancer(List<String> urls) {
+        this(urls, DEFAULT_EJECTION_TIME);
+    }
+
+    public HostBalancer(List<String> urls, long ejectionTime) {
+        if (urls == null || urls.isEmpty()) {
+            throw new IllegalArgumentException("At least one host is needed to balance REST calls");
+        }
+        List<Host> hostList = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            hostList.add(new Host(url));
+        }
+        this.hosts = Collections.unmodifiableList(hostList);
+        this.ejectionTime = ejectionTime;
+        this.logger = LoggerFactory.getLogger(HostBalancer.class);
+    }
+
+    /**
+     * Picks the host of the next call, which must be given back with {@link #release}.
+     * @return an ejected host whose backoff has expired, to probe it, or else the available host with the lowest
+     * (outstanding calls + 1) * average latency. If every host is ejected, the one whose ejection ends first, so that
+     * calls are never refused
+     */
+    public Host acquire() {
+        while (true) {
+            long now = System.currentTimeMillis();
+            // Hosts without calls yet are scored with the mean latency of the others
+            double meanLatency = 0;
+            int numMeasuredHosts = 0;
+            for (Host host : hosts) {
+                if (host.latency > 0) {
+                    meanLatency += host.latency;
+                    numMeasuredHosts++;
+                }
+            }
+            meanLatency = numMeasuredHosts > 0 ? meanLatency / numMeasuredHosts : 0;
+
+            Host best = null;
+            double bestScore = Double.MAX_VALUE;
+            Host firstToRecover = null;
+            for (Host host : hosts) {
+                if (host.isAvailable(now)) {
+                    if (host.ejectedUntil > 0) {
+                        best = host;
+                        break;
+                    }
+                    double latency = host.latency > 0 ? host.latency : meanLatency;
+                    // +1 keeps the outstanding calls relevant while latencies are unknown
+                    double score = (host.outstanding + 1) * (latency + 1);
+                    if (score < bestScore) {
+                        best = host;
+                        bestScore = score;
+                    }
+                } else if (firstToRecover == null || host.ejectedUntil < firstToRecover.ejectedUntil) {
+                    firstToRecover = host;
+                }
+            }
+            if (best == null) {
+                firstToRecover.acquire(now, true);
+                return firstToRecover;
+            }
+            // Another thread may have taken the probe call in the meantime
+            if (best.acquire(now, false)) {
+                return best;
+            }
+        }
+    }
+
+    /**
+     * Gives back a host picked by {@link #acquire}.
+     * @param host host
+     * @param latency time taken by the call, in milliseconds
+     * @param failed whether the call failed because of the host, i.e. it could not be reached, timed out or was
+     *               unavailable (502, 503 or 504). Errors of the request itself, such as a 500, are not failures of the host
+     */
+    public void release(Host host, long latency, boolean failed) {
+        synchronized (host) {
+            host.outstanding--;
+            host.numCalls.incrementAndGet();
+            host.probing = false;
+            if (failed) {
+                host.numFailures.incrementAndGet();
+                host.consecutiveFailures++;
+                long backoff = Math.min(ejectionTime << Math.min(host.consecutiveFailures - 1, 30), MAX_EJECTION_TIME);
+                host.ejectedUntil = System.currentTimeMillis() + backoff;
+                logger.warn("CellBase host {} failed {} consecutive times, ejected for {} ms", host.url, host.consecutiveFailures,
+                        backoff);
+            } else {
+                if (host.ejectedUntil > 0) {
+                    logger.info("CellBase host {} is back", host.url);
+                }
+                host.consecutiveFailures = 0;
+                host.ejectedUntil = 0;
+                host.latency = host.latency == 0 ? latency : EWMA_DECAY * latency + (1 - EWMA_DECAY) * host.latency;
+            }
+        }
+    }
+
+    public List<Host> getHosts() {
+        return hosts;
+    }
+
+    public List<ObjectMap> getStats() {
+        List<ObjectMap> stats = new ArrayList<>(hosts.size());
+        for (Host host : hosts) {
+            synchronized (host) {
+                ObjectMap hostStats = new ObjectMap();
+                hostStats.put("host", host.url);
+                hostStats.put("outstanding", host.outstanding);
+                hostStats.put("latency", host.latency);
+                hostStats.put("numCalls", host.numCalls.get());
+                hostStats.put("numFailures", host.numFailures.get());
+                hostStats.put("ejected", host.ejectedUntil > 0);
+                stats.add(hostStats);
+            }
+        }
+        return stats;
+    }
+
+    public static final class Host {
+
+        private final String url;
+        private final AtomicLong numCalls;
+        private final AtomicLong numFailures;
+        // Guarded by the host monitor, read without it when scoring hosts
+        private volatile int outstanding;
+        private volatile double latency;
+        private volatile long ejectedUntil;
+        private int consecutiveFailures;
+        private boolean probing;
+
+        private Host(String url) {
+            this.url = url;
+            this.numCalls = new AtomicLong();
+            this.numFailures = new AtomicLong();
+        }
+
+        private synchronized boolean isAvailable(long now) {
+            return ejectedUntil == 0 || (now >= ejectedUntil && !probing);
+        }
+
+        private synchronized boolean acquire(long now, boolean force) {
+            if (ejectedUntil > 0 && !force) {
+                if (now < ejectedUntil || probing) {
+                    return false;
+                }
+                probing = true;
+            }
+            outstanding++;
+            return true;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public long getNumCalls() {
+            return numCalls.get();
+        }
+
+        public long getNumFailures() {
+            return numFailures.get();
+        }
+
+        public boolean isEjected() {
+            return ejectedUntil > 0;
+        }
+
+        @Override
+        public String toString() {
+            return url;
+        }
+    }
+}
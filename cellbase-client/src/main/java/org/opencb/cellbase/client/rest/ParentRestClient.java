@@ -16,6 +16,7 @@
 
 package org.opencb.cellbase.client.rest;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -40,12 +41,12 @@ import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Response;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
 
 /**
  * Created by imedina on 12/05/16.
@@ -63,11 +64,18 @@ public class ParentRestClient<T> {
     protected Class<T> clazz;
 
     protected final ClientConfiguration configuration;
+    // Runs the batches of long id lists, shared by all the clients of the same CellBaseClient
+    private volatile ExecutorService executorService;
+    // Picks the host of each REST call, shared like the executor
+    private volatile HostBalancer hostBalancer;
 
     protected static ObjectMapper jsonObjectMapper;
     protected final Logger logger;
 
     public static final int LIMIT = 10;
+    // Query option and result attribute with the token of the next page, '*' for the first one
+    static final String CURSOR = "cursor";
+    static final String CURSOR_START = "*";
     public static final int REST_CALL_BATCH_SIZE = 200;
     public static final int DEFAULT_NUM_THREADS = 4;
 
@@ -87,7 +95,17 @@ public class ParentRestClient<T> {
         this.assembly = assembly;
         this.configuration = configuration;
 
-        this.client = ClientBuilder.newClient();
+        ClientBuilder clientBuilder = ClientBuilder.newBuilder();
+        if (configuration != null && configuration.getRest() != null) {
+            // A host that does not answer in time is ejected by the HostBalancer
+            if (configuration.getRest().getTimeout() > 0) {
+                clientBuilder.connectTimeout(configuration.getRest().getTimeout(), TimeUnit.MILLISECONDS);
+            }
+            if (configuration.getRest().getReadTimeout() > 0) {
+                clientBuilder.readTimeout(configuration.getRest().getReadTimeout(), TimeUnit.MILLISECONDS);
+            }
+        }
+        this.client = clientBuilder.build();
         logger = LoggerFactory.getLogger(this.getClass().toString());
     }
 
@@ -110,6 +128,60 @@ public class ParentRestClient<T> {
         return execute(id, "info", queryOptions, clazz);
     }
 
+    public CompletableFuture<CellBaseDataResponse<T>> getAsync(List<String> id, QueryOptions queryOptions) {
+        return executeAsync(id, "info", queryOptions, clazz, false);
+    }
+
+    public CellBaseDataResultIterator<T> iterator(List<String> id, QueryOptions queryOptions) {
+        return iterator(id, "info", queryOptions, clazz, false, null);
+    }
+
+    /**
+     * Creates the executor used to run REST call batches: a fixed number of daemon threads, so that an executor that is
+     * never shut down does not prevent the JVM from exiting.
+     * @param numThreads number of threads
+     * @return the executor
+     */
+    static ExecutorService newExecutorService(int numThreads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(numThreads, runnable -> {
+            Thread thread = new Thread(runnable, "cellbase-client-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    protected ExecutorService getExecutorService() {
+        // Clients created out of a CellBaseClient get their own executor the first time it is needed
+        if (executorService == null) {
+            synchronized (this) {
+                if (executorService == null) {
+                    executorService = newExecutorService(DEFAULT_NUM_THREADS);
+                }
+            }
+        }
+        return executorService;
+    }
+
+
+    void setHostBalancer(HostBalancer hostBalancer) {
+        this.hostBalancer = hostBalancer;
+    }
+
+    protected HostBalancer getHostBalancer() {
+        if (hostBalancer == null) {
+            synchronized (this) {
+                if (hostBalancer == null) {
+                    hostBalancer = new HostBalancer(configuration.getRest().getHosts());
+                }
+            }
+        }
+        return hostBalancer;
+    }
 
     protected <U> CellBaseDataResponse<U> execute(String action, Query query, QueryOptions queryOptions,
                                                   Class<U> clazz) throws IOException {
@@ -152,48 +224,184 @@ public class ParentRestClient<T> {
         }
 
         // But if there are more than REST_CALL_BATCH_SIZE variants then we launch several threads to increase performance.
+        try {
+            return executeAsync(idList, resource, options, clazz, post).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for CellBase REST calls", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Splits the id list in batches of REST_CALL_BATCH_SIZE ids that are fetched in the executor of the client, with at
+     * most numThreads (query option, DEFAULT_NUM_THREADS by default) batches in flight at a time.
+     * @param idList ids
+     * @param resource resource, e.g. info
+     * @param options query options, not modified
+     * @param clazz class of the results
+     * @param post whether ids are sent in the body of a POST request
+     * @param <U> type of the results
+     * @return future response, with one result per id in the same order as idList
+     */
+    protected <U> CompletableFuture<CellBaseDataResponse<U>> executeAsync(List<String> idList, String resource,
+                                                                         QueryOptions options, Class<U> clazz, boolean post) {
+        if (idList == null || idList.isEmpty()) {
+            return CompletableFuture.completedFuture(new CellBaseDataResponse<>());
+        }
         int numThreads = (options != null)
                 ? options.getInt("numThreads", DEFAULT_NUM_THREADS)
                 : DEFAULT_NUM_THREADS;
+        return new BatchedCall<>(idList, resource, options, clazz, post).start(numThreads);
+    }
 
-        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
-        List<Future<CellBaseDataResponse<U>>> futureList = new ArrayList<>((idList.size() / REST_CALL_BATCH_SIZE) + 1);
-        for (int i = 0; i < idList.size(); i += REST_CALL_BATCH_SIZE) {
-            final int from = i;
-            final int to = (from + REST_CALL_BATCH_SIZE > idList.size())
-                    ? idList.size()
-                    : from + REST_CALL_BATCH_SIZE;
-            futureList.add(executorService.submit(() ->
-                    fetchData(idList.subList(from, to), resource, options, clazz, post)
-            ));
+    /**
+     * Streams the results of a REST call, see {@link CellBaseDataResultIterator}. Batches are requested when the
+     * previous one has been read.
+     * @param idList ids
+     * @param resource resource, e.g. info
+     * @param options query options, not modified
+     * @param clazz class of the results
+     * @param post whether ids are sent in the body of a POST request
+     * @param resultMapper applied to each result before it is returned, may be null
+     * @param <U> type of the results
+     * @return iterator over one result per id, in the same order as idList
+     */
+    protected <U> CellBaseDataResultIterator<U> iterator(List<String> idList, String resource, QueryOptions options, Class<U> clazz,
+                                                         boolean post, UnaryOperator<CellBaseDataResult<U>> resultMapper) {
+        QueryOptions queryOptions = options != null ? new QueryOptions(options) : new QueryOptions();
+        queryOptions.putIfAbsent("limit", LIMIT);
+        ObjectReader resultReader = jsonObjectMapper
+                .readerFor(jsonObjectMapper.getTypeFactory().constructParametrizedType(CellBaseDataResult.class,
+                        CellBaseDataResult.class, clazz));
+        return new CellBaseDataResultIterator<>(idList != null ? idList : Collections.emptyList(), REST_CALL_BATCH_SIZE,
+                ids -> readRestCall(configuration.getRest().getHosts(), configuration.getVersion(), StringUtils.join(ids, ','), resource,
+                        queryOptions, post, ParentRestClient::createParser),
+                resultReader, resultMapper);
+    }
+
+    private static JsonParser createParser(InputStream inputStream) throws IOException {
+        try {
+            return jsonObjectMapper.getFactory().createParser(inputStream);
+        } catch (IOException | RuntimeException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * REST call of a long id list. Results of each batch are appended to the response as soon as all the batches before it
+     * are done, so a slow batch only delays the merging of the ones behind it.
+     */
+    private final class BatchedCall<U> {
+        private final List<String> idList;
+        private final String resource;
+        private final QueryOptions options;
+        private final Class<U> clazz;
+        private final boolean post;
+        private final int numBatches;
+
+        private final AtomicInteger nextBatch = new AtomicInteger();
+        private final List<CellBaseDataResult<U>>[] batchResults;
+        private final List<CellBaseDataResult<U>> mergedResults;
+        private int numMergedBatches;
+        private final CompletableFuture<CellBaseDataResponse<U>> future = new CompletableFuture<>();
+
+        @SuppressWarnings("unchecked")
+        BatchedCall(List<String> idList, String resource, QueryOptions options, Class<U> clazz, boolean post) {
+            this.idList = idList;
+            this.resource = resource;
+            this.options = options;
+            this.clazz = clazz;
+            this.post = post;
+            this.numBatches = (idList.size() + REST_CALL_BATCH_SIZE - 1) / REST_CALL_BATCH_SIZE;
+            this.batchResults = new List[numBatches];
+            this.mergedResults = new ArrayList<>(idList.size());
         }
 
-        List<CellBaseDataResult<U>> cellBaseDataResults = new ArrayList<>(idList.size());
-        for (Future<CellBaseDataResponse<U>> responseFuture : futureList) {
+        CompletableFuture<CellBaseDataResponse<U>> start(int numThreads) {
+            for (int i = 0; i < Math.max(1, numThreads); i++) {
+                submitNextBatch();
+            }
+            return future;
+        }
+
+        private void submitNextBatch() {
+            int batch = nextBatch.getAndIncrement();
+            if (batch >= numBatches || future.isDone()) {
+                return;
+            }
             try {
-                while (!responseFuture.isDone()) {
-                    Thread.sleep(5);
-                }
-                cellBaseDataResults.addAll(responseFuture.get().getResponses());
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
+                CompletableFuture.supplyAsync(() -> fetchBatch(batch), getExecutorService())
+                        .whenComplete((response, throwable) -> {
+                            if (throwable != null) {
+                                future.completeExceptionally(throwable instanceof CompletionException ? throwable.getCause() : throwable);
+                            } else if (response == null || response.getResponses() == null) {
+                                future.completeExceptionally(new IOException("CellBase REST call returned no responses for ids "
+                                        + idList.get(batch * REST_CALL_BATCH_SIZE) + " to "
+                                        + idList.get(Math.min((batch + 1) * REST_CALL_BATCH_SIZE, idList.size()) - 1)));
+                            } else {
+                                merge(batch, response.getResponses());
+                                submitNextBatch();
+                            }
+                        });
+            } catch (RejectedExecutionException e) {
+                // The executor was shut down, i.e. the CellBaseClient was closed while the call was in progress
+                future.completeExceptionally(e);
             }
         }
 
-        CellBaseDataResponse<U> finalResponse = new CellBaseDataResponse<>();
-        finalResponse.setResponses(cellBaseDataResults);
-        executorService.shutdown();
+        private CellBaseDataResponse<U> fetchBatch(int batch) {
+            int from = batch * REST_CALL_BATCH_SIZE;
+            int to = Math.min(from + REST_CALL_BATCH_SIZE, idList.size());
+            // Each batch pages through its own results, options are copied so batches do not share skip
+            QueryOptions batchOptions = options != null ? new QueryOptions(options) : new QueryOptions();
+            try {
+                return fetchData(idList.subList(from, to), resource, batchOptions, clazz, post);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }
 
-        return finalResponse;
+        private void merge(int batch, List<CellBaseDataResult<U>> results) {
+            CellBaseDataResponse<U> finalResponse = null;
+            synchronized (this) {
+                batchResults[batch] = results;
+                while (numMergedBatches < numBatches && batchResults[numMergedBatches] != null) {
+                    mergedResults.addAll(batchResults[numMergedBatches]);
+                    // Release the batch, its results are already merged
+                    batchResults[numMergedBatches] = Collections.emptyList();
+                    numMergedBatches++;
+                }
+                if (numMergedBatches == numBatches) {
+                    finalResponse = new CellBaseDataResponse<>();
+                    finalResponse.setResponses(mergedResults);
+                }
+            }
+            if (finalResponse != null) {
+                future.complete(finalResponse);
+            }
+        }
     }
 
     private <U> CellBaseDataResponse<U> fetchData(List<String> idList, String resource, QueryOptions options, Class<U> clazz,
                                            boolean post) throws IOException {
 
-        if (options == null) {
-            options = new QueryOptions();
-        }
+        // Paging options are not left in the caller's options
+        options = options != null ? new QueryOptions(options) : new QueryOptions();
         options.putIfAbsent("limit", LIMIT);
+        // Next pages resume from the cursor of the previous one, so the server does not scan again the skipped results.
+        // Servers not returning cursors are paged with skip
+        boolean useCursor = !options.containsKey("skip") && !options.containsKey("sort") && !options.containsKey(CURSOR);
+        if (useCursor) {
+            options.put(CURSOR, CURSOR_START);
+        }
 
         Map<String, Integer> idMap = new HashMap<>();
         List<String> prevIdList = idList;
@@ -231,10 +439,15 @@ public class ParentRestClient<T> {
                 prevIdList = newIdsList;
             }
             newIdsList = new ArrayList<>();
+            List<String> cursors = new ArrayList<>();
             if (queryResponse.getResponses() != null) {
                 for (int i = 0; i < queryResponse.getResponses().size(); i++) {
-                    if (queryResponse.getResponses().get(i).getNumResults() == LIMIT) {
+                    CellBaseDataResult<U> result = queryResponse.getResponses().get(i);
+                    if (result.getNumResults() == LIMIT) {
                         newIdsList.add(prevIdList.get(i));
+                        if (result.getAttributes() != null && result.getAttributes().get(CURSOR) != null) {
+                            cursors.add(result.getAttributes().getString(CURSOR));
+                        }
                     }
                 }
             }
@@ -245,7 +458,14 @@ public class ParentRestClient<T> {
             } else {
                 idList = newIdsList;
                 skip += LIMIT;
-                options.put("skip", skip);
+                useCursor = useCursor && cursors.size() == newIdsList.size();
+                if (useCursor) {
+                    // One cursor per id, in the same order
+                    options.put(CURSOR, StringUtils.join(cursors, ','));
+                } else {
+                    options.remove(CURSOR);
+                    options.put("skip", skip);
+                }
             }
         }
 
@@ -316,22 +536,120 @@ public class ParentRestClient<T> {
             queryResponse = new CellBaseDataResponse<U>(configuration.getVersion(), -1, null, queryOptions,
                     cellBaseDataResultList);
             logger.info("Re-attempting to solve the query - trying to identify any problematic id to skip it");
-            List<String> idList1 = idList.subList(0, idList.size() / 2);
+            int half = idList.size() / 2;
+            List<String> idList1 = idList.subList(0, half);
             if (!idList1.isEmpty()) {
-                cellBaseDataResultList.addAll(robustRestCall(idList1, resource, queryOptions, clazz, post).getResponses());
+                cellBaseDataResultList.addAll(robustRestCall(idList1, resource, getSubListOptions(queryOptions, 0, half, idList.size()),
+                        clazz, post).getResponses());
             }
-            List<String> idList2 = idList.subList(idList.size() / 2, idList.size());
+            List<String> idList2 = idList.subList(half, idList.size());
             if (!idList2.isEmpty()) {
-                cellBaseDataResultList.addAll(robustRestCall(idList2, resource, queryOptions, clazz, post).getResponses());
+                cellBaseDataResultList.addAll(robustRestCall(idList2, resource,
+                        getSubListOptions(queryOptions, half, idList.size(), idList.size()), clazz, post).getResponses());
             }
         }
         return queryResponse;
     }
 
+    /**
+     * @param queryOptions options of a call
+     * @param from first id of the sub-list
+     * @param to end of the sub-list, exclusive
+     * @param numIds number of ids of the call
+     * @return options of a call of the sub-list of ids, with their own cursors when the call has one per id
+     */
+    static QueryOptions getSubListOptions(QueryOptions queryOptions, int from, int to, int numIds) {
+        String cursor = queryOptions.getString(CURSOR);
+        if (StringUtils.isEmpty(cursor) || cursor.indexOf(',') < 0) {
+            // No cursor, or a single one for all the ids
+            return queryOptions;
+        }
+        String[] cursors = cursor.split(",", -1);
+        if (cursors.length != numIds) {
+            return queryOptions;
+        }
+        QueryOptions subListOptions = new QueryOptions(queryOptions);
+        subListOptions.put(CURSOR, StringUtils.join(Arrays.asList(cursors).subList(from, to), ','));
+        return subListOptions;
+    }
+
     private <U> CellBaseDataResponse<U> restCall(List<String> hosts, String version, String ids, String resource, QueryOptions queryOptions,
                                           Class<U> clazz, boolean post) throws IOException {
+        return readRestCall(hosts, version, ids, resource, queryOptions, post, inputStream -> parseResult(inputStream, clazz));
+    }
+
+    /**
+     * Makes a REST call and reads its response directly from the HTTP stream.
+     * @param hosts hosts of the configuration
+     * @param version CellBase version
+     * @param ids comma-separated ids
+     * @param resource resource, e.g. info
+     * @param queryOptions query options
+     * @param post whether ids are sent in the body of a POST request
+     * @param responseReader reads the response body, closing the stream unless the returned object does it later
+     * @param <R> type read
+     * @return the response read
+     * @throws IOException if the response can not be parsed
+     */
+    private <R> R readRestCall(List<String> hosts, String version, String ids, String resource, QueryOptions queryOptions,
+                               boolean post, ResponseReader<R> responseReader) throws IOException {
+        // Calls that fail because of the host are retried once on each of the other hosts
+        HostBalancer balancer = getHostBalancer();
+        int attempt = 0;
+        while (true) {
+            attempt++;
+            HostBalancer.Host host = balancer.acquire();
+            long start = System.currentTimeMillis();
+            boolean failed = true;
+            try {
+                R response = read(restCall(host, version, ids, resource, queryOptions, post), responseReader);
+                failed = false;
+                return response;
+            } catch (JsonProcessingException e) {
+                failed = false;
+                throw e;
+            } catch (javax.ws.rs.ProcessingException | WebApplicationException e) {
+                failed = isHostFailure(e);
+                if (!failed || attempt >= hosts.size()) {
+                    throw e;
+                }
+                logger.warn("CellBase REST call to {} failed, retrying on another host: {}", host, e.getMessage());
+            } finally {
+                balancer.release(host, System.currentTimeMillis() - start, failed);
+            }
+        }
+    }
 
-        WebTarget path = getBaseUrl(hosts, version);
+    /**
+     * @param e error of a REST call
+     * @return whether the host is to blame: it could not be reached, timed out or is unavailable (502, 503 or 504). Any
+     * other error, e.g. of a malformed id, is reported by the server as a 500 that every other host would return too
+     */
+    static boolean isHostFailure(RuntimeException e) {
+        if (!(e instanceof WebApplicationException)) {
+            return true;
+        }
+        int status = ((WebApplicationException) e).getResponse().getStatus();
+        return status == Response.Status.BAD_GATEWAY.getStatusCode()
+                || status == Response.Status.SERVICE_UNAVAILABLE.getStatusCode()
+                || status == Response.Status.GATEWAY_TIMEOUT.getStatusCode();
+    }
+
+    private static <R> R read(InputStream inputStream, ResponseReader<R> responseReader) throws JsonProcessingException {
+        try {
+            return responseReader.read(inputStream);
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            // The connection was lost while reading, as when Jersey reads the whole body
+            throw new javax.ws.rs.ProcessingException(e);
+        }
+    }
+
+    private InputStream restCall(HostBalancer.Host host, String version, String ids, String resource, QueryOptions queryOptions,
+                                 boolean post) throws IOException {
+
+        WebTarget path = getBaseUrl(Collections.singletonList(host.getUrl()), version);
 
         WebTarget callUrl = path;
         if (ids != null && !ids.isEmpty() && !post) {
@@ -354,16 +672,13 @@ public class ParentRestClient<T> {
             }
         }
 
-        String jsonString;
         if (post) {
             logger.debug("Making POST call to REST URL: {}", callUrl.getUri().toURL());
-            jsonString = callUrl.request().post(Entity.text(ids), String.class);
+            return callUrl.request().post(Entity.text(ids), InputStream.class);
         } else {
             logger.debug("Making GET call to REST URL: {}", callUrl.getUri().toURL());
-            jsonString = callUrl.request().get(String.class);
+            return callUrl.request().get(InputStream.class);
         }
-
-        return parseResult(jsonString, clazz);
     }
 
     protected WebTarget getBaseUrl(List<String> hosts, String version) {
@@ -377,11 +692,18 @@ public class ParentRestClient<T> {
                     .path(subcategory);
     }
 
-    private static <U> CellBaseDataResponse<U> parseResult(String json, Class<U> clazz) throws IOException {
+    private static <U> CellBaseDataResponse<U> parseResult(InputStream inputStream, Class<U> clazz) throws IOException {
         ObjectReader reader = jsonObjectMapper
                 .readerFor(jsonObjectMapper.getTypeFactory().constructParametrizedType(CellBaseDataResponse.class,
                         CellBaseDataResult.class, clazz));
-        return reader.readValue(json);
+        try (InputStream responseStream = inputStream) {
+            return reader.readValue(responseStream);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ResponseReader<R> {
+        R read(InputStream inputStream) throws IOException;
     }
 
 }
@@ -73,6 +73,18 @@ public final class VariantClient extends FeatureClient<Variant> {
         return initRequiredAnnotation(result);
     }
 
+    /**
+     * Streams the annotation of the variants, for id lists whose whole response should not be held in memory.
+     * @param ids variant ids
+     * @param options query options
+     * @param post whether ids are sent in the body of a POST request
+     * @return iterator over one result per variant id, in the same order, to be closed if not fully consumed
+     */
+    public CellBaseDataResultIterator<VariantAnnotation> getAnnotationIteratorByVariantIds(List<String> ids, QueryOptions options,
+                                                                                           boolean post) {
+        return iterator(ids, "annotation", options, VariantAnnotation.class, post, this::initRequiredAnnotation);
+    }
+
 
     public CellBaseDataResponse<Variant> annotate(List<Variant> variants, QueryOptions options) throws IOException {
         return annotate(variants, options, false);
@@ -160,49 +172,55 @@ public final class VariantClient extends FeatureClient<Variant> {
     }
 
     private CellBaseDataResponse<VariantAnnotation> initRequiredAnnotation(CellBaseDataResponse<VariantAnnotation> queryResponse) {
-        for (int i = 0; i < queryResponse.getResponses().size(); i++) {
-            VariantAnnotation annotation = queryResponse.getResponses().get(i).first();
-            // It can happen that no annotation is returned for variants that could not be parsed and raised problems
-            // e.g. 1:645710:A:<INS:ME:ALU>
-            if (annotation != null) {
-                // Patch to remove by updating the Evidence avdl model
-                if (annotation.getTraitAssociation() != null) {
-                    for (EvidenceEntry evidenceEntry : annotation.getTraitAssociation()) {
-                        if (evidenceEntry.getSubmissions() == null) {
-                            evidenceEntry.setSubmissions(Collections.emptyList());
-                        }
-                        if (evidenceEntry.getHeritableTraits() == null) {
-                            evidenceEntry.setHeritableTraits(Collections.emptyList());
-                        } else {
-                            for (HeritableTrait heritableTrait : evidenceEntry.getHeritableTraits()) {
-                                if (heritableTrait.getInheritanceMode() == null) {
-                                    heritableTrait.setInheritanceMode(ModeOfInheritance.unknown);
-                                }
+        for (CellBaseDataResult<VariantAnnotation> result : queryResponse.getResponses()) {
+            initRequiredAnnotation(result);
+        }
+        return queryResponse;
+    }
+
+    private CellBaseDataResult<VariantAnnotation> initRequiredAnnotation(CellBaseDataResult<VariantAnnotation> result) {
+        VariantAnnotation annotation = result.first();
+        // It can happen that no annotation is returned for variants that could not be parsed and raised problems
+        // e.g. 1:645710:A:<INS:ME:ALU>
+        if (annotation != null) {
+            // Patch to remove by updating the Evidence avdl model
+            if (annotation.getTraitAssociation() != null) {
+                for (EvidenceEntry evidenceEntry : annotation.getTraitAssociation()) {
+                    if (evidenceEntry.getSubmissions() == null) {
+                        evidenceEntry.setSubmissions(Collections.emptyList());
+                    }
+                    if (evidenceEntry.getHeritableTraits() == null) {
+                        evidenceEntry.setHeritableTraits(Collections.emptyList());
+                    } else {
+                        for (HeritableTrait heritableTrait : evidenceEntry.getHeritableTraits()) {
+                            if (heritableTrait.getInheritanceMode() == null) {
+                                heritableTrait.setInheritanceMode(ModeOfInheritance.unknown);
                             }
                         }
-                        if (evidenceEntry.getGenomicFeatures() == null) {
-                            evidenceEntry.setGenomicFeatures(Collections.emptyList());
-                        }
-                        if (evidenceEntry.getAdditionalProperties() == null) {
-                            evidenceEntry.setAdditionalProperties(Collections.emptyList());
-                        }
-                        if (evidenceEntry.getEthnicity() == null) {
-                            evidenceEntry.setEthnicity(EthnicCategory.Z);
-                        }
-                        if (evidenceEntry.getBibliography() == null) {
-                            evidenceEntry.setBibliography(Collections.emptyList());
+                    }
+                    if (evidenceEntry.getGenomicFeatures() == null) {
+                        evidenceEntry.setGenomicFeatures(Collections.emptyList());
+                    }
+                    if (evidenceEntry.getAdditionalProperties() == null) {
+                        evidenceEntry.setAdditionalProperties(Collections.emptyList());
+                    }
+                    if (evidenceEntry.getEthnicity() == null) {
+                        evidenceEntry.setEthnicity(EthnicCategory.Z);
+                    }
+                    if (evidenceEntry.getBibliography() == null) {
+                        evidenceEntry.setBibliography(Collections.emptyList());
+                    }
+                    if (evidenceEntry.getSomaticInformation() != null) {
+                        if (evidenceEntry.getSomaticInformation().getSampleSource() == null) {
+                            evidenceEntry.getSomaticInformation().setSampleSource("");
                         }
-                        if (evidenceEntry.getSomaticInformation() != null) {
-                            if (evidenceEntry.getSomaticInformation().getSampleSource() == null) {
-                                evidenceEntry.getSomaticInformation().setSampleSource("");
-                            }
-                            if (evidenceEntry.getSomaticInformation().getTumourOrigin() == null) {
-                                evidenceEntry.getSomaticInformation().setTumourOrigin("");
-                            }
+                        if (evidenceEntry.getSomaticInformation().getTumourOrigin() == null) {
+                            evidenceEntry.getSomaticInformation().setTumourOrigin("");
                         }
                     }
                 }
-                // TODO This data model is obsolete, this code must be removed
+            }
+            // TODO This data model is obsolete, this code must be removed
 //                if (annotation.getVariantTraitAssociation() != null) {
 //                    if (annotation.getVariantTraitAssociation().getCosmic() != null) {
 //                        for (Cosmic cosmic : annotation.getVariantTraitAssociation().getCosmic()) {
@@ -227,9 +245,8 @@ public final class VariantClient extends FeatureClient<Variant> {
 //                        }
 //                    }
 //                }
-            }
         }
-        return queryResponse;
+        return result;
     }
 
     public CellBaseDataResponse<String> getAllConsequenceTypes(Query query) throws IOException {
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.client.rest;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.opencb.biodata.models.core.Gene;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.cellbase.client.config.ClientConfiguration;
+import org.opencb.cellbase.client.config.RestConfig;
+import org.opencb.cellbase.core.CellBaseDataResponse;
+import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.opencb.cellbase.client.rest.StubCellBaseServer.createIds;
+
+/**
+ * Streams results from a local stub of the web services.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class CellBaseDataResultIteratorTest {
+
+    private static final int NUM_CONSEQUENCE_TYPES = 40;
+
+    private StubCellBaseServer server;
+    private CellBaseClient cellBaseClient;
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @BeforeAll
+    public void setUp() throws IOException {
+        server = new StubCellBaseServer(ids -> 0);
+        ClientConfiguration clientConfiguration = new ClientConfiguration()
+                .setVersion("v5")
+                .setDefaultSpecies("hsapiens")
+                .setRest(new RestConfig(Collections.singletonList(server.getUrl()), 10000));
+        cellBaseClient = new CellBaseClient(clientConfiguration);
+    }
+
+    @AfterAll
+    public void tearDown() {
+        cellBaseClient.close();
+        server.close();
+    }
+
+    @Test
+    public void testIterator() {
+        List<String> ids = createIds(0, 1050);
+        int numResults = 0;
+        try (CellBaseDataResultIterator<Gene> iterator = cellBaseClient.getGeneClient().iterator(ids, new QueryOptions())) {
+            while (iterator.hasNext()) {
+                CellBaseDataResult<Gene> result = iterator.next();
+                assertEquals(ids.get(numResults), result.getId());
+                assertEquals(ids.get(numResults), result.first().getId());
+                numResults++;
+            }
+        }
+        assertEquals(ids.size(), numResults);
+    }
+
+    @Test
+    public void testClose() {
+        server.resetStats();
+        CellBaseDataResultIterator<Gene> iterator = cellBaseClient.getGeneClient().iterator(createIds(0, 1000), new QueryOptions());
+        assertTrue(iterator.hasNext());
+        assertEquals("ID000000", iterator.next().getId());
+        iterator.close();
+        assertFalse(iterator.hasNext());
+        // The remaining batches are never requested
+        assertEquals(1, server.getNumRequests());
+    }
+
+    @Test
+    public void testEmpty() {
+        assertFalse(cellBaseClient.getGeneClient().iterator(Collections.emptyList(), new QueryOptions()).hasNext());
+    }
+
+    @Test
+    public void testAnnotation() {
+        server.setResult(CellBaseDataResultIteratorTest::createAnnotation);
+        try {
+            VariantClient variantClient = cellBaseClient.getVariantClient();
+            List<String> ids = createVariantIds(250);
+            readAnnotation(variantClient, ids);
+            iterateAnnotation(variantClient, ids);
+        } finally {
+            server.setResult(id -> "{\"id\":\"" + id + "\"}");
+        }
+    }
+
+    /**
+     * Reads a large annotation response, with NUM_CONSEQUENCE_TYPES consequence types per variant, into a
+     * CellBaseDataResponse and through the iterator.
+     */
+    @Test
+    @Tag("benchmark")
+    public void benchmarkAnnotation() {
+        server.setResult(CellBaseDataResultIteratorTest::createAnnotation);
+        try {
+            VariantClient variantClient = cellBaseClient.getVariantClient();
+            List<String> ids = createVariantIds(5000);
+            // Warm up
+            readAnnotation(variantClient, ids.subList(0, 400));
+            iterateAnnotation(variantClient, ids.subList(0, 400));
+
+            for (int i = 0; i < 2; i++) {
+                resetPeakHeap();
+                long start = System.currentTimeMillis();
+                long firstResultTime = readAnnotation(variantClient, ids) - start;
+                logger.info(String.format("CellBaseDataResponse: %d ms to first result, %d ms total, peak heap %.1f MB",
+                        firstResultTime, System.currentTimeMillis() - start, getPeakHeap() / 1e6));
+
+                resetPeakHeap();
+                start = System.currentTimeMillis();
+                firstResultTime = iterateAnnotation(variantClient, ids) - start;
+                logger.info(String.format("CellBaseDataResultIterator: %d ms to first result, %d ms total, peak heap %.1f MB",
+                        firstResultTime, System.currentTimeMillis() - start, getPeakHeap() / 1e6));
+            }
+        } finally {
+            server.setResult(id -> "{\"id\":\"" + id + "\"}");
+        }
+    }
+
+    private static List<String> createVariantIds(int numVariants) {
+        List<String> ids = new ArrayList<>(numVariants);
+        for (int i = 0; i < numVariants; i++) {
+            ids.add("1:" + (10000 + i) + ":A:C");
+        }
+        return ids;
+    }
+
+    /**
+     * @return time the first result is available
+     */
+    private long readAnnotation(VariantClient variantClient, List<String> ids) {
+        try {
+            CellBaseDataResponse<VariantAnnotation> response = variantClient.getAnnotationByVariantIds(ids, new QueryOptions());
+            long firstResultTime = System.currentTimeMillis();
+            assertEquals(ids.size(), response.getResponses().size());
+            for (int i = 0; i < ids.size(); i++) {
+                assertEquals(NUM_CONSEQUENCE_TYPES, response.getResponses().get(i).first().getConsequenceTypes().size());
+            }
+            return firstResultTime;
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private long iterateAnnotation(VariantClient variantClient, List<String> ids) {
+        long firstResultTime = 0;
+        int numResults = 0;
+        try (CellBaseDataResultIterator<VariantAnnotation> iterator = variantClient.getAnnotationIteratorByVariantIds(ids,
+                new QueryOptions(), false)) {
+            while (iterator.hasNext()) {
+                VariantAnnotation annotation = iterator.next().first();
+                if (numResults == 0) {
+                    firstResultTime = System.currentTimeMillis();
+                }
+                assertEquals(ids.get(numResults), annotation.getId());
+                assertEquals(NUM_CONSEQUENCE_TYPES, annotation.getConsequenceTypes().size());
+                numResults++;
+            }
+        }
+        assertEquals(ids.size(), numResults);
+        return firstResultTime;
+    }
+
+    private static String createAnnotation(String id) {
+        String[] fields = id.split(":");
+        StringBuilder json = new StringBuilder()
+                .append("{\"id\":\"").append(id)
+                .append("\",\"chromosome\":\"").append(fields[0])
+                .append("\",\"start\":").append(fields[1])
+                .append(",\"reference\":\"").append(fields[2])
+                .append("\",\"alternate\":\"").append(fields[3])
+                .append("\",\"consequenceTypes\":[");
+        for (int i = 0; i < NUM_CONSEQUENCE_TYPES; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"geneName\":\"GENE").append(i)
+                    .append("\",\"ensemblGeneId\":\"ENSG").append(String.format("%011d", i))
+                    .append("\",\"ensemblTranscriptId\":\"ENST").append(String.format("%011d", i))
+                    .append("\",\"strand\":\"+\",\"biotype\":\"protein_coding\",\"cdnaPosition\":").append(100 + i)
+                    .append(",\"sequenceOntologyTerms\":[{\"accession\":\"SO:0001583\",\"name\":\"missense_variant\"}]}");
+        }
+        return json.append("]}").toString();
+    }
+
+    private static void resetPeakHeap() {
+        System.gc();
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (memoryPool.getType() == MemoryType.HEAP) {
+                memoryPool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long getPeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (memoryPool.getType() == MemoryType.HEAP) {
+                peak += memoryPool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
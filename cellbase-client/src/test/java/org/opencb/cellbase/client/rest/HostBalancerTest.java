@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.client.rest;
+
+import org.junit.jupiter.api.Test;
+import org.opencb.biodata.models.core.Gene;
+import org.opencb.cellbase.client.config.ClientConfiguration;
+import org.opencb.cellbase.client.config.RestConfig;
+import org.opencb.cellbase.core.CellBaseDataResponse;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.opencb.cellbase.client.rest.StubCellBaseServer.createIds;
+
+/**
+ * Routes REST calls through several in-process stub servers of different latency.
+ */
+public class HostBalancerTest {
+
+    private static final long EJECTION_TIME = 200;
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Test
+    public void testAcquire() {
+        HostBalancer hostBalancer = new HostBalancer(Arrays.asList("http://a", "http://b"), EJECTION_TIME);
+        HostBalancer.Host a = hostBalancer.acquire();
+        HostBalancer.Host b = hostBalancer.acquire();
+        // Least outstanding calls first
+        assertNotEquals(a, b);
+        hostBalancer.release(a, 10, false);
+        hostBalancer.release(b, 100, false);
+        // Then the lowest latency
+        assertEquals(a, hostBalancer.acquire());
+        assertEquals(a, hostBalancer.acquire());
+        hostBalancer.release(a, 10, false);
+        hostBalancer.release(a, 10, false);
+
+        // An ejected host is only used when every host is
+        hostBalancer.release(hostBalancer.acquire(), 10, true);
+        assertTrue(a.isEjected());
+        assertEquals(b, hostBalancer.acquire());
+        hostBalancer.release(b, 100, true);
+        assertTrue(b.isEjected());
+        assertEquals(a, hostBalancer.acquire());
+    }
+
+    @Test
+    public void testLatency() throws Exception {
+        try (StubCellBaseServer fast = new StubCellBaseServer(ids -> 10);
+             StubCellBaseServer slow = new StubCellBaseServer(ids -> 100)) {
+            GeneClient geneClient = createClient(2000, fast, slow);
+            List<String> ids = createIds(0, 4000);
+            assertOrder(ids, geneClient.get(ids, new QueryOptions()));
+
+            logger.debug("Fast host: {} calls, slow host: {} calls", fast.getNumRequests(), slow.getNumRequests());
+            assertTrue(slow.getNumRequests() > 0);
+            assertTrue(fast.getNumRequests() > 2 * slow.getNumRequests());
+        }
+    }
+
+    @Test
+    public void testSameLatency() throws Exception {
+        try (StubCellBaseServer first = new StubCellBaseServer(ids -> 30);
+             StubCellBaseServer second = new StubCellBaseServer(ids -> 30)) {
+            GeneClient geneClient = createClient(2000, first, second);
+            List<String> ids = createIds(0, 4000);
+            assertOrder(ids, geneClient.get(ids, new QueryOptions()));
+
+            // 20 batches, 4 at a time
+            logger.debug("First host: {} calls, second host: {} calls", first.getNumRequests(), second.getNumRequests());
+            assertTrue(first.getNumRequests() >= 5);
+            assertTrue(second.getNumRequests() >= 5);
+        }
+    }
+
+    @Test
+    public void testEjection() throws Exception {
+        try (StubCellBaseServer healthy = new StubCellBaseServer(ids -> 10);
+             StubCellBaseServer failing = new StubCellBaseServer(ids -> 10)) {
+            failing.setStatus(503);
+            GeneClient geneClient = createClient(2000, healthy, failing);
+            HostBalancer.Host failingHost = geneClient.getHostBalancer().getHosts().get(1);
+
+            // Failed calls are retried on the healthy host
+            List<String> ids = createIds(0, 4000);
+            assertOrder(ids, geneClient.get(ids, new QueryOptions()));
+            assertTrue(failingHost.isEjected());
+            assertTrue(failing.getNumRequests() < healthy.getNumRequests());
+
+            // Probed back in once it recovers
+            failing.setStatus(200);
+            long deadline = System.currentTimeMillis() + 10000;
+            while (failingHost.isEjected() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(EJECTION_TIME / 2);
+                assertOrder(ids.subList(0, 10), geneClient.get(ids.subList(0, 10), new QueryOptions()));
+            }
+            assertFalse(failingHost.isEjected());
+            logger.debug("Host stats: {}", geneClient.getHostBalancer().getStats());
+        }
+    }
+
+    @Test
+    public void testServerErrorKeepsHosts() throws Exception {
+        try (StubCellBaseServer first = new StubCellBaseServer(ids -> 10);
+             StubCellBaseServer second = new StubCellBaseServer(ids -> 10)) {
+            // The server reports errors of the request, e.g. a malformed id, as 500
+            first.setStatus(500);
+            second.setStatus(500);
+            GeneClient geneClient = createClient(2000, first, second);
+
+            CellBaseDataResponse<Gene> response = geneClient.get(createIds(0, 1), new QueryOptions());
+            assertEquals(0, response.getResponses().get(0).getNumResults());
+            // Neither retried on the other host nor ejected
+            assertEquals(1, first.getNumRequests() + second.getNumRequests());
+            for (HostBalancer.Host host : geneClient.getHostBalancer().getHosts()) {
+                assertFalse(host.isEjected());
+                assertEquals(0, host.getNumFailures());
+            }
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        try (StubCellBaseServer healthy = new StubCellBaseServer(ids -> 10);
+             StubCellBaseServer hanging = new StubCellBaseServer(ids -> 2000)) {
+            GeneClient geneClient = createClient(300, healthy, hanging);
+            HostBalancer.Host hangingHost = geneClient.getHostBalancer().getHosts().get(1);
+
+            List<String> ids = createIds(0, 1000);
+            assertOrder(ids, geneClient.get(ids, new QueryOptions()));
+            assertTrue(hangingHost.isEjected());
+            assertTrue(hangingHost.getNumFailures() > 0);
+        }
+    }
+
+    private GeneClient createClient(int timeout, StubCellBaseServer... servers) {
+        String[] hosts = new String[servers.length];
+        for (int i = 0; i < servers.length; i++) {
+            hosts[i] = servers[i].getUrl();
+        }
+        ClientConfiguration clientConfiguration = new ClientConfiguration()
+                .setVersion("v5")
+                .setDefaultSpecies("hsapiens")
+                .setRest(new RestConfig(Arrays.asList(hosts), timeout).setReadTimeout(timeout));
+        GeneClient geneClient = new GeneClient("hsapiens", null, clientConfiguration);
+        geneClient.setHostBalancer(new HostBalancer(Arrays.asList(hosts), EJECTION_TIME));
+        return geneClient;
+    }
+
+    private void assertOrder(List<String> ids, CellBaseDataResponse<Gene> response) {
+        assertEquals(ids.size(), response.getResponses().size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(ids.get(i), response.getResponses().get(i).getResults().get(0).getId());
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.client.rest;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.opencb.biodata.models.core.Gene;
+import org.opencb.cellbase.client.config.ClientConfiguration;
+import org.opencb.cellbase.client.config.RestConfig;
+import org.opencb.cellbase.core.CellBaseDataResponse;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.opencb.cellbase.client.rest.StubCellBaseServer.createIds;
+
+/**
+ * Runs the clients against a local stub of the gene info web service, with a latency that depends on the batch.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ParentRestClientTest {
+
+    private static final int NUM_THREADS = 4;
+    private static final int SLOW_BATCH_LATENCY = 200;
+    private static final int BATCH_LATENCY = 20;
+
+    private StubCellBaseServer server;
+    private CellBaseClient cellBaseClient;
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @BeforeAll
+    public void setUp() throws IOException {
+        // Every third batch of a call is slow
+        server = new StubCellBaseServer(ids -> StubCellBaseServer.getIdNumber(ids[0]) / ParentRestClient.REST_CALL_BATCH_SIZE % 3 == 0
+                ? SLOW_BATCH_LATENCY
+                : BATCH_LATENCY);
+
+        RestConfig restConfig = new RestConfig(Collections.singletonList(server.getUrl()), 2000)
+                .setNumThreads(NUM_THREADS);
+        ClientConfiguration clientConfiguration = new ClientConfiguration()
+                .setVersion("v5")
+                .setDefaultSpecies("hsapiens")
+                .setRest(restConfig);
+        cellBaseClient = new CellBaseClient(clientConfiguration);
+    }
+
+    @AfterAll
+    public void tearDown() {
+        cellBaseClient.close();
+        server.close();
+    }
+
+    @Test
+    public void testGetKeepsInputOrder() throws Exception {
+        List<String> ids = createIds(0, 1000);
+        CellBaseDataResponse<Gene> response = cellBaseClient.getGeneClient().get(ids, new QueryOptions());
+        assertOrder(ids, response);
+    }
+
+    @Test
+    public void testSequentialGetKeepsInputOrder() throws Exception {
+        List<String> ids = createIds(0, 1000);
+        CellBaseDataResponse<Gene> response = cellBaseClient.getGeneClient().get(ids, new QueryOptions("numThreads", 1));
+        assertOrder(ids, response);
+    }
+
+    @Test
+    public void testGetAsyncKeepsInputOrder() throws Exception {
+        List<String> ids = createIds(0, 1050);
+        QueryOptions queryOptions = new QueryOptions();
+        CellBaseDataResponse<Gene> response = cellBaseClient.getGeneClient().getAsync(ids, queryOptions).get();
+        assertOrder(ids, response);
+        // Batches page through copies of the options
+        assertTrue(queryOptions.isEmpty());
+    }
+
+    @Test
+    public void testSharedExecutorIsBounded() throws Exception {
+        server.resetStats();
+        List<CompletableFuture<CellBaseDataResponse<Gene>>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(cellBaseClient.getGeneClient().getAsync(createIds(i * 1000, 1000), new QueryOptions()));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertOrder(createIds(i * 1000, 1000), futures.get(i).get());
+        }
+        assertTrue(server.getMaxInFlightRequests() <= NUM_THREADS, "In-flight requests: " + server.getMaxInFlightRequests());
+    }
+
+    @Test
+    public void testCloseDuringCall() {
+        CellBaseClient closedClient = new CellBaseClient(new ClientConfiguration()
+                .setVersion("v5")
+                .setDefaultSpecies("hsapiens")
+                .setRest(new RestConfig(Collections.singletonList(server.getUrl()), 2000).setNumThreads(1)));
+        CompletableFuture<CellBaseDataResponse<Gene>> future = closedClient.getGeneClient()
+                .getAsync(createIds(0, 1000), new QueryOptions("numThreads", 1));
+        closedClient.close();
+
+        // The batches left can not be submitted, the call fails instead of waiting for them
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof RejectedExecutionException);
+    }
+
+    /**
+     * Pages through 35 results per id with skip, as servers without cursors, and with cursors, counting the results the
+     * server examines.
+     */
+    @Test
+    public void testPaging() throws Exception {
+        List<String> ids = createIds(0, 300);
+        server.setNumResults(35);
+        try {
+            int[] numExaminedResults = new int[2];
+            for (int i = 0; i < 2; i++) {
+                server.setCursors(i == 1);
+                server.resetStats();
+                CellBaseDataResponse<Gene> response = cellBaseClient.getGeneClient().get(ids, new QueryOptions());
+                assertEquals(ids.size(), response.getResponses().size());
+                for (int j = 0; j < ids.size(); j++) {
+                    assertEquals(35, response.getResponses().get(j).getResults().size());
+                    assertEquals(ids.get(j), response.getResponses().get(j).getResults().get(34).getId());
+                }
+                numExaminedResults[i] = server.getNumExaminedResults();
+            }
+            logger.debug("Examined results, skip: {}, cursor: {}", numExaminedResults[0], numExaminedResults[1]);
+            assertEquals(ids.size() * (10 + 20 + 30 + 35), numExaminedResults[0]);
+            assertEquals(ids.size() * 35, numExaminedResults[1]);
+        } finally {
+            server.setNumResults(1);
+            server.setCursors(false);
+        }
+    }
+
+    /**
+     * A page after the first one fails once, the ids of the call are retried in halves, each with its own cursors.
+     */
+    @Test
+    public void testCursorPageRetry() throws Exception {
+        List<String> ids = createIds(0, 300);
+        server.setNumResults(35);
+        server.setCursors(true);
+        server.setCursorPageFailures(1);
+        try {
+            CellBaseDataResponse<Gene> response = cellBaseClient.getGeneClient().get(ids, new QueryOptions());
+            assertEquals(ids.size(), response.getResponses().size());
+            for (int i = 0; i < ids.size(); i++) {
+                // No id is skipped
+                assertEquals(35, response.getResponses().get(i).getResults().size(), ids.get(i));
+                assertEquals(ids.get(i), response.getResponses().get(i).getId());
+            }
+        } finally {
+            server.setNumResults(1);
+            server.setCursors(false);
+            server.setCursorPageFailures(0);
+        }
+    }
+
+    @Test
+    public void testGetSubListOptions() {
+        QueryOptions queryOptions = new QueryOptions(ParentRestClient.CURSOR, "a,b,c,d,e");
+        assertEquals("a,b", ParentRestClient.getSubListOptions(queryOptions, 0, 2, 5).getString(ParentRestClient.CURSOR));
+        assertEquals("c,d,e", ParentRestClient.getSubListOptions(queryOptions, 2, 5, 5).getString(ParentRestClient.CURSOR));
+        // The options of the call are not modified
+        assertEquals("a,b,c,d,e", queryOptions.getString(ParentRestClient.CURSOR));
+
+        queryOptions = new QueryOptions(ParentRestClient.CURSOR, ParentRestClient.CURSOR_START);
+        assertEquals(ParentRestClient.CURSOR_START, ParentRestClient.getSubListOptions(queryOptions, 0, 2, 5)
+                .getString(ParentRestClient.CURSOR));
+    }
+
+    /**
+     * Compares one batch at a time with batches pipelined in the shared executor, for a single call and for several
+     * concurrent calls.
+     */
+    @Test
+    @Tag("benchmark")
+    public void benchmarkBatches() throws Exception {
+        GeneClient geneClient = cellBaseClient.getGeneClient();
+        List<String> ids = createIds(0, 2000);
+        // Warm up
+        geneClient.get(ids, new QueryOptions());
+
+        long start = System.currentTimeMillis();
+        assertOrder(ids, geneClient.get(ids, new QueryOptions("numThreads", 1)));
+        logger.info("Sequential batches: {} ms", System.currentTimeMillis() - start);
+
+        start = System.currentTimeMillis();
+        assertOrder(ids, geneClient.get(ids, new QueryOptions()));
+        logger.info("Pipelined batches: {} ms", System.currentTimeMillis() - start);
+
+        start = System.currentTimeMillis();
+        List<CompletableFuture<CellBaseDataResponse<Gene>>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(geneClient.getAsync(ids, new QueryOptions()));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+        logger.info("4 concurrent async calls: {} ms", System.currentTimeMillis() - start);
+    }
+
+    private void assertOrder(List<String> ids, CellBaseDataResponse<Gene> response) {
+        assertEquals(ids.size(), response.getResponses().size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(ids.get(i), response.getResponses().get(i).getResults().get(0).getId());
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.client.rest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * In-process stub of the CellBase web services of id lists (v5, hsapiens), answering one result per id after a latency
+ * that depends on the requested ids. Results are genes with just the id unless set otherwise, and are written to the
+ * response one by one. With several results per id, they are paged with 'limit' and 'skip', or with 'cursor' if enabled.
+ */
+class StubCellBaseServer implements Closeable {
+
+    private final HttpServer server;
+    private final ExecutorService executorService;
+    private volatile ToIntFunction<String[]> latency;
+    private volatile int status = 200;
+    private volatile Function<String, String> result = id -> "{\"id\":\"" + id + "\"}";
+    private volatile int numResults = 1;
+    private volatile boolean cursors;
+    private final AtomicInteger numRequests = new AtomicInteger();
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+    private final AtomicInteger maxInFlightRequests = new AtomicInteger();
+    private final AtomicInteger numExaminedResults = new AtomicInteger();
+    private final AtomicInteger cursorPageFailures = new AtomicInteger();
+
+    /**
+     * @param latency milliseconds taken to answer the given ids
+     * @throws IOException if the server can not be started
+     */
+    StubCellBaseServer(ToIntFunction<String[]> latency) throws IOException {
+        this.latency = latency;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/webservices/rest/v5/hsapiens/", this::handle);
+        executorService = Executors.newCachedThreadPool();
+        server.setExecutor(executorService);
+        server.start();
+    }
+
+    static List<String> createIds(int from, int size) {
+        List<String> ids = new ArrayList<>(size);
+        for (int i = from; i < from + size; i++) {
+            ids.add(String.format("ID%06d", i));
+        }
+        return ids;
+    }
+
+    static int getIdNumber(String id) {
+        return Integer.parseInt(id.substring(2));
+    }
+
+    String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    void setLatency(ToIntFunction<String[]> latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * @param result JSON of the result of an id
+     */
+    void setResult(Function<String, String> result) {
+        this.result = result;
+    }
+
+    /**
+     * @param numResults number of results of each id
+     */
+    void setNumResults(int numResults) {
+        this.numResults = numResults;
+    }
+
+    /**
+     * @param cursors whether full pages return the cursor of the next one
+     */
+    void setCursors(boolean cursors) {
+        this.cursors = cursors;
+    }
+
+    /**
+     * @param status HTTP status of the next responses, results are only returned with 200
+     */
+    void setStatus(int status) {
+        this.status = status;
+    }
+
+    /**
+     * @param failures number of the next requests of pages after the first one, by cursor, answered with a 500 error
+     */
+    void setCursorPageFailures(int failures) {
+        cursorPageFailures.set(failures);
+    }
+
+    int getNumRequests() {
+        return numRequests.get();
+    }
+
+    int getMaxInFlightRequests() {
+        return maxInFlightRequests.get();
+    }
+
+    /**
+     * @return results a database would read to answer the requests: the skipped ones too, unless paged by cursor
+     */
+    int getNumExaminedResults() {
+        return numExaminedResults.get();
+    }
+
+    void resetStats() {
+        numRequests.set(0);
+        maxInFlightRequests.set(0);
+        numExaminedResults.set(0);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executorService.shutdownNow();
+    }
+
+    private static Map<String, String> getParams(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                int index = param.indexOf('=');
+                if (index > 0) {
+                    params.put(param.substring(0, index), param.substring(index + 1));
+                }
+            }
+        }
+        return params;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        numRequests.incrementAndGet();
+        int inFlight = inFlightRequests.incrementAndGet();
+        maxInFlightRequests.accumulateAndGet(inFlight, Math::max);
+        try {
+            // .../{category}/{subcategory}/{ids}/{resource}
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            String[] ids = path[path.length - 2].split(",");
+            Thread.sleep(latency.applyAsInt(ids));
+
+            Map<String, String> params = getParams(exchange.getRequestURI().getQuery());
+            String[] idCursors = cursors && params.containsKey("cursor") ? params.get("cursor").split(",", -1) : null;
+            int responseStatus = status;
+            if (idCursors != null && !"*".equals(idCursors[0])
+                    && cursorPageFailures.getAndUpdate(failures -> Math.max(failures - 1, 0)) > 0) {
+                responseStatus = 500;
+            }
+            // As the server, that expects either one cursor per id or a single one for all of them
+            if (idCursors != null && idCursors.length != 1 && idCursors.length != ids.length) {
+                responseStatus = 500;
+            }
+            if (responseStatus != 200) {
+                exchange.sendResponseHeaders(responseStatus, -1);
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            // Chunked, so that the stub does not hold the whole response either
+            exchange.sendResponseHeaders(200, 0);
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+                writer.write("{\"apiVersion\":\"v5\",\"time\":0,\"responses\":[");
+                int limit = Integer.parseInt(params.getOrDefault("limit", "10"));
+                for (int i = 0; i < ids.length; i++) {
+                    if (i > 0) {
+                        writer.write(',');
+                    }
+                    int from;
+                    if (idCursors != null) {
+                        String idCursor = idCursors.length == 1 ? idCursors[0] : idCursors[i];
+                        from = "*".equals(idCursor) ? 0 : Integer.parseInt(idCursor);
+                    } else {
+                        from = Integer.parseInt(params.getOrDefault("skip", "0"));
+                        numExaminedResults.addAndGet(Math.min(from, numResults));
+                    }
+                    int to = Math.min(from + limit, numResults);
+                    numExaminedResults.addAndGet(Math.max(to - from, 0));
+                    writer.write("{\"id\":\"" + ids[i] + "\",\"time\":0,\"events\":[],\"numResults\":" + Math.max(to - from, 0)
+                            + ",\"results\":[");
+                    for (int j = from; j < to; j++) {
+                        if (j > from) {
+                            writer.write(',');
+                        }
+                        writer.write(result.apply(ids[i]));
+                    }
+                    writer.write("],\"numMatches\":" + numResults);
+                    if (idCursors != null && to - from == limit) {
+                        writer.write(",\"attributes\":{\"cursor\":\"" + to + "\"}");
+                    }
+                    writer.write('}');
+                }
+                writer.write("]}");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            inFlightRequests.decrementAndGet();
+            exchange.close();
+        }
+    }
+}
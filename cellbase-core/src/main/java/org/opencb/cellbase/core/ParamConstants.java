@@ -38,6 +38,9 @@ public class ParamConstants {
     public static final String DEFAULT_LIMIT = "10";
     public static final String SKIP_DESCRIPTION = "Number of results to skip";
     public static final String DEFAULT_SKIP = "0";
+    public static final String CURSOR_DESCRIPTION = "Page results by cursor instead of skip: '*' for the first page, then the "
+            + "'cursor' attribute of the previous result. Comma separated, one per id, for several ids. No cursor is returned "
+            + "when the query can not be paged by cursor efficiently, next pages are then requested with skip";
     public static final String SORT_DESCRIPTION = "Sort returned results by a certain data model attribute";
     public static final String ORDER_DESCRIPTION = "Results are in ascending order by default";
 
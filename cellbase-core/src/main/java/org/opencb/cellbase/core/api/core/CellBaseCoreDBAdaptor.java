@@ -21,6 +21,7 @@ import org.opencb.cellbase.core.api.queries.CellBaseIterator;
 import org.opencb.cellbase.core.api.queries.ProjectionQueryOptions;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.commons.datastore.core.Event;
+import org.opencb.commons.datastore.core.ObjectMap;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -30,6 +31,9 @@ public interface CellBaseCoreDBAdaptor<Q extends AbstractQuery, T> extends Itera
 
     int MAX_ROWS = 100000;
 
+    // result attribute with the token to query the next page, see CellBaseQueryOptions.cursor
+    String CURSOR = "cursor";
+
     default CellBaseDataResult<T> query(Q query) {
         List<T> results = new ArrayList<>();
         long time = System.currentTimeMillis();
@@ -41,6 +45,8 @@ public interface CellBaseCoreDBAdaptor<Q extends AbstractQuery, T> extends Itera
 
         // close the database connection
         iterator.close();
+        // a full page may be followed by more results, resumed from the last one
+        String cursor = iterator.getCursor();
 
         time = System.currentTimeMillis() - time;
 
@@ -49,6 +55,9 @@ public interface CellBaseCoreDBAdaptor<Q extends AbstractQuery, T> extends Itera
         result.setResults(results);
         result.setNumMatches(iterator.getNumMatches());
         result.setNumResults(results.size());
+        if (cursor != null && query.getLimit() != null && results.size() >= query.getLimit()) {
+            result.setAttributes(new ObjectMap(CURSOR, cursor));
+        }
 //        result.setResultType(T);
         if (results.size() > MAX_ROWS) {
             Event event = new Event(Event.Type.WARNING, "", "Max number of elements reached");
@@ -17,20 +17,28 @@
 package org.opencb.cellbase.core.api.queries;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.BeanDescription;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.reflect.FieldUtils;
+import org.apache.commons.lang3.reflect.MethodUtils;
+import org.opencb.biodata.models.core.Region;
 import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
 * Helper object used to construct queries consumed by the dbadapters.
@@ -43,14 +51,10 @@ public abstract class AbstractQuery extends CellBaseQueryOptions {
     public static final int DEFAULT_LIMIT = 50;
     public static final int DEFAULT_SKIP = 0;
 
-    // list of fields in this class
-    private Map<String, Field> classFields;
-    // key = transcripts.biotype, value = transcriptsBiotype
-    private Map<String, String> dotNotationToCamelCase;
-    // list of fields in this class, and associated type
-    private Map<String, Class<?>> classAttributesToType;
-    // key = camelCase name (transcriptsBiotype) to annotations
-    private Map<String, QueryParameter> annotations;
+    // ObjectMapper is thread safe once configured, a new one per query is expensive
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    // key = query class, value = its parameters, discovered only once per class
+    private static final Map<Class<?>, QueryMetadata> METADATA = new ConcurrentHashMap<>();
 
     public AbstractQuery() {
         init();
@@ -63,7 +67,7 @@ public abstract class AbstractQuery extends CellBaseQueryOptions {
     }
 
     private void init() {
-        objectMapper = new ObjectMapper();
+        objectMapper = OBJECT_MAPPER;
         logger = LoggerFactory.getLogger(this.getClass());
     }
 
@@ -75,16 +79,11 @@ public abstract class AbstractQuery extends CellBaseQueryOptions {
      * @throws IllegalAccessException if field is not accessible
      */
     public ObjectMap toObjectMap() throws IllegalAccessException {
-        annotations = getAnnotations();
-        classFields = getClassFields();
         QueryOptions queryOptions = toQueryOptions();
         ObjectMap queryMap = new ObjectMap();
-        for (Map.Entry<String, QueryParameter> entry : annotations.entrySet()) {
-            String fieldNameCamelCase = entry.getKey();
-            String dotNotationName = annotations.get(fieldNameCamelCase).id();
-            Field field = classFields.get(fieldNameCamelCase);
-            field.setAccessible(true);
-            Object value = field.get(this);
+        for (QueryParameterBinder parameter : getMetadata().parameters) {
+            String dotNotationName = parameter.queryParameter.id();
+            Object value = parameter.get(this);
             // don't add query options to the actual query
             if (value != null && !queryOptions.containsKey(dotNotationName) && !"exclude".equals(dotNotationName)) {
                 queryMap.put(dotNotationName, value);
@@ -108,98 +107,38 @@ public abstract class AbstractQuery extends CellBaseQueryOptions {
      * @param uriParams map from the REST
      */
     public void updateParams(Map<String, String> uriParams) {
-        classAttributesToType = getClassAttributesToType();
-        annotations = getAnnotations();
-        try {
-            Map<String, Object> objectHashMap = new HashMap<>();
-            for (Map.Entry<String, Class<?>> entry : classAttributesToType.entrySet()) {
-                String fieldNameDotNotation = null;
-                String[] fieldAliases = new String[0];
-                String fieldNameCamelCase = entry.getKey();
-                Class fieldType = entry.getValue();
-                QueryParameter queryParameter = annotations.get(fieldNameCamelCase);
-                if (queryParameter != null) {
-                    fieldNameDotNotation = queryParameter.id();
-                    fieldAliases = queryParameter.alias();
-                }
-                if (fieldNameDotNotation == null) {
-                    // field has no annotation
-                    continue;
+        // Values of types without a binder are left to Jackson
+        Map<String, Object> objectHashMap = null;
+        for (QueryParameterBinder parameter : getMetadata().parameters) {
+            String value = null;
+            for (String key : parameter.keys) {
+                value = uriParams.get(key);
+                if (value != null) {
+                    break;
                 }
-                String value = null;
-                String s = fieldNameDotNotation.replace("\\.", "\\\\.");
-                if (uriParams.containsKey(s)) {
-                    value = uriParams.get(s);
+            }
+            if (value != null) {
+                if (parameter.isBound()) {
+                    parameter.set(this, parameter.parse(value));
                 } else {
-                    for (String alias : fieldAliases) {
-                        s = alias.replace("\\.", "\\\\.");
-                        if (uriParams.containsKey(s)) {
-                            value = uriParams.get(s);
-                            break;
-                        }
-                    }
-                }
-                if (value != null) {
-                    if (Collection.class.isAssignableFrom(fieldType)) {
-                        if (LogicalList.class.isAssignableFrom(fieldType)) {
-                            // AND
-                            if (value.contains(";")) {
-                                List valuesList = Arrays.asList(value.split(";"));
-                                objectHashMap.put(fieldNameCamelCase, new LogicalList(valuesList, true));
-                            // OR
-                            } else {
-                                List valuesList = Arrays.asList(value.split(","));
-                                objectHashMap.put(fieldNameCamelCase, new LogicalList(valuesList, false));
-                            }
-                        } else {
-                            objectHashMap.put(fieldNameCamelCase, Arrays.asList(value.split(",")));
-                        }
-                    } else {
-                        objectHashMap.put(fieldNameCamelCase, value);
+                    if (objectHashMap == null) {
+                        objectHashMap = new HashMap<>();
                     }
+                    objectHashMap.put(parameter.name, parameter.split(value));
                 }
             }
-            objectMapper.updateValue(this, objectHashMap);
-        } catch (JsonProcessingException e) {
-            throw new IllegalArgumentException(e);
         }
-    }
-
-    /**
-     * For this Query class, returns a map of class attributes and the types of those attributes.
-     *
-     *  key: fieldName, e.g. transcriptsBiotype
-     *  value: type, e.g. List<String>
-     *
-     * @return map of field names to type
-     */
-    private Map<String, Class<?>> loadPropertiesMap() {
-        final ObjectMapper objectMapper = new ObjectMapper();
-        BeanDescription beanDescription = objectMapper.getSerializationConfig().introspect(objectMapper.constructType(this.getClass()));
-        Map<String, Class<?>> internalPropertiesMap = new HashMap<>(beanDescription.findProperties().size() * 2);
-        for (BeanPropertyDefinition property : beanDescription.findProperties()) {
-            internalPropertiesMap.put(property.getName(), property.getRawPrimaryType());
+        if (objectHashMap != null) {
+            try {
+                objectMapper.updateValue(this, objectHashMap);
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException(e);
+            }
         }
-        return internalPropertiesMap;
     }
 
-    /**
-     * For this Query Class, generates a map of all annotations.
-     *
-     *  key: fieldName, e.g. transcriptsBiotype
-     *  value: QueryParameter for transcriptsBiotype
-     *
-     * @return map of field names to annotations.
-     */
-    private Map<String, QueryParameter> loadAnnotationMap() {
-        Map<String, QueryParameter> annotations = new HashMap<>();
-        for (Field declaredField : FieldUtils.getAllFields(this.getClass())) {
-            QueryParameter declaredAnnotation = declaredField.getDeclaredAnnotation(QueryParameter.class);
-            if (declaredAnnotation != null) {
-                annotations.put(declaredField.getName(), declaredAnnotation);
-            }
-        }
-        return annotations;
+    private QueryMetadata getMetadata() {
+        return METADATA.computeIfAbsent(this.getClass(), QueryMetadata::new);
     }
 
     /**
@@ -228,65 +167,11 @@ public abstract class AbstractQuery extends CellBaseQueryOptions {
         this.validateQuery();
     }
 
-    private Map<String, Class<?>> getClassAttributesToType() {
-        if (classAttributesToType == null) {
-            classAttributesToType = loadPropertiesMap();
-        }
-        return classAttributesToType;
-    }
-
-    private Map<String, QueryParameter> getAnnotations() {
-        if (annotations == null) {
-            annotations = loadAnnotationMap();
-        }
-        return annotations;
-    }
-
-    private Map<String, Field> getClassFields() {
-        if (classFields == null) {
-            classFields = new HashMap<>();
-            for (Field declaredField : FieldUtils.getAllFields(this.getClass())) {
-                classFields.put(declaredField.getName(), declaredField);
-            }
-        }
-        return classFields;
-    }
-
-    /**
-     * Returns the map. If map is empty, generates map.
-     *
-     * - key: dot notation, e.g. transcripts.biotype
-     * - value: camel case, e.g. transcriptsBiotype
-     *
-     * @return the map from dot notation to camel case
-     */
-    private Map<String, String> getDotNotationToCamelCase() {
-        if (dotNotationToCamelCase == null) {
-            dotNotationToCamelCase = new HashMap<>();
-            for (Map.Entry<String, Class<?>> entry : getClassAttributesToType().entrySet()) {
-                String fieldNameCamelCase = entry.getKey();
-                QueryParameter queryParameter = annotations.get(fieldNameCamelCase);
-                if (queryParameter != null) {
-                    String fieldNameDotNotation = queryParameter.id();
-                    dotNotationToCamelCase.put(fieldNameDotNotation, fieldNameCamelCase);
-                }
-            }
-        }
-        return dotNotationToCamelCase;
-    }
-
-    private void validateParams() throws QueryException, IllegalAccessException {
-        for (Map.Entry<String, Class<?>> classEntry : getClassAttributesToType().entrySet()) {
-            String fieldNameCamelCase = classEntry.getKey();
-            QueryParameter queryParameter = getAnnotations().get(fieldNameCamelCase);
-            if (queryParameter == null) {
-                // no annotation for this field, carry on
-                continue;
-            }
-
-            Field field = getClassFields().get(fieldNameCamelCase);
-            field.setAccessible(true);
-            Object value = field.get(this);
+    private void validateParams() throws QueryException {
+        for (QueryParameterBinder parameter : getMetadata().parameters) {
+            String fieldNameCamelCase = parameter.name;
+            QueryParameter queryParameter = parameter.queryParameter;
+            Object value = parameter.get(this);
 
             if (value == null) {
                 if (queryParameter.required()) {
@@ -308,12 +193,11 @@ public abstract class AbstractQuery extends CellBaseQueryOptions {
 
     }
 
-    private void checkDependsOn(String fieldNameCamelCase, String requiredFieldDotNotation) throws IllegalAccessException, QueryException {
+    private void checkDependsOn(String fieldNameCamelCase, String requiredFieldDotNotation) throws QueryException {
         if (StringUtils.isNotEmpty(requiredFieldDotNotation)) {
-            String requiredFieldCamelCase = getDotNotationToCamelCase().get(requiredFieldDotNotation);
-            Field requiredField = getClassFields().get(requiredFieldCamelCase);
-            if (requiredField.get(this) == null) {
-                throw new QueryException(requiredFieldCamelCase + " is required because " + fieldNameCamelCase + " has a value");
+            QueryParameterBinder requiredParameter = getMetadata().dotNotationToParameter.get(requiredFieldDotNotation);
+            if (requiredParameter.get(this) == null) {
+                throw new QueryException(requiredParameter.name + " is required because " + fieldNameCamelCase + " has a value");
             }
         }
     }
@@ -392,6 +276,169 @@ public abstract class AbstractQuery extends CellBaseQueryOptions {
         if (StringUtils.isNotEmpty(facet)) {
             queryOptions.put(QueryOptions.FACET, facet);
         }
+        if (StringUtils.isNotEmpty(cursor)) {
+            queryOptions.put("cursor", cursor);
+        }
         return queryOptions;
     }
+
+    /**
+     * Annotated parameters of one query class.
+     */
+    private static final class QueryMetadata {
+        private final List<QueryParameterBinder> parameters;
+        // key = transcripts.biotype, value = transcriptsBiotype parameter
+        private final Map<String, QueryParameterBinder> dotNotationToParameter;
+
+        QueryMetadata(Class<?> queryClass) {
+            parameters = new ArrayList<>();
+            dotNotationToParameter = new HashMap<>();
+            for (Field field : FieldUtils.getAllFields(queryClass)) {
+                QueryParameter queryParameter = field.getDeclaredAnnotation(QueryParameter.class);
+                if (queryParameter != null) {
+                    QueryParameterBinder parameter = new QueryParameterBinder(queryClass, field, queryParameter);
+                    parameters.add(parameter);
+                    dotNotationToParameter.put(queryParameter.id(), parameter);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads, parses and writes one annotated field through method handles resolved once per query class.
+     */
+    private static final class QueryParameterBinder {
+        private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+        private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+        // camel case, e.g. transcriptsBiotype
+        private final String name;
+        private final QueryParameter queryParameter;
+        // dot notation id and aliases, as found in the REST parameters
+        private final String[] keys;
+        private final Class<?> type;
+        private final Function<String, Object> elementParser;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        QueryParameterBinder(Class<?> queryClass, Field field, QueryParameter queryParameter) {
+            this.name = field.getName();
+            this.queryParameter = queryParameter;
+            this.keys = new String[queryParameter.alias().length + 1];
+            keys[0] = queryParameter.id().replace("\\.", "\\\\.");
+            for (int i = 0; i < queryParameter.alias().length; i++) {
+                keys[i + 1] = queryParameter.alias()[i].replace("\\.", "\\\\.");
+            }
+            this.type = field.getType();
+            this.elementParser = getElementParser(Collection.class.isAssignableFrom(type) ? getElementType(field) : type);
+            try {
+                field.setAccessible(true);
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                this.getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+                // Setters are preferred, as Jackson does
+                Method setterMethod = MethodUtils.getMatchingAccessibleMethod(queryClass,
+                        "set" + StringUtils.capitalize(name), type);
+                this.setter = (setterMethod != null ? lookup.unreflect(setterMethod) : lookup.unreflectSetter(field)).asType(SETTER_TYPE);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot access query parameter " + queryClass.getName() + "." + name, e);
+            }
+        }
+
+        private static Class<?> getElementType(Field field) {
+            if (field.getGenericType() instanceof ParameterizedType) {
+                Type[] typeArguments = ((ParameterizedType) field.getGenericType()).getActualTypeArguments();
+                if (typeArguments.length == 1 && typeArguments[0] instanceof Class) {
+                    return (Class<?>) typeArguments[0];
+                }
+            }
+            return Object.class;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Function<String, Object> getElementParser(Class<?> elementType) {
+            if (elementType == String.class) {
+                return value -> value;
+            } else if (elementType == Integer.class) {
+                return value -> value.isEmpty() ? null : Integer.valueOf(value);
+            } else if (elementType == Long.class) {
+                return value -> value.isEmpty() ? null : Long.valueOf(value);
+            } else if (elementType == Boolean.class) {
+                return value -> {
+                    if (value.isEmpty()) {
+                        return null;
+                    } else if ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value)) {
+                        return Boolean.valueOf(value);
+                    }
+                    throw new IllegalArgumentException("'" + value + "' is not a valid boolean");
+                };
+            } else if (elementType.isEnum()) {
+                return value -> value.isEmpty() ? null : Enum.valueOf((Class<Enum>) elementType, value);
+            } else if (elementType == Region.class) {
+                return Region::new;
+            }
+            // Left to Jackson
+            return null;
+        }
+
+        boolean isBound() {
+            return elementParser != null;
+        }
+
+        /**
+         * Splits list values: a semicolon separated LogicalList is an AND list, comma separated lists are OR lists.
+         * @param value REST parameter value
+         * @return the value, or the list of values for collections
+         */
+        Object split(String value) {
+            if (!Collection.class.isAssignableFrom(type)) {
+                return value;
+            }
+            if (LogicalList.class.isAssignableFrom(type)) {
+                // AND
+                if (value.contains(";")) {
+                    return new LogicalList<>(Arrays.asList(value.split(";")), true);
+                // OR
+                } else {
+                    return new LogicalList<>(Arrays.asList(value.split(",")), false);
+                }
+            }
+            return Arrays.asList(value.split(","));
+        }
+
+        Object parse(String value) {
+            Object values = split(value);
+            if (!(values instanceof List)) {
+                return elementParser.apply(value);
+            }
+            List<?> valueList = (List<?>) values;
+            List<Object> result;
+            if (values instanceof LogicalList) {
+                result = new LogicalList<>(new ArrayList<>(valueList.size()), ((LogicalList<?>) values).isAnd());
+            } else {
+                result = new ArrayList<>(valueList.size());
+            }
+            for (Object element : valueList) {
+                result.add(elementParser.apply((String) element));
+            }
+            return result;
+        }
+
+        Object get(Object query) {
+            try {
+                return (Object) getter.invokeExact(query);
+            } catch (Throwable throwable) {
+                throw new IllegalStateException("Cannot read query parameter " + name, throwable);
+            }
+        }
+
+        void set(Object query, Object value) {
+            try {
+                setter.invokeExact(query, value);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Throwable throwable) {
+                throw new IllegalStateException("Cannot write query parameter " + name, throwable);
+            }
+        }
+    }
 }
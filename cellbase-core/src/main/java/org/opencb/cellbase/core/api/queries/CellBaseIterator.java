@@ -20,15 +20,26 @@ import org.opencb.commons.datastore.mongodb.MongoDBIterator;
 
 import java.io.Closeable;
 import java.util.Iterator;
+import java.util.function.Supplier;
 
 public class CellBaseIterator<E> implements Iterator<E>, Closeable {
 
     private MongoDBIterator<E> iterator;
     private long numMatches;
+    private Supplier<String> cursor;
 
     public CellBaseIterator(MongoDBIterator<E> iterator) {
+        this(iterator, () -> null);
+    }
+
+    /**
+     * @param iterator results
+     * @param cursor token to resume the query after the last result returned so far
+     */
+    public CellBaseIterator(MongoDBIterator<E> iterator, Supplier<String> cursor) {
         this.iterator = iterator;
         this.numMatches = iterator.getNumMatches();
+        this.cursor = cursor;
     }
 
     @Override
@@ -49,4 +60,11 @@ public class CellBaseIterator<E> implements Iterator<E>, Closeable {
     public long getNumMatches() {
         return numMatches;
     }
+
+    /**
+     * @return token to resume the query after the last result returned, null if the query is not paged by cursor
+     */
+    public String getCursor() {
+        return cursor.get();
+    }
 }
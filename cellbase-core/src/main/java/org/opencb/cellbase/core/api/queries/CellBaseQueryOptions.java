@@ -38,6 +38,10 @@ public class CellBaseQueryOptions extends ProjectionQueryOptions {
     @QueryParameter(id = "facet")
     protected String facet;
 
+    // '*' to start paging by cursor, then the token returned in the 'cursor' attribute of the previous page
+    @QueryParameter(id = "cursor")
+    protected String cursor;
+
     public enum Order {
         ASCENDING,
         DESCENDING
@@ -76,6 +80,7 @@ public class CellBaseQueryOptions extends ProjectionQueryOptions {
         sb.append(", sort=").append(sort);
         sb.append(", order=").append(order);
         sb.append(", facet=").append(facet);
+        sb.append(", cursor=").append(cursor);
         sb.append(", includes=").append(includes);
         sb.append(", excludes=").append(excludes);
         sb.append('}');
@@ -135,4 +140,13 @@ public class CellBaseQueryOptions extends ProjectionQueryOptions {
         this.facet = facet;
         return this;
     }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public CellBaseQueryOptions setCursor(String cursor) {
+        this.cursor = cursor;
+        return this;
+    }
 }
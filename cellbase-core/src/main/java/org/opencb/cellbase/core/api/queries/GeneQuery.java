@@ -24,7 +24,7 @@ import org.opencb.cellbase.core.ParamConstants;
 import java.util.List;
 import java.util.Map;
 
-public class GeneQuery extends AbstractQuery {
+public class GeneQuery extends AbstractQuery implements RegionQuery {
 
     @QueryParameter(id = "id")
     private List<String> ids;
@@ -21,7 +21,7 @@ import org.opencb.biodata.models.core.Region;
 import java.util.List;
 import java.util.Map;
 
-public class RegulationQuery extends AbstractQuery {
+public class RegulationQuery extends AbstractQuery implements RegionQuery {
 
     @QueryParameter(id = "name")
     private List<String> names;
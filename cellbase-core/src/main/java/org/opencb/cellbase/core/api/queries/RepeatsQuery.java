@@ -21,7 +21,7 @@ import org.opencb.biodata.models.core.Region;
 import java.util.List;
 import java.util.Map;
 
-public class RepeatsQuery extends AbstractQuery {
+public class RepeatsQuery extends AbstractQuery implements RegionQuery {
 
     @QueryParameter(id = "region")
     private List<Region> regions;
@@ -21,7 +21,7 @@ import org.opencb.biodata.models.core.Region;
 import java.util.List;
 import java.util.Map;
 
-public class VariantQuery extends AbstractQuery {
+public class VariantQuery extends AbstractQuery implements RegionQuery {
 
     @QueryParameter(id = "chromosome")
     private String chromosome;
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.common;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToIntFunction;
+
+/**
+ * Immutable index of genomic features answering overlap queries in O(log n + k). Features are kept per chromosome in
+ * primitive arrays sorted by start, laid out as an implicit augmented interval tree (each node stores the maximum end
+ * of its subtree). Coordinates are 1-based and both ends inclusive, as in Region.
+ *
+ * @param <T> type of the indexed features
+ */
+public class IntervalIndex<T> {
+
+    // Subtrees of this height or smaller are scanned linearly, cheaper than going on with the tree traversal
+    private static final int LINEAR_SCAN_LEVEL = 3;
+
+    private final IntFunction<T> features;
+    private final int size;
+    private final Map<String, ChromosomeIndex> chromosomeIndexes;
+
+    /**
+     * Builds the index.
+     * @param features features to index. Results of the queries are returned in the order features have in this list
+     * @param chromosomeFunction returns the chromosome of a feature
+     * @param startFunction returns the start of a feature
+     * @param endFunction returns the end of a feature
+     */
+    public IntervalIndex(List<T> features, Function<T, String> chromosomeFunction, ToIntFunction<T> startFunction,
+                         ToIntFunction<T> endFunction) {
+        List<T> featureList = new ArrayList<>(features);
+        this.features = featureList::get;
+        this.size = featureList.size();
+        this.chromosomeIndexes = buildChromosomeIndexes(size, id -> chromosomeFunction.apply(featureList.get(id)),
+                id -> startFunction.applyAsInt(featureList.get(id)), id -> endFunction.applyAsInt(featureList.get(id)));
+    }
+
+    /**
+     * Builds the index over features kept elsewhere, e.g. in columnar primitive arrays, so that features are only
+     * materialised when returned by a query.
+     * @param size number of features, identified by their position from 0 to size - 1
+     * @param features returns the feature of a position. Results of the queries are returned sorted by position
+     * @param chromosomeFunction returns the chromosome of the feature of a position
+     * @param startFunction returns the start of the feature of a position
+     * @param endFunction returns the end of the feature of a position
+     */
+    public IntervalIndex(int size, IntFunction<T> features, IntFunction<String> chromosomeFunction, IntUnaryOperator startFunction,
+                         IntUnaryOperator endFunction) {
+        this.features = features;
+        this.size = size;
+        this.chromosomeIndexes = buildChromosomeIndexes(size, chromosomeFunction, startFunction, endFunction);
+    }
+
+    private static Map<String, ChromosomeIndex> buildChromosomeIndexes(int size, IntFunction<String> chromosomeFunction,
+                                                                       IntUnaryOperator startFunction,
+                                                                       IntUnaryOperator endFunction) {
+        Map<String, int[]> chromosomeToFeatureIds = new HashMap<>();
+        Map<String, Integer> chromosomeSizes = new HashMap<>();
+        for (int id = 0; id < size; id++) {
+            chromosomeSizes.merge(chromosomeFunction.apply(id), 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> entry : chromosomeSizes.entrySet()) {
+            chromosomeToFeatureIds.put(entry.getKey(), new int[entry.getValue()]);
+        }
+        Map<String, Integer> chromosomeOffsets = new HashMap<>();
+        for (int id = 0; id < size; id++) {
+            String chromosome = chromosomeFunction.apply(id);
+            int offset = chromosomeOffsets.getOrDefault(chromosome, 0);
+            chromosomeToFeatureIds.get(chromosome)[offset] = id;
+            chromosomeOffsets.put(chromosome, offset + 1);
+        }
+
+        Map<String, ChromosomeIndex> chromosomeIndexes = new HashMap<>();
+        for (Map.Entry<String, int[]> entry : chromosomeToFeatureIds.entrySet()) {
+            int[] ids = entry.getValue();
+            int n = ids.length;
+            int[] starts = new int[n];
+            int[] ends = new int[n];
+            for (int i = 0; i < n; i++) {
+                starts[i] = startFunction.applyAsInt(ids[i]);
+                ends[i] = endFunction.applyAsInt(ids[i]);
+            }
+            chromosomeIndexes.put(entry.getKey(), new ChromosomeIndex(starts, ends, ids));
+        }
+        return chromosomeIndexes;
+    }
+
+    /**
+     * Features overlapping the interval [start, end].
+     * @param chromosome chromosome name
+     * @param start interval start, inclusive
+     * @param end interval end, inclusive
+     * @return overlapping features, in the same relative order they had in the list used to build the index
+     */
+    public List<T> query(String chromosome, int start, int end) {
+        int[] ids = queryIds(chromosome, start, end);
+        List<T> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            result.add(features.apply(id));
+        }
+        return result;
+    }
+
+    /**
+     * Positions, within the list used to build the index, of the features overlapping the interval [start, end].
+     * @param chromosome chromosome name
+     * @param start interval start, inclusive
+     * @param end interval end, inclusive
+     * @return sorted array of positions
+     */
+    public int[] queryIds(String chromosome, int start, int end) {
+        ChromosomeIndex chromosomeIndex = chromosomeIndexes.get(chromosome);
+        if (chromosomeIndex == null) {
+            return new int[0];
+        }
+        int[] ids = chromosomeIndex.overlap(start, end);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    public T get(int id) {
+        return features.apply(id);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return approximate heap used by the index arrays, in bytes, not including the features themselves
+     */
+    public long getIndexSize() {
+        long indexSize = 0;
+        for (ChromosomeIndex chromosomeIndex : chromosomeIndexes.values()) {
+            // starts, ends, maxEnds and ids arrays, plus array headers
+            indexSize += 4L * (4L * chromosomeIndex.starts.length + 16);
+        }
+        return indexSize;
+    }
+
+    /**
+     * Implicit augmented interval tree over the features of one chromosome, following cgranges by Heng Li
+     * (https://github.com/lh3/cgranges). Node i sits at level k if its k lowest bits are 1; its children are
+     * i - 2^(k-1) and i + 2^(k-1).
+     */
+    private static class ChromosomeIndex {
+        private final int[] starts;
+        private final int[] ends;
+        private final int[] maxEnds;
+        private final int[] ids;
+        private final int maxLevel;
+
+        ChromosomeIndex(int[] unsortedStarts, int[] unsortedEnds, int[] unsortedIds) {
+            int n = unsortedStarts.length;
+            // Sort by start keeping the original order of ties: starts are packed in the high bits and positions in the
+            // low bits of a long, no boxing needed
+            long[] order = new long[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = ((long) unsortedStarts[i] << 32) | i;
+            }
+            Arrays.sort(order);
+
+            starts = new int[n];
+            ends = new int[n];
+            ids = new int[n];
+            for (int i = 0; i < n; i++) {
+                int position = (int) order[i];
+                starts[i] = unsortedStarts[position];
+                ends[i] = unsortedEnds[position];
+                ids[i] = unsortedIds[position];
+            }
+            maxEnds = new int[n];
+            maxLevel = n > 0 ? buildMaxEnds() : 0;
+        }
+
+        private int buildMaxEnds() {
+            int n = starts.length;
+            int lastIndex = 0;
+            int lastMax = 0;
+            // Leaves
+            for (int i = 0; i < n; i += 2) {
+                lastIndex = i;
+                maxEnds[i] = ends[i];
+                lastMax = ends[i];
+            }
+            int k;
+            for (k = 1; (1L << k) <= n; k++) {
+                int x = 1 << (k - 1);
+                int firstNode = (x << 1) - 1;
+                int step = x << 2;
+                for (int i = firstNode; i < n; i += step) {
+                    int leftMax = maxEnds[i - x];
+                    // The right child may fall beyond the last feature; use the max of the last subtree instead
+                    int rightMax = i + x < n ? maxEnds[i + x] : lastMax;
+                    maxEnds[i] = Math.max(ends[i], Math.max(leftMax, rightMax));
+                }
+                lastIndex = ((lastIndex >> k) & 1) != 0 ? lastIndex - x : lastIndex + x;
+                if (lastIndex < n && maxEnds[lastIndex] > lastMax) {
+                    lastMax = maxEnds[lastIndex];
+                }
+            }
+            return k - 1;
+        }
+
+        int[] overlap(int start, int end) {
+            int n = starts.length;
+            if (n == 0) {
+                return new int[0];
+            }
+            int[] result = new int[8];
+            int numResults = 0;
+
+            // Stack of (level, node, leftChildVisited) triplets
+            int[] stackLevel = new int[64];
+            int[] stackNode = new int[64];
+            boolean[] stackVisited = new boolean[64];
+            int top = 0;
+            stackLevel[top] = maxLevel;
+            stackNode[top] = (1 << maxLevel) - 1;
+            stackVisited[top] = false;
+            top++;
+
+            while (top > 0) {
+                top--;
+                int level = stackLevel[top];
+                int node = stackNode[top];
+                boolean visited = stackVisited[top];
+                if (level <= LINEAR_SCAN_LEVEL) {
+                    int i0 = node >> level << level;
+                    int i1 = Math.min(n, i0 + (1 << (level + 1)) - 1);
+                    for (int i = i0; i < i1 && starts[i] <= end; i++) {
+                        if (ends[i] >= start) {
+                            if (numResults == result.length) {
+                                result = Arrays.copyOf(result, numResults * 2);
+                            }
+                            result[numResults++] = ids[i];
+                        }
+                    }
+                } else if (!visited) {
+                    int leftChild = node - (1 << (level - 1));
+                    // Come back to this node once the left subtree is done
+                    stackLevel[top] = level;
+                    stackNode[top] = node;
+                    stackVisited[top] = true;
+                    top++;
+                    if (leftChild >= n || maxEnds[leftChild] >= start) {
+                        stackLevel[top] = level - 1;
+                        stackNode[top] = leftChild;
+                        stackVisited[top] = false;
+                        top++;
+                    }
+                } else if (node < n && starts[node] <= end) {
+                    if (ends[node] >= start) {
+                        if (numResults == result.length) {
+                            result = Arrays.copyOf(result, numResults * 2);
+                        }
+                        result[numResults++] = ids[node];
+                    }
+                    stackLevel[top] = level - 1;
+                    stackNode[top] = node + (1 << (level - 1));
+                    stackVisited[top] = false;
+                    top++;
+                }
+            }
+
+            return Arrays.copyOf(result, numResults);
+        }
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.common;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Genome sequence stored with 2 bits per nucleotide and read through memory-mapped buffers. Runs of N and of
+ * lower case (soft-masked) nucleotides are kept as blocks, and any other IUPAC code as a sparse list of exceptions,
+ * so the original FASTA sequence is always recovered exactly.
+ *
+ * File layout: magic, version, number of sequences, offset of the nucleotide data, one header per sequence (name,
+ * sequence type, assembly, length, data offset, N blocks, mask blocks, exceptions) and finally the packed nucleotides
+ * of every sequence. This is a CellBase specific format, not compatible with the UCSC 2bit format.
+ *
+ * Instances are immutable and thread safe. Mapped buffers are released by the garbage collector, no file handle is
+ * kept open.
+ */
+public class PackedSequenceFile {
+
+    public static final String FILE_NAME = "genome_sequence.cbseq";
+
+    private static final int MAGIC = 0x43425351;  // "CBSQ"
+    private static final int VERSION = 1;
+    private static final char[] NUCLEOTIDES = {'A', 'C', 'G', 'T'};
+
+    private final Path path;
+    private final Map<String, SequenceIndex> sequences;
+
+    /**
+     * Opens a file created by PackedSequenceFile.Writer. Only the headers are read, nucleotides are mapped lazily
+     * by the OS.
+     * @param path file path
+     * @throws IOException if the file can not be read or has not the expected format
+     */
+    public PackedSequenceFile(Path path) throws IOException {
+        this.path = path;
+        this.sequences = new HashMap<>();
+
+        long dataStart;
+        List<SequenceIndex> sequenceList = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a packed genome sequence file: " + path);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported packed genome sequence file version " + version + ": " + path);
+            }
+            int numSequences = in.readInt();
+            dataStart = in.readLong();
+            for (int i = 0; i < numSequences; i++) {
+                sequenceList.add(SequenceIndex.read(in));
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (SequenceIndex sequenceIndex : sequenceList) {
+                // One mapping per sequence keeps every buffer far below the 2GB limit of ByteBuffer
+                sequenceIndex.data = channel.map(FileChannel.MapMode.READ_ONLY, dataStart + sequenceIndex.dataOffset,
+                        packedLength(sequenceIndex.length));
+                sequences.put(sequenceIndex.name, sequenceIndex);
+            }
+        }
+    }
+
+    public boolean contains(String sequenceName) {
+        return sequences.containsKey(sequenceName);
+    }
+
+    public Set<String> getSequenceNames() {
+        return Collections.unmodifiableSet(sequences.keySet());
+    }
+
+    /**
+     * @param sequenceName sequence (chromosome) name
+     * @return sequence length, -1 if the sequence is not present
+     */
+    public int getLength(String sequenceName) {
+        SequenceIndex sequenceIndex = sequences.get(sequenceName);
+        return sequenceIndex != null ? sequenceIndex.length : -1;
+    }
+
+    public String getSequenceType(String sequenceName) {
+        SequenceIndex sequenceIndex = sequences.get(sequenceName);
+        return sequenceIndex != null ? sequenceIndex.sequenceType : null;
+    }
+
+    public String getAssembly(String sequenceName) {
+        SequenceIndex sequenceIndex = sequences.get(sequenceName);
+        return sequenceIndex != null ? sequenceIndex.assembly : null;
+    }
+
+    /**
+     * Sequence between start and end, both 1-based and inclusive. As with the genome_sequence collection, an end
+     * beyond the sequence length is truncated.
+     * @param sequenceName sequence (chromosome) name
+     * @param start start position
+     * @param end end position
+     * @return the sequence, null if the sequence is not present or start is out of its boundaries
+     */
+    public String getSequence(String sequenceName, int start, int end) {
+        SequenceIndex sequenceIndex = sequences.get(sequenceName);
+        if (sequenceIndex == null || start < 1 || start > sequenceIndex.length || end < start) {
+            return null;
+        }
+        int from = start - 1;
+        int to = Math.min(end, sequenceIndex.length);
+        char[] sequence = new char[to - from];
+
+        ByteBuffer data = sequenceIndex.data;
+        for (int i = from; i < to; i++) {
+            int code = (data.get(i >>> 2) >>> (6 - ((i & 3) << 1))) & 3;
+            sequence[i - from] = NUCLEOTIDES[code];
+        }
+
+        applyBlocks(sequenceIndex.nStarts, sequenceIndex.nLengths, from, to, sequence, 'N', false);
+        int[] exceptionPositions = sequenceIndex.exceptionPositions;
+        for (int i = lowerBound(exceptionPositions, from); i < exceptionPositions.length && exceptionPositions[i] < to; i++) {
+            sequence[exceptionPositions[i] - from] = (char) sequenceIndex.exceptionCodes[i];
+        }
+        applyBlocks(sequenceIndex.maskStarts, sequenceIndex.maskLengths, from, to, sequence, ' ', true);
+
+        return new String(sequence);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    private static void applyBlocks(int[] starts, int[] lengths, int from, int to, char[] sequence, char value,
+                                    boolean toLowerCase) {
+        // Blocks are sorted and do not overlap, the first one that may overlap [from, to) is the one before lowerBound
+        int i = Math.max(0, lowerBound(starts, from) - 1);
+        for (; i < starts.length && starts[i] < to; i++) {
+            int blockFrom = Math.max(from, starts[i]);
+            int blockTo = Math.min(to, starts[i] + lengths[i]);
+            for (int j = blockFrom; j < blockTo; j++) {
+                sequence[j - from] = toLowerCase ? Character.toLowerCase(sequence[j - from]) : value;
+            }
+        }
+    }
+
+    private static int lowerBound(int[] values, int key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static long packedLength(int length) {
+        return (length + 3L) / 4;
+    }
+
+    private static class SequenceIndex {
+        private String name;
+        private String sequenceType;
+        private String assembly;
+        private int length;
+        private long dataOffset;
+        private int[] nStarts;
+        private int[] nLengths;
+        private int[] maskStarts;
+        private int[] maskLengths;
+        private int[] exceptionPositions;
+        private byte[] exceptionCodes;
+        private ByteBuffer data;
+
+        static SequenceIndex read(DataInputStream in) throws IOException {
+            SequenceIndex sequenceIndex = new SequenceIndex();
+            sequenceIndex.name = in.readUTF();
+            sequenceIndex.sequenceType = in.readUTF();
+            sequenceIndex.assembly = in.readUTF();
+            sequenceIndex.length = in.readInt();
+            sequenceIndex.dataOffset = in.readLong();
+            int numNBlocks = in.readInt();
+            sequenceIndex.nStarts = readInts(in, numNBlocks);
+            sequenceIndex.nLengths = readInts(in, numNBlocks);
+            int numMaskBlocks = in.readInt();
+            sequenceIndex.maskStarts = readInts(in, numMaskBlocks);
+            sequenceIndex.maskLengths = readInts(in, numMaskBlocks);
+            int numExceptions = in.readInt();
+            sequenceIndex.exceptionPositions = readInts(in, numExceptions);
+            sequenceIndex.exceptionCodes = new byte[numExceptions];
+            in.readFully(sequenceIndex.exceptionCodes);
+            return sequenceIndex;
+        }
+
+        private static int[] readInts(DataInputStream in, int n) throws IOException {
+            int[] values = new int[n];
+            for (int i = 0; i < n; i++) {
+                values[i] = in.readInt();
+            }
+            return values;
+        }
+    }
+
+    /**
+     * Writes a packed genome sequence file, one sequence at a time. Packed nucleotides are spooled to a temporary file
+     * so that only one sequence is kept in memory.
+     */
+    public static class Writer implements Closeable {
+
+        private final Path path;
+        private final Path dataPath;
+        private final OutputStream dataOutputStream;
+        private final List<byte[]> headers;
+        private long dataOffset;
+
+        public Writer(Path path) throws IOException {
+            this.path = path;
+            this.dataPath = path.resolveSibling(path.getFileName() + ".tmp");
+            this.dataOutputStream = new BufferedOutputStream(Files.newOutputStream(dataPath));
+            this.headers = new ArrayList<>();
+            this.dataOffset = 0;
+        }
+
+        public void write(String name, String sequenceType, String assembly, CharSequence sequence) throws IOException {
+            int length = sequence.length();
+            IntList nStarts = new IntList();
+            IntList nLengths = new IntList();
+            IntList maskStarts = new IntList();
+            IntList maskLengths = new IntList();
+            IntList exceptionPositions = new IntList();
+            ByteArrayOutputStream exceptionCodes = new ByteArrayOutputStream();
+
+            byte[] packed = new byte[(int) packedLength(length)];
+            int nStart = -1;
+            int maskStart = -1;
+            for (int i = 0; i < length; i++) {
+                char c = sequence.charAt(i);
+                char upper = Character.toUpperCase(c);
+
+                boolean isN = upper == 'N';
+                if (isN && nStart < 0) {
+                    nStart = i;
+                } else if (!isN && nStart >= 0) {
+                    nStarts.add(nStart);
+                    nLengths.add(i - nStart);
+                    nStart = -1;
+                }
+
+                boolean isLowerCase = c != upper;
+                if (isLowerCase && maskStart < 0) {
+                    maskStart = i;
+                } else if (!isLowerCase && maskStart >= 0) {
+                    maskStarts.add(maskStart);
+                    maskLengths.add(i - maskStart);
+                    maskStart = -1;
+                }
+
+                int code;
+                switch (upper) {
+                    case 'A':
+                        code = 0;
+                        break;
+                    case 'C':
+                        code = 1;
+                        break;
+                    case 'G':
+                        code = 2;
+                        break;
+                    case 'T':
+                        code = 3;
+                        break;
+                    case 'N':
+                        code = 0;
+                        break;
+                    default:
+                        code = 0;
+                        exceptionPositions.add(i);
+                        exceptionCodes.write(upper);
+                        break;
+                }
+                packed[i >>> 2] |= code << (6 - ((i & 3) << 1));
+            }
+            if (nStart >= 0) {
+                nStarts.add(nStart);
+                nLengths.add(length - nStart);
+            }
+            if (maskStart >= 0) {
+                maskStarts.add(maskStart);
+                maskLengths.add(length - maskStart);
+            }
+
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(header)) {
+                out.writeUTF(name);
+                out.writeUTF(sequenceType != null ? sequenceType : "");
+                out.writeUTF(assembly != null ? assembly : "");
+                out.writeInt(length);
+                out.writeLong(dataOffset);
+                writeBlocks(out, nStarts, nLengths);
+                writeBlocks(out, maskStarts, maskLengths);
+                out.writeInt(exceptionPositions.size());
+                for (int i = 0; i < exceptionPositions.size(); i++) {
+                    out.writeInt(exceptionPositions.get(i));
+                }
+                out.write(exceptionCodes.toByteArray());
+            }
+            headers.add(header.toByteArray());
+
+            dataOutputStream.write(packed);
+            dataOffset += packed.length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            dataOutputStream.close();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(headers.size());
+                long dataStart = 4 + 4 + 4 + 8;
+                for (byte[] header : headers) {
+                    dataStart += header.length;
+                }
+                out.writeLong(dataStart);
+                for (byte[] header : headers) {
+                    out.write(header);
+                }
+                Files.copy(dataPath, out);
+            } finally {
+                Files.deleteIfExists(dataPath);
+            }
+        }
+
+        private static void writeBlocks(DataOutputStream out, IntList starts, IntList lengths) throws IOException {
+            out.writeInt(starts.size());
+            for (int i = 0; i < starts.size(); i++) {
+                out.writeInt(starts.get(i));
+            }
+            for (int i = 0; i < lengths.size(); i++) {
+                out.writeInt(lengths.get(i));
+            }
+        }
+    }
+
+    private static class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int i) {
+            return values[i];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
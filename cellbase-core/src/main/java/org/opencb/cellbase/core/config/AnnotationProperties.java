@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.config;
+
+/**
+ * Tuning of the variant annotation engine.
+ */
+public class AnnotationProperties {
+
+    /**
+     * Six sub-annotators (variation, conservation, functionalScore, clinical, repeats, cytoband) may run in parallel
+     * for every batch, make sure one batch never waits for another one to release a thread.
+     */
+    public static final int DEFAULT_NUM_THREADS = Math.max(6, 2 * Runtime.getRuntime().availableProcessors());
+
+    public static final long DEFAULT_CACHE_TTL_SECONDS = 3600;
+
+    public static final long DEFAULT_INDEX_MAX_MEMORY_MB = 1024;
+
+    private int numThreads;
+
+    /**
+     * Optional directory with one genome sequence file per species and assembly, i.e.
+     * genomeSequenceDir/homo_sapiens_grch38/genome_sequence.cbseq. The build command writes these files with this same
+     * layout, so this is usually its output directory, or a copy of its species folders. Sequences are read from these
+     * files instead of the database when present.
+     */
+    private String genomeSequenceDir;
+
+    /**
+     * Maximum number of variant annotations kept in memory by the annotation cache of each species and assembly,
+     * 0 disables the cache.
+     */
+    private int cacheSize;
+
+    /**
+     * Seconds a cached annotation is served before being annotated again. The cached annotations using a data are also
+     * removed when its release in the metadata collection changes, which is checked once a minute.
+     */
+    private long cacheTtlSeconds;
+
+    /**
+     * Keeps the repeats of each species and assembly in memory, loaded on first use, instead of querying the database
+     * for every annotation batch. Cytobands are always kept in memory.
+     */
+    private boolean repeatsIndex;
+
+    /**
+     * Maximum heap, in MB, the in-memory repeats index of each species and assembly may use. The database keeps being
+     * queried when the repeats do not fit.
+     */
+    private long indexMaxMemoryMb;
+
+    public AnnotationProperties() {
+        this.numThreads = DEFAULT_NUM_THREADS;
+        this.cacheSize = 0;
+        this.cacheTtlSeconds = DEFAULT_CACHE_TTL_SECONDS;
+        this.repeatsIndex = false;
+        this.indexMaxMemoryMb = DEFAULT_INDEX_MAX_MEMORY_MB;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("AnnotationProperties{");
+        sb.append("numThreads=").append(numThreads);
+        sb.append(", genomeSequenceDir='").append(genomeSequenceDir).append('\'');
+        sb.append(", cacheSize=").append(cacheSize);
+        sb.append(", cacheTtlSeconds=").append(cacheTtlSeconds);
+        sb.append(", repeatsIndex=").append(repeatsIndex);
+        sb.append(", indexMaxMemoryMb=").append(indexMaxMemoryMb);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public AnnotationProperties setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+        return this;
+    }
+
+    public String getGenomeSequenceDir() {
+        return genomeSequenceDir;
+    }
+
+    public AnnotationProperties setGenomeSequenceDir(String genomeSequenceDir) {
+        this.genomeSequenceDir = genomeSequenceDir;
+        return this;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public AnnotationProperties setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+        return this;
+    }
+
+    public long getCacheTtlSeconds() {
+        return cacheTtlSeconds;
+    }
+
+    public AnnotationProperties setCacheTtlSeconds(long cacheTtlSeconds) {
+        this.cacheTtlSeconds = cacheTtlSeconds;
+        return this;
+    }
+
+    public boolean isRepeatsIndex() {
+        return repeatsIndex;
+    }
+
+    public AnnotationProperties setRepeatsIndex(boolean repeatsIndex) {
+        this.repeatsIndex = repeatsIndex;
+        return this;
+    }
+
+    public long getIndexMaxMemoryMb() {
+        return indexMaxMemoryMb;
+    }
+
+    public AnnotationProperties setIndexMaxMemoryMb(long indexMaxMemoryMb) {
+        this.indexMaxMemoryMb = indexMaxMemoryMb;
+        return this;
+    }
+}
@@ -41,6 +41,7 @@ public class CellBaseConfiguration {
     private DownloadProperties download;
     private SpeciesProperties species;
     private ServerProperties server;
+    private AnnotationProperties annotation = new AnnotationProperties();
 
     public static final String CELLBASE_PREFIX = "CELLBASE_";
     public static final String CELLBASE_DATABASES_MONGODB_HOST = "CELLBASE_DATABASES_MONGODB_HOST";
@@ -267,4 +268,13 @@ public class CellBaseConfiguration {
     public void setServer(ServerProperties server) {
         this.server = server;
     }
+
+    public AnnotationProperties getAnnotation() {
+        return annotation;
+    }
+
+    public CellBaseConfiguration setAnnotation(AnnotationProperties annotation) {
+        this.annotation = annotation;
+        return this;
+    }
 }
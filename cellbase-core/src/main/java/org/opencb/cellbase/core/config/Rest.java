@@ -19,6 +19,11 @@ package org.opencb.cellbase.core.config;
 public class Rest {
     private String url;
     private int port;
+    /**
+     * Write JSON responses directly to the output stream, one data result at a time, instead of building the whole
+     * response in memory first.
+     */
+    private boolean streamResponses = true;
 
     public String getUrl() {
         return url;
@@ -35,4 +40,12 @@ public class Rest {
     public void setPort(int port) {
         this.port = port;
     }
+
+    public boolean isStreamResponses() {
+        return streamResponses;
+    }
+
+    public void setStreamResponses(boolean streamResponses) {
+        this.streamResponses = streamResponses;
+    }
 }
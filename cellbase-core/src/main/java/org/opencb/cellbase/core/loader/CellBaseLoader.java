@@ -39,6 +39,7 @@ public abstract class CellBaseLoader implements Callable<Integer> {
     protected String[] innerFields;
 
     protected CellBaseConfiguration cellBaseConfiguration;
+    protected LoadStats loadStats;
 
     protected final Logger logger;
 
@@ -62,9 +63,18 @@ public abstract class CellBaseLoader implements Callable<Integer> {
             }
         }
 
+        loadStats = new LoadStats();
         logger = LoggerFactory.getLogger(this.getClass());
     }
 
+    /**
+     * Sets the object where parse and write throughput are reported, shared by all the loaders of a LoadRunner.
+     * @param loadStats load stats
+     */
+    public void setLoadStats(LoadStats loadStats) {
+        this.loadStats = loadStats;
+    }
+
     public abstract void init() throws LoaderException;
 
     @Override
@@ -23,6 +23,7 @@ import org.slf4j.LoggerFactory;
 import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.file.Files;
@@ -37,29 +38,54 @@ import java.util.zip.GZIPInputStream;
  */
 public class LoadRunner {
 
-    private static final String PROTEIN_FUNCTIONAL_PREDICTION = "protein_functional_prediction";
+    public static final int DEFAULT_NUM_DECOMPRESS_THREADS = 2;
+    public static final int DEFAULT_BATCH_SIZE_MB = 8;
+    // Batches are closed when reaching the size in bytes or this number of records, whatever happens first
+    private static final int MAX_BATCH_RECORDS = 10000;
+    private static final int MIN_QUEUE_CAPACITY = 10;
+    private static final long STATS_LOG_INTERVAL_SECONDS = 30;
+
     private String database;
     private String loader;
 
     private final int numThreads;
+    private final int numDecompressThreads;
+    private final long batchSizeBytes;
     private CellBaseConfiguration cellBaseConfiguration;
 
     protected BlockingQueue<List<String>> blockingQueue;
 
     private final Logger logger;
 
-    private static final int QUEUE_CAPACITY = 10;
-    private int batchSize;
     public static final List<String> POISON_PILL = new ArrayList<>();
 
 
     public LoadRunner(String loader, String database, int numThreads, CellBaseConfiguration cellBaseConfiguration) {
+        this(loader, database, numThreads, DEFAULT_NUM_DECOMPRESS_THREADS, DEFAULT_BATCH_SIZE_MB, cellBaseConfiguration);
+    }
+
+    /**
+     * Creates a load pipeline: the input file is read and decompressed (in parallel if bgzip compressed) and split into
+     * batches of batchSizeMb, which are then parsed and written to the database by numThreads CellBaseLoaders.
+     *
+     * @param loader CellBaseLoader class name
+     * @param database database name
+     * @param numThreads number of CellBaseLoaders parsing and writing batches
+     * @param numDecompressThreads number of threads decompressing bgzip files
+     * @param batchSizeMb approximate size of each write batch, in MB of JSON
+     * @param cellBaseConfiguration CellBase configuration
+     */
+    public LoadRunner(String loader, String database, int numThreads, int numDecompressThreads, int batchSizeMb,
+                      CellBaseConfiguration cellBaseConfiguration) {
         this.loader = loader;
         this.database = database;
         this.numThreads = numThreads;
+        this.numDecompressThreads = numDecompressThreads;
+        this.batchSizeBytes = batchSizeMb * 1024L * 1024L;
         this.cellBaseConfiguration = cellBaseConfiguration;
 
-        this.blockingQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        // Every loader can have one batch being processed and one waiting
+        this.blockingQueue = new ArrayBlockingQueue<>(Math.max(MIN_QUEUE_CAPACITY, 2 * numThreads));
 
         logger = LoggerFactory.getLogger(this.getClass());
     }
@@ -78,15 +104,6 @@ public class LoadRunner {
                 throw new IOException("File '" + filePath + "' does not exist or is a directory");
             }
 
-            // protein_functional_prediction documents are extremely big. Increasing the batch size will probably
-            // lead to an OutOfMemory error for this collection. Batch size can be much higher for the rest of
-            // collections though
-            if (data.equals(PROTEIN_FUNCTIONAL_PREDICTION)) {
-                batchSize = 50;
-            } else {
-                batchSize = 1000;
-            }
-
             // One CellBaseLoader is created for each thread in 'numThreads' variable
             List<CellBaseLoader> cellBaseLoaders = new ArrayList<>(numThreads);
             for (int i = 0; i < numThreads; i++) {
@@ -102,9 +119,11 @@ public class LoadRunner {
              * ExecutorServices and Futures are created, all CellBaseLoaders are initialized and submitted to them.
              * After this the different loaders are blocked waiting for the blockingQueue to be populated.
              */
+            LoadStats loadStats = new LoadStats();
             ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
             List<Future<Integer>> futures = new ArrayList<>(numThreads);
             for (int i = 0; i < numThreads; i++) {
+                cellBaseLoaders.get(i).setLoadStats(loadStats);
                 cellBaseLoaders.get(i).init();
                 futures.add(executorService.submit(cellBaseLoaders.get(i)));
                 logger.debug("CellBaseLoader '{}' initialized and submitted to the ExecutorService", i);
@@ -114,12 +133,21 @@ public class LoadRunner {
              * Execution starts by reading the file and loading batches to the blockingQueue. This makes the loaders
              * to start fetching and loading batches into the database. The number of records processed is returned.
              */
-            int processedRecords = readInputJsonFile(filePath);
-            // Check if all the records have been loaded
+            ScheduledExecutorService statsExecutorService = Executors.newSingleThreadScheduledExecutor();
+            statsExecutorService.scheduleAtFixedRate(() -> logger.info("Loading '{}': {}", filePath.getFileName(), loadStats),
+                    STATS_LOG_INTERVAL_SECONDS, STATS_LOG_INTERVAL_SECONDS, TimeUnit.SECONDS);
+            int processedRecords;
             int loadedRecords = 0;
-            for (Future<Integer> future : futures) {
-                loadedRecords += future.get();
+            try {
+                processedRecords = readInputJsonFile(filePath, loadStats);
+                // Check if all the records have been loaded
+                for (Future<Integer> future : futures) {
+                    loadedRecords += future.get();
+                }
+            } finally {
+                statsExecutorService.shutdownNow();
             }
+            logger.info("Loaded '{}': {}", filePath.getFileName(), loadStats);
             if (processedRecords == loadedRecords) {
                 logger.info("All the '{}' records have been loaded into the database", processedRecords);
             } else {
@@ -142,43 +170,64 @@ public class LoadRunner {
 
     }
 
-    private int readInputJsonFile(Path inputFile) {
+    private int readInputJsonFile(Path inputFile, LoadStats loadStats) {
         int inputFileRecords = 0;
-        try {
-            BufferedReader br;
-            if (inputFile.toString().endsWith(".gz")) {
-                br = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(inputFile.toFile()))));
-            } else {
-                br = new BufferedReader(new InputStreamReader(new FileInputStream(inputFile.toFile())));
-            }
-
-            List<String> batch = new ArrayList<>(batchSize);
+        try (BufferedReader br = getBufferedReader(inputFile)) {
+            List<String> batch = new ArrayList<>();
+            long batchBytes = 0;
+            long startTime = System.nanoTime();
             String jsonLine;
             while ((jsonLine = br.readLine()) != null) {
                 batch.add(jsonLine);
+                batchBytes += jsonLine.length();
                 inputFileRecords++;
-                if (inputFileRecords % batchSize == 0) {
+                if (batchBytes >= batchSizeBytes || batch.size() >= MAX_BATCH_RECORDS) {
+                    loadStats.add(LoadStats.READ, batch.size(), batchBytes, System.nanoTime() - startTime);
                     blockingQueue.put(batch);
-                    batch = new ArrayList<>(batchSize);
+                    batch = new ArrayList<>();
+                    batchBytes = 0;
+                    startTime = System.nanoTime();
                 }
-                if (inputFileRecords % 1000 == 0) {
-                    logger.info("{} records read from {}", inputFileRecords, inputFile.toString());
+                if (inputFileRecords % 100000 == 0) {
+                    logger.debug("{} records read from {}", inputFileRecords, inputFile.toString());
                 }
             }
             // Last batch
             if (!batch.isEmpty()) {
+                loadStats.add(LoadStats.READ, batch.size(), batchBytes, System.nanoTime() - startTime);
                 blockingQueue.put(batch);
             }
 
             logger.info("{} records read from '{}'", inputFileRecords, inputFile.toString());
-
-            // Poison Pill to consumers so they know that there are no more batches to consume
-            for (int i = 0; i < numThreads; i++) {
-                blockingQueue.put(POISON_PILL);
-            }
         } catch (Exception e) {
             logger.error(e.getMessage());
+        } finally {
+            // Poison Pill to consumers so they know that there are no more batches to consume
+            try {
+                for (int i = 0; i < numThreads; i++) {
+                    blockingQueue.put(POISON_PILL);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error(e.getMessage());
+            }
         }
         return inputFileRecords;
     }
+
+    private BufferedReader getBufferedReader(Path inputFile) throws IOException {
+        InputStream inputStream;
+        if (inputFile.toString().endsWith(".gz")) {
+            // bgzip blocks can be decompressed independently, any other gzip file is decompressed sequentially
+            if (numDecompressThreads > 1 && ParallelBgzipInputStream.isBgzip(inputFile)) {
+                logger.info("Decompressing bgzip file '{}' with {} threads", inputFile, numDecompressThreads);
+                inputStream = new ParallelBgzipInputStream(inputFile, numDecompressThreads);
+            } else {
+                inputStream = new GZIPInputStream(new FileInputStream(inputFile.toFile()), 1 << 16);
+            }
+        } else {
+            inputStream = new FileInputStream(inputFile.toFile());
+        }
+        return new BufferedReader(new InputStreamReader(inputStream), 1 << 20);
+    }
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.loader;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput of each stage of a load (read, parse, write), shared by the LoadRunner and all its CellBaseLoaders.
+ */
+public class LoadStats {
+
+    public static final String READ = "read";
+    public static final String PARSE = "parse";
+    public static final String WRITE = "write";
+
+    private final long startTime;
+    private final Map<String, Stage> stages;
+
+    public LoadStats() {
+        this.startTime = System.nanoTime();
+        this.stages = new LinkedHashMap<>();
+        stages.put(READ, new Stage());
+        stages.put(PARSE, new Stage());
+        stages.put(WRITE, new Stage());
+    }
+
+    /**
+     * Accounts work done by one stage.
+     * @param stage one of READ, PARSE or WRITE
+     * @param records number of records processed
+     * @param bytes number of bytes processed
+     * @param nanos time spent processing them, not including time spent waiting for other stages
+     */
+    public void add(String stage, long records, long bytes, long nanos) {
+        stages.get(stage).add(records, bytes, nanos);
+    }
+
+    public long getRecords(String stage) {
+        return stages.get(stage).records.sum();
+    }
+
+    @Override
+    public String toString() {
+        double elapsedSeconds = Math.max(1, System.nanoTime() - startTime) / 1e9;
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Stage> entry : stages.entrySet()) {
+            Stage stage = entry.getValue();
+            long records = stage.records.sum();
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(entry.getKey()).append(": ")
+                    .append(records).append(" records, ")
+                    .append(String.format("%.0f records/s, %.1f MB/s, %.1f s busy", records / elapsedSeconds,
+                            stage.bytes.sum() / elapsedSeconds / 1048576, stage.nanos.sum() / 1e9));
+        }
+        return sb.toString();
+    }
+
+    private static class Stage {
+        private final LongAdder records = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        void add(long numRecords, long numBytes, long numNanos) {
+            records.add(numRecords);
+            bytes.add(numBytes);
+            nanos.add(numNanos);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.loader;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses a BGZF file (multi-member gzip where each member carries its compressed size, as written by bgzip) using
+ * several threads. Compressed blocks are read sequentially, inflated in parallel and returned in order.
+ */
+public class ParallelBgzipInputStream extends InputStream {
+
+    private static final int GZIP_HEADER_LENGTH = 12;
+    private static final int GZIP_TRAILER_LENGTH = 8;
+    private static final int FEXTRA = 4;
+    // Number of blocks being inflated or waiting to be read per thread
+    private static final int PENDING_BLOCKS_PER_THREAD = 4;
+
+    private final InputStream rawInputStream;
+    private final ExecutorService executorService;
+    private final Deque<Future<byte[]>> pendingBlocks;
+    private final int maxPendingBlocks;
+
+    private byte[] currentBlock;
+    private int position;
+    private boolean eof;
+
+    public ParallelBgzipInputStream(Path path, int numThreads) throws IOException {
+        this.rawInputStream = new BufferedInputStream(Files.newInputStream(path), 1 << 20);
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executorService = Executors.newFixedThreadPool(numThreads, runnable -> {
+            Thread thread = new Thread(runnable, "bgzip-inflater-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pendingBlocks = new ArrayDeque<>();
+        this.maxPendingBlocks = numThreads * PENDING_BLOCKS_PER_THREAD;
+        this.currentBlock = new byte[0];
+        this.position = 0;
+        this.eof = false;
+    }
+
+    /**
+     * Checks whether the file starts with a BGZF block, i.e. a gzip member with a 'BC' extra subfield.
+     * @param path file to check
+     * @return true if the blocks of the file can be decompressed independently
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isBgzip(Path path) throws IOException {
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            byte[] header = new byte[GZIP_HEADER_LENGTH];
+            inputStream.readFully(header);
+            if (!isGzipHeader(header) || (header[3] & FEXTRA) == 0) {
+                return false;
+            }
+            byte[] extra = new byte[getExtraLength(header)];
+            inputStream.readFully(extra);
+            return getBlockSize(extra) > 0;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBlock()) {
+            return -1;
+        }
+        return currentBlock[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!nextBlock()) {
+            return -1;
+        }
+        int n = Math.min(length, currentBlock.length - position);
+        System.arraycopy(currentBlock, position, bytes, offset, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        executorService.shutdownNow();
+        rawInputStream.close();
+    }
+
+    /**
+     * Makes sure there is data left in currentBlock.
+     * @return false if the end of the file has been reached
+     */
+    private boolean nextBlock() throws IOException {
+        while (position >= currentBlock.length) {
+            fillPendingBlocks();
+            Future<byte[]> future = pendingBlocks.poll();
+            if (future == null) {
+                return false;
+            }
+            try {
+                currentBlock = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            } catch (ExecutionException e) {
+                throw new IOException("Error decompressing BGZF block: " + e.getCause().getMessage(), e.getCause());
+            }
+            position = 0;
+        }
+        return true;
+    }
+
+    private void fillPendingBlocks() throws IOException {
+        while (!eof && pendingBlocks.size() < maxPendingBlocks) {
+            byte[] block = readBlock();
+            if (block == null) {
+                eof = true;
+            } else {
+                pendingBlocks.add(executorService.submit(() -> inflate(block)));
+            }
+        }
+    }
+
+    /**
+     * Reads one compressed block from the file.
+     * @return the whole gzip member, null at the end of the file
+     */
+    private byte[] readBlock() throws IOException {
+        byte[] header = new byte[GZIP_HEADER_LENGTH];
+        int n = readFully(header, 0, GZIP_HEADER_LENGTH);
+        if (n == 0) {
+            return null;
+        }
+        if (n < GZIP_HEADER_LENGTH || !isGzipHeader(header) || (header[3] & FEXTRA) == 0) {
+            throw new IOException("Invalid BGZF block header");
+        }
+        int extraLength = getExtraLength(header);
+        byte[] extra = new byte[extraLength];
+        if (readFully(extra, 0, extraLength) < extraLength) {
+            throw new EOFException("Unexpected end of BGZF block");
+        }
+        int blockSize = getBlockSize(extra);
+        if (blockSize < 0) {
+            throw new IOException("BGZF block without block size, file is not BGZF compressed");
+        }
+
+        byte[] block = new byte[blockSize];
+        System.arraycopy(header, 0, block, 0, GZIP_HEADER_LENGTH);
+        System.arraycopy(extra, 0, block, GZIP_HEADER_LENGTH, extraLength);
+        int offset = GZIP_HEADER_LENGTH + extraLength;
+        if (readFully(block, offset, blockSize - offset) < blockSize - offset) {
+            throw new EOFException("Unexpected end of BGZF block");
+        }
+        return block;
+    }
+
+    private static byte[] inflate(byte[] block) throws IOException, DataFormatException {
+        int dataOffset = GZIP_HEADER_LENGTH + getExtraLength(block);
+        int dataLength = block.length - dataOffset - GZIP_TRAILER_LENGTH;
+        int crc = readInt(block, block.length - GZIP_TRAILER_LENGTH);
+        int uncompressedSize = readInt(block, block.length - 4);
+
+        byte[] uncompressed = new byte[uncompressedSize];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(block, dataOffset, dataLength);
+            int n = 0;
+            while (n < uncompressedSize && !inflater.finished()) {
+                int inflated = inflater.inflate(uncompressed, n, uncompressedSize - n);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += inflated;
+            }
+            if (n != uncompressedSize) {
+                throw new IOException("BGZF block inflated to " + n + " bytes, " + uncompressedSize + " expected");
+            }
+        } finally {
+            inflater.end();
+        }
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(uncompressed, 0, uncompressedSize);
+        if ((int) crc32.getValue() != crc) {
+            throw new IOException("CRC error in BGZF block");
+        }
+        return uncompressed;
+    }
+
+    private int readFully(byte[] bytes, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int n = rawInputStream.read(bytes, offset + total, length - total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    private static boolean isGzipHeader(byte[] header) {
+        return (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b && header[2] == 8;
+    }
+
+    private static int getExtraLength(byte[] header) {
+        return (header[10] & 0xff) | ((header[11] & 0xff) << 8);
+    }
+
+    /**
+     * Looks for the 'BC' subfield, which stores the total block size minus 1.
+     * @return total size of the block, -1 if the subfield is not present
+     */
+    private static int getBlockSize(byte[] extra) {
+        int i = 0;
+        while (i + 4 <= extra.length) {
+            int subfieldLength = (extra[i + 2] & 0xff) | ((extra[i + 3] & 0xff) << 8);
+            if (extra[i] == 'B' && extra[i + 1] == 'C' && subfieldLength == 2 && i + 6 <= extra.length) {
+                return ((extra[i + 4] & 0xff) | ((extra[i + 5] & 0xff) << 8)) + 1;
+            }
+            i += 4 + subfieldLength;
+        }
+        return -1;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | ((bytes[offset + 1] & 0xff) << 8) | ((bytes[offset + 2] & 0xff) << 16)
+                | ((bytes[offset + 3] & 0xff) << 24);
+    }
+}
@@ -29,6 +29,8 @@ public abstract class AnnotationBasedPhasedQueryManager<T> extends PhasedQueryMa
 
     public List<CellBaseDataResult<Variant>> run(List<Variant> variantList,
                                                  List<CellBaseDataResult<Variant>> variantCellBaseDataResultList) {
+        // Input variants are only indexed if a phased database variant is found
+        VariantIndex variantIndex = null;
         // Go through all input variants and their corresponding query results
         for (int j = 0; j < variantCellBaseDataResultList.size(); j++) {
             CellBaseDataResult<Variant> variantCellBaseDataResult = variantCellBaseDataResultList.get(j);
@@ -43,7 +45,6 @@ public abstract class AnnotationBasedPhasedQueryManager<T> extends PhasedQueryMa
                 }
 
                 Variant matchedVariant = variantCellBaseDataResult.getResults().get(0);
-                Variant queryVariant = variantList.get(j);
                 List<T> annotationObjectList = getAnnotationObjectList(matchedVariant);
                 // Phase is stored at the evidence entry/population frequency level, e.g.: there might be two ClinVar
                 // RCVs for one variant:
@@ -66,7 +67,10 @@ public abstract class AnnotationBasedPhasedQueryManager<T> extends PhasedQueryMa
                         // Missing genotypes in the input list will be considered as wildcards towards finding a
                         // matching haplotype (MNV) in the input list, since otherwise the clinical variant would not be
                         // returned
-                        if (sameHaplotype(queryVariant, variantList, databaseHaplotype)) {
+                        if (variantIndex == null) {
+                            variantIndex = new VariantIndex(variantList);
+                        }
+                        if (sameHaplotype(variantIndex.get(j), variantIndex, databaseHaplotype)) {
                             i++;
                         } else {
                             annotationObjectList.remove(i);
@@ -29,6 +29,8 @@ public class CustomAnnotationPhasedQueryManager extends PhasedQueryManager {
     @Override
     public List<CellBaseDataResult<Variant>> run(List<Variant> variantList,
                                                  List<CellBaseDataResult<Variant>> variantCellBaseDataResultList) {
+        // Input variants are only indexed if a phased database variant is found
+        VariantIndex variantIndex = null;
         // Go through all input variants and their corresponding query results
         for (int j = 0; j < variantCellBaseDataResultList.size(); j++) {
             CellBaseDataResult<Variant> variantCellBaseDataResult = variantCellBaseDataResultList.get(j);
@@ -42,7 +44,6 @@ public class CustomAnnotationPhasedQueryManager extends PhasedQueryManager {
                 }
 
                 Variant matchedVariant = variantCellBaseDataResult.getResults().get(0);
-                Variant queryVariant = variantList.get(j);
                 List<Variant> databaseHaplotype = getHaplotype(matchedVariant);
                 // Haplotype empty if EvidenceEntry/PopulationFrequency is not phased
                 if (!databaseHaplotype.isEmpty()) {
@@ -53,7 +54,10 @@ public class CustomAnnotationPhasedQueryManager extends PhasedQueryManager {
                     // Missing genotypes in the input list will be considered as wildcards towards finding a
                     // matching haplotype (MNV) in the input list, since otherwise the clinical variant would not be
                     // returned
-                    if (!sameHaplotype(queryVariant, variantList, databaseHaplotype)) {
+                    if (variantIndex == null) {
+                        variantIndex = new VariantIndex(variantList);
+                    }
+                    if (!sameHaplotype(variantIndex.get(j), variantIndex, databaseHaplotype)) {
                         reset(variantCellBaseDataResult);
                     }
                     // Sample   Cellbase  Match
@@ -23,8 +23,7 @@ import org.opencb.biodata.models.variant.avro.SampleEntry;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 
 
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
 
 public abstract class PhasedQueryManager {
 
@@ -39,19 +38,17 @@ public abstract class PhasedQueryManager {
 
     abstract List<CellBaseDataResult<Variant>> run(List<Variant> variantList, List<CellBaseDataResult<Variant>> variantCellBaseDataResult);
 
-    protected boolean sameHaplotype(Variant queryVariant, List<Variant> inputVariantList,
+    protected boolean sameHaplotype(PhasedVariant queryVariant, VariantIndex inputVariantIndex,
                                     List<Variant> databaseHaplotype) {
         // TODO: phase depends on the sample. Phased queries constrained to just one sample. The code below is
         // TODO: arbitrarily selecting the first one
-        String queryPhaseSet = getSampleAttribute(queryVariant, PHASE_SET_TAG);
-        String queryGenotype = getSampleAttribute(queryVariant, GENOTYPE_TAG);
         // Checks whether each variant for this clinical MNV (haplotype) is in the input list AND if all those in phase
         // in the input list
         for (Variant databaseVariant : databaseHaplotype) {
-            Variant queryVariant1 = getVariant(inputVariantList, databaseVariant);
+            PhasedVariant queryVariant1 = inputVariantIndex.get(databaseVariant);
             // It is not the same haplotype (MNV) if current variant cannot be found in the input list OR it is not in
             // the same chromosome copy as the first query variant
-            if (queryVariant1 == null || !potentiallyInPhase(queryPhaseSet, queryGenotype, queryVariant1)) {
+            if (queryVariant1 == null || !potentiallyInPhase(queryVariant.phaseSet, queryVariant.genotype, queryVariant1)) {
                 return false;
             }
         }
@@ -87,19 +84,6 @@ public abstract class PhasedQueryManager {
         return StringUtils.isBlank(field) || field.equals(MISSING_VALUE);
     }
 
-    private Variant getVariant(List<Variant> variantList, Variant variant) {
-        for (Variant variant1 : variantList) {
-            // TODO: simple chr, start, ref, alt matching here - shall implement something fancier
-            if (variant.getChromosome().equals(variant1.getChromosome())
-                    && variant.getStart().equals(variant1.getStart())
-                    && variant.getReference().equals(variant1.getReference())
-                    && variant.getAlternate().equals(variant1.getAlternate())) {
-                return variant1;
-            }
-        }
-        return null;
-    }
-
     /**
      * Will ONLY return false when it's absolutely clear that they are not in phase, i.e. phase sets are the same,
      * ploidy is the same, genotype is NOT missing, alleles are not reference and the alleles match in their
@@ -112,10 +96,10 @@ public abstract class PhasedQueryManager {
      *                 indicate we cannot.
      * @param genotype VCF-like String of the form 0/1, 0|1, 1, ... that indicates the relative chromosome copy of the
      *                 alternate allele. TODO: multi allelic positions are not supported by this method.
-     * @param variant  Variant object which phase and genotype are about to be checked against phaseSet and genotype
+     * @param variant  Variant which phase and genotype are about to be checked against phaseSet and genotype
      * @return boolean to indicate whether are potentially in phase (cis) or not. See description above for more details
      */
-    private boolean potentiallyInPhase(String phaseSet, String genotype, Variant variant) {
+    private boolean potentiallyInPhase(String phaseSet, String genotype, PhasedVariant variant) {
         // Missing values used as wildcard here: if phase set is not available will allow it to match with any other PS
         if (phaseSet == null) {
             return true;
@@ -124,7 +108,7 @@ public abstract class PhasedQueryManager {
         // TODO: phase depends on the sample. Phased queries constrained to just one sample. The code below is
         // TODO: arbitrarily selecting the first one
         // Missing values used as wildcard here: if phase set is not available will allow it to match with any other PS
-        String phaseSet1 = getSampleAttribute(variant, PHASE_SET_TAG);
+        String phaseSet1 = variant.phaseSet;
         if (phaseSet1 == null) {
             return true;
         }
@@ -134,7 +118,7 @@ public abstract class PhasedQueryManager {
 
             // TODO: phase depends on the sample. Phased queries constrained to just one sample. The code below is
             // TODO: arbitrarily selecting the first one
-            String genotype1 = getSampleAttribute(variant, GENOTYPE_TAG);
+            String genotype1 = variant.genotype;
 
             // Checks that in both genotypes there's something different than a reference allele, i.e. that none of
             // them is 0/0 (or 0 for haploid)
@@ -227,8 +211,65 @@ public abstract class PhasedQueryManager {
         variantCellBaseDataResult.setNumTotalResults(0);
     }
 
+    /**
+     * Input variant with its phase set and genotype, read once from the sample data.
+     */
+    protected static class PhasedVariant {
+        private final Variant variant;
+        private final String phaseSet;
+        private final String genotype;
+
+        PhasedVariant(Variant variant) {
+            this.variant = variant;
+            // TODO: phase depends on the sample. Phased queries constrained to just one sample. The code below is
+            // TODO: arbitrarily selecting the first one
+            this.phaseSet = getSampleAttribute(variant, PHASE_SET_TAG);
+            this.genotype = getSampleAttribute(variant, GENOTYPE_TAG);
+        }
+
+        public Variant getVariant() {
+            return variant;
+        }
+    }
 
+    /**
+     * Input variants of one batch hashed by chromosome, start, reference and alternate, so that each variant of a
+     * database haplotype is found in constant time instead of scanning the whole batch.
+     */
+    protected static class VariantIndex {
+        private final List<PhasedVariant> variants;
+        private final Map<String, PhasedVariant> variantMap;
+
+        VariantIndex(List<Variant> variantList) {
+            variants = new ArrayList<>(variantList.size());
+            variantMap = new HashMap<>(variantList.size() * 2);
+            for (Variant variant : variantList) {
+                PhasedVariant phasedVariant = new PhasedVariant(variant);
+                variants.add(phasedVariant);
+                // TODO: simple chr, start, ref, alt matching here - shall implement something fancier
+                // First one wins, as the linear search this replaces did
+                variantMap.putIfAbsent(getKey(variant), phasedVariant);
+            }
+        }
 
+        /**
+         * @param i position of the variant in the input list
+         * @return the input variant at that position
+         */
+        public PhasedVariant get(int i) {
+            return variants.get(i);
+        }
 
+        /**
+         * @param variant variant to look for
+         * @return the first input variant with the same chromosome, start, reference and alternate, null if none
+         */
+        public PhasedVariant get(Variant variant) {
+            return variantMap.get(getKey(variant));
+        }
 
+        private static String getKey(Variant variant) {
+            return variant.getChromosome() + ":" + variant.getStart() + ":" + variant.getReference() + ":" + variant.getAlternate();
+        }
+    }
 }
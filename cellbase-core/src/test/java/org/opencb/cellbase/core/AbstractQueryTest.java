@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.opencb.cellbase.core.api.queries.*;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AbstractQueryTest {
+
+    private static final int NUM_QUERIES = 10000;
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @FunctionalInterface
+    private interface QueryParser {
+        AbstractQuery parse(Map<String, String> params) throws QueryException;
+    }
+
+    @Test
+    public void testLogicalList() throws QueryException {
+        Map<String, String> paramMap = new HashMap<>();
+        paramMap.put("annotation.drugs.name", "a;b");
+        paramMap.put("annotation.expression.tissue", "brain,liver");
+        GeneQuery geneQuery = new GeneQuery(paramMap);
+
+        assertEquals(Arrays.asList("a", "b"), geneQuery.getAnnotationDrugsName());
+        assertTrue(geneQuery.getAnnotationDrugsName().isAnd());
+        assertEquals(Arrays.asList("brain", "liver"), geneQuery.getAnnotationExpressionTissue());
+        assertFalse(geneQuery.getAnnotationExpressionTissue().isAnd());
+    }
+
+    @Test
+    public void testEnum() throws QueryException {
+        Map<String, String> paramMap = new HashMap<>();
+        paramMap.put("sort", "name");
+        paramMap.put("order", "ASCENDING");
+        assertEquals(CellBaseQueryOptions.Order.ASCENDING, new GeneQuery(paramMap).getOrder());
+
+        paramMap.put("order", "UP");
+        assertThrows(IllegalArgumentException.class, () -> new GeneQuery(paramMap));
+    }
+
+    @Test
+    public void testInvalidNumber() {
+        Map<String, String> paramMap = new HashMap<>();
+        paramMap.put("limit", "ten");
+        assertThrows(IllegalArgumentException.class, () -> new TranscriptQuery(paramMap));
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        Map<String, String> paramMap = createParamMap();
+        for (Map.Entry<String, QueryParser> entry : createParsers().entrySet()) {
+            QueryOptions queryOptions = entry.getValue().parse(paramMap).toQueryOptions();
+            assertEquals(10, queryOptions.getInt(QueryOptions.LIMIT), entry.getKey());
+            assertEquals(0, queryOptions.getInt(QueryOptions.SKIP), entry.getKey());
+            assertFalse(queryOptions.getBoolean(QueryOptions.COUNT), entry.getKey());
+            assertEquals("_id,_chunkIds", queryOptions.getString(QueryOptions.EXCLUDE), entry.getKey());
+        }
+
+        // Same query as bound by Jackson before
+        GeneQuery geneQuery = new GeneQuery(paramMap);
+        GeneQuery jacksonGeneQuery = new ObjectMapper().updateValue(new GeneQuery(), createObjectMap());
+        assertEquals(jacksonGeneQuery.getIds(), geneQuery.getIds());
+        assertEquals(jacksonGeneQuery.getRegions().toString(), geneQuery.getRegions().toString());
+        assertEquals(jacksonGeneQuery.toQueryOptions(), geneQuery.toQueryOptions());
+    }
+
+    /**
+     * Parses the same REST parameters into every query type, and into GeneQuery with a new ObjectMapper per query as
+     * queries used to be bound.
+     */
+    @Test
+    @Tag("benchmark")
+    public void benchmarkParse() throws Exception {
+        Map<String, String> paramMap = createParamMap();
+        for (Map.Entry<String, QueryParser> entry : createParsers().entrySet()) {
+            // Warm up
+            for (int i = 0; i < NUM_QUERIES; i++) {
+                entry.getValue().parse(paramMap).toQueryOptions();
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < NUM_QUERIES; i++) {
+                AbstractQuery query = entry.getValue().parse(paramMap);
+                assertEquals(10, query.toQueryOptions().getInt("limit"));
+            }
+            logger.info("{}: {} ns per query", entry.getKey(), (System.nanoTime() - start) / NUM_QUERIES);
+        }
+
+        Map<String, Object> objectMap = createObjectMap();
+        long start = System.nanoTime();
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            GeneQuery geneQuery = new ObjectMapper().updateValue(new GeneQuery(), objectMap);
+            assertEquals(10, geneQuery.toQueryOptions().getInt("limit"));
+        }
+        logger.info("GeneQuery, Jackson binding: {} ns per query", (System.nanoTime() - start) / NUM_QUERIES);
+    }
+
+    /**
+     * @return REST parameters of a query
+     */
+    private Map<String, String> createParamMap() {
+        Map<String, String> paramMap = new HashMap<>();
+        paramMap.put("id", "ENSG00000130203,ENSG00000105409");
+        paramMap.put("region", "19:45409011-45412650,19:45411941-45411941");
+        paramMap.put("limit", "10");
+        paramMap.put("skip", "0");
+        paramMap.put("count", "false");
+        paramMap.put("exclude", "_id,_chunkIds");
+        return paramMap;
+    }
+
+    /**
+     * @return same parameters as createParamMap, as bound to GeneQuery fields by Jackson
+     */
+    private Map<String, Object> createObjectMap() {
+        Map<String, Object> objectMap = new HashMap<>();
+        objectMap.put("ids", Arrays.asList("ENSG00000130203", "ENSG00000105409"));
+        objectMap.put("regions", Arrays.asList("19:45409011-45412650", "19:45411941-45411941"));
+        objectMap.put("limit", "10");
+        objectMap.put("skip", "0");
+        objectMap.put("count", "false");
+        objectMap.put("excludes", Arrays.asList("_id", "_chunkIds"));
+        return objectMap;
+    }
+
+    private Map<String, QueryParser> createParsers() {
+        Map<String, QueryParser> parsers = new LinkedHashMap<>();
+        parsers.put("GeneQuery", GeneQuery::new);
+        parsers.put("TranscriptQuery", TranscriptQuery::new);
+        parsers.put("VariantQuery", VariantQuery::new);
+        parsers.put("ClinicalVariantQuery", ClinicalVariantQuery::new);
+        parsers.put("ProteinQuery", ProteinQuery::new);
+        parsers.put("RegulationQuery", RegulationQuery::new);
+        parsers.put("TfbsQuery", TfbsQuery::new);
+        parsers.put("XrefQuery", XrefQuery::new);
+        parsers.put("RepeatsQuery", RepeatsQuery::new);
+        parsers.put("GenomeQuery", GenomeQuery::new);
+        parsers.put("OntologyQuery", OntologyQuery::new);
+        return parsers;
+    }
+}
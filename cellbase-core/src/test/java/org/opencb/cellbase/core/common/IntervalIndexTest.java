@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.common;
+
+import org.junit.jupiter.api.Test;
+import org.opencb.biodata.models.core.Region;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IntervalIndexTest {
+
+    @Test
+    public void testQuery() {
+        List<Region> regions = Arrays.asList(
+                new Region("1", 100, 200),
+                new Region("1", 150, 160),
+                new Region("2", 100, 200),
+                new Region("1", 1, 50),
+                new Region("1", 201, 300));
+        IntervalIndex<Region> index = new IntervalIndex<>(regions, Region::getChromosome, Region::getStart, Region::getEnd);
+
+        assertEquals(Arrays.asList(regions.get(0), regions.get(1)), index.query("1", 155, 155));
+        assertEquals(Arrays.asList(regions.get(0), regions.get(4)), index.query("1", 200, 201));
+        assertEquals(Arrays.asList(regions.get(0), regions.get(3)), index.query("1", 50, 100));
+        assertEquals(Collections.singletonList(regions.get(2)), index.query("2", 1, 100));
+        assertTrue(index.query("1", 301, 400).isEmpty());
+        assertTrue(index.query("X", 1, 1000).isEmpty());
+    }
+
+    @Test
+    public void testQueryMatchesLinearScan() {
+        Random random = new Random(42);
+        for (int size : new int[]{0, 1, 2, 7, 8, 9, 100, 1000}) {
+            List<Region> regions = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                int start = 1 + random.nextInt(100000);
+                int length = random.nextInt(10) == 0 ? random.nextInt(50000) : random.nextInt(2000);
+                regions.add(new Region(random.nextBoolean() ? "1" : "2", start, start + length));
+            }
+            IntervalIndex<Region> index = new IntervalIndex<>(regions, Region::getChromosome, Region::getStart, Region::getEnd);
+
+            for (int i = 0; i < 200; i++) {
+                String chromosome = random.nextBoolean() ? "1" : "2";
+                int start = 1 + random.nextInt(110000);
+                int end = start + random.nextInt(10000);
+
+                List<Region> expected = new ArrayList<>();
+                for (Region region : regions) {
+                    if (region.getChromosome().equals(chromosome) && region.getStart() <= end && region.getEnd() >= start) {
+                        expected.add(region);
+                    }
+                }
+                assertEquals(expected, index.query(chromosome, start, end));
+            }
+        }
+    }
+
+    @Test
+    public void testColumnarQuery() {
+        String[] chromosomes = {"1", "1", "2", "1", "1"};
+        int[] starts = {100, 150, 100, 1, 201};
+        int[] ends = {200, 160, 200, 50, 300};
+        IntervalIndex<String> index = new IntervalIndex<>(starts.length, id -> chromosomes[id] + ":" + starts[id] + "-" + ends[id],
+                id -> chromosomes[id], id -> starts[id], id -> ends[id]);
+
+        assertEquals(5, index.size());
+        assertEquals(Arrays.asList("1:100-200", "1:150-160"), index.query("1", 155, 155));
+        assertEquals(Arrays.asList("1:100-200", "1:1-50"), index.query("1", 50, 100));
+        assertTrue(index.query("X", 1, 1000).isEmpty());
+        assertEquals(4 * (4 * 4 + 16) + 4 * (4 + 16), index.getIndexSize());
+    }
+}
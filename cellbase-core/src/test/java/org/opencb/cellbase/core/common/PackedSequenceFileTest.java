@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PackedSequenceFileTest {
+
+    @Test
+    public void testGetSequence() throws Exception {
+        Path path = Files.createTempFile("genome_sequence", ".cbseq");
+        try {
+            String sequence1 = "NNNNACGTacgtnnRYACGTTTGCAN";
+            String sequence2 = randomSequence(new Random(7), 10001);
+            try (PackedSequenceFile.Writer writer = new PackedSequenceFile.Writer(path)) {
+                writer.write("1", "chromosome", "GRCh38", sequence1);
+                writer.write("MT", "chromosome", "GRCh38", sequence2);
+            }
+
+            PackedSequenceFile sequenceFile = new PackedSequenceFile(path);
+            assertEquals(sequence1.length(), sequenceFile.getLength("1"));
+            assertEquals("GRCh38", sequenceFile.getAssembly("MT"));
+            assertEquals("chromosome", sequenceFile.getSequenceType("1"));
+            assertFalse(sequenceFile.contains("2"));
+
+            assertEquals(sequence1, sequenceFile.getSequence("1", 1, sequence1.length()));
+            assertEquals("NACGTac", sequenceFile.getSequence("1", 4, 10));
+            assertEquals("gtnnRY", sequenceFile.getSequence("1", 11, 16));
+            // End beyond the sequence length is truncated, start beyond it returns nothing
+            assertEquals("GCAN", sequenceFile.getSequence("1", 23, 100));
+            assertNull(sequenceFile.getSequence("1", 27, 30));
+            assertNull(sequenceFile.getSequence("2", 1, 10));
+
+            Random random = new Random(11);
+            for (int i = 0; i < 1000; i++) {
+                int start = 1 + random.nextInt(sequence2.length());
+                int end = Math.min(sequence2.length(), start + random.nextInt(300));
+                assertEquals(sequence2.substring(start - 1, end), sequenceFile.getSequence("MT", start, end));
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private String randomSequence(Random random, int length) {
+        String alphabet = "ACGTACGTACGTacgtNnRYKM";
+        StringBuilder sequence = new StringBuilder(length);
+        while (sequence.length() < length) {
+            char nucleotide = alphabet.charAt(random.nextInt(alphabet.length()));
+            // Runs, to get N and soft-masked blocks
+            int run = random.nextInt(20) == 0 ? random.nextInt(200) : 1;
+            for (int i = 0; i < run && sequence.length() < length; i++) {
+                sequence.append(nucleotide);
+            }
+        }
+        return sequence.toString();
+    }
+}
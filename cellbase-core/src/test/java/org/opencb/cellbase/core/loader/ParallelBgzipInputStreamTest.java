@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.loader;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelBgzipInputStreamTest {
+
+    @Test
+    public void testRead() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            content.append("{\"chromosome\":\"1\",\"start\":").append(i).append(",\"reference\":\"A\"}\n");
+        }
+        byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+
+        Path bgzipFile = Files.createTempFile("variation", ".json.gz");
+        Path gzipFile = Files.createTempFile("variation", ".json.gz");
+        try {
+            writeBgzip(bgzipFile, bytes);
+            try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(gzipFile))) {
+                outputStream.write(bytes);
+            }
+
+            assertTrue(ParallelBgzipInputStream.isBgzip(bgzipFile));
+            assertFalse(ParallelBgzipInputStream.isBgzip(gzipFile));
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ParallelBgzipInputStream(bgzipFile, 4)))) {
+                BufferedReader expectedReader = new BufferedReader(new StringReader(content.toString()));
+                String line;
+                int numLines = 0;
+                while ((line = reader.readLine()) != null) {
+                    assertEquals(expectedReader.readLine(), line);
+                    numLines++;
+                }
+                assertEquals(100000, numLines);
+            }
+        } finally {
+            Files.delete(bgzipFile);
+            Files.delete(gzipFile);
+        }
+    }
+
+    private void writeBgzip(Path path, byte[] bytes) throws IOException {
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(path))) {
+            int blockSize = 60000;
+            for (int offset = 0; offset < bytes.length; offset += blockSize) {
+                writeBgzipBlock(outputStream, bytes, offset, Math.min(blockSize, bytes.length - offset));
+            }
+            // Empty EOF block
+            writeBgzipBlock(outputStream, bytes, 0, 0);
+        }
+    }
+
+    private void writeBgzipBlock(OutputStream outputStream, byte[] bytes, int offset, int length) throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(bytes, offset, length);
+        deflater.finish();
+        byte[] compressed = new byte[65536];
+        int compressedLength = deflater.deflate(compressed);
+        deflater.end();
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes, offset, length);
+
+        int blockSize = 18 + compressedLength + 8;
+        ByteArrayOutputStream block = new ByteArrayOutputStream(blockSize);
+        block.write(new byte[]{0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0});
+        writeShort(block, blockSize - 1);
+        block.write(compressed, 0, compressedLength);
+        writeInt(block, (int) crc32.getValue());
+        writeInt(block, length);
+        block.writeTo(outputStream);
+    }
+
+    private void writeShort(OutputStream outputStream, int value) throws IOException {
+        outputStream.write(value & 0xff);
+        outputStream.write((value >> 8) & 0xff);
+    }
+
+    private void writeInt(OutputStream outputStream, int value) throws IOException {
+        writeShort(outputStream, value & 0xffff);
+        writeShort(outputStream, (value >> 16) & 0xffff);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.variant;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantBuilder;
+import org.opencb.biodata.models.variant.avro.EvidenceEntry;
+import org.opencb.biodata.models.variant.avro.Property;
+import org.opencb.biodata.models.variant.avro.SampleEntry;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class PhasedQueryManagerTest {
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Test
+    public void testClinicalPhasedQuery() {
+        // Pairs of variants forming an MNV, the second pair is not in cis
+        List<Variant> variantList = createBatch(4);
+        List<CellBaseDataResult<Variant>> results = new ClinicalPhasedQueryManager().run(variantList, createResults(variantList));
+
+        assertEquals(1, results.get(0).getNumResults());
+        assertEquals(1, results.get(1).getNumResults());
+        assertEquals(0, results.get(2).getNumResults());
+        assertEquals(0, results.get(3).getNumResults());
+    }
+
+    @Test
+    public void testMissingHaplotypeVariant() {
+        // The second variant of the MNV is not part of the input batch
+        List<Variant> variantList = createBatch(2).subList(0, 1);
+        List<CellBaseDataResult<Variant>> results = new ClinicalPhasedQueryManager().run(variantList,
+                createResults(createBatch(2)).subList(0, 1));
+        assertEquals(0, results.get(0).getNumResults());
+    }
+
+    @Test
+    public void testBatchSize() {
+        ClinicalPhasedQueryManager queryManager = new ClinicalPhasedQueryManager();
+        for (int batchSize : new int[]{10, 100, 1000}) {
+            List<Variant> variantList = createBatch(batchSize);
+            List<CellBaseDataResult<Variant>> results = queryManager.run(variantList, createResults(variantList));
+
+            assertEquals(batchSize, results.size());
+            // Only the MNVs in cis are kept
+            for (int i = 0; i < batchSize; i++) {
+                assertEquals((i / 2) % 2 == 0 ? 1 : 0, results.get(i).getNumResults(), variantList.get(i).toString());
+            }
+        }
+    }
+
+    /**
+     * Compares the hash indexed matching of input variants with a linear search over the batch, as it was done before.
+     */
+    @Test
+    @Tag("benchmark")
+    public void benchmarkBatchSize() {
+        ClinicalPhasedQueryManager queryManager = new ClinicalPhasedQueryManager();
+        for (int batchSize : new int[]{10, 100, 1000, 10000}) {
+            List<Variant> variantList = createBatch(batchSize);
+
+            // Warm up
+            queryManager.run(variantList, createResults(variantList));
+
+            List<CellBaseDataResult<Variant>> results = createResults(variantList);
+            long start = System.nanoTime();
+            int numMatches = linearSearch(variantList, results);
+            long linearTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            queryManager.run(variantList, results);
+            long indexedTime = System.nanoTime() - start;
+
+            assertEquals(batchSize, numMatches);
+            logger.info("{} variants: linear search {} us, hash index {} us", batchSize, linearTime / 1000, indexedTime / 1000);
+        }
+    }
+
+    private int linearSearch(List<Variant> variantList, List<CellBaseDataResult<Variant>> results) {
+        int numMatches = 0;
+        for (CellBaseDataResult<Variant> result : results) {
+            EvidenceEntry evidenceEntry = result.getResults().get(0).getAnnotation().getTraitAssociation().get(0);
+            for (Variant databaseVariant : Variant.parseVariants(evidenceEntry.getAdditionalProperties().get(0).getValue())) {
+                for (Variant variant : variantList) {
+                    if (databaseVariant.getChromosome().equals(variant.getChromosome())
+                            && databaseVariant.getStart().equals(variant.getStart())
+                            && databaseVariant.getReference().equals(variant.getReference())
+                            && databaseVariant.getAlternate().equals(variant.getAlternate())) {
+                        PhasedQueryManager.getSampleAttribute(variant, PhasedQueryManager.PHASE_SET_TAG);
+                        numMatches++;
+                        break;
+                    }
+                }
+            }
+        }
+        // Each variant is found once per variant of its MNV
+        return numMatches / 2;
+    }
+
+    /**
+     * Every two consecutive variants form a phased MNV. Alternate alleles of even MNVs are in the same chromosome copy,
+     * those of odd MNVs in different copies.
+     */
+    private List<Variant> createBatch(int size) {
+        List<Variant> variantList = new ArrayList<>(size);
+        for (int i = 0; i < size; i += 2) {
+            int start = 1000 + i * 10;
+            String phaseSet = String.valueOf(start);
+            variantList.add(createVariant(start, "A", "C", phaseSet, "0|1"));
+            variantList.add(createVariant(start + 1, "G", "T", phaseSet, (i / 2) % 2 == 0 ? "0|1" : "1|0"));
+        }
+        return variantList;
+    }
+
+    private Variant createVariant(int start, String reference, String alternate, String phaseSet, String genotype) {
+        VariantBuilder variantBuilder = new VariantBuilder("1", start, start, reference, alternate);
+        variantBuilder.setSampleDataKeys(Arrays.asList(PhasedQueryManager.PHASE_SET_TAG, PhasedQueryManager.GENOTYPE_TAG));
+        variantBuilder.setSamples(Collections.singletonList(new SampleEntry(null, null, Arrays.asList(phaseSet, genotype))));
+        return variantBuilder.build();
+    }
+
+    /**
+     * @return one result per input variant, annotated with a ClinVar-like evidence that belongs to the input MNV
+     */
+    private List<CellBaseDataResult<Variant>> createResults(List<Variant> variantList) {
+        List<CellBaseDataResult<Variant>> results = new ArrayList<>(variantList.size());
+        for (int i = 0; i < variantList.size(); i++) {
+            Variant variant = variantList.get(i);
+            int mnvStart = i % 2 == 0 ? variant.getStart() : variant.getStart() - 1;
+            String haplotype = "1:" + mnvStart + ":A:C," + "1:" + (mnvStart + 1) + ":G:T";
+
+            EvidenceEntry evidenceEntry = new EvidenceEntry();
+            evidenceEntry.setAdditionalProperties(new ArrayList<>(Collections.singletonList(new Property(null, "haplotype",
+                    haplotype))));
+            VariantAnnotation variantAnnotation = new VariantAnnotation();
+            variantAnnotation.setTraitAssociation(new ArrayList<>(Collections.singletonList(evidenceEntry)));
+            Variant databaseVariant = new Variant(variant.getChromosome(), variant.getStart(), variant.getReference(),
+                    variant.getAlternate());
+            databaseVariant.setAnnotation(variantAnnotation);
+
+            results.add(new CellBaseDataResult<>(variant.toString(), 0, new ArrayList<>(), 1,
+                    new ArrayList<>(Collections.singletonList(databaseVariant)), 1));
+        }
+        return results;
+    }
+}
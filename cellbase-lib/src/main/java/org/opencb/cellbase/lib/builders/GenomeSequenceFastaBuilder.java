@@ -17,6 +17,7 @@
 package org.opencb.cellbase.lib.builders;
 
 import org.opencb.biodata.models.core.GenomeSequenceChunk;
+import org.opencb.cellbase.core.common.PackedSequenceFile;
 import org.opencb.cellbase.core.serializer.CellBaseSerializer;
 import org.opencb.commons.utils.FileUtils;
 
@@ -27,12 +28,25 @@ import java.nio.file.Path;
 public class GenomeSequenceFastaBuilder extends CellBaseBuilder {
 
     private Path genomeReferenceFastaFile;
+    private Path packedSequenceFile;
+    private PackedSequenceFile.Writer packedSequenceWriter;
 
     private static final int CHUNK_SIZE = 2000;
 
     public GenomeSequenceFastaBuilder(Path genomeReferenceFastaFile, CellBaseSerializer serializer) {
+        this(genomeReferenceFastaFile, null, serializer);
+    }
+
+    /**
+     * @param genomeReferenceFastaFile genome FASTA file
+     * @param packedSequenceFile if not null, the sequence is also written to this file in packed format, so that it can
+     *                           be served locally without querying the database
+     * @param serializer genome_sequence chunks serializer
+     */
+    public GenomeSequenceFastaBuilder(Path genomeReferenceFastaFile, Path packedSequenceFile, CellBaseSerializer serializer) {
         super(serializer);
         this.genomeReferenceFastaFile = genomeReferenceFastaFile;
+        this.packedSequenceFile = packedSequenceFile;
     }
 
     @Override
@@ -48,6 +62,9 @@ public class GenomeSequenceFastaBuilder extends CellBaseBuilder {
             // Preparing input and output files
             BufferedReader br;
             br = FileUtils.newBufferedReader(genomeReferenceFastaFile);
+            if (packedSequenceFile != null) {
+                packedSequenceWriter = new PackedSequenceFile.Writer(packedSequenceFile);
+            }
 
             while ((line = br.readLine()) != null) {
 
@@ -80,6 +97,10 @@ public class GenomeSequenceFastaBuilder extends CellBaseBuilder {
             }
 
             br.close();
+            if (packedSequenceWriter != null) {
+                packedSequenceWriter.close();
+                logger.info("Genome sequence written in packed format to {}", packedSequenceFile);
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -87,6 +108,10 @@ public class GenomeSequenceFastaBuilder extends CellBaseBuilder {
 
     private void serializeGenomeSequence(String chromosome, String sequenceType, String sequenceAssembly, String sequence)
             throws IOException {
+        if (packedSequenceWriter != null) {
+            packedSequenceWriter.write(chromosome, sequenceType, sequenceAssembly, sequence);
+        }
+
         int chunk = 0;
         int start = 1;
         int end = CHUNK_SIZE - 1;
@@ -31,18 +31,14 @@ import org.opencb.cellbase.core.api.core.VariantDBAdaptor;
 import org.opencb.cellbase.core.api.queries.CellBaseIterator;
 import org.opencb.cellbase.core.api.queries.ClinicalVariantQuery;
 import org.opencb.cellbase.core.api.queries.ProjectionQueryOptions;
-import org.opencb.cellbase.core.config.CellBaseConfiguration;
-import org.opencb.cellbase.core.exception.CellbaseException;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.core.variant.ClinicalPhasedQueryManager;
-import org.opencb.cellbase.lib.managers.CellBaseManagerFactory;
 import org.opencb.cellbase.lib.managers.GenomeManager;
 import org.opencb.cellbase.lib.variant.annotation.hgvs.HgvsCalculator;
+import org.opencb.commons.datastore.core.DataResult;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryParam;
-import org.opencb.commons.datastore.mongodb.GenericDocumentComplexConverter;
-import org.opencb.commons.datastore.mongodb.MongoDBIterator;
 import org.opencb.commons.datastore.mongodb.MongoDataStore;
 
 import java.util.*;
@@ -62,13 +58,11 @@ public class ClinicalMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCo
     private GenomeManager genomeManager;
 
 
-    public ClinicalMongoDBAdaptor(String species, String assembly, MongoDataStore mongoDataStore,
-                                  CellBaseConfiguration configuration) throws CellbaseException {
+    public ClinicalMongoDBAdaptor(String species, String assembly, MongoDataStore mongoDataStore, GenomeManager genomeManager) {
         super(species, assembly, mongoDataStore);
         mongoDBCollection = mongoDataStore.getCollection("clinical_variants");
         logger.debug("ClinicalMongoDBAdaptor: in 'constructor'");
-        CellBaseManagerFactory cellBaseManagerFactory = new CellBaseManagerFactory(configuration);
-        genomeManager = cellBaseManagerFactory.getGenomeManager(species, assembly);
+        this.genomeManager = genomeManager;
     }
 
     public CellBaseDataResult<Variant> next(Query query, QueryOptions options) {
@@ -334,10 +328,11 @@ public class ClinicalMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCo
         return executeAggregation2("", pipeline, queryOptions);
     }
 
-    private CellBaseDataResult<Variant> getClinicalVariant(Variant variant,
-                                                    GenomeManager genomeManager,
-                                                    List<Gene> geneList,
-                                                    QueryOptions options) {
+    // Package-private so that the batch can be tested against it
+    CellBaseDataResult<Variant> getClinicalVariant(Variant variant,
+                                                   GenomeManager genomeManager,
+                                                   List<Gene> geneList,
+                                                   QueryOptions options) {
         Query query;
         if (VariantType.CNV.equals(variant.getType())) {
             query = new Query(VariantDBAdaptor.QueryParams.CHROMOSOME.key(), variant.getChromosome())
@@ -397,10 +392,7 @@ public class ClinicalMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCo
 
     public List<CellBaseDataResult<Variant>> getByVariant(List<Variant> variants, List<Gene> geneList,
                                                    QueryOptions queryOptions) {
-        List<CellBaseDataResult<Variant>> results = new ArrayList<>(variants.size());
-        for (Variant variant: variants) {
-            results.add(getClinicalVariant(variant, genomeManager, geneList, queryOptions));
-        }
+        List<CellBaseDataResult<Variant>> results = getClinicalVariantBatch(variants, geneList, queryOptions);
         if (queryOptions.get(ClinicalDBAdaptor.QueryParams.PHASE.key()) != null
                 && (Boolean) queryOptions.get(ClinicalDBAdaptor.QueryParams.PHASE.key())) {
             results = phasedQueryManager.run(variants, results);
@@ -409,17 +401,127 @@ public class ClinicalMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCo
         return results;
     }
 
+    /**
+     * Batched version of getClinicalVariant. Genomic matches of all the short variants are fetched with a single query,
+     * protein HGVS are calculated for the whole batch with one HgvsCalculator and amino acid change matches are then
+     * fetched with a single query too. CNVs keep being queried one by one.
+     * @param variants list of Variant objects to query
+     * @param geneList genes overlapping the variants, needed to calculate protein HGVS
+     * @param options query options, e.g. checkAminoAcidChange={true, false}
+     * @return list of CellBaseDataResult of Variant objects. Positions within the list always correspond to the
+     * position Variant objects occupy in the "variants" query list.
+     */
+    private List<CellBaseDataResult<Variant>> getClinicalVariantBatch(List<Variant> variants, List<Gene> geneList,
+                                                                      QueryOptions options) {
+        List<CellBaseDataResult<Variant>> results = new ArrayList<>(Collections.nCopies(variants.size(), null));
+
+        boolean checkAminoAcidChange = options.get(ClinicalDBAdaptor.QueryParams.CHECK_AMINO_ACID_CHANGE.key()) != null
+                && (Boolean) options.get(ClinicalDBAdaptor.QueryParams.CHECK_AMINO_ACID_CHANGE.key())
+                && genomeManager != null
+                && geneList != null
+                && !geneList.isEmpty();
+        HgvsCalculator hgvsCalculator = checkAminoAcidChange ? new HgvsCalculator(genomeManager) : null;
+
+        // Chromosome -> start positions, LinkedHashMap keeps the order of the input
+        Map<String, Set<Integer>> genomicPositions = new LinkedHashMap<>();
+        List<Integer> genomicIndexes = new ArrayList<>();
+        Map<Integer, List<String>> proteinHgvsByIndex = new LinkedHashMap<>();
+        for (int i = 0; i < variants.size(); i++) {
+            Variant variant = variants.get(i);
+            if (VariantType.CNV.equals(variant.getType())) {
+                results.set(i, getClinicalVariant(variant, genomeManager, geneList, options));
+                continue;
+            }
+            if (checkAminoAcidChange) {
+                List<String> proteinHgvsList = getProteinHgvs(hgvsCalculator.run(variant, geneList));
+                // The protein hgvs query is enough to solve the variant match if it is a protein coding variant
+                if (!proteinHgvsList.isEmpty()) {
+                    proteinHgvsByIndex.put(i, proteinHgvsList);
+                    continue;
+                }
+            }
+            genomicPositions.computeIfAbsent(variant.getChromosome(), k -> new LinkedHashSet<>()).add(variant.getStart());
+            genomicIndexes.add(i);
+        }
+
+        // Key fields are needed to match returned documents back to the input variants
+        QueryOptions batchOptions = addPrivateExcludeOptions(parseQueryOptions(options, new Query()), PRIVATE_CLINICAL_FIELDS);
+        if (StringUtils.isNotEmpty(batchOptions.getString(QueryOptions.INCLUDE))) {
+            batchOptions.put(QueryOptions.INCLUDE, batchOptions.getString(QueryOptions.INCLUDE)
+                    + ",chromosome,start,reference,alternate,annotation.hgvs");
+        }
+
+        if (!genomicIndexes.isEmpty()) {
+            List<Bson> orBsonList = new ArrayList<>(genomicPositions.size());
+            for (Map.Entry<String, Set<Integer>> entry : genomicPositions.entrySet()) {
+                orBsonList.add(Filters.and(Filters.eq("chromosome", entry.getKey()), Filters.in("start", entry.getValue())));
+            }
+            long dbTimeStart = System.currentTimeMillis();
+            DataResult<Variant> dataResult = mongoDBCollection.find(Filters.or(orBsonList), null, Variant.class, batchOptions);
+            int dbTime = (int) (System.currentTimeMillis() - dbTimeStart);
+
+            Map<String, List<Variant>> keyToVariants = new HashMap<>();
+            for (Variant variant : dataResult.getResults()) {
+                keyToVariants.computeIfAbsent(getVariantKey(variant), k -> new ArrayList<>()).add(variant);
+            }
+            for (int index : genomicIndexes) {
+                List<Variant> matches = keyToVariants.getOrDefault(getVariantKey(variants.get(index)), new ArrayList<>());
+                results.set(index, createResult(variants.get(index), dbTime, matches, dataResult.getNumMatches()));
+            }
+        }
+
+        if (!proteinHgvsByIndex.isEmpty()) {
+            Set<String> proteinHgvsSet = new LinkedHashSet<>();
+            proteinHgvsByIndex.values().forEach(proteinHgvsSet::addAll);
+            long dbTimeStart = System.currentTimeMillis();
+            DataResult<Variant> dataResult = mongoDBCollection.find(Filters.in("annotation.hgvs", proteinHgvsSet), null,
+                    Variant.class, batchOptions);
+            int dbTime = (int) (System.currentTimeMillis() - dbTimeStart);
+
+            Map<String, List<Variant>> hgvsToVariants = new HashMap<>();
+            for (Variant variant : dataResult.getResults()) {
+                if (variant.getAnnotation() != null && variant.getAnnotation().getHgvs() != null) {
+                    for (String hgvs : new LinkedHashSet<>(variant.getAnnotation().getHgvs())) {
+                        hgvsToVariants.computeIfAbsent(hgvs, k -> new ArrayList<>()).add(variant);
+                    }
+                }
+            }
+            for (Map.Entry<Integer, List<String>> entry : proteinHgvsByIndex.entrySet()) {
+                // Keep the order in which documents were returned, a document may match several protein HGVS
+                Set<Variant> matches = Collections.newSetFromMap(new IdentityHashMap<>());
+                for (String hgvs : entry.getValue()) {
+                    matches.addAll(hgvsToVariants.getOrDefault(hgvs, Collections.emptyList()));
+                }
+                List<Variant> sortedMatches = new ArrayList<>(matches.size());
+                for (Variant variant : dataResult.getResults()) {
+                    if (matches.contains(variant)) {
+                        sortedMatches.add(variant);
+                    }
+                }
+                results.set(entry.getKey(), createResult(variants.get(entry.getKey()), dbTime, sortedMatches,
+                        dataResult.getNumMatches()));
+            }
+        }
+
+        logger.debug("Clinical variants of {} variants resolved with {} genomic and {} protein HGVS matches", variants.size(),
+                genomicIndexes.size(), proteinHgvsByIndex.size());
+        return results;
+    }
+
+    private CellBaseDataResult<Variant> createResult(Variant variant, int dbTime, List<Variant> matches, long batchNumMatches) {
+        // Mirror numMatches as returned by a single-variant find: -1 whenever count was skipped
+        long numMatches = batchNumMatches < 0 ? batchNumMatches : matches.size();
+        return new CellBaseDataResult<>(variant.toString(), dbTime, new ArrayList<>(), matches.size(), matches, numMatches);
+    }
+
+    private String getVariantKey(Variant variant) {
+        return variant.getChromosome() + ":" + variant.getStart() + ":" + variant.getReference() + ":" + variant.getAlternate();
+    }
+
     @Override
     public CellBaseIterator iterator(ClinicalVariantQuery query) {
         Bson bson = parseQuery(query);
-        QueryOptions queryOptions = query.toQueryOptions();
-        Bson projection = getProjection(query);
-        GenericDocumentComplexConverter<org.opencb.biodata.models.clinical.interpretation.ClinicalVariant> converter
-                = new GenericDocumentComplexConverter<>(
-                org.opencb.biodata.models.clinical.interpretation.ClinicalVariant.class);
-        MongoDBIterator<ClinicalVariant> iterator = mongoDBCollection.iterator(null, bson, projection,
-                converter, queryOptions);
-        return new CellBaseIterator<>(iterator);
+        return iterator(mongoDBCollection, bson, query, ClinicalVariant.class);
     }
 
     @Override
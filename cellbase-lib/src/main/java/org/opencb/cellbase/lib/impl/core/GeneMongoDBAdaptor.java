@@ -27,6 +27,7 @@ import org.opencb.cellbase.core.api.core.CellBaseCoreDBAdaptor;
 import org.opencb.cellbase.core.api.core.VariantDBAdaptor;
 import org.opencb.cellbase.core.api.queries.*;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.cellbase.lib.MongoDBCollectionConfiguration;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryParam;
@@ -79,17 +80,24 @@ public class GeneMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCoreDB
     @Override
     public CellBaseIterator<Gene> iterator(GeneQuery query) {
         Bson bson = parseQuery(query);
-        QueryOptions queryOptions = query.toQueryOptions();
-        Bson projection = getProjection(query);
-        GenericDocumentComplexConverter<Gene> converter = new GenericDocumentComplexConverter<>(Gene.class);
-        MongoDBIterator<Gene> iterator = null;
-        if (query.getSource() != null && !query.getSource().isEmpty() && VariantDBAdaptor.QueryParams.REFSEQ.key()
-                .equalsIgnoreCase(query.getSource().get(0))) {
-            iterator = refseqCollection.iterator(null, bson, projection, converter, queryOptions);
+        if (isRefseq(query)) {
+            return iterator(refseqCollection, bson, query, Gene.class);
         } else {
-            iterator = mongoDBCollection.iterator(null, bson, projection, converter, queryOptions);
+            return iterator(mongoDBCollection, bson, query, Gene.class);
         }
-        return new CellBaseIterator<>(iterator);
+    }
+
+    @Override
+    public List<CellBaseDataResult<Gene>> query(List<GeneQuery> queries) {
+        // Genes are matched by id OR region, and refseq genes have no _chunkIds, so those queries are not merged
+        return new MultiRegionQuery<GeneQuery, Gene>(mongoDBCollection, MongoDBCollectionConfiguration.GENE_CHUNK_SIZE,
+                this::parseQuery, this::query, query -> CollectionUtils.isEmpty(query.getIds()) && !isRefseq(query), Gene.class)
+                .query(queries);
+    }
+
+    private boolean isRefseq(GeneQuery query) {
+        return query.getSource() != null && !query.getSource().isEmpty() && VariantDBAdaptor.QueryParams.REFSEQ.key()
+                .equalsIgnoreCase(query.getSource().get(0));
     }
 
     @Override
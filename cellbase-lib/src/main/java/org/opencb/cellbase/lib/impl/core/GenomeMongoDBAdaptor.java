@@ -36,8 +36,10 @@ import org.opencb.cellbase.core.api.queries.CellBaseIterator;
 import org.opencb.cellbase.core.api.queries.GenomeQuery;
 import org.opencb.cellbase.core.api.queries.ProjectionQueryOptions;
 import org.opencb.cellbase.core.common.DNASequenceUtils;
+import org.opencb.cellbase.core.common.IntervalIndex;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.MongoDBCollectionConfiguration;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryParam;
@@ -47,6 +49,7 @@ import org.opencb.commons.datastore.mongodb.MongoDBIterator;
 import org.opencb.commons.datastore.mongodb.MongoDataStore;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by imedina on 07/12/15.
@@ -62,6 +65,12 @@ public class GenomeMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCore
     private static final String NAME = "name";
     private static final Object CHROMOSOMES = "chromosomes";
     private Document genomeInfo = null;
+    private volatile IntervalIndex<Cytoband> cytobandIndex;
+    // An empty cytoband index, i.e. genome_info not loaded yet, is read again from the database after this time
+    private static final long EMPTY_CYTOBAND_INDEX_RETRY_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private volatile long cytobandIndexRetryTime;
+    // Conservation chunk ids sent in a single $in query
+    private static final int CONSERVATION_CHUNKS_PER_QUERY = 500;
 
     public GenomeMongoDBAdaptor(String species, String assembly, MongoDataStore mongoDataStore) {
         super(species, assembly, mongoDataStore);
@@ -88,37 +97,70 @@ public class GenomeMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCore
     }
 
     public CellBaseDataResult<Cytoband> getCytobands(Region region, QueryOptions queryOptions) {
-        List<Cytoband> cytobandList = new ArrayList<>();
         long dbStartTime = System.currentTimeMillis();
-        long dbTime = System.currentTimeMillis() - dbStartTime;
-        GenomeQuery query = new GenomeQuery();
-        query.setNames(Collections.singletonList(region.getChromosome()));
-        CellBaseDataResult<Chromosome> chromosomeInfo = query(query);
+        IntervalIndex<Cytoband> index = getCytobandIndex();
+        List<Cytoband> cytobandList = new ArrayList<>();
         // May not have info for specified chromosome, e.g. 17_KI270729v1_random
-        if (chromosomeInfo != null && chromosomeInfo.getResults() != null && !chromosomeInfo.getResults().isEmpty()) {
-            Chromosome chromosome = chromosomeInfo.getResults().get(0);
-            List<Cytoband> results = chromosome.getCytobands();
-            for (Cytoband cytoband : results) {
-                if (cytoband.getEnd() >= region.getStart() && cytoband.getStart() <= region.getEnd()) {
-                    cytoband.setChromosome(chromosome.getName());
-                    cytobandList.add(cytoband);
-                }
-            }
-//            int i = 0;
-//            while (i < cytobandDocumentList.size() && ((int) cytobandDocumentList.get(i).get(START)) <= region.getEnd()) {
-//                if (((int) cytobandDocumentList.get(i).get(END)) >= region.getStart()) {
-//                    cytobandList.add(new Cytoband(region.getChromosome(),
-//                            (String) cytobandDocumentList.get(i).get(STAIN),
-//                            (String) cytobandDocumentList.get(i).get(NAME),
-//                            (Integer) cytobandDocumentList.get(i).get(START),
-//                            (Integer) cytobandDocumentList.get(i).get(END)));
-//                }
-//                i++;
-//            }
+        for (Cytoband cytoband : index.query(region.getChromosome(), region.getStart(), region.getEnd())) {
+            // Copies, callers may modify the returned cytobands
+            cytobandList.add(Cytoband.newBuilder(cytoband).build());
         }
+        long dbTime = System.currentTimeMillis() - dbStartTime;
         return new CellBaseDataResult<>(region.toString(), (int) dbTime, Collections.emptyList(), cytobandList.size(), cytobandList,
                 cytobandList.size());
+    }
 
+    /**
+     * Cytobands of all the chromosomes are read once from genome_info, the first time they are needed. While genome_info
+     * is not loaded the empty index is kept and read again every EMPTY_CYTOBAND_INDEX_RETRY_NANOS.
+     * @return the cytoband index, empty if genome_info is not loaded yet
+     */
+    private IntervalIndex<Cytoband> getCytobandIndex() {
+        IntervalIndex<Cytoband> index = cytobandIndex;
+        if (needsCytobandIndex(index)) {
+            synchronized (this) {
+                index = cytobandIndex;
+                if (needsCytobandIndex(index)) {
+                    List<Cytoband> cytobands = new ArrayList<>();
+                    CellBaseIterator<Chromosome> iterator = iterator(new GenomeQuery());
+                    while (iterator.hasNext()) {
+                        Chromosome chromosome = iterator.next();
+                        if (chromosome.getCytobands() != null) {
+                            for (Cytoband cytoband : chromosome.getCytobands()) {
+                                cytoband.setChromosome(chromosome.getName());
+                                cytobands.add(cytoband);
+                            }
+                        }
+                    }
+                    iterator.close();
+                    index = new IntervalIndex<>(cytobands, Cytoband::getChromosome, Cytoband::getStart, Cytoband::getEnd);
+                    if (cytobands.isEmpty()) {
+                        cytobandIndexRetryTime = System.nanoTime() + EMPTY_CYTOBAND_INDEX_RETRY_NANOS;
+                        logger.debug("No cytobands found for {} {}, genome_info is read again in {} s", species, assembly,
+                                TimeUnit.NANOSECONDS.toSeconds(EMPTY_CYTOBAND_INDEX_RETRY_NANOS));
+                    } else {
+                        logger.info("Cytoband index of {} {} loaded: {} cytobands", species, assembly, cytobands.size());
+                    }
+                    cytobandIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    private boolean needsCytobandIndex(IntervalIndex<Cytoband> index) {
+        return index == null || (index.size() == 0 && System.nanoTime() - cytobandIndexRetryTime >= 0);
+    }
+
+    public ObjectMap getCytobandIndexStats() {
+        IntervalIndex<Cytoband> index = cytobandIndex;
+        ObjectMap stats = new ObjectMap();
+        stats.put("loaded", index != null && index.size() > 0);
+        if (index != null && index.size() > 0) {
+            stats.put("numCytobands", index.size());
+            stats.put("residentSize", index.getIndexSize());
+        }
+        return stats;
     }
 
     public List<CellBaseDataResult<Cytoband>> getCytobands(List<Region> regionList) {
@@ -299,6 +341,113 @@ public class GenomeMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCore
         return conservationCellBaseDataResults;
     }
 
+    /**
+     * Batched conservation scores for the annotation. Regions are grouped by the conservation chunk they fall in, every
+     * chunk is fetched once for the whole batch and its values kept as a float[] so that scores of each region are read
+     * by offset.
+     * @param regionList regions, usually one per variant. Regions longer than 10000bp are truncated
+     * @param options query options
+     * @return one result per region in the same order, with one Score per source and position
+     */
+    public List<CellBaseDataResult<Score>> getConservationScores(List<Region> regionList, QueryOptions options) {
+        // Chunk id -> documents in that chunk, LinkedHashMap keeps the order of the input which is usually sorted by position
+        Map<String, List<ConservationChunk>> chunks = new LinkedHashMap<>();
+        for (Region region : regionList) {
+            // positions below 1 are not allowed
+            region.setStart(Math.max(1, region.getStart()));
+            region.setEnd(Math.max(1, region.getEnd()));
+            // Max region size is 10000bp
+            if (region.getEnd() - region.getStart() > 10000) {
+                region.setEnd(region.getStart() + 10000);
+            }
+            for (String chunkId : getConservationChunkIds(region)) {
+                chunks.putIfAbsent(chunkId, new ArrayList<>());
+            }
+        }
+
+        QueryOptions queryOptions = new QueryOptions(options)
+                .append(QueryOptions.INCLUDE, "chromosome,start,source,values,_chunkIds")
+                .append(QueryOptions.EXCLUDE, "_id");
+        List<String> chunkIds = new ArrayList<>(chunks.keySet());
+        long dbTimeStart = System.currentTimeMillis();
+        for (int i = 0; i < chunkIds.size(); i += CONSERVATION_CHUNKS_PER_QUERY) {
+            Bson bson = Filters.in("_chunkIds", chunkIds.subList(i, Math.min(i + CONSERVATION_CHUNKS_PER_QUERY, chunkIds.size())));
+            for (Document document : conservationMongoDBCollection.find(bson, queryOptions).getResults()) {
+                List<?> values = document.get("values", List.class);
+                if (values == null) {
+                    logger.error("values field not present in conservation chunk document: {}:{} {}",
+                            document.getString("chromosome"), document.getInteger("start"), document.getString("source"));
+                    continue;
+                }
+                ConservationChunk chunk = new ConservationChunk(document.getString("source"), document.getInteger("start"),
+                        values);
+                // A document may span more than one chunk
+                for (Object chunkId : document.get("_chunkIds", List.class)) {
+                    List<ConservationChunk> chunkList = chunks.get(chunkId);
+                    if (chunkList != null) {
+                        chunkList.add(chunk);
+                    }
+                }
+            }
+        }
+        int dbTime = (int) (System.currentTimeMillis() - dbTimeStart);
+        logger.debug("Conservation of {} regions fetched with {} chunks in {}ms", regionList.size(), chunkIds.size(), dbTime);
+
+        List<CellBaseDataResult<Score>> results = new ArrayList<>(regionList.size());
+        for (Region region : regionList) {
+            Set<ConservationChunk> chunkSet = new LinkedHashSet<>();
+            for (String chunkId : getConservationChunkIds(region)) {
+                chunkSet.addAll(chunks.get(chunkId));
+            }
+            List<ConservationChunk> regionChunks = new ArrayList<>(chunkSet);
+            // Scores of the same source are returned together, sorted by position
+            regionChunks.sort(Comparator.comparing((ConservationChunk chunk) -> chunk.source).thenComparingInt(chunk -> chunk.start));
+
+            List<Score> scores = new ArrayList<>();
+            for (ConservationChunk chunk : regionChunks) {
+                int from = Math.max(region.getStart(), chunk.start) - chunk.start;
+                int to = Math.min(region.getEnd(), chunk.start + chunk.values.length - 1) - chunk.start;
+                for (int offset = from; offset <= to; offset++) {
+                    if (!Float.isNaN(chunk.values[offset])) {
+                        scores.add(new Score((double) chunk.values[offset], chunk.source, null));
+                    }
+                }
+            }
+            results.add(new CellBaseDataResult<>(region.toString(), dbTime, new ArrayList<>(), scores.size(), scores, -1));
+        }
+        return results;
+    }
+
+    private List<String> getConservationChunkIds(Region region) {
+        int chunkSize = MongoDBCollectionConfiguration.CONSERVATION_CHUNK_SIZE;
+        int startChunkId = getChunkId(region.getStart(), chunkSize);
+        int endChunkId = getChunkId(region.getEnd(), chunkSize);
+        List<String> chunkIds = new ArrayList<>(endChunkId - startChunkId + 1);
+        for (int chunkId = startChunkId; chunkId <= endChunkId; chunkId++) {
+            chunkIds.add(getChunkIdPrefix(region.getChromosome(), chunkId * chunkSize, chunkSize));
+        }
+        return chunkIds;
+    }
+
+    /**
+     * Scores of one conservation document, missing values are NaN.
+     */
+    private static final class ConservationChunk {
+        private final String source;
+        private final int start;
+        private final float[] values;
+
+        ConservationChunk(String source, int start, List<?> values) {
+            this.source = source;
+            this.start = start;
+            this.values = new float[values.size()];
+            for (int i = 0; i < this.values.length; i++) {
+                Object value = values.get(i);
+                this.values[i] = value != null ? ((Number) value).floatValue() : Float.NaN;
+            }
+        }
+    }
+
     public List<CellBaseDataResult> getAllScoresByRegionList(List regionList, QueryOptions options) {
         //TODO not finished yet
         List<Document> queries = new ArrayList<>();
@@ -20,15 +20,15 @@ import com.mongodb.client.model.Filters;
 import org.bson.conversions.Bson;
 import org.opencb.biodata.models.core.MissenseVariantFunctionalScore;
 import org.opencb.biodata.models.core.TranscriptMissenseVariantFunctionalScore;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.ProteinVariantAnnotation;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.variant.annotation.VariantAnnotationUtils;
 import org.opencb.commons.datastore.core.DataResult;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.mongodb.MongoDataStore;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
 
 public class MissenseVariationFunctionalScoreMongoDBAdaptor extends MongoDBAdaptor {
 
@@ -65,21 +65,85 @@ public class MissenseVariationFunctionalScoreMongoDBAdaptor extends MongoDBAdapt
         DataResult<MissenseVariantFunctionalScore> missenseVariantFunctionalScoreDataResult =
                 mongoDBCollection.find(query, null, MissenseVariantFunctionalScore.class, new QueryOptions());
 
-        // Search for the right aa change
+        TranscriptMissenseVariantFunctionalScore transcriptScore = getScore(missenseVariantFunctionalScoreDataResult.getResults(),
+                aaReference, aaAlternate);
+        if (transcriptScore != null) {
+            return new CellBaseDataResult<>(id, -1, new ArrayList<>(), 1, Collections.singletonList(transcriptScore), 1);
+        }
+        return new CellBaseDataResult<>(id, -1, new ArrayList<>(), 0, null, 0);
+    }
+
+    /**
+     * Batch version of getScores, the scores of all the variants are fetched with one query, each position once.
+     *
+     * @param variants variants
+     * @param proteinVariants reference and alternate aa of each variant
+     * @return one result per variant, in the same order
+     */
+    public List<CellBaseDataResult<TranscriptMissenseVariantFunctionalScore>> getScores(List<Variant> variants,
+                                                                                        List<ProteinVariantAnnotation> proteinVariants) {
+        // Positions of each chromosome, without duplicates
+        Map<String, Set<Integer>> positionsByChromosome = new LinkedHashMap<>();
+        for (Variant variant : variants) {
+            positionsByChromosome.computeIfAbsent(variant.getChromosome(), k -> new LinkedHashSet<>()).add(variant.getStart());
+        }
+        Map<String, List<MissenseVariantFunctionalScore>> scoresByPosition = new HashMap<>();
+        if (!positionsByChromosome.isEmpty()) {
+            List<Bson> orBsonList = new ArrayList<>(positionsByChromosome.size());
+            for (Map.Entry<String, Set<Integer>> entry : positionsByChromosome.entrySet()) {
+                orBsonList.add(Filters.and(Filters.eq("chromosome", entry.getKey()),
+                        Filters.in("position", new ArrayList<>(entry.getValue()))));
+            }
+            Bson query = orBsonList.size() == 1 ? orBsonList.get(0) : Filters.or(orBsonList);
+            DataResult<MissenseVariantFunctionalScore> dataResult = mongoDBCollection.find(query, null,
+                    MissenseVariantFunctionalScore.class, new QueryOptions());
+            for (MissenseVariantFunctionalScore score : dataResult.getResults()) {
+                scoresByPosition.computeIfAbsent(score.getChromosome() + ":" + score.getPosition() + ":" + score.getReference(),
+                        k -> new ArrayList<>()).add(score);
+            }
+        }
+
+        List<CellBaseDataResult<TranscriptMissenseVariantFunctionalScore>> results = new ArrayList<>(variants.size());
+        for (int i = 0; i < variants.size(); i++) {
+            Variant variant = variants.get(i);
+            String id = variant.getChromosome() + ":" + variant.getStart() + ":" + variant.getReference() + ":" + variant.getAlternate();
+            List<MissenseVariantFunctionalScore> scores = scoresByPosition.get(variant.getChromosome() + ":" + variant.getStart() + ":"
+                    + variant.getReference());
+            TranscriptMissenseVariantFunctionalScore transcriptScore = getScore(scores, proteinVariants.get(i).getReference(),
+                    proteinVariants.get(i).getAlternate());
+            if (transcriptScore != null) {
+                results.add(new CellBaseDataResult<>(id, -1, new ArrayList<>(), 1, Collections.singletonList(transcriptScore), 1));
+            } else {
+                results.add(new CellBaseDataResult<>(id, -1, new ArrayList<>(), 0, null, 0));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Search for the right aa change.
+     *
+     * @param scores scores of a position and reference, may be null
+     * @param aaReference reference aa
+     * @param aaAlternate alternate aa
+     * @return the score of the aa change, null if not found
+     */
+    private TranscriptMissenseVariantFunctionalScore getScore(List<MissenseVariantFunctionalScore> scores, String aaReference,
+                                                              String aaAlternate) {
+        if (scores == null) {
+            return null;
+        }
         String aaReferenceAbbreviation = VariantAnnotationUtils.TO_ABBREVIATED_AA.get(aaReference);
         String aaAlternateAbbreviation = VariantAnnotationUtils.TO_ABBREVIATED_AA.get(aaAlternate);
-        if (missenseVariantFunctionalScoreDataResult.getNumResults() > 0) {
-            for (MissenseVariantFunctionalScore score : missenseVariantFunctionalScoreDataResult.getResults()) {
-                for (TranscriptMissenseVariantFunctionalScore transcriptScore : score.getScores()) {
-                    if (transcriptScore.getAaReference().equalsIgnoreCase(aaReferenceAbbreviation)
-                            && transcriptScore.getAaAlternate().equalsIgnoreCase(aaAlternateAbbreviation)) {
-                        return new CellBaseDataResult<>(id, -1, new ArrayList<>(), 1,
-                                Collections.singletonList(transcriptScore), 1);
-                    }
+        for (MissenseVariantFunctionalScore score : scores) {
+            for (TranscriptMissenseVariantFunctionalScore transcriptScore : score.getScores()) {
+                if (transcriptScore.getAaReference().equalsIgnoreCase(aaReferenceAbbreviation)
+                        && transcriptScore.getAaAlternate().equalsIgnoreCase(aaAlternateAbbreviation)) {
+                    return transcriptScore;
                 }
             }
         }
-        return new CellBaseDataResult<>(id, -1, new ArrayList<>(), 0, null, 0);
+        return null;
     }
 
 }
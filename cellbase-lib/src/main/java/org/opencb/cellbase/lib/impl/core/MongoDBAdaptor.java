@@ -17,21 +17,28 @@
 package org.opencb.cellbase.lib.impl.core;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoClient;
 import com.mongodb.client.model.Aggregates;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.Projections;
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.bson.*;
 import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
 import org.opencb.biodata.models.core.Region;
 import org.opencb.cellbase.core.api.queries.AbstractQuery;
+import org.opencb.cellbase.core.api.queries.CellBaseIterator;
+import org.opencb.cellbase.core.api.queries.CellBaseQueryOptions;
 import org.opencb.cellbase.core.api.queries.LogicalList;
 import org.opencb.cellbase.core.api.queries.ProjectionQueryOptions;
 import org.opencb.cellbase.core.common.IntervalFeatureFrequency;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.commons.datastore.core.ComplexTypeConverter;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryParam;
+import org.opencb.commons.datastore.mongodb.GenericDocumentComplexConverter;
 import org.opencb.commons.datastore.mongodb.MongoDBCollection;
 import org.opencb.commons.datastore.mongodb.MongoDBIterator;
 import org.opencb.commons.datastore.mongodb.MongoDBQueryUtils;
@@ -40,12 +47,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class MongoDBAdaptor {
 
     enum QueryValueType {INTEGER, STRING}
 
+    // cursor of the first page
+    public static final String CURSOR_START = "*";
+    // Indexes of a collection are read again after this time, so that indexes created later are used
+    private static final long CURSOR_INDEXES_REFRESH_NANOS = TimeUnit.MINUTES.toNanos(10);
+
     protected String species;
     protected String assembly;
 
@@ -56,6 +71,9 @@ public class MongoDBAdaptor {
 
     protected ObjectMapper objectMapper;
 
+    // Fields with an index on (field, _id) of each collection queried with cursors
+    private final Map<MongoDBCollection, CursorIndexes> cursorIndexes = new ConcurrentHashMap<>();
+
     public MongoDBAdaptor(MongoDataStore mongoDataStore) {
         this("", "", mongoDataStore);
     }
@@ -238,6 +256,202 @@ public class MongoDBAdaptor {
         return projectionResult;
     }
 
+    /**
+     * Finds the results of a query. Queries with a cursor are sorted by _id and start right after the _id encoded in the
+     * cursor, so each page is read from the _id index instead of scanning and skipping all the previous pages. The cursor
+     * is ignored if the query is sorted by another field, or if no index returns the matches of the filter in _id order,
+     * see {@link #isCursorIndexed(BsonDocument, Set)}: sorting all the matches in memory for every page would examine
+     * more documents than skip. No cursor is then returned and the next pages are read with skip.
+     *
+     * @param collection collection to query
+     * @param bson filter built from the query
+     * @param query query with the options and the cursor, '*' for the first page
+     * @param clazz class of the results
+     * @param <T> type of the results
+     * @return iterator over the results, with the cursor of the next page if the query has one
+     */
+    protected <T> CellBaseIterator<T> iterator(MongoDBCollection collection, Bson bson, AbstractQuery query, Class<T> clazz) {
+        QueryOptions queryOptions = query.toQueryOptions();
+        Bson projection = getProjection(query);
+        GenericDocumentComplexConverter<T> converter = new GenericDocumentComplexConverter<>(clazz);
+        String cursor = query.getCursor();
+        if (StringUtils.isEmpty(cursor) || StringUtils.isNotEmpty(query.getSort())
+                || (CURSOR_START.equals(cursor) && !isCursorIndexed(collection, bson))) {
+            return new CellBaseIterator<>(collection.iterator(null, bson, projection, converter, queryOptions));
+        }
+
+        if (!CURSOR_START.equals(cursor)) {
+            Bson after = Filters.gt("_id", decodeCursor(cursor));
+            bson = bson != null ? Filters.and(bson, after) : after;
+        }
+        queryOptions.remove(QueryOptions.SKIP);
+        queryOptions.put(QueryOptions.SORT, "_id");
+        queryOptions.put(QueryOptions.ORDER, CellBaseQueryOptions.Order.ASCENDING);
+        // _id is needed to build the next cursor, it is removed from the results by the converter
+        if (projection != null) {
+            projection = Projections.fields(projection, Projections.include("_id"));
+        }
+        CursorConverter<T> cursorConverter = new CursorConverter<>(converter);
+        MongoDBIterator<T> iterator = collection.iterator(null, bson, projection, cursorConverter, queryOptions);
+        return new CellBaseIterator<>(iterator, () -> cursorConverter.lastId != null ? encodeCursor(cursorConverter.lastId) : cursor);
+    }
+
+    private boolean isCursorIndexed(MongoDBCollection collection, Bson bson) {
+        BsonDocument filter = bson != null
+                ? bson.toBsonDocument(BsonDocument.class, MongoClient.getDefaultCodecRegistry())
+                : new BsonDocument();
+        return isCursorIndexed(filter, getCursorFields(collection));
+    }
+
+    /**
+     * @param collection collection queried
+     * @return the first field of the indexes on (field, _id) of the collection
+     */
+    private Set<String> getCursorFields(MongoDBCollection collection) {
+        CursorIndexes indexes = cursorIndexes.get(collection);
+        if (indexes == null || System.nanoTime() - indexes.time >= CURSOR_INDEXES_REFRESH_NANOS) {
+            Set<String> fields = new HashSet<>();
+            try {
+                for (Document index : collection.getIndex().getResults()) {
+                    List<String> keyFields = new ArrayList<>(((Document) index.get("key")).keySet());
+                    if (keyFields.size() == 2 && "_id".equals(keyFields.get(1))) {
+                        fields.add(keyFields.get(0));
+                    }
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Indexes of {} {} could not be read, cursors are only used for unfiltered queries: {}", species,
+                        assembly, e.getMessage());
+            }
+            indexes = new CursorIndexes(fields, System.nanoTime());
+            cursorIndexes.put(collection, indexes);
+        }
+        return indexes.fields;
+    }
+
+    /**
+     * Whether the matches of a filter can be read in _id order from an index, i.e. without sorting all of them in memory.
+     * That is the case when the filter is empty, or one of its conditions is an equality or $in on a field with an index
+     * on (field, _id), or an $or with such a condition in every branch.
+     *
+     * @param filter query filter
+     * @param cursorFields fields with an index on (field, _id)
+     * @return whether cursors can be used with the filter
+     */
+    static boolean isCursorIndexed(BsonDocument filter, Set<String> cursorFields) {
+        if (filter.isEmpty()) {
+            return true;
+        }
+        for (Map.Entry<String, BsonValue> condition : filter.entrySet()) {
+            if (isCursorIndexed(condition.getKey(), condition.getValue(), cursorFields)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isCursorIndexed(String field, BsonValue value, Set<String> cursorFields) {
+        switch (field) {
+            case "$and":
+                for (BsonValue condition : value.asArray()) {
+                    if (condition.isDocument() && isCursorIndexed(condition.asDocument(), cursorFields)) {
+                        return true;
+                    }
+                }
+                return false;
+            case "$or":
+                for (BsonValue branch : value.asArray()) {
+                    if (!branch.isDocument() || !isCursorIndexed(branch.asDocument(), cursorFields)) {
+                        return false;
+                    }
+                }
+                return !value.asArray().isEmpty();
+            default:
+                if (!cursorFields.contains(field) || value.isRegularExpression()) {
+                    return false;
+                }
+                if (!value.isDocument()) {
+                    return true;
+                }
+                // Ranges on the field are not read in _id order
+                Set<String> operators = value.asDocument().keySet();
+                return operators.size() == 1 && (operators.contains("$eq") || operators.contains("$in"));
+        }
+    }
+
+    private static final class CursorIndexes {
+        private final Set<String> fields;
+        private final long time;
+
+        CursorIndexes(Set<String> fields, long time) {
+            this.fields = fields;
+            this.time = time;
+        }
+    }
+
+    /**
+     * @param id _id of the last result returned
+     * @return opaque token with the type and value of the _id
+     */
+    static String encodeCursor(Object id) {
+        String value;
+        if (id instanceof ObjectId) {
+            value = "o:" + ((ObjectId) id).toHexString();
+        } else if (id instanceof Integer || id instanceof Long) {
+            value = "l:" + id;
+        } else if (id instanceof Number) {
+            value = "d:" + id;
+        } else {
+            value = "s:" + id;
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Object decodeCursor(String cursor) {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String id = value.substring(2);
+            switch (value.substring(0, 2)) {
+                case "o:":
+                    return new ObjectId(id);
+                case "l:":
+                    return Long.parseLong(id);
+                case "d:":
+                    return Double.parseDouble(id);
+                case "s:":
+                    return id;
+                default:
+                    break;
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid cursor: " + cursor);
+    }
+
+    /**
+     * Keeps the _id of the last converted document.
+     */
+    private static final class CursorConverter<T> implements ComplexTypeConverter<T, Document> {
+
+        private final ComplexTypeConverter<T, Document> converter;
+        private Object lastId;
+
+        CursorConverter(ComplexTypeConverter<T, Document> converter) {
+            this.converter = converter;
+        }
+
+        @Override
+        public T convertToDataModelType(Document document) {
+            lastId = document.remove("_id");
+            return converter.convertToDataModelType(document);
+        }
+
+        @Override
+        public Document convertToStorageType(T object) {
+            return converter.convertToStorageType(object);
+        }
+    }
+
     protected void createRegionQuery(Query query, String queryParam, int chunkSize, List<Bson> andBsonList) {
         if (chunkSize <= 0) {
             // if chunkSize is not valid we call to the default method
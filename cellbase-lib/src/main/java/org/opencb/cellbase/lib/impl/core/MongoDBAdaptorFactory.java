@@ -28,6 +28,8 @@ import org.opencb.cellbase.core.config.DatabaseCredentials;
 import org.opencb.cellbase.core.config.SpeciesConfiguration;
 import org.opencb.cellbase.core.exception.CellbaseException;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.cellbase.lib.managers.CellBaseManagerFactory;
+import org.opencb.cellbase.lib.managers.GenomeManager;
 import org.opencb.commons.datastore.core.DataStoreServerAddress;
 import org.opencb.commons.datastore.mongodb.MongoDBConfiguration;
 import org.opencb.commons.datastore.mongodb.MongoDataStore;
@@ -43,6 +45,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -65,9 +68,22 @@ public class MongoDBAdaptorFactory {
      */
     private static MongoDataStoreManager mongoDataStoreManager;
     private static Map<String, MongoDataStoreManager> memberDataStoreManagerMap = new HashMap<>();
+    /**
+     * Adaptors are stateless, one instance per type, species and assembly is shared by all the managers.
+     */
+    private final Map<String, MongoDBAdaptor> dbAdaptors = new ConcurrentHashMap<>();
+    /**
+     * Manager factory owning this factory, needed by the adaptors that use managers.
+     */
+    private CellBaseManagerFactory managerFactory;
 
     public MongoDBAdaptorFactory(CellBaseConfiguration cellBaseConfiguration) {
+        this(cellBaseConfiguration, null);
+    }
+
+    public MongoDBAdaptorFactory(CellBaseConfiguration cellBaseConfiguration, CellBaseManagerFactory managerFactory) {
         this.cellBaseConfiguration = cellBaseConfiguration;
+        this.managerFactory = managerFactory;
         init();
     }
 
@@ -354,8 +370,7 @@ public class MongoDBAdaptorFactory {
     }
 
     public GenomeMongoDBAdaptor getGenomeDBAdaptor(String species, String assembly) {
-        MongoDataStore mongoDatastore = createMongoDBDatastore(species, assembly);
-        return new GenomeMongoDBAdaptor(species, assembly, mongoDatastore);
+        return getDBAdaptor(GenomeMongoDBAdaptor.class, species, assembly, GenomeMongoDBAdaptor::new);
     }
 
     public MetaMongoDBAdaptor getMetaDBAdaptor(String species) {
@@ -363,8 +378,7 @@ public class MongoDBAdaptorFactory {
     }
 
     public MetaMongoDBAdaptor getMetaDBAdaptor(String species, String assembly) {
-        MongoDataStore mongoDatastore = createMongoDBDatastore(species, assembly);
-        return new MetaMongoDBAdaptor(species, assembly, mongoDatastore);
+        return getDBAdaptor(MetaMongoDBAdaptor.class, species, assembly, MetaMongoDBAdaptor::new);
     }
 
     public GeneMongoDBAdaptor getGeneDBAdaptor(String species) {
@@ -372,9 +386,7 @@ public class MongoDBAdaptorFactory {
     }
 
     public GeneMongoDBAdaptor getGeneDBAdaptor(String species, String assembly) {
-        MongoDataStore mongoDatastore = createMongoDBDatastore(species, assembly);
-        GeneMongoDBAdaptor geneMongoDBAdaptor = new GeneMongoDBAdaptor(species, assembly, mongoDatastore);
-        return geneMongoDBAdaptor;
+        return getDBAdaptor(GeneMongoDBAdaptor.class, species, assembly, GeneMongoDBAdaptor::new);
     }
 
     public TranscriptMongoDBAdaptor getTranscriptDBAdaptor(String species) {
@@ -382,8 +394,7 @@ public class MongoDBAdaptorFactory {
     }
 
     public TranscriptMongoDBAdaptor getTranscriptDBAdaptor(String species, String assembly) {
-        MongoDataStore mongoDatastore = createMongoDBDatastore(species, assembly);
-        return new TranscriptMongoDBAdaptor(species, assembly, mongoDatastore);
+        return getDBAdaptor(TranscriptMongoDBAdaptor.class, species, assembly, TranscriptMongoDBAdaptor::new);
     }
 
     public XRefMongoDBAdaptor getXRefDBAdaptor(String species) {
@@ -391,8 +402,7 @@ public class MongoDBAdaptorFactory {
     }
 
     public XRefMongoDBAdaptor getXRefDBAdaptor(String species, String assembly) {
-        MongoDataStore mongoDatastore = createMongoDBDatastore(species, assembly);
-        return new XRefMongoDBAdaptor(species, assembly, mongoDatastore);
+        return getDBAdaptor(XRefMongoDBAdaptor.class, species, assembly, XRefMongoDBAdaptor::new);
     }
 
     public VariantMongoDBAdaptor getVariationDBAdaptor(String species) {
@@ -400,8 +410,7 @@ public class MongoDBAdaptorFactory {
     }
 
     public VariantMongoDBAdaptor getVariationDBAdaptor(String species, String assembly) {
-        MongoDataStore mongoDatastore = createMongoDBDatastore(species, assembly);
-        return new VariantMongoDBAdaptor(species, assembly, mongoDatastore);
+        return getDBAdaptor(VariantMongoDBAdaptor.class, species, assembly, VariantMongoDBAdaptor::new);
     }
 
     public ClinicalMongoDBAdaptor getClinicalDBAdaptor(String species) throws CellbaseException {
@@ -409,15 +418,27 @@ public class MongoDBAdaptorFactory {
     }
 
     public ClinicalMongoDBAdaptor getClinicalDBAdaptor(String species, String assembly) throws CellbaseException {
+        GenomeManager genomeManager = assembly != null
+                ? getManagerFactory().getGenomeManager(species, assembly)
+                : getManagerFactory().getGenomeManager(species);
+        return getClinicalDBAdaptor(species, assembly, genomeManager);
+    }
+
+    public ClinicalMongoDBAdaptor getClinicalDBAdaptor(String species, String assembly, GenomeManager genomeManager) {
         MongoDataStore mongoDatastore = createMongoDBDatastore(species, assembly);
-        // FIXME temporarily add config so we can get to the manager. this should be removed when we move all
-        // methods to the manager.
-        return new ClinicalMongoDBAdaptor(species, assembly, mongoDatastore, cellBaseConfiguration);
+        return new ClinicalMongoDBAdaptor(species, assembly, mongoDatastore, genomeManager);
+    }
+
+    private synchronized CellBaseManagerFactory getManagerFactory() {
+        if (managerFactory == null) {
+            // Factory created on its own, its managers use the adaptors of this factory
+            managerFactory = new CellBaseManagerFactory(cellBaseConfiguration, this);
+        }
+        return managerFactory;
     }
 
     public RepeatsMongoDBAdaptor getRepeatsDBAdaptor(String species, String assembly) {
-        MongoDataStore mongoDatastore = createMongoDBDatastore(species, assembly);
-        return new RepeatsMongoDBAdaptor(species, assembly, mongoDatastore);
+        return getDBAdaptor(RepeatsMongoDBAdaptor.class, species, assembly, RepeatsMongoDBAdaptor::new);
     }
 
     public ProteinMongoDBAdaptor getProteinDBAdaptor(String species) {
@@ -425,8 +446,7 @@ public class MongoDBAdaptorFactory {
     }
 
     public ProteinMongoDBAdaptor getProteinDBAdaptor(String species, String assembly) {
-        MongoDataStore mongoDatastore = createMongoDBDatastore(species, assembly);
-        return new ProteinMongoDBAdaptor(species, assembly, mongoDatastore);
+        return getDBAdaptor(ProteinMongoDBAdaptor.class, species, assembly, ProteinMongoDBAdaptor::new);
     }
 
     public OntologyMongoDBAdaptor getOntologyMongoDBAdaptor(String species) {
@@ -434,8 +454,7 @@ public class MongoDBAdaptorFactory {
     }
 
     public OntologyMongoDBAdaptor getOntologyMongoDBAdaptor(String species, String assembly) {
-        MongoDataStore mongoDatastore = createMongoDBDatastore(species, assembly);
-        return new OntologyMongoDBAdaptor(species, assembly, mongoDatastore);
+        return getDBAdaptor(OntologyMongoDBAdaptor.class, species, assembly, OntologyMongoDBAdaptor::new);
     }
 
     public RegulationMongoDBAdaptor getRegulationDBAdaptor(String species) {
@@ -443,13 +462,33 @@ public class MongoDBAdaptorFactory {
     }
 
     public RegulationMongoDBAdaptor getRegulationDBAdaptor(String species, String assembly) {
-        MongoDataStore mongoDatastore = createMongoDBDatastore(species, assembly);
-        return new RegulationMongoDBAdaptor(species, assembly, mongoDatastore);
+        return getDBAdaptor(RegulationMongoDBAdaptor.class, species, assembly, RegulationMongoDBAdaptor::new);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends MongoDBAdaptor> T getDBAdaptor(Class<T> clazz, String species, String assembly,
+                                                      AdaptorConstructor<T> constructor) {
+        String key = clazz.getSimpleName() + "_" + species + "_" + assembly;
+        T dbAdaptor = (T) dbAdaptors.get(key);
+        if (dbAdaptor == null) {
+            // Two threads may build the same adaptor, only the first one is kept
+            dbAdaptor = constructor.create(species, assembly, createMongoDBDatastore(species, assembly));
+            T previous = (T) dbAdaptors.putIfAbsent(key, dbAdaptor);
+            if (previous != null) {
+                dbAdaptor = previous;
+            }
+        }
+        return dbAdaptor;
+    }
+
+    @FunctionalInterface
+    private interface AdaptorConstructor<T> {
+        T create(String species, String assembly, MongoDataStore mongoDataStore);
     }
 
     public MissenseVariationFunctionalScoreMongoDBAdaptor getMissenseVariationFunctionalScoreMongoDBAdaptor(
             String species, String assembly) {
-        MongoDataStore mongoDatastore = createMongoDBDatastore(species, assembly);
-        return new MissenseVariationFunctionalScoreMongoDBAdaptor(species, assembly, mongoDatastore);
+        return getDBAdaptor(MissenseVariationFunctionalScoreMongoDBAdaptor.class, species, assembly,
+                MissenseVariationFunctionalScoreMongoDBAdaptor::new);
     }
 }
@@ -0,0 +1,384 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.core;
+
+import com.mongodb.MongoClient;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.cellbase.core.api.queries.AbstractQuery;
+import org.opencb.cellbase.core.api.queries.RegionQuery;
+import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.commons.datastore.core.ComplexTypeConverter;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.commons.datastore.mongodb.GenericDocumentComplexConverter;
+import org.opencb.commons.datastore.mongodb.MongoDBCollection;
+import org.opencb.commons.datastore.mongodb.MongoDBIterator;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Runs the queries of a list of regions, one query per region as built by the genomic/region web services. Queries that
+ * only differ in their region are merged, per chromosome, into a few queries on the _chunkIds index and the documents
+ * found are split back into one result per region. Merged queries, and the queries that can not be merged, run
+ * concurrently. Results are returned in the same order as the queries.
+ *
+ * Only queries of one region, without skip, sort, count, facet or cursor, are merged: the results of each region are then
+ * the first 'limit' documents of the merged query that overlap the region.
+ */
+final class MultiRegionQuery<Q extends AbstractQuery & RegionQuery, T> {
+
+    static final int MAX_REGIONS_PER_QUERY = 100;
+    static final int MAX_CHUNKS_PER_QUERY = 1000;
+    // A merged query reads up to this many documents per result it can return, the regions not full by then are queried
+    // one by one, so that a dense region does not make the merged query read all its documents
+    static final int MAX_DOCUMENTS_PER_RESULT = 4;
+    // Queries of one call run at the same time
+    static final int MAX_PARALLEL_QUERIES = 4;
+    static final int NUM_THREADS = 16;
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+    private static final List<String> POSITION_FIELDS = Arrays.asList("chromosome", "start", "end");
+    // Shared by all the calls, the thread of each call runs queries too so calls progress even if every thread is busy
+    private static final ExecutorService EXECUTOR = newExecutor();
+
+    private final MongoDBCollection collection;
+    private final int chunkSize;
+    private final Function<Q, Bson> parser;
+    private final Function<Q, CellBaseDataResult<T>> singleQuery;
+    private final Predicate<Q> mergeable;
+    private final Class<T> clazz;
+
+    /**
+     * @param collection collection with the chromosome, start and end of each document
+     * @param chunkSize size of the _chunkIds of the collection, 0 if it has none
+     * @param parser builds the filter of a query
+     * @param singleQuery runs a query that can not be merged
+     * @param mergeable whether a query can be merged, besides the checks of the options
+     * @param clazz class of the results
+     */
+    MultiRegionQuery(MongoDBCollection collection, int chunkSize, Function<Q, Bson> parser,
+                     Function<Q, CellBaseDataResult<T>> singleQuery, Predicate<Q> mergeable, Class<T> clazz) {
+        this.collection = collection;
+        this.chunkSize = chunkSize;
+        this.parser = parser;
+        this.singleQuery = singleQuery;
+        this.mergeable = mergeable;
+        this.clazz = clazz;
+    }
+
+    List<CellBaseDataResult<T>> query(List<Q> queries) {
+        CellBaseDataResult<T>[] results = new CellBaseDataResult[queries.size()];
+        List<Runnable> tasks = new ArrayList<>();
+        // key = filter and options but the region, value = the queries
+        Map<String, MergedQuery> mergedQueries = new LinkedHashMap<>();
+        for (int i = 0; i < queries.size(); i++) {
+            Q query = queries.get(i);
+            if (isMergeable(query)) {
+                List<Region> regions = query.getRegions();
+                query.setRegions(null);
+                try {
+                    Bson filter = parser.apply(query);
+                    String key = filter.toBsonDocument(BsonDocument.class, MongoClient.getDefaultCodecRegistry()).toJson()
+                            + query.toQueryOptions();
+                    mergedQueries.computeIfAbsent(key, k -> new MergedQuery(filter)).indexes.add(i);
+                } finally {
+                    query.setRegions(regions);
+                }
+            } else {
+                int index = i;
+                tasks.add(() -> results[index] = singleQuery.apply(query));
+            }
+        }
+        for (MergedQuery mergedQuery : mergedQueries.values()) {
+            for (List<Integer> indexes : split(queries, mergedQuery.indexes)) {
+                if (indexes.size() == 1) {
+                    int index = indexes.get(0);
+                    tasks.add(() -> results[index] = singleQuery.apply(queries.get(index)));
+                } else {
+                    tasks.add(() -> queryMerged(queries, indexes, mergedQuery.filter, results));
+                }
+            }
+        }
+        run(tasks);
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Runs each query, up to MAX_PARALLEL_QUERIES at a time.
+     *
+     * @param queries queries
+     * @param singleQuery runs one query
+     * @param <Q> type of the queries
+     * @param <T> type of the results
+     * @return results in the same order as the queries
+     */
+    static <Q, T> List<CellBaseDataResult<T>> queryConcurrently(List<Q> queries, Function<Q, CellBaseDataResult<T>> singleQuery) {
+        CellBaseDataResult<T>[] results = new CellBaseDataResult[queries.size()];
+        List<Runnable> tasks = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            int index = i;
+            tasks.add(() -> results[index] = singleQuery.apply(queries.get(index)));
+        }
+        run(tasks);
+        return Arrays.asList(results);
+    }
+
+    private boolean isMergeable(Q query) {
+        return query.getRegions() != null && query.getRegions().size() == 1
+                && (query.getSkip() == null || query.getSkip() == 0)
+                && !Boolean.TRUE.equals(query.getCount())
+                && StringUtils.isEmpty(query.getSort())
+                && StringUtils.isEmpty(query.getFacet())
+                && StringUtils.isEmpty(query.getCursor())
+                // chromosome, start and end are needed to split the results
+                && (query.getExcludes() == null || Collections.disjoint(query.getExcludes(), POSITION_FIELDS))
+                && mergeable.test(query);
+    }
+
+    /**
+     * @param queries queries
+     * @param indexes queries with the same filter and options
+     * @return groups of queries of the same chromosome, sorted by start, of up to MAX_REGIONS_PER_QUERY regions and
+     * MAX_CHUNKS_PER_QUERY chunks
+     */
+    private List<List<Integer>> split(List<Q> queries, List<Integer> indexes) {
+        List<Integer> sortedIndexes = new ArrayList<>(indexes);
+        sortedIndexes.sort(Comparator.comparing((Integer i) -> getRegion(queries, i).getChromosome())
+                .thenComparingInt(i -> getRegion(queries, i).getStart()));
+
+        List<List<Integer>> groups = new ArrayList<>();
+        List<Integer> group = new ArrayList<>();
+        String chromosome = null;
+        int numChunks = 0;
+        for (int index : sortedIndexes) {
+            Region region = getRegion(queries, index);
+            int regionChunks = chunkSize > 0 ? region.getEnd() / chunkSize - region.getStart() / chunkSize + 1 : 0;
+            if (!group.isEmpty() && (!region.getChromosome().equals(chromosome) || group.size() == MAX_REGIONS_PER_QUERY
+                    || numChunks + regionChunks > MAX_CHUNKS_PER_QUERY)) {
+                groups.add(group);
+                group = new ArrayList<>();
+                numChunks = 0;
+            }
+            group.add(index);
+            chromosome = region.getChromosome();
+            numChunks += regionChunks;
+        }
+        if (!group.isEmpty()) {
+            groups.add(group);
+        }
+        return groups;
+    }
+
+    /**
+     * Runs one merged query and sets the result of each of its regions.
+     *
+     * @param queries queries
+     * @param indexes queries of the same chromosome merged
+     * @param filter filter of the queries but the region
+     * @param results results of the queries
+     */
+    private void queryMerged(List<Q> queries, List<Integer> indexes, Bson filter, CellBaseDataResult<T>[] results) {
+        long time = System.currentTimeMillis();
+        Q template = queries.get(indexes.get(0));
+        int limit = template.getLimit() != null && template.getLimit() > 0 ? template.getLimit() : Integer.MAX_VALUE;
+
+        List<Region> regions = new ArrayList<>(indexes.size());
+        List<Bson> regionFilters = new ArrayList<>(indexes.size());
+        Set<String> chunkIds = new LinkedHashSet<>();
+        for (int index : indexes) {
+            Region region = getRegion(queries, index);
+            regions.add(region);
+            regionFilters.add(Filters.and(Filters.eq("chromosome", region.getChromosome()),
+                    Filters.lte("start", region.getEnd()), Filters.gte("end", region.getStart())));
+            if (chunkSize > 0) {
+                for (int chunkId = region.getStart() / chunkSize; chunkId <= region.getEnd() / chunkSize; chunkId++) {
+                    chunkIds.add(region.getChromosome() + "_" + chunkId + "_" + chunkSize / 1000 + "k");
+                }
+            }
+        }
+        List<Bson> andBsonList = new ArrayList<>();
+        andBsonList.add(filter);
+        if (!chunkIds.isEmpty()) {
+            andBsonList.add(Filters.in("_chunkIds", new ArrayList<>(chunkIds)));
+        }
+        andBsonList.add(Filters.or(regionFilters));
+
+        // Position fields not included by the query are read to split the results and removed afterwards
+        Bson projection = MongoDBAdaptor.getProjection(template);
+        List<String> addedFields = new ArrayList<>();
+        if (CollectionUtils.isNotEmpty(template.getIncludes())) {
+            for (String field : POSITION_FIELDS) {
+                if (!template.getIncludes().contains(field)) {
+                    addedFields.add(field);
+                }
+            }
+            if (!addedFields.isEmpty()) {
+                projection = Projections.fields(projection, Projections.include(addedFields));
+            }
+        }
+        QueryOptions queryOptions = template.toQueryOptions();
+        queryOptions.remove(QueryOptions.SKIP);
+        queryOptions.remove(QueryOptions.LIMIT);
+        queryOptions.remove(QueryOptions.COUNT);
+
+        List<List<T>> regionResults = new ArrayList<>(regions.size());
+        for (int i = 0; i < regions.size(); i++) {
+            regionResults.add(new ArrayList<>());
+        }
+        long maxDocuments = limit == Integer.MAX_VALUE ? Long.MAX_VALUE : (long) MAX_DOCUMENTS_PER_RESULT * limit * regions.size();
+        long numDocuments = 0;
+        int numFullRegions = 0;
+        boolean complete = true;
+        GenericDocumentComplexConverter<T> converter = new GenericDocumentComplexConverter<>(clazz);
+        MongoDBIterator<Document> iterator = collection.iterator(null, Filters.and(andBsonList), projection, DocumentConverter.INSTANCE,
+                queryOptions);
+        try {
+            while (numFullRegions < regions.size() && iterator.hasNext()) {
+                if (numDocuments == maxDocuments) {
+                    complete = false;
+                    break;
+                }
+                Document document = iterator.next();
+                numDocuments++;
+                String chromosome = document.getString("chromosome");
+                Integer start = document.getInteger("start");
+                Integer end = document.getInteger("end");
+                if (chromosome == null || start == null || end == null) {
+                    continue;
+                }
+                addedFields.forEach(document::remove);
+                T result = null;
+                for (int i = 0; i < regions.size(); i++) {
+                    Region region = regions.get(i);
+                    List<T> matches = regionResults.get(i);
+                    if (matches.size() < limit && chromosome.equals(region.getChromosome()) && start <= region.getEnd()
+                            && end >= region.getStart()) {
+                        if (result == null) {
+                            result = converter.convertToDataModelType(document);
+                        }
+                        matches.add(result);
+                        if (matches.size() == limit) {
+                            numFullRegions++;
+                        }
+                    }
+                }
+            }
+        } finally {
+            iterator.close();
+        }
+        time = System.currentTimeMillis() - time;
+
+        for (int i = 0; i < indexes.size(); i++) {
+            List<T> regionResult = regionResults.get(i);
+            if (!complete && regionResult.size() < limit) {
+                // The merged query stopped before reading all the documents of this region
+                results[indexes.get(i)] = singleQuery.apply(queries.get(indexes.get(i)));
+            } else {
+                CellBaseDataResult<T> result = new CellBaseDataResult<>();
+                result.setTime((int) time);
+                result.setResults(regionResult);
+                result.setNumResults(regionResult.size());
+                result.setNumMatches(-1);
+                results[indexes.get(i)] = result;
+            }
+        }
+    }
+
+    private static Region getRegion(List<? extends RegionQuery> queries, int index) {
+        return queries.get(index).getRegions().get(0);
+    }
+
+    /**
+     * Runs the tasks, up to MAX_PARALLEL_QUERIES at a time, one of them in the calling thread.
+     *
+     * @param tasks tasks
+     */
+    private static void run(List<Runnable> tasks) {
+        AtomicInteger nextTask = new AtomicInteger();
+        Runnable worker = () -> {
+            for (int i = nextTask.getAndIncrement(); i < tasks.size(); i = nextTask.getAndIncrement()) {
+                tasks.get(i).run();
+            }
+        };
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 1; i < Math.min(MAX_PARALLEL_QUERIES, tasks.size()); i++) {
+            futures.add(EXECUTOR.submit(worker));
+        }
+        try {
+            worker.run();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            // Stop the other workers if this one failed
+            nextTask.set(tasks.size());
+        }
+    }
+
+    private static ExecutorService newExecutor() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(NUM_THREADS, NUM_THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "region-query-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static final class MergedQuery {
+        private final Bson filter;
+        private final List<Integer> indexes = new ArrayList<>();
+
+        private MergedQuery(Bson filter) {
+            this.filter = filter;
+        }
+    }
+
+    private enum DocumentConverter implements ComplexTypeConverter<Document, Document> {
+        INSTANCE;
+
+        @Override
+        public Document convertToDataModelType(Document document) {
+            return document;
+        }
+
+        @Override
+        public Document convertToStorageType(Document document) {
+            return document;
+        }
+    }
+}
@@ -28,8 +28,6 @@ import org.opencb.cellbase.core.api.queries.ProjectionQueryOptions;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryParam;
-import org.opencb.commons.datastore.mongodb.GenericDocumentComplexConverter;
-import org.opencb.commons.datastore.mongodb.MongoDBIterator;
 import org.opencb.commons.datastore.mongodb.MongoDataStore;
 
 import java.util.ArrayList;
@@ -47,11 +45,7 @@ public class OntologyMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCo
     @Override
     public CellBaseIterator iterator(OntologyQuery query) {
         Bson bson = parseQuery(query);
-        QueryOptions queryOptions = query.toQueryOptions();
-        Bson projection = getProjection(query);
-        GenericDocumentComplexConverter<OntologyTerm> converter = new GenericDocumentComplexConverter<>(OntologyTerm.class);
-        MongoDBIterator<OntologyTerm> iterator = mongoDBCollection.iterator(null, bson, projection, converter, queryOptions);
-        return new CellBaseIterator<>(iterator);
+        return iterator(mongoDBCollection, bson, query, OntologyTerm.class);
     }
 
     @Override
@@ -34,6 +34,7 @@ import org.opencb.cellbase.core.api.queries.ProteinQuery;
 import org.opencb.cellbase.core.api.queries.TranscriptQuery;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.variant.annotation.VariantAnnotationUtils;
+import org.opencb.commons.datastore.core.DataResult;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryParam;
@@ -273,14 +274,247 @@ public class ProteinMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCor
         return cellBaseDataResult;
     }
 
+    /**
+     * Batch version of getVariantAnnotation. SIFT/PolyPhen scores of all transcripts are fetched with a single projected
+     * query to the substitution score collection, and UniProt features with a single aggregation on the protein
+     * collection; results are then assigned to each (transcript, position, aa) in memory.
+     *
+     * @param ensemblTranscriptIds transcript of each protein variant
+     * @param proteinVariants position, reference and alternate aa of each protein variant, same size as ensemblTranscriptIds
+     * @param options query options
+     * @return one result per protein variant, in the same order
+     */
+    public List<CellBaseDataResult<ProteinVariantAnnotation>> getVariantAnnotation(List<String> ensemblTranscriptIds,
+                                                                            List<ProteinVariantAnnotation> proteinVariants,
+                                                                            QueryOptions options) {
+        long dbTimeStart = System.currentTimeMillis();
+
+        Map<String, Document> substitutionScoresMap = getSubstitutionScoresByTranscript(ensemblTranscriptIds, proteinVariants);
+        Map<String, List<Document>> proteinsByTranscript = getProteinFeaturesByTranscript(ensemblTranscriptIds, proteinVariants);
+
+        int dbTime = Long.valueOf(System.currentTimeMillis() - dbTimeStart).intValue();
+        List<CellBaseDataResult<ProteinVariantAnnotation>> cellBaseDataResults = new ArrayList<>(proteinVariants.size());
+        for (int i = 0; i < proteinVariants.size(); i++) {
+            String ensemblTranscriptId = ensemblTranscriptIds.get(i);
+            int position = proteinVariants.get(i).getPosition();
+            String aaReference = proteinVariants.get(i).getReference();
+            String aaAlternate = proteinVariants.get(i).getAlternate();
+
+            ProteinVariantAnnotation proteinVariantAnnotation = new ProteinVariantAnnotation();
+            proteinVariantAnnotation.setPosition(position);
+            proteinVariantAnnotation.setReference(aaReference);
+            proteinVariantAnnotation.setAlternate(aaAlternate);
+            // Stop_gain/lost variants do not have SIFT/POLYPHEN scores
+            if (!aaAlternate.equals("STOP") && !aaReference.equals("STOP")) {
+                proteinVariantAnnotation.setSubstitutionScores(getSubstitutionScores(
+                        substitutionScoresMap.get(ensemblTranscriptId.split("\\.")[0]), position, aaAlternate));
+            }
+
+            String shortAlternativeAa = aaShortNameMap.get(aaAlternate);
+            if (shortAlternativeAa != null) {
+                Document proteinVariantData = getProteinVariantData(proteinsByTranscript.get(ensemblTranscriptId), position,
+                        shortAlternativeAa);
+                if (proteinVariantData != null) {
+                    proteinVariantAnnotation = processProteinVariantData(proteinVariantAnnotation, shortAlternativeAa,
+                            proteinVariantData);
+                }
+            }
+
+            CellBaseDataResult<ProteinVariantAnnotation> cellBaseDataResult = new CellBaseDataResult<>(
+                    ensemblTranscriptId + "/" + position + "/" + aaAlternate, dbTime, new ArrayList<>(), 1,
+                    Collections.singletonList(proteinVariantAnnotation), 1);
+            cellBaseDataResults.add(cellBaseDataResult);
+        }
+        return cellBaseDataResults;
+    }
+
+    private Map<String, Document> getSubstitutionScoresByTranscript(List<String> ensemblTranscriptIds,
+                                                                    List<ProteinVariantAnnotation> proteinVariants) {
+        Set<String> transcriptIds = new HashSet<>();
+        Set<String> projectionFields = new HashSet<>();
+        projectionFields.add("transcriptId");
+        for (int i = 0; i < proteinVariants.size(); i++) {
+            String aaReference = proteinVariants.get(i).getReference();
+            String aaAlternate = proteinVariants.get(i).getAlternate();
+            if (ensemblTranscriptIds.get(i) != null && !aaAlternate.equals("STOP") && !aaReference.equals("STOP")) {
+                transcriptIds.add(ensemblTranscriptIds.get(i).split("\\.")[0]);
+                // Only the scores of the requested position and aa change are returned
+                projectionFields.add("aaPositions." + proteinVariants.get(i).getPosition() + "."
+                        + aaShortNameMap.get(aaAlternate.toUpperCase()));
+            }
+        }
+
+        Map<String, Document> substitutionScoresMap = new HashMap<>();
+        if (!transcriptIds.isEmpty()) {
+            DataResult<Document> dataResult = proteinSubstitutionMongoDBCollection.find(Filters.in("transcriptId", transcriptIds),
+                    Projections.include(new ArrayList<>(projectionFields)), new QueryOptions());
+            for (Document document : dataResult.getResults()) {
+                substitutionScoresMap.putIfAbsent(document.getString("transcriptId"), document);
+            }
+        }
+        return substitutionScoresMap;
+    }
+
+    private List<Score> getSubstitutionScores(Document substitutionScoresDocument, int position, String aa) {
+        if (substitutionScoresDocument == null) {
+            return new ArrayList<>();
+        }
+        Document aaPositionsDocument = (Document) substitutionScoresDocument.get("aaPositions");
+        if (aaPositionsDocument == null) {
+            return null;
+        }
+        List<Score> scoreList = new ArrayList<>(NUM_PROTEIN_SUBSTITUTION_SCORE_METHODS);
+        Document positionDocument = (Document) aaPositionsDocument.get(Integer.toString(position));
+        Document aaDocument = positionDocument != null
+                ? (Document) positionDocument.get(aaShortNameMap.get(aa.toUpperCase()))
+                : null;
+        if (aaDocument != null) {
+            if (aaDocument.get("ss") != null) {
+                scoreList.add(new Score(Double.parseDouble("" + aaDocument.get("ss")),
+                        "sift", VariantAnnotationUtils.SIFT_DESCRIPTIONS.get(aaDocument.get("se"))));
+            }
+            if (aaDocument.get("ps") != null) {
+                scoreList.add(new Score(Double.parseDouble("" + aaDocument.get("ps")),
+                        "polyphen", VariantAnnotationUtils.POLYPHEN_DESCRIPTIONS.get(aaDocument.get("pe"))));
+            }
+        }
+        return scoreList;
+    }
+
+    /**
+     * Runs one aggregation returning, for every protein cross-referenced by any of the transcripts, the features
+     * overlapping any of the requested positions. Features are filtered per transcript and position afterwards.
+     */
+    private Map<String, List<Document>> getProteinFeaturesByTranscript(List<String> ensemblTranscriptIds,
+                                                                       List<ProteinVariantAnnotation> proteinVariants) {
+        Set<String> transcriptIds = new HashSet<>();
+        Set<Integer> positions = new HashSet<>();
+        for (int i = 0; i < proteinVariants.size(); i++) {
+            if (ensemblTranscriptIds.get(i) != null && aaShortNameMap.containsKey(proteinVariants.get(i).getAlternate())) {
+                transcriptIds.add(ensemblTranscriptIds.get(i));
+                positions.add(proteinVariants.get(i).getPosition());
+            }
+        }
+
+        Map<String, List<Document>> proteinsByTranscript = new HashMap<>();
+        if (transcriptIds.isEmpty()) {
+            return proteinsByTranscript;
+        }
+
+        List<Bson> pipeline = new ArrayList<>();
+        pipeline.add(new Document("$match", new Document("dbReference.id", new Document("$in", new ArrayList<>(transcriptIds)))));
+
+        Document projection = new Document();
+        projection.put("accession", 1);
+        projection.put("keyword", 1);
+        projection.put("feature", 1);
+        projection.put("dbReference.id", 1);
+        pipeline.add(new Document("$project", projection));
+
+        pipeline.add(new Document("$unwind", "$feature"));
+
+        // Features at any of the positions, the variation of each feature is checked later
+        BasicDBList orList = new BasicDBList();
+        for (Integer position : positions) {
+            orList.add(new Document("feature.location.position.position", position));
+            BasicDBList andDBList = new BasicDBList();
+            andDBList.add(new Document("feature.location.end.position", new Document("$gte", position)));
+            andDBList.add(new Document("feature.location.begin.position", new Document("$lte", position)));
+            orList.add(new Document("$and", andDBList));
+        }
+        pipeline.add(new Document("$match", new Document("$or", orList)));
+
+        Document groupFields = new Document();
+        groupFields.put("_id", "$_id");
+        groupFields.put("accession", new Document("$first", "$accession"));
+        groupFields.put("keyword", new Document("$first", "$keyword"));
+        groupFields.put("dbReference", new Document("$first", "$dbReference"));
+        groupFields.put("feature", new Document("$addToSet", "$feature"));
+        pipeline.add(new Document("$group", groupFields));
+
+        CellBaseDataResult proteinData = executeAggregation2("proteinVariantFeatures", pipeline, new QueryOptions());
+        for (Object result : proteinData.getResults()) {
+            Document proteinDocument = (Document) result;
+            List<Document> dbReferenceList = proteinDocument.get("dbReference", List.class);
+            if (dbReferenceList != null) {
+                for (Document dbReference : dbReferenceList) {
+                    String id = dbReference.getString("id");
+                    if (transcriptIds.contains(id)) {
+                        proteinsByTranscript.computeIfAbsent(id, k -> new ArrayList<>()).add(proteinDocument);
+                    }
+                }
+            }
+        }
+        return proteinsByTranscript;
+    }
+
+    /**
+     * Builds, for one protein variant, the same document the per-variant aggregation in getVariantAnnotation returns:
+     * proteins are grouped by accession, and the first group with features at the variant position gives the accession
+     * list, the keyword list of each of its proteins and all their features at that position.
+     */
+    private Document getProteinVariantData(List<Document> proteinDocuments, int position, String shortAlternativeAa) {
+        if (proteinDocuments == null) {
+            return null;
+        }
+        Map<Object, Document> proteinVariantDataByAccession = new LinkedHashMap<>();
+        for (Document proteinDocument : proteinDocuments) {
+            List<Document> featureList = new ArrayList<>();
+            for (Object featureObject : proteinDocument.get("feature", List.class)) {
+                Document featureDocument = (Document) featureObject;
+                if (isFeatureAtPosition(featureDocument, position, shortAlternativeAa)) {
+                    featureList.add(featureDocument);
+                }
+            }
+            if (featureList.isEmpty()) {
+                continue;
+            }
+            // Same as $group by accession with $addToSet of keyword and feature
+            Document proteinVariantData = proteinVariantDataByAccession.computeIfAbsent(proteinDocument.get("accession"),
+                    accession -> new Document("_id", accession).append("keyword", new ArrayList<>())
+                            .append("feature", new ArrayList<>()));
+            List<Object> keywordList = proteinVariantData.get("keyword", List.class);
+            if (!keywordList.contains(proteinDocument.get("keyword"))) {
+                keywordList.add(proteinDocument.get("keyword"));
+            }
+            List<Document> proteinVariantFeatureList = proteinVariantData.get("feature", List.class);
+            for (Document featureDocument : featureList) {
+                if (!proteinVariantFeatureList.contains(featureDocument)) {
+                    proteinVariantFeatureList.add(featureDocument);
+                }
+            }
+        }
+        return proteinVariantDataByAccession.isEmpty() ? null : proteinVariantDataByAccession.values().iterator().next();
+    }
+
+    private boolean isFeatureAtPosition(Document featureDocument, int position, String shortAlternativeAa) {
+        Document location = (Document) featureDocument.get("location");
+        if (location == null) {
+            return false;
+        }
+        Integer featurePosition = getLocationPosition(location, "position");
+        List variationList = featureDocument.get("variation", List.class);
+        if (featurePosition != null && featurePosition == position && variationList != null
+                && variationList.contains(shortAlternativeAa)) {
+            return true;
+        }
+        Integer begin = getLocationPosition(location, "begin");
+        Integer end = getLocationPosition(location, "end");
+        return begin != null && end != null && begin <= position && end >= position;
+    }
+
+    private Integer getLocationPosition(Document location, String field) {
+        Document positionDocument = (Document) location.get(field);
+        if (positionDocument == null || !(positionDocument.get("position") instanceof Number)) {
+            return null;
+        }
+        return ((Number) positionDocument.get("position")).intValue();
+    }
+
     @Override
     public CellBaseIterator<Entry> iterator(ProteinQuery query) {
         Bson bson = parseQuery(query);
-        QueryOptions queryOptions = query.toQueryOptions();
-        Bson projection = getProjection(query);
-        GenericDocumentComplexConverter<Entry> converter = new GenericDocumentComplexConverter<>(Entry.class);
-        MongoDBIterator<Entry> iterator = mongoDBCollection.iterator(null, bson, projection, converter, queryOptions);
-        return new CellBaseIterator<>(iterator);
+        return iterator(mongoDBCollection, bson, query, Entry.class);
     }
 
     @Override
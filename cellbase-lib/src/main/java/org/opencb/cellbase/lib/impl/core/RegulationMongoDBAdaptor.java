@@ -25,10 +25,8 @@ import org.opencb.cellbase.core.api.queries.CellBaseIterator;
 import org.opencb.cellbase.core.api.queries.ProjectionQueryOptions;
 import org.opencb.cellbase.core.api.queries.RegulationQuery;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
-import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.cellbase.lib.MongoDBCollectionConfiguration;
 import org.opencb.commons.datastore.core.QueryParam;
-import org.opencb.commons.datastore.mongodb.GenericDocumentComplexConverter;
-import org.opencb.commons.datastore.mongodb.MongoDBIterator;
 import org.opencb.commons.datastore.mongodb.MongoDataStore;
 
 import java.util.ArrayList;
@@ -180,12 +178,14 @@ public class RegulationMongoDBAdaptor extends MongoDBAdaptor implements CellBase
     @Override
     public CellBaseIterator<RegulatoryFeature> iterator(RegulationQuery query) {
         Bson bson = parseQuery(query);
-        QueryOptions queryOptions = query.toQueryOptions();
-        Bson projection = getProjection(query);
-        GenericDocumentComplexConverter<RegulatoryFeature> converter = new GenericDocumentComplexConverter<>(RegulatoryFeature.class);
-        MongoDBIterator<RegulatoryFeature> iterator
-                = mongoDBCollection.iterator(null, bson, projection, converter, queryOptions);
-        return new CellBaseIterator<>(iterator);
+        return iterator(mongoDBCollection, bson, query, RegulatoryFeature.class);
+    }
+
+    @Override
+    public List<CellBaseDataResult<RegulatoryFeature>> query(List<RegulationQuery> queries) {
+        return new MultiRegionQuery<RegulationQuery, RegulatoryFeature>(mongoDBCollection,
+                MongoDBCollectionConfiguration.REGULATORY_REGION_CHUNK_SIZE, this::parseQuery, this::query, query -> true,
+                RegulatoryFeature.class).query(queries);
     }
 
     @Override
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.core;
+
+import org.bson.Document;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.models.variant.avro.Repeat;
+import org.opencb.cellbase.core.common.IntervalIndex;
+import org.opencb.commons.datastore.core.ObjectMap;
+
+import java.util.*;
+
+/**
+ * In-memory repeats of one species and assembly. Repeats are stored column by column in primitive arrays, chromosome
+ * and source names in small dictionaries, and are only materialised as Repeat objects when returned by a query.
+ */
+public final class RepeatsIndex {
+
+    private static final int NULL_INT = Integer.MIN_VALUE;
+    // Approximate heap of a String: object header, fields and char[] header
+    private static final int STRING_OVERHEAD = 56;
+
+    private final List<String> chromosomes;
+    private final List<String> sources;
+    private final short[] chromosomeIds;
+    private final byte[] sourceIds;
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] periods;
+    private final int[] consensusSizes;
+    private final float[] copyNumbers;
+    private final float[] percentageMatches;
+    private final float[] scores;
+    private final String[] ids;
+    private final String[] sequences;
+    private final long stringSize;
+    private final IntervalIndex<Repeat> intervalIndex;
+    private final long loadTime;
+
+    private RepeatsIndex(Builder builder, long loadTime) {
+        int size = builder.size;
+        this.chromosomes = new ArrayList<>(builder.chromosomes.keySet());
+        this.sources = new ArrayList<>(builder.sources.keySet());
+        this.chromosomeIds = Arrays.copyOf(builder.chromosomeIds, size);
+        this.sourceIds = Arrays.copyOf(builder.sourceIds, size);
+        this.starts = Arrays.copyOf(builder.starts, size);
+        this.ends = Arrays.copyOf(builder.ends, size);
+        this.periods = Arrays.copyOf(builder.periods, size);
+        this.consensusSizes = Arrays.copyOf(builder.consensusSizes, size);
+        this.copyNumbers = Arrays.copyOf(builder.copyNumbers, size);
+        this.percentageMatches = Arrays.copyOf(builder.percentageMatches, size);
+        this.scores = Arrays.copyOf(builder.scores, size);
+        this.ids = Arrays.copyOf(builder.ids, size);
+        this.sequences = Arrays.copyOf(builder.sequences, size);
+        this.stringSize = builder.stringSize;
+        this.intervalIndex = new IntervalIndex<>(size, this::getRepeat, id -> chromosomes.get(chromosomeIds[id]), id -> starts[id],
+                id -> ends[id]);
+        this.loadTime = loadTime;
+    }
+
+    /**
+     * Reads all the repeats.
+     * @param iterator repeat documents, i.e. the whole repeats collection
+     * @param maxMemory maximum heap, in bytes, the index may use
+     * @return the index, null if the repeats do not fit in maxMemory
+     */
+    public static RepeatsIndex load(Iterator<Document> iterator, long maxMemory) {
+        long startTime = System.currentTimeMillis();
+        Builder builder = new Builder();
+        while (iterator.hasNext()) {
+            builder.add(iterator.next());
+            if (builder.getSize() > maxMemory) {
+                return null;
+            }
+        }
+        return new RepeatsIndex(builder, System.currentTimeMillis() - startTime);
+    }
+
+    public List<Repeat> query(Region region) {
+        return intervalIndex.query(region.getChromosome(), region.getStart(), region.getEnd());
+    }
+
+    public int size() {
+        return starts.length;
+    }
+
+    /**
+     * @return approximate heap used by the index, in bytes
+     */
+    public long getResidentSize() {
+        long size = starts.length;
+        // chromosomeIds (2), sourceIds (1), starts, ends, periods, consensusSizes, copyNumbers, percentageMatches, scores (4
+        // each) and the ids and sequences references (4 each, compressed oops)
+        return size * (2 + 1 + 7 * 4 + 2 * 4) + stringSize + intervalIndex.getIndexSize();
+    }
+
+    public ObjectMap getStats() {
+        ObjectMap stats = new ObjectMap();
+        stats.put("numRepeats", size());
+        stats.put("numChromosomes", chromosomes.size());
+        stats.put("sources", sources);
+        stats.put("residentSize", getResidentSize());
+        stats.put("loadTimeMs", loadTime);
+        return stats;
+    }
+
+    private Repeat getRepeat(int id) {
+        return new Repeat(ids[id], chromosomes.get(chromosomeIds[id]), starts[id], ends[id],
+                periods[id] != NULL_INT ? periods[id] : null,
+                consensusSizes[id] != NULL_INT ? consensusSizes[id] : null,
+                Float.isNaN(copyNumbers[id]) ? null : copyNumbers[id],
+                Float.isNaN(percentageMatches[id]) ? null : percentageMatches[id],
+                Float.isNaN(scores[id]) ? null : scores[id],
+                sequences[id], sources.get(sourceIds[id]));
+    }
+
+    private static final class Builder {
+        // LinkedHashMap keeps names sorted by id
+        private final Map<String, Integer> chromosomes = new LinkedHashMap<>();
+        private final Map<String, Integer> sources = new LinkedHashMap<>();
+        private short[] chromosomeIds = new short[1024];
+        private byte[] sourceIds = new byte[1024];
+        private int[] starts = new int[1024];
+        private int[] ends = new int[1024];
+        private int[] periods = new int[1024];
+        private int[] consensusSizes = new int[1024];
+        private float[] copyNumbers = new float[1024];
+        private float[] percentageMatches = new float[1024];
+        private float[] scores = new float[1024];
+        private String[] ids = new String[1024];
+        private String[] sequences = new String[1024];
+        private long stringSize;
+        private int size;
+
+        void add(Document document) {
+            if (size == starts.length) {
+                int capacity = size + (size >> 1);
+                chromosomeIds = Arrays.copyOf(chromosomeIds, capacity);
+                sourceIds = Arrays.copyOf(sourceIds, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                periods = Arrays.copyOf(periods, capacity);
+                consensusSizes = Arrays.copyOf(consensusSizes, capacity);
+                copyNumbers = Arrays.copyOf(copyNumbers, capacity);
+                percentageMatches = Arrays.copyOf(percentageMatches, capacity);
+                scores = Arrays.copyOf(scores, capacity);
+                ids = Arrays.copyOf(ids, capacity);
+                sequences = Arrays.copyOf(sequences, capacity);
+            }
+            int chromosomeId = chromosomes.computeIfAbsent(document.getString("chromosome"), k -> chromosomes.size());
+            int sourceId = sources.computeIfAbsent(document.getString("source"), k -> sources.size());
+            if (chromosomeId > Short.MAX_VALUE || sourceId > Byte.MAX_VALUE) {
+                throw new IllegalStateException("Too many chromosomes or repeat sources: " + chromosomes.size() + " chromosomes, "
+                        + sources.size() + " sources");
+            }
+            chromosomeIds[size] = (short) chromosomeId;
+            sourceIds[size] = (byte) sourceId;
+            starts[size] = document.getInteger("start");
+            ends[size] = document.getInteger("end");
+            periods[size] = getInt(document, "period");
+            consensusSizes[size] = getInt(document, "consensusSize");
+            copyNumbers[size] = getFloat(document, "copyNumber");
+            percentageMatches[size] = getFloat(document, "percentageMatch");
+            scores[size] = getFloat(document, "score");
+            ids[size] = getString(document, "id");
+            sequences[size] = getString(document, "sequence");
+            size++;
+        }
+
+        private String getString(Document document, String field) {
+            String value = document.getString(field);
+            if (value != null) {
+                stringSize += STRING_OVERHEAD + 2L * value.length();
+            }
+            return value;
+        }
+
+        private static int getInt(Document document, String field) {
+            Object value = document.get(field);
+            return value != null ? ((Number) value).intValue() : NULL_INT;
+        }
+
+        private static float getFloat(Document document, String field) {
+            Object value = document.get(field);
+            return value != null ? ((Number) value).floatValue() : Float.NaN;
+        }
+
+        /**
+         * @return approximate heap used so far, array capacity included
+         */
+        long getSize() {
+            return (long) starts.length * (2 + 1 + 7 * 4 + 2 * 4) + stringSize;
+        }
+    }
+}
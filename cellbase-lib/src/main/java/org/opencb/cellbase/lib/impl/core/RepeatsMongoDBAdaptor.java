@@ -25,9 +25,9 @@ import org.opencb.cellbase.core.api.queries.CellBaseIterator;
 import org.opencb.cellbase.core.api.queries.ProjectionQueryOptions;
 import org.opencb.cellbase.core.api.queries.RepeatsQuery;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.cellbase.lib.MongoDBCollectionConfiguration;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryParam;
-import org.opencb.commons.datastore.mongodb.GenericDocumentComplexConverter;
 import org.opencb.commons.datastore.mongodb.MongoDBIterator;
 import org.opencb.commons.datastore.mongodb.MongoDataStore;
 
@@ -161,14 +161,31 @@ public class RepeatsMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCor
         }
     }
 
+    /**
+     * Reads the whole repeats collection into memory.
+     * @param maxMemory maximum heap, in bytes, the index may use
+     * @return the repeats index, null if the repeats do not fit in maxMemory
+     */
+    public RepeatsIndex loadIndex(long maxMemory) {
+        QueryOptions queryOptions = new QueryOptions(QueryOptions.EXCLUDE, "_id,_chunkIds");
+        MongoDBIterator<Document> iterator = mongoDBCollection.nativeQuery().find(new Document(), queryOptions);
+        try {
+            return RepeatsIndex.load(iterator, maxMemory);
+        } finally {
+            iterator.close();
+        }
+    }
+
     @Override
     public CellBaseIterator iterator(RepeatsQuery query) {
         Bson bson = parseQuery(query);
-        QueryOptions queryOptions = query.toQueryOptions();
-        Bson projection = getProjection(query);
-        GenericDocumentComplexConverter<Repeat> converter = new GenericDocumentComplexConverter<>(Repeat.class);
-        MongoDBIterator<Repeat> iterator = mongoDBCollection.iterator(null, bson, projection, converter, queryOptions);
-        return new CellBaseIterator<>(iterator);
+        return iterator(mongoDBCollection, bson, query, Repeat.class);
+    }
+
+    @Override
+    public List<CellBaseDataResult<Repeat>> query(List<RepeatsQuery> queries) {
+        return new MultiRegionQuery<RepeatsQuery, Repeat>(mongoDBCollection, MongoDBCollectionConfiguration.REPEATS_CHUNK_SIZE,
+                this::parseQuery, this::query, query -> true, Repeat.class).query(queries);
     }
 
     @Override
@@ -71,6 +71,12 @@ public class TranscriptMongoDBAdaptor extends MongoDBAdaptor implements CellBase
         return new CellBaseIterator<>(iterator);
     }
 
+    @Override
+    public List<CellBaseDataResult<Transcript>> query(List<TranscriptQuery> queries) {
+        // Transcripts are unwound from genes in an aggregation, so region queries are run concurrently but not merged
+        return MultiRegionQuery.queryConcurrently(queries, this::query);
+    }
+
     @Override
     public List<CellBaseDataResult<Transcript>> info(List<String> ids, ProjectionQueryOptions projectionQueryOptions) {
         return info(ids, projectionQueryOptions, null);
@@ -39,12 +39,11 @@ import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.core.variant.PopulationFrequencyPhasedQueryManager;
 import org.opencb.cellbase.lib.MongoDBCollectionConfiguration;
 import org.opencb.cellbase.lib.VariantMongoIterator;
+import org.opencb.commons.datastore.core.DataResult;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryParam;
-import org.opencb.commons.datastore.mongodb.GenericDocumentComplexConverter;
 import org.opencb.commons.datastore.mongodb.MongoDBCollection;
-import org.opencb.commons.datastore.mongodb.MongoDBIterator;
 import org.opencb.commons.datastore.mongodb.MongoDataStore;
 
 import java.util.*;
@@ -58,6 +57,8 @@ public class VariantMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCor
     private static final String POP_FREQUENCIES_FIELD = "annotation.populationFrequencies";
     private static final String ANNOTATION_FIELD = "annotation";
     private static final float DECIMAL_RESOLUTION = 100f;
+    // CADD chunk ids resolved by a single query
+    static final int CADD_CHUNKS_PER_QUERY = 100;
     private static final String ENSEMBL_GENE_ID_PATTERN = "ENSG00";
     private static final String ENSEMBL_TRANSCRIPT_ID_PATTERN = "ENST00";
     private static PopulationFrequencyPhasedQueryManager populationFrequencyPhasedQueryManager
@@ -569,87 +570,154 @@ public class VariantMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCor
         CellBaseDataResult result = executeQuery(chromosome + "_" + position + "_" + reference + "_" + alternate,
                 new Document(builder.get().toMap()), queryOptions, caddDBCollection);
 
-//        System.out.println("result = " + result);
-
         List<Score> scores = new ArrayList<>();
         for (Object object : result.getResults()) {
-//            System.out.println("object = " + object);
-            Document dbObject = (Document) object;
-            int chunkStart = dbObject.getInteger("start");
-            int chunkEnd = dbObject.getInteger("end");
-            // CADD positions are not continuous through the whole chromosome. Several documents may be associated with
-            // the same chunk id: we have to be sure that current document contains queried position. Only two documents
-            // will contain queried position - one for raw and one for scaled values
-            if (position >= chunkStart && position <= chunkEnd) {
-                int offset = (position - chunkStart);
-                ArrayList basicDBList = dbObject.get("values", ArrayList.class);
-
-//                long l1 = 0L; // TODO: delete
-//                try { // TODO: delete
-                long l1 = Long.parseLong(basicDBList.get(offset).toString());
-//                                 l1 = (Long) basicDBList.get(offset);
-//                } catch (Exception e) {  // TODO: delete
-//                    logger.error("problematic variant: {}", variant.toString());
-//                    throw e;
-//                }
-
-                if (dbObject.getString("source").equalsIgnoreCase("cadd_raw")) {
-                    float value = 0f;
-                    switch (alternate.toLowerCase()) {
-                        case "a":
-//                            value = ((short) (l1 >> 48) - 10000) / DECIMAL_RESOLUTION;
-                            value = (((short) (l1 >> 48)) / DECIMAL_RESOLUTION) - 10;
-                            break;
-                        case "c":
-                            value = (((short) (l1 >> 32)) / DECIMAL_RESOLUTION) - 10;
-                            break;
-                        case "g":
-                            value = (((short) (l1 >> 16)) / DECIMAL_RESOLUTION) - 10;
-                            break;
-                        case "t":
-                            value = (((short) (l1 >> 0)) / DECIMAL_RESOLUTION) - 10;
-                            break;
-                        default:
-                            break;
+            Score score = getCaddScore((Document) object, position, alternate);
+            if (score != null) {
+                scores.add(score);
+            }
+        }
+
+        result.setResults(scores);
+        return result;
+    }
+
+    /**
+     * Batched version of getFunctionalScoreVariant. SNVs are grouped by the CADD chunk they fall in, every chunk is
+     * fetched once for the whole batch and scores are decoded in memory. Only the documents covering the positions
+     * queried within each chunk are returned.
+     * @param variants list of Variant objects to query
+     * @param queryOptions query options
+     * @return list of CellBaseDataResult of Score objects. Positions within the list always correspond to the
+     * position Variant objects occupy in the "variants" query list. Results for non SNV variants are empty.
+     */
+    public List<CellBaseDataResult<Score>> getFunctionalScoreVariant(List<Variant> variants, QueryOptions queryOptions) {
+        List<CellBaseDataResult<Score>> results = new ArrayList<>(Collections.nCopies(variants.size(), null));
+
+        // LinkedHashMap keeps chunks sorted as they appear in the input, which is usually sorted by position
+        Map<String, List<Integer>> chunkIdToVariantIndexes = new LinkedHashMap<>();
+        for (int i = 0; i < variants.size(); i++) {
+            Variant variant = variants.get(i);
+            if (variant.getType() == VariantType.SNV) {
+                String chunkId = getChunkIdPrefix(variant.getChromosome(), variant.getStart(),
+                        MongoDBCollectionConfiguration.VARIATION_FUNCTIONAL_SCORE_CHUNK_SIZE);
+                chunkIdToVariantIndexes.computeIfAbsent(chunkId, k -> new ArrayList<>()).add(i);
+            } else {
+                results.set(i, new CellBaseDataResult<>(variant.toString(), 0, Collections.emptyList(), 0));
+            }
+        }
+
+        QueryOptions batchOptions = new QueryOptions(queryOptions)
+                .append(QueryOptions.INCLUDE, "start,end,source,values,_chunkIds")
+                .append(QueryOptions.EXCLUDE, "_id");
+        List<String> chunkIds = new ArrayList<>(chunkIdToVariantIndexes.keySet());
+        Map<String, List<Document>> chunkIdToDocuments = new HashMap<>();
+        long dbTimeStart = System.currentTimeMillis();
+        for (int i = 0; i < chunkIds.size(); i += CADD_CHUNKS_PER_QUERY) {
+            Set<String> pageChunkIds = new HashSet<>(chunkIds.subList(i, Math.min(i + CADD_CHUNKS_PER_QUERY, chunkIds.size())));
+            List<Bson> orBsonList = new ArrayList<>(CADD_CHUNKS_PER_QUERY);
+            for (String chunkId : pageChunkIds) {
+                // Several documents may be associated with the same chunk id, skip those not covering any queried position
+                int minPosition = Integer.MAX_VALUE;
+                int maxPosition = Integer.MIN_VALUE;
+                for (int index : chunkIdToVariantIndexes.get(chunkId)) {
+                    minPosition = Math.min(minPosition, variants.get(index).getStart());
+                    maxPosition = Math.max(maxPosition, variants.get(index).getStart());
+                }
+                orBsonList.add(Filters.and(Filters.eq("_chunkIds", chunkId), Filters.lte("start", maxPosition),
+                        Filters.gte("end", minPosition)));
+            }
+            for (Document document : caddDBCollection.find(Filters.or(orBsonList), batchOptions).getResults()) {
+                // A document may span more than one chunk. Its other chunk may be in another query too, so it is
+                // only registered under the chunks of this query, otherwise it would be returned twice
+                for (Object chunkId : document.get("_chunkIds", List.class)) {
+                    if (pageChunkIds.contains(chunkId)) {
+                        chunkIdToDocuments.computeIfAbsent((String) chunkId, k -> new ArrayList<>()).add(document);
                     }
-                    scores.add(Score.newBuilder()
-                            .setScore(value)
-                            .setSource(dbObject.getString("source"))
-                            .setDescription(null)
-                            //                        .setDescription("")
-                            .build());
                 }
-
-                if (dbObject.getString("source").equalsIgnoreCase("cadd_scaled")) {
-                    float value = 0f;
-                    switch (alternate.toLowerCase()) {
-                        case "a":
-                            value = ((short) (l1 >> 48)) / DECIMAL_RESOLUTION;
-                            break;
-                        case "c":
-                            value = ((short) (l1 >> 32)) / DECIMAL_RESOLUTION;
-                            break;
-                        case "g":
-                            value = ((short) (l1 >> 16)) / DECIMAL_RESOLUTION;
-                            break;
-                        case "t":
-                            value = ((short) (l1 >> 0)) / DECIMAL_RESOLUTION;
-                            break;
-                        default:
-                            break;
+            }
+        }
+        int dbTime = (int) (System.currentTimeMillis() - dbTimeStart);
+
+        for (Map.Entry<String, List<Integer>> entry : chunkIdToVariantIndexes.entrySet()) {
+            List<Document> documents = chunkIdToDocuments.getOrDefault(entry.getKey(), Collections.emptyList());
+            for (int index : entry.getValue()) {
+                Variant variant = variants.get(index);
+                List<Score> scores = new ArrayList<>(2);
+                for (Document document : documents) {
+                    Score score = getCaddScore(document, variant.getStart(), variant.getAlternate());
+                    if (score != null) {
+                        scores.add(score);
                     }
-                    scores.add(Score.newBuilder()
-                            .setScore(value)
-                            .setSource(dbObject.getString("source"))
-                            .setDescription(null)
-                            //                        .setDescription("")
-                            .build());
                 }
+                String id = variant.getChromosome() + "_" + variant.getStart() + "_" + variant.getReference() + "_"
+                        + variant.getAlternate();
+                results.set(index, new CellBaseDataResult<>(id, dbTime, new ArrayList<>(), scores.size(), scores, -1));
             }
         }
 
-        result.setResults(scores);
-        return result;
+        logger.debug("CADD scores of {} variants resolved with {} chunks", variants.size(), chunkIds.size());
+        return results;
+    }
+
+    /**
+     * Decodes the CADD score of a variant. Values of each position are stored as a long packing four 16-bit shorts, one
+     * per alternate allele: A, C, G, T.
+     * @param document CADD document, raw or scaled values
+     * @param position variant position
+     * @param alternate variant alternate allele
+     * @return the score of the variant, null if the document does not contain the position
+     */
+    private Score getCaddScore(Document document, int position, String alternate) {
+        int chunkStart = document.getInteger("start");
+        int chunkEnd = document.getInteger("end");
+        // CADD positions are not continuous through the whole chromosome. Several documents may be associated with
+        // the same chunk id: we have to be sure that current document contains queried position. Only two documents
+        // will contain queried position - one for raw and one for scaled values
+        if (position < chunkStart || position > chunkEnd) {
+            return null;
+        }
+        int offset = (position - chunkStart);
+        ArrayList basicDBList = document.get("values", ArrayList.class);
+        long l1 = Long.parseLong(basicDBList.get(offset).toString());
+
+        int shift;
+        switch (alternate.toLowerCase()) {
+            case "a":
+                shift = 48;
+                break;
+            case "c":
+                shift = 32;
+                break;
+            case "g":
+                shift = 16;
+                break;
+            case "t":
+                shift = 0;
+                break;
+            default:
+                shift = -1;
+                break;
+        }
+
+        String source = document.getString("source");
+        float value = 0f;
+        if (source.equalsIgnoreCase("cadd_raw")) {
+            if (shift >= 0) {
+                value = (((short) (l1 >> shift)) / DECIMAL_RESOLUTION) - 10;
+            }
+        } else if (source.equalsIgnoreCase("cadd_scaled")) {
+            if (shift >= 0) {
+                value = ((short) (l1 >> shift)) / DECIMAL_RESOLUTION;
+            }
+        } else {
+            return null;
+        }
+        return Score.newBuilder()
+                .setScore(value)
+                .setSource(source)
+                .setDescription(null)
+                .build();
     }
 
     /**
@@ -661,10 +729,7 @@ public class VariantMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCor
      * objects occupy in the "variants" query list.
      */
     public List<CellBaseDataResult<Variant>> getPopulationFrequencyByVariant(List<Variant> variants, QueryOptions queryOptions) {
-        List<CellBaseDataResult<Variant>> results = new ArrayList<>(variants.size());
-        for (Variant variant: variants) {
-            results.add(getByVariant(variant, queryOptions));
-        }
+        List<CellBaseDataResult<Variant>> results = getByVariantBatch(variants, queryOptions);
 
         if (queryOptions.get(VariantDBAdaptor.QueryParams.PHASE.key()) != null && queryOptions.getBoolean(
                 VariantDBAdaptor.QueryParams.PHASE.key())) {
@@ -674,16 +739,106 @@ public class VariantMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCor
         return results;
     }
 
+    /**
+     * Batched version of getByVariant. Short variants are grouped by the variation chunk they fall in and each group
+     * is resolved with a single query; returned documents are then matched back to the input variants in memory.
+     * Structural variants providing CIPOS/CIEND keep being queried one by one.
+     * @param variants list of Variant objects to query
+     * @param options query options, not modified. As in getByVariant, skip and limit apply to the matches of each variant
+     * @return list of CellBaseDataResult of Variant objects. Positions within the list always correspond to the
+     * position Variant objects occupy in the "variants" query list.
+     */
+    List<CellBaseDataResult<Variant>> getByVariantBatch(List<Variant> variants, QueryOptions options) {
+        List<CellBaseDataResult<Variant>> results = new ArrayList<>(Collections.nCopies(variants.size(), null));
+
+        // LinkedHashMap keeps chunks sorted as they appear in the input, which is usually sorted by position
+        Map<String, List<Integer>> chunkIdToVariantIndexes = new LinkedHashMap<>();
+        for (int i = 0; i < variants.size(); i++) {
+            Variant variant = variants.get(i);
+            if (isImpreciseStructuralVariant(variant)) {
+                results.set(i, getByVariant(variant, options));
+            } else {
+                String chunkId = getChunkIdPrefix(variant.getChromosome(), variant.getStart(),
+                        MongoDBCollectionConfiguration.VARIATION_CHUNK_SIZE);
+                chunkIdToVariantIndexes.computeIfAbsent(chunkId, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        QueryOptions batchOptions = getBatchOptions(options);
+        int skip = options != null ? Math.max(options.getInt(QueryOptions.SKIP, 0), 0) : 0;
+        int limit = options != null && options.getInt(QueryOptions.LIMIT, 0) > 0
+                ? options.getInt(QueryOptions.LIMIT) : Integer.MAX_VALUE;
+        for (Map.Entry<String, List<Integer>> entry : chunkIdToVariantIndexes.entrySet()) {
+            List<Bson> orBsonList = new ArrayList<>(entry.getValue().size());
+            for (int index : entry.getValue()) {
+                Variant variant = variants.get(index);
+                orBsonList.add(Filters.and(Filters.eq("chromosome", variant.getChromosome()),
+                        Filters.eq("start", variant.getStart()),
+                        Filters.eq("reference", variant.getReference()),
+                        Filters.eq("alternate", variant.getAlternate())));
+            }
+            Bson bson = Filters.and(Filters.eq("_chunkIds", entry.getKey()), Filters.or(orBsonList));
+
+            long dbTimeStart = System.currentTimeMillis();
+            DataResult<Variant> chunkResult = mongoDBCollection.find(bson, null, Variant.class, batchOptions);
+            int dbTime = (int) (System.currentTimeMillis() - dbTimeStart);
+
+            Map<String, List<Variant>> keyToVariants = new HashMap<>();
+            for (Variant variant : chunkResult.getResults()) {
+                keyToVariants.computeIfAbsent(getVariantKey(variant), k -> new ArrayList<>()).add(variant);
+            }
+            for (int index : entry.getValue()) {
+                Variant variant = variants.get(index);
+                List<Variant> matches = keyToVariants.getOrDefault(getVariantKey(variant), new ArrayList<>());
+                // Mirror numMatches as returned by a single-variant find: -1 whenever count was skipped
+                long numMatches = chunkResult.getNumMatches() < 0 ? chunkResult.getNumMatches() : matches.size();
+                matches = new ArrayList<>(matches.subList(Math.min(skip, matches.size()),
+                        (int) Math.min((long) skip + limit, matches.size())));
+                results.set(index, new CellBaseDataResult<>(variant.toString(), dbTime, new ArrayList<>(), matches.size(),
+                        matches, numMatches));
+            }
+        }
+
+        logger.debug("{} variants resolved with {} chunk queries", variants.size(), chunkIdToVariantIndexes.size());
+        return results;
+    }
+
+    /**
+     * @param options query options of getByVariantBatch, not modified
+     * @return a copy of the options for the chunk queries: including the key fields needed to match the returned documents
+     * back to the input variants, excluding the private fields and without skip nor limit, applied to each variant
+     */
+    private QueryOptions getBatchOptions(QueryOptions options) {
+        QueryOptions batchOptions = options != null ? new QueryOptions(options) : new QueryOptions();
+        List<String> includes = batchOptions.getAsStringList("include");
+        if (!includes.isEmpty()) {
+            List<String> batchIncludes = new ArrayList<>(includes);
+            batchIncludes.addAll(Arrays.asList("chromosome", "start", "reference", "alternate"));
+            batchOptions.put("include", String.join(",", batchIncludes));
+        }
+        batchOptions.remove(QueryOptions.SKIP);
+        batchOptions.remove(QueryOptions.LIMIT);
+        return addVariantPrivateExcludeOptions(batchOptions);
+    }
+
+    private String getVariantKey(Variant variant) {
+        return variant.getChromosome() + ":" + variant.getStart() + ":" + variant.getReference() + ":" + variant.getAlternate();
+    }
+
+    private boolean isImpreciseStructuralVariant(Variant variant) {
+        return variant.getSv() != null
+                && variant.getSv().getCiStartLeft() != null
+                && variant.getSv().getCiStartRight() != null
+                && variant.getSv().getCiEndLeft() != null
+                && variant.getSv().getCiEndRight() != null;
+    }
+
     CellBaseDataResult getByVariant(Variant variant, QueryOptions options) {
         Query query;
 //        if (VariantType.CNV.equals(variant.getType())) {
 
         // Queries for CNVs,SVs are different from simple short variants queries
-        if (variant.getSv() != null
-                && variant.getSv().getCiStartLeft() != null
-                && variant.getSv().getCiStartRight() != null
-                && variant.getSv().getCiEndLeft() != null
-                && variant.getSv().getCiEndRight() != null) {
+        if (isImpreciseStructuralVariant(variant)) {
             query = new Query(VariantDBAdaptor.QueryParams.CHROMOSOME.key(), variant.getChromosome());
             // Imprecise queries can just be enabled for structural variants providing CIPOS positions. Imprecise queries
             // can be disabled by using the imprecise=false query option
@@ -717,7 +872,7 @@ public class VariantMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCor
         return get(query, options);
     }
 
-    private List<CellBaseDataResult> getByVariant(List<Variant> variants, QueryOptions options) {
+    List<CellBaseDataResult> getByVariant(List<Variant> variants, QueryOptions options) {
         List<CellBaseDataResult> results = new ArrayList<>(variants.size());
         for (Variant variant: variants) {
             results.add(getByVariant(variant, options));
@@ -730,12 +885,14 @@ public class VariantMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCor
     @Override
     public CellBaseIterator<Variant> iterator(VariantQuery query) {
         Bson bson = parseQuery(query);
-        QueryOptions queryOptions = query.toQueryOptions();
-        Bson projection = getProjection(query);
-        GenericDocumentComplexConverter<Variant> converter = new GenericDocumentComplexConverter<>(Variant.class);
         logger.info("query: {}", bson.toBsonDocument(Document.class, MongoClient.getDefaultCodecRegistry()) .toJson());
-        MongoDBIterator<Variant> iterator = mongoDBCollection.iterator(null, bson, projection, converter, queryOptions);
-        return new CellBaseIterator<>(iterator);
+        return iterator(mongoDBCollection, bson, query, Variant.class);
+    }
+
+    @Override
+    public List<CellBaseDataResult<Variant>> query(List<VariantQuery> queries) {
+        return new MultiRegionQuery<VariantQuery, Variant>(mongoDBCollection, MongoDBCollectionConfiguration.VARIATION_CHUNK_SIZE,
+                this::parseQuery, this::query, query -> true, Variant.class).query(queries);
     }
 
     @Override
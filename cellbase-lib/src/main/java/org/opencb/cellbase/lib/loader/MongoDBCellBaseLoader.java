@@ -24,6 +24,8 @@ import com.fasterxml.jackson.databind.ObjectWriter;
 import com.mongodb.ErrorCategory;
 import com.mongodb.MongoBulkWriteException;
 import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
 import org.apache.commons.lang3.StringUtils;
 import org.bson.BsonSerializationException;
 import org.bson.Document;
@@ -35,13 +37,12 @@ import org.opencb.cellbase.core.config.DatabaseCredentials;
 import org.opencb.cellbase.core.exception.CellbaseException;
 import org.opencb.cellbase.core.loader.CellBaseLoader;
 import org.opencb.cellbase.core.loader.LoadRunner;
+import org.opencb.cellbase.core.loader.LoadStats;
 import org.opencb.cellbase.core.loader.LoaderException;
 import org.opencb.cellbase.lib.MongoDBCollectionConfiguration;
 import org.opencb.cellbase.lib.impl.core.MongoDBAdaptorFactory;
 import org.opencb.cellbase.lib.impl.core.VariantMongoDBAdaptor;
-import org.opencb.commons.datastore.core.DataResult;
 import org.opencb.commons.datastore.core.DataStoreServerAddress;
-import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.mongodb.MongoDBCollection;
 import org.opencb.commons.datastore.mongodb.MongoDBConfiguration;
 import org.opencb.commons.datastore.mongodb.MongoDataStore;
@@ -79,6 +80,7 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
     private MongoDataStoreManager mongoDataStoreManager;
     private MongoDataStore mongoDataStore;
     private MongoDBCollection mongoDBCollection;
+    private MongoCollection<Document> nativeCollection;
 
     private MongoDBAdaptorFactory dbAdaptorFactory;
     @Deprecated
@@ -154,6 +156,7 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
 
         collectionName = getCollectionName(data);
         mongoDBCollection = mongoDataStore.getCollection(collectionName);
+        nativeCollection = mongoDataStore.getMongoClient().getDatabase(mongoDataStore.getDatabaseName()).getCollection(collectionName);
         logger.debug("Connection to MongoDB datastore '{}' created, collection '{}' is used",
                 mongoDataStore.getDatabaseName(), collectionName);
 
@@ -412,6 +415,8 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
                 if (batch == LoadRunner.POISON_PILL) {
                     finished = true;
                 } else {
+                    long startTime = System.nanoTime();
+                    long batchBytes = 0;
                     List<Document> documentBatch = new ArrayList<>(batch.size());
                     for (String jsonLine : batch) {
                         Document document = Document.parse(jsonLine);
@@ -419,8 +424,14 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
                         addClinicalPrivateFields(document);
 //                        addVariationPrivateFields(document);
                         documentBatch.add(document);
+                        batchBytes += jsonLine.length();
                     }
-                    numLoadedObjects += load(documentBatch);
+                    loadStats.add(LoadStats.PARSE, batch.size(), batchBytes, System.nanoTime() - startTime);
+
+                    startTime = System.nanoTime();
+                    int numLoaded = load(documentBatch);
+                    loadStats.add(LoadStats.WRITE, numLoaded, batchBytes, System.nanoTime() - startTime);
+                    numLoadedObjects += numLoaded;
                 }
             } catch (InterruptedException e) {
                 e.printStackTrace();
@@ -742,8 +753,10 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
         // End recursive calls
         if (batch.size() > 0) {
             try {
-                DataResult result = mongoDBCollection.insert(batch, new QueryOptions());
-                return Math.toIntExact(result.getNumInserted());
+                // Unordered bulk insert: the server can apply the inserts in parallel and a failing document does not
+                // stop the rest of the batch
+                nativeCollection.insertMany(batch, new InsertManyOptions().ordered(false));
+                return batch.size();
             } catch (BsonSerializationException e) {
                 // End recursive calls
                 if (batch.size() == 1) {
@@ -777,12 +790,13 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
             } catch (MongoBulkWriteException e) {
                 for (BulkWriteError bulkWriteError : e.getWriteErrors()) {
                     // Duplicated key due to a batch which was partially inserted before, just skip the variant
-                    if (ErrorCategory.fromErrorCode(bulkWriteError.getCode()).equals(ErrorCategory.DUPLICATE_KEY)) {
-                        return 0;
+                    if (!ErrorCategory.fromErrorCode(bulkWriteError.getCode()).equals(ErrorCategory.DUPLICATE_KEY)) {
+                        // It is not a duplicated key error - propagate it
+                        throw e;
                     }
                 }
-                // It is not a duplicated key error - propagate it
-                throw e;
+                // All the documents but the duplicated ones were inserted
+                return e.getWriteResult().getInsertedCount();
             }
         } else {
             return 0;
@@ -44,27 +44,26 @@ public class AbstractManager {
 //    private static final int LIMIT_DEFAULT = 10;
     private static final int MAX_RECORDS = 5000;
 
-    public AbstractManager(CellBaseConfiguration configuration) {
-        this.configuration = configuration;
-
-        this.init();
+    public AbstractManager(CellBaseManagerFactory managers) {
+        this(null, null, managers);
     }
 
-    public AbstractManager(String species, CellBaseConfiguration configuration) {
-        this(species, null, configuration);
+    public AbstractManager(String species, CellBaseManagerFactory managers) {
+        this(species, null, managers);
     }
 
-    public AbstractManager(String species, String assembly, CellBaseConfiguration configuration) {
+    public AbstractManager(String species, String assembly, CellBaseManagerFactory managers) {
         this.species = species;
         this.assembly = assembly;
-        this.configuration = configuration;
+        this.managers = managers;
 
         this.init();
     }
 
     private void init() {
-        managers = new CellBaseManagerFactory(this.configuration);
-        dbAdaptorFactory = new MongoDBAdaptorFactory(this.configuration);
+        // Managers and DB adaptors are shared by all the managers created by the same factory
+        configuration = managers.getConfiguration();
+        dbAdaptorFactory = managers.getDBAdaptorFactory();
 
         logger = LoggerFactory.getLogger(this.getClass());
         jsonObjectWriter = new ObjectMapper().writer();
@@ -16,15 +16,19 @@
 
 package org.opencb.cellbase.lib.managers;
 
+import org.opencb.cellbase.core.config.AnnotationProperties;
 import org.opencb.cellbase.core.config.CellBaseConfiguration;
 import org.opencb.cellbase.core.config.SpeciesConfiguration;
 import org.opencb.cellbase.core.exception.CellbaseException;
 import org.opencb.cellbase.lib.SpeciesUtils;
+import org.opencb.cellbase.lib.impl.core.MongoDBAdaptorFactory;
+import org.opencb.cellbase.lib.variant.annotation.AnnotationScheduler;
+import org.opencb.cellbase.lib.variant.annotation.VariantAnnotationCalculator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class CellBaseManagerFactory {
 
@@ -40,28 +44,53 @@ public class CellBaseManagerFactory {
     private Map<String, XrefManager> xrefManagers;
     private Map<String, RepeatsManager> repeatsManagers;
     private Map<String, TfbsManager> tfManagers;
-    private MetaManager metaManager;
+    private volatile MetaManager metaManager;
     private Map<String, OntologyManager> ontologyManagers;
-    private FileManager fileManager;
+    private volatile FileManager fileManager;
+    private Map<String, VariantAnnotationCalculator> variantAnnotationCalculators;
+    private AnnotationScheduler annotationScheduler;
+    private MongoDBAdaptorFactory dbAdaptorFactory;
     private Logger logger;
     // this webservice has no species, do not validate
     private static final String DONT_CHECK_SPECIES = "do not validate species";
 
     public CellBaseManagerFactory(CellBaseConfiguration configuration) {
+        this(configuration, null);
+    }
+
+    /**
+     * @param configuration CellBase configuration
+     * @param dbAdaptorFactory DB adaptor factory to be used by the managers, a new one is created if null
+     */
+    public CellBaseManagerFactory(CellBaseConfiguration configuration, MongoDBAdaptorFactory dbAdaptorFactory) {
         this.configuration = configuration;
         logger = LoggerFactory.getLogger(this.getClass());
 
-        geneManagers = new HashMap<>();
-        transcriptManagers = new HashMap<>();
-        variantManagers = new HashMap<>();
-        proteinManagers = new HashMap<>();
-        genomeManagers = new HashMap<>();
-        clinicalManagers = new HashMap<>();
-        regulatoryManagers = new HashMap<>();
-        xrefManagers = new HashMap<>();
-        repeatsManagers = new HashMap<>();
-        tfManagers = new HashMap<>();
-        ontologyManagers = new HashMap<>();
+        geneManagers = new ConcurrentHashMap<>();
+        transcriptManagers = new ConcurrentHashMap<>();
+        variantManagers = new ConcurrentHashMap<>();
+        proteinManagers = new ConcurrentHashMap<>();
+        genomeManagers = new ConcurrentHashMap<>();
+        clinicalManagers = new ConcurrentHashMap<>();
+        regulatoryManagers = new ConcurrentHashMap<>();
+        xrefManagers = new ConcurrentHashMap<>();
+        repeatsManagers = new ConcurrentHashMap<>();
+        tfManagers = new ConcurrentHashMap<>();
+        ontologyManagers = new ConcurrentHashMap<>();
+        variantAnnotationCalculators = new ConcurrentHashMap<>();
+
+        this.dbAdaptorFactory = dbAdaptorFactory != null ? dbAdaptorFactory : new MongoDBAdaptorFactory(configuration, this);
+    }
+
+    public CellBaseConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * @return the DB adaptor factory shared by all the managers created by this factory
+     */
+    public MongoDBAdaptorFactory getDBAdaptorFactory() {
+        return dbAdaptorFactory;
     }
 
     private String getMultiKey(String species, String assembly) {
@@ -77,14 +106,35 @@ public class CellBaseManagerFactory {
     }
 
     public GeneManager getGeneManager(String species, String assembly) throws CellbaseException {
+        return getManager(geneManagers, species, assembly, GeneManager::new);
+    }
+
+    /**
+     * Managers are built only once per species and assembly. Reads do not lock, building a manager locks the whole
+     * factory since managers may get other managers from it while being built.
+     */
+    private <T> T getManager(Map<String, T> managers, String species, String assembly, ManagerConstructor<T> constructor)
+            throws CellbaseException {
         String multiKey = getMultiKey(species, assembly);
-        if (!geneManagers.containsKey(multiKey)) {
-            if (!validateSpeciesAssembly(species, assembly)) {
-                throw new CellbaseException("Invalid species " + species + " or assembly " + assembly);
+        T manager = managers.get(multiKey);
+        if (manager == null) {
+            synchronized (this) {
+                manager = managers.get(multiKey);
+                if (manager == null) {
+                    if (!validateSpeciesAssembly(species, assembly)) {
+                        throw new CellbaseException("Invalid species " + species + " or assembly " + assembly);
+                    }
+                    manager = constructor.create(species, assembly, this);
+                    managers.put(multiKey, manager);
+                }
             }
-            geneManagers.put(multiKey, new GeneManager(species, assembly, configuration));
         }
-        return geneManagers.get(multiKey);
+        return manager;
+    }
+
+    @FunctionalInterface
+    private interface ManagerConstructor<T> {
+        T create(String species, String assembly, CellBaseManagerFactory managers) throws CellbaseException;
     }
 
     private boolean validateSpeciesAssembly(String species, String assembly) {
@@ -118,14 +168,7 @@ public class CellBaseManagerFactory {
     }
 
     public TranscriptManager getTranscriptManager(String species, String assembly) throws CellbaseException {
-        String multiKey = getMultiKey(species, assembly);
-        if (!transcriptManagers.containsKey(multiKey)) {
-            if (!validateSpeciesAssembly(species, assembly)) {
-                throw new CellbaseException("Invalid species " + species + " or assembly " + assembly);
-            }
-            transcriptManagers.put(multiKey, new TranscriptManager(species, assembly, configuration));
-        }
-        return transcriptManagers.get(multiKey);
+        return getManager(transcriptManagers, species, assembly, TranscriptManager::new);
     }
 
     public VariantManager getVariantManager(String species) throws CellbaseException {
@@ -137,14 +180,7 @@ public class CellBaseManagerFactory {
     }
 
     public VariantManager getVariantManager(String species, String assembly) throws CellbaseException {
-        String multiKey = getMultiKey(species, assembly);
-        if (!variantManagers.containsKey(multiKey)) {
-            if (!validateSpeciesAssembly(species, assembly)) {
-                throw new CellbaseException("Invalid species " + species + " or assembly " + assembly);
-            }
-            variantManagers.put(multiKey, new VariantManager(species, assembly, configuration));
-        }
-        return variantManagers.get(multiKey);
+        return getManager(variantManagers, species, assembly, VariantManager::new);
     }
 
     public ProteinManager getProteinManager(String species) throws CellbaseException {
@@ -156,14 +192,7 @@ public class CellBaseManagerFactory {
     }
 
     public ProteinManager getProteinManager(String species, String assembly) throws CellbaseException {
-        String multiKey = getMultiKey(species, assembly);
-        if (!proteinManagers.containsKey(multiKey)) {
-            if (!validateSpeciesAssembly(species, assembly)) {
-                throw new CellbaseException("Invalid species " + species + " or assembly " + assembly);
-            }
-            proteinManagers.put(multiKey, new ProteinManager(species, assembly, configuration));
-        }
-        return proteinManagers.get(multiKey);
+        return getManager(proteinManagers, species, assembly, ProteinManager::new);
     }
 
     public GenomeManager getGenomeManager(String species) throws CellbaseException {
@@ -175,14 +204,7 @@ public class CellBaseManagerFactory {
     }
 
     public GenomeManager getGenomeManager(String species, String assembly) throws CellbaseException {
-        String multiKey = getMultiKey(species, assembly);
-        if (!genomeManagers.containsKey(multiKey)) {
-            if (!validateSpeciesAssembly(species, assembly)) {
-                throw new CellbaseException("Invalid species " + species + " or assembly " + assembly);
-            }
-            genomeManagers.put(multiKey, new GenomeManager(species, assembly, configuration));
-        }
-        return genomeManagers.get(multiKey);
+        return getManager(genomeManagers, species, assembly, GenomeManager::new);
     }
 
     public ClinicalManager getClinicalManager(String species) throws CellbaseException {
@@ -194,14 +216,7 @@ public class CellBaseManagerFactory {
     }
 
     public ClinicalManager getClinicalManager(String species, String assembly) throws CellbaseException {
-        String multiKey = getMultiKey(species, assembly);
-        if (!clinicalManagers.containsKey(multiKey)) {
-            if (!validateSpeciesAssembly(species, assembly)) {
-                throw new CellbaseException("Invalid species " + species + " or assembly " + assembly);
-            }
-            clinicalManagers.put(multiKey, new ClinicalManager(species, assembly, configuration));
-        }
-        return clinicalManagers.get(multiKey);
+        return getManager(clinicalManagers, species, assembly, ClinicalManager::new);
     }
 
     public RegulatoryManager getRegulatoryManager(String species) throws CellbaseException {
@@ -213,14 +228,7 @@ public class CellBaseManagerFactory {
     }
 
     public RegulatoryManager getRegulatoryManager(String species, String assembly) throws CellbaseException {
-        String multiKey = getMultiKey(species, assembly);
-        if (!regulatoryManagers.containsKey(multiKey)) {
-            if (!validateSpeciesAssembly(species, assembly)) {
-                throw new CellbaseException("Invalid species " + species + " or assembly " + assembly);
-            }
-            regulatoryManagers.put(multiKey, new RegulatoryManager(species, assembly, configuration));
-        }
-        return regulatoryManagers.get(multiKey);
+        return getManager(regulatoryManagers, species, assembly, RegulatoryManager::new);
     }
 
     public XrefManager getXrefManager(String species) throws CellbaseException {
@@ -232,14 +240,7 @@ public class CellBaseManagerFactory {
     }
 
     public XrefManager getXrefManager(String species, String assembly) throws CellbaseException {
-        String multiKey = getMultiKey(species, assembly);
-        if (!xrefManagers.containsKey(multiKey)) {
-            if (!validateSpeciesAssembly(species, assembly)) {
-                throw new CellbaseException("Invalid species " + species + " or assembly " + assembly);
-            }
-            xrefManagers.put(multiKey, new XrefManager(species, assembly, configuration));
-        }
-        return xrefManagers.get(multiKey);
+        return getManager(xrefManagers, species, assembly, XrefManager::new);
     }
 
     public RepeatsManager getRepeatsManager(String species) throws CellbaseException {
@@ -251,14 +252,7 @@ public class CellBaseManagerFactory {
     }
 
     public RepeatsManager getRepeatsManager(String species, String assembly) throws CellbaseException {
-        String multiKey = getMultiKey(species, assembly);
-        if (!repeatsManagers.containsKey(multiKey)) {
-            if (!validateSpeciesAssembly(species, assembly)) {
-                throw new CellbaseException("Invalid species " + species + " or assembly " + assembly);
-            }
-            repeatsManagers.put(multiKey, new RepeatsManager(species, assembly, configuration));
-        }
-        return repeatsManagers.get(multiKey);
+        return getManager(repeatsManagers, species, assembly, RepeatsManager::new);
     }
 
     public TfbsManager getTFManager(String species) throws CellbaseException {
@@ -270,28 +264,67 @@ public class CellBaseManagerFactory {
     }
 
     public TfbsManager getTFManager(String species, String assembly) throws CellbaseException {
-        String multiKey = getMultiKey(species, assembly);
-        if (!tfManagers.containsKey(multiKey)) {
-            if (!validateSpeciesAssembly(species, assembly)) {
-                throw new CellbaseException("Invalid species " + species + " or assembly " + assembly);
+        return getManager(tfManagers, species, assembly, TfbsManager::new);
+    }
+
+    public MetaManager getMetaManager() {
+        MetaManager manager = metaManager;
+        if (manager == null) {
+            synchronized (this) {
+                if (metaManager == null) {
+                    metaManager = new MetaManager(this);
+                }
+                manager = metaManager;
             }
-            tfManagers.put(multiKey, new TfbsManager(species, assembly, configuration));
         }
-        return tfManagers.get(multiKey);
+        return manager;
     }
 
-    public MetaManager getMetaManager() {
-        if (metaManager == null) {
-            metaManager = new MetaManager(configuration);
+    /**
+     * Variant annotation calculators keep no request state, one per species and assembly serves all the requests.
+     * @param species species
+     * @param assembly assembly
+     * @return the variant annotation calculator, created on first use
+     * @throws CellbaseException if species or assembly are not valid
+     */
+    public VariantAnnotationCalculator getVariantAnnotationCalculator(String species, String assembly) throws CellbaseException {
+        return getManager(variantAnnotationCalculators, species, assembly, VariantAnnotationCalculator::new);
+    }
+
+    /**
+     * Thread pool shared by all the variant annotation requests served through this factory.
+     * @return the annotation scheduler, created on first use
+     */
+    public synchronized AnnotationScheduler getAnnotationScheduler() {
+        if (annotationScheduler == null) {
+            int numThreads = configuration.getAnnotation() != null
+                    ? configuration.getAnnotation().getNumThreads()
+                    : AnnotationProperties.DEFAULT_NUM_THREADS;
+            annotationScheduler = new AnnotationScheduler(numThreads);
+        }
+        return annotationScheduler;
+    }
+
+    /**
+     * Stops the annotation scheduler. Database connections are shared by all the factories and are not closed.
+     */
+    public synchronized void close() {
+        if (annotationScheduler != null) {
+            annotationScheduler.shutdown();
         }
-        return metaManager;
     }
 
     public FileManager getFileManager() {
-        if (fileManager == null) {
-            fileManager = new FileManager(configuration);
+        FileManager manager = fileManager;
+        if (manager == null) {
+            synchronized (this) {
+                if (fileManager == null) {
+                    fileManager = new FileManager(this);
+                }
+                manager = fileManager;
+            }
         }
-        return fileManager;
+        return manager;
     }
 
     public OntologyManager getOntologyManager(String species) throws CellbaseException {
@@ -303,14 +336,7 @@ public class CellBaseManagerFactory {
     }
 
     public OntologyManager getOntologyManager(String species, String assembly) throws CellbaseException {
-        String multiKey = getMultiKey(species, assembly);
-        if (!ontologyManagers.containsKey(multiKey)) {
-            if (!validateSpeciesAssembly(species, assembly)) {
-                throw new CellbaseException("Invalid species " + species + " or assembly " + assembly);
-            }
-            ontologyManagers.put(multiKey, new OntologyManager(species, assembly, configuration));
-        }
-        return ontologyManagers.get(multiKey);
+        return getManager(ontologyManagers, species, assembly, OntologyManager::new);
     }
 
 }
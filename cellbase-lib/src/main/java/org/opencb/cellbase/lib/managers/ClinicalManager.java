@@ -22,7 +22,6 @@ import org.opencb.biodata.models.variant.avro.*;
 import org.opencb.cellbase.core.api.core.CellBaseCoreDBAdaptor;
 import org.opencb.cellbase.core.api.queries.ClinicalVariantQuery;
 import org.opencb.cellbase.core.common.clinical.ClinicalVariant;
-import org.opencb.cellbase.core.config.CellBaseConfiguration;
 import org.opencb.cellbase.core.exception.CellbaseException;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.impl.core.ClinicalMongoDBAdaptor;
@@ -38,14 +37,14 @@ public class ClinicalManager extends AbstractManager implements AggregationApi<C
 
     private ClinicalMongoDBAdaptor clinicalDBAdaptor;
 
-    public ClinicalManager(String species, String assembly, CellBaseConfiguration configuration)
+    public ClinicalManager(String species, String assembly, CellBaseManagerFactory managers)
             throws CellbaseException {
-        super(species, assembly, configuration);
+        super(species, assembly, managers);
         this.init();
     }
 
     private void init() throws CellbaseException {
-        clinicalDBAdaptor = dbAdaptorFactory.getClinicalDBAdaptor(species, assembly);
+        clinicalDBAdaptor = dbAdaptorFactory.getClinicalDBAdaptor(species, assembly, managers.getGenomeManager(species, assembly));
     }
 
     @Override
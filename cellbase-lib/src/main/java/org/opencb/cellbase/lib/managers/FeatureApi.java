@@ -23,7 +23,6 @@ import org.opencb.cellbase.core.api.queries.CellBaseQueryOptions;
 import org.opencb.cellbase.core.api.queries.QueryException;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public interface FeatureApi<Q extends AbstractQuery, T> {
@@ -37,11 +36,29 @@ public interface FeatureApi<Q extends AbstractQuery, T> {
     }
 
     default List<CellBaseDataResult<T>> search(List<Q> queries) throws QueryException, IllegalAccessException {
-        List<CellBaseDataResult<T>> results = new ArrayList<>();
-        for (Q query : queries) {
-            results.add(getDBAdaptor().query(query));
+        for (int i = 0; i < queries.size(); i++) {
+            setCursor(queries.get(i), i, queries.size());
+        }
+        return getDBAdaptor().query(queries);
+    }
+
+    /**
+     * Queries of a list of ids take one cursor per id, comma separated in the same order as the ids.
+     *
+     * @param query query of one id
+     * @param index position of the id
+     * @param numQueries number of ids
+     * @throws QueryException if there is not a cursor for every id
+     */
+    default void setCursor(Q query, int index, int numQueries) throws QueryException {
+        String cursor = query.getCursor();
+        if (cursor != null && cursor.indexOf(',') >= 0) {
+            String[] cursors = cursor.split(",", -1);
+            if (cursors.length != numQueries) {
+                throw new QueryException("Expected " + numQueries + " cursors, one per id, found " + cursors.length);
+            }
+            query.setCursor(cursors[index]);
         }
-        return results;
     }
 
     default List<CellBaseDataResult<T>> info(List<String> ids, CellBaseQueryOptions queryOptions) {
@@ -22,7 +22,6 @@ import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.tools.feature.BigWigManager;
 import org.opencb.biodata.tools.sequence.FastaIndex;
 import org.opencb.cellbase.core.api.queries.FileQuery;
-import org.opencb.cellbase.core.config.CellBaseConfiguration;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.commons.datastore.core.Event;
 
@@ -38,8 +37,8 @@ import java.util.List;
 
 public class FileManager extends AbstractManager {
 
-    public FileManager(CellBaseConfiguration configuration) {
-        super(configuration);
+    public FileManager(CellBaseManagerFactory managers) {
+        super(managers);
     }
 
     public List<CellBaseDataResult<String>> search(FileQuery query) throws IOException {
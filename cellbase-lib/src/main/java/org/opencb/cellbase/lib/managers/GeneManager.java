@@ -21,7 +21,6 @@ import org.opencb.biodata.models.core.GenomeSequenceFeature;
 import org.opencb.biodata.models.core.Region;
 import org.opencb.cellbase.core.api.core.CellBaseCoreDBAdaptor;
 import org.opencb.cellbase.core.api.queries.GeneQuery;
-import org.opencb.cellbase.core.config.CellBaseConfiguration;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.impl.core.GeneMongoDBAdaptor;
 import org.opencb.cellbase.lib.impl.core.GenomeMongoDBAdaptor;
@@ -34,8 +33,8 @@ public class GeneManager extends AbstractManager implements AggregationApi<GeneQ
     private GeneMongoDBAdaptor geneDBAdaptor;
     private GenomeMongoDBAdaptor genomeDBAdaptor;
 
-    public GeneManager(String species, String assembly, CellBaseConfiguration configuration) {
-        super(species, assembly, configuration);
+    public GeneManager(String species, String assembly, CellBaseManagerFactory managers) {
+        super(species, assembly, managers);
         this.init();
     }
 
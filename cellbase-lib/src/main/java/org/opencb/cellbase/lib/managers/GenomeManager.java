@@ -17,29 +17,46 @@
 package org.opencb.cellbase.lib.managers;
 
 import com.google.common.base.Splitter;
+import org.apache.commons.lang3.StringUtils;
 import org.opencb.biodata.models.core.Chromosome;
 import org.opencb.biodata.models.core.GenomeSequenceFeature;
 import org.opencb.biodata.models.core.GenomicScoreRegion;
 import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.avro.Cytoband;
+import org.opencb.biodata.models.variant.avro.Score;
 import org.opencb.cellbase.core.api.core.CellBaseCoreDBAdaptor;
 import org.opencb.cellbase.core.api.core.GenomeDBAdaptor;
 import org.opencb.cellbase.core.api.queries.GenomeQuery;
-import org.opencb.cellbase.core.config.CellBaseConfiguration;
+import org.opencb.cellbase.core.common.PackedSequenceFile;
+import org.opencb.cellbase.core.config.SpeciesConfiguration;
+import org.opencb.cellbase.core.exception.CellbaseException;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.cellbase.lib.SpeciesUtils;
 import org.opencb.cellbase.lib.impl.core.GenomeMongoDBAdaptor;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class GenomeManager extends AbstractManager implements AggregationApi<GenomeQuery, Chromosome> {
 
     private GenomeMongoDBAdaptor genomeDBAdaptor;
+    private Path packedSequenceFilePath;
 
-    public GenomeManager(String species, String assembly, CellBaseConfiguration configuration) {
-        super(species, assembly, configuration);
+    // Sequence files are opened once and shared by all managers of the same species and assembly. Absent files are
+    // remembered too and looked for again after MISSING_PACKED_SEQUENCE_FILE_RETRY_NANOS.
+    private static final Map<Path, PackedSequenceFileEntry> PACKED_SEQUENCE_FILES = new ConcurrentHashMap<>();
+    private static final long MISSING_PACKED_SEQUENCE_FILE_RETRY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    public GenomeManager(String species, String assembly, CellBaseManagerFactory managers) {
+        super(species, assembly, managers);
         this.init();
     }
 
@@ -50,6 +67,67 @@ public class GenomeManager extends AbstractManager implements AggregationApi<Gen
 
     private void init() {
         genomeDBAdaptor = dbAdaptorFactory.getGenomeDBAdaptor(species, assembly);
+        packedSequenceFilePath = getPackedSequenceFilePath();
+    }
+
+    private Path getPackedSequenceFilePath() {
+        String genomeSequenceDir = configuration.getAnnotation() != null
+                ? configuration.getAnnotation().getGenomeSequenceDir()
+                : null;
+        if (StringUtils.isEmpty(genomeSequenceDir)) {
+            return null;
+        }
+
+        // Same <species>_<assembly> folder naming used by the build command
+        SpeciesConfiguration speciesConfiguration = SpeciesUtils.getSpeciesConfiguration(configuration, species);
+        if (speciesConfiguration == null) {
+            return null;
+        }
+        String assemblyName = assembly;
+        if (StringUtils.isEmpty(assemblyName)) {
+            try {
+                assemblyName = SpeciesUtils.getDefaultAssembly(speciesConfiguration).getName();
+            } catch (CellbaseException e) {
+                logger.warn("Local genome sequence not used: {}", e.getMessage());
+                return null;
+            }
+        }
+
+        return Paths.get(genomeSequenceDir, SpeciesUtils.getSpeciesShortname(speciesConfiguration) + "_"
+                + assemblyName.toLowerCase(), PackedSequenceFile.FILE_NAME);
+    }
+
+    /**
+     * @return the local packed sequence file, null if not configured or not found
+     */
+    private PackedSequenceFile getPackedSequenceFile() {
+        if (packedSequenceFilePath == null) {
+            return null;
+        }
+        PackedSequenceFileEntry entry = PACKED_SEQUENCE_FILES.get(packedSequenceFilePath);
+        if (entry == null || entry.needsRetry()) {
+            entry = PACKED_SEQUENCE_FILES.compute(packedSequenceFilePath,
+                    (path, current) -> current == null || current.needsRetry() ? openPackedSequenceFile(path, current == null) : current);
+        }
+        return entry.sequenceFile;
+    }
+
+    private PackedSequenceFileEntry openPackedSequenceFile(Path path, boolean firstAttempt) {
+        if (!Files.exists(path)) {
+            if (firstAttempt) {
+                logger.info("Local genome sequence file {} not found, sequences will be read from the database", path);
+            }
+            return new PackedSequenceFileEntry(null);
+        }
+        try {
+            PackedSequenceFile sequenceFile = new PackedSequenceFile(path);
+            logger.info("Genome sequence of {} sequences will be read from {}", sequenceFile.getSequenceNames().size(), path);
+            return new PackedSequenceFileEntry(sequenceFile);
+        } catch (IOException e) {
+            logger.error("Error opening genome sequence file {}, sequences will be read from the database: {}", path,
+                    e.getMessage());
+            return new PackedSequenceFileEntry(null);
+        }
     }
 
     public CellBaseDataResult getGenomeInfo(QueryOptions queryOptions) {
@@ -76,7 +154,7 @@ public class GenomeManager extends AbstractManager implements AggregationApi<Gen
     public List<CellBaseDataResult<GenomeSequenceFeature>> getByRegions(GenomeQuery query) {
         List<CellBaseDataResult<GenomeSequenceFeature>> queryResults = new ArrayList<>();
         for (Region region : query.getRegions()) {
-            queryResults.add(genomeDBAdaptor.getSequence(region, query.toQueryOptions()));
+            queryResults.add(getSequence(region, query.toQueryOptions()));
         }
 
         for (int i = 0; i < query.getRegions().size(); i++) {
@@ -90,7 +168,7 @@ public class GenomeManager extends AbstractManager implements AggregationApi<Gen
         List<Region> regionList = Region.parseRegions(regions);
         List<CellBaseDataResult<GenomeSequenceFeature>> queryResults = new ArrayList<>();
         for (Region region : regionList) {
-            queryResults.add(genomeDBAdaptor.getSequence(region, queryOptions));
+            queryResults.add(getSequence(region, queryOptions));
         }
 
         for (int i = 0; i < regionList.size(); i++) {
@@ -103,7 +181,7 @@ public class GenomeManager extends AbstractManager implements AggregationApi<Gen
     public CellBaseDataResult<GenomeSequenceFeature> getByRegion(Query query, QueryOptions queryOptions, String regions, String strand) {
         query.put(GenomeDBAdaptor.QueryParams.REGION.key(), regions);
         query.put("strand", strand);
-        CellBaseDataResult queryResult = genomeDBAdaptor.getGenomicSequence(query, queryOptions);
+        CellBaseDataResult queryResult = getGenomicSequence(query, queryOptions);
         queryResult.setId(regions);
         return queryResult;
     }
@@ -113,6 +191,10 @@ public class GenomeManager extends AbstractManager implements AggregationApi<Gen
         return queryResultList;
     }
 
+    public List<CellBaseDataResult<Score>> getConservationScores(QueryOptions queryOptions, List<Region> regionList) {
+        return genomeDBAdaptor.getConservationScores(regionList, queryOptions);
+    }
+
     public List<CellBaseDataResult<GenomicScoreRegion<Float>>> getConservation(QueryOptions queryOptions, String regions) {
         List<Region> regionList = Region.parseRegions(regions);
         List<CellBaseDataResult<GenomicScoreRegion<Float>>> queryResultList = genomeDBAdaptor.getConservation(regionList, queryOptions);
@@ -127,11 +209,33 @@ public class GenomeManager extends AbstractManager implements AggregationApi<Gen
     }
 
     public CellBaseDataResult<GenomeSequenceFeature> getSequence(Region region, QueryOptions queryOptions) {
+        PackedSequenceFile packedSequenceFile = getPackedSequenceFile();
+        if (packedSequenceFile != null && packedSequenceFile.contains(region.getChromosome())) {
+            return getLocalSequence(packedSequenceFile, region);
+        }
         return genomeDBAdaptor.getSequence(region, queryOptions);
     }
 
     public CellBaseDataResult<GenomeSequenceFeature> getGenomicSequence(Query query, QueryOptions queryOptions) {
-        return genomeDBAdaptor.getGenomicSequence(query, queryOptions);
+        return getSequence(Region.parseRegion(query.getString("region")), queryOptions);
+    }
+
+    /**
+     * Same result as GenomeMongoDBAdaptor.getSequence but read from the local packed sequence file.
+     */
+    private CellBaseDataResult<GenomeSequenceFeature> getLocalSequence(PackedSequenceFile packedSequenceFile, Region region) {
+        long startTime = System.currentTimeMillis();
+        CellBaseDataResult<GenomeSequenceFeature> result = new CellBaseDataResult<>(region.toString());
+        String sequence = packedSequenceFile.getSequence(region.getChromosome(), region.getStart(), region.getEnd());
+        if (sequence != null) {
+            result.setResults(Collections.singletonList(new GenomeSequenceFeature(region.getChromosome(), region.getStart(),
+                    region.getEnd(), 1, packedSequenceFile.getSequenceType(region.getChromosome()),
+                    packedSequenceFile.getAssembly(region.getChromosome()), sequence)));
+            result.setNumMatches(1);
+            result.setNumResults(1);
+        }
+        result.setTime((int) (System.currentTimeMillis() - startTime));
+        return result;
     }
 
     public CellBaseDataResult<Cytoband> getCytobands(Region region, QueryOptions queryOptions) {
@@ -149,4 +253,23 @@ public class GenomeManager extends AbstractManager implements AggregationApi<Gen
     public List<CellBaseDataResult<Cytoband>> getCytobands(List<Region> regionList) {
         return getCytobands(regionList, null);
     }
+
+    public ObjectMap getCytobandIndexStats() {
+        return genomeDBAdaptor.getCytobandIndexStats();
+    }
+
+    private static final class PackedSequenceFileEntry {
+        // Null if the file was not found or could not be opened
+        private final PackedSequenceFile sequenceFile;
+        private final long retryTime;
+
+        PackedSequenceFileEntry(PackedSequenceFile sequenceFile) {
+            this.sequenceFile = sequenceFile;
+            this.retryTime = System.nanoTime() + MISSING_PACKED_SEQUENCE_FILE_RETRY_NANOS;
+        }
+
+        boolean needsRetry() {
+            return sequenceFile == null && System.nanoTime() - retryTime >= 0;
+        }
+    }
 }
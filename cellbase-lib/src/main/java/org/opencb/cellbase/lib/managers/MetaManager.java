@@ -17,7 +17,6 @@
 package org.opencb.cellbase.lib.managers;
 
 import org.opencb.cellbase.core.DatastoreStatus;
-import org.opencb.cellbase.core.config.CellBaseConfiguration;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.impl.core.MetaMongoDBAdaptor;
 
@@ -25,8 +24,8 @@ import java.util.Map;
 
 public class MetaManager extends AbstractManager {
 
-    public MetaManager(CellBaseConfiguration configuration) {
-        super(configuration);
+    public MetaManager(CellBaseManagerFactory managers) {
+        super(managers);
     }
 
     public CellBaseDataResult getVersions(String species, String assembly) {
@@ -19,15 +19,14 @@ package org.opencb.cellbase.lib.managers;
 import org.opencb.biodata.models.core.OntologyTerm;
 import org.opencb.cellbase.core.api.core.CellBaseCoreDBAdaptor;
 import org.opencb.cellbase.core.api.queries.OntologyQuery;
-import org.opencb.cellbase.core.config.CellBaseConfiguration;
 import org.opencb.cellbase.lib.impl.core.OntologyMongoDBAdaptor;
 
 public class OntologyManager extends AbstractManager implements AggregationApi<OntologyQuery, OntologyTerm> {
 
     private OntologyMongoDBAdaptor ontologyMongoDBAdaptor;
 
-    public OntologyManager(String species, String assembly, CellBaseConfiguration configuration) {
-        super(species, assembly, configuration);
+    public OntologyManager(String species, String assembly, CellBaseManagerFactory managers) {
+        super(species, assembly, managers);
 
         this.init();
     }
@@ -26,7 +26,6 @@ import org.opencb.biodata.models.variant.avro.Score;
 import org.opencb.cellbase.core.api.core.CellBaseCoreDBAdaptor;
 import org.opencb.cellbase.core.api.queries.ProteinQuery;
 import org.opencb.cellbase.core.api.queries.TranscriptQuery;
-import org.opencb.cellbase.core.config.CellBaseConfiguration;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.impl.core.MissenseVariationFunctionalScoreMongoDBAdaptor;
 import org.opencb.cellbase.lib.impl.core.ProteinMongoDBAdaptor;
@@ -43,8 +42,8 @@ public class ProteinManager extends AbstractManager implements AggregationApi<Pr
     private TranscriptMongoDBAdaptor transcriptDBAdaptor;
     private MissenseVariationFunctionalScoreMongoDBAdaptor missenseVariationFunctionalScoreMongoDBAdaptor;
 
-    public ProteinManager(String species, String assembly, CellBaseConfiguration configuration) {
-        super(species, assembly, configuration);
+    public ProteinManager(String species, String assembly, CellBaseManagerFactory managers) {
+        super(species, assembly, managers);
         this.init();
     }
 
@@ -194,6 +193,36 @@ public class ProteinManager extends AbstractManager implements AggregationApi<Pr
 //        }
         return proteinVariantAnnotation;
     }
+
+    /**
+     * Batch version of getVariantAnnotation, SIFT/PolyPhen scores, UniProt features and REVEL scores of all protein
+     * variants are fetched with one query each.
+     *
+     * @param variants variant of each protein variant
+     * @param ensemblTranscriptIds transcript of each protein variant
+     * @param proteinVariants position, reference and alternate aa of each protein variant
+     * @param options query options
+     * @return one result per protein variant, in the same order
+     */
+    public List<CellBaseDataResult<ProteinVariantAnnotation>> getVariantAnnotation(List<Variant> variants,
+                                                                            List<String> ensemblTranscriptIds,
+                                                                            List<ProteinVariantAnnotation> proteinVariants,
+                                                                            QueryOptions options) {
+        List<CellBaseDataResult<ProteinVariantAnnotation>> proteinVariantAnnotations =
+                proteinDBAdaptor.getVariantAnnotation(ensemblTranscriptIds, proteinVariants, options);
+        List<CellBaseDataResult<TranscriptMissenseVariantFunctionalScore>> revelResults =
+                missenseVariationFunctionalScoreMongoDBAdaptor.getScores(variants, proteinVariants);
+        for (int i = 0; i < variants.size(); i++) {
+            ProteinVariantAnnotation proteinVariantAnnotation = proteinVariantAnnotations.get(i).first();
+            if (proteinVariantAnnotation != null && revelResults.get(i).getResults() != null) {
+                if (proteinVariantAnnotation.getSubstitutionScores() == null) {
+                    proteinVariantAnnotation.setSubstitutionScores(new ArrayList<>());
+                }
+                proteinVariantAnnotation.getSubstitutionScores().add(new Score(revelResults.get(i).first().getScore(), "revel", ""));
+            }
+        }
+        return proteinVariantAnnotations;
+    }
 }
 
 
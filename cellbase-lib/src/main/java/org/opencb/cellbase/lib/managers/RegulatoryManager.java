@@ -19,15 +19,14 @@ package org.opencb.cellbase.lib.managers;
 import org.opencb.biodata.models.core.RegulatoryFeature;
 import org.opencb.cellbase.core.api.core.CellBaseCoreDBAdaptor;
 import org.opencb.cellbase.core.api.queries.RegulationQuery;
-import org.opencb.cellbase.core.config.CellBaseConfiguration;
 import org.opencb.cellbase.lib.impl.core.RegulationMongoDBAdaptor;
 
 public class RegulatoryManager extends AbstractManager implements AggregationApi<RegulationQuery, RegulatoryFeature>  {
 
     private RegulationMongoDBAdaptor regulationDBAdaptor;
 
-    public RegulatoryManager(String species, String assembly, CellBaseConfiguration configuration) {
-        super(species, assembly, configuration);
+    public RegulatoryManager(String species, String assembly, CellBaseManagerFactory managers) {
+        super(species, assembly, managers);
         this.init();
     }
 
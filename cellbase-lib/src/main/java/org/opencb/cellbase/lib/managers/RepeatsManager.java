@@ -16,18 +16,33 @@
 
 package org.opencb.cellbase.lib.managers;
 
+import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.avro.Repeat;
 import org.opencb.cellbase.core.api.core.CellBaseCoreDBAdaptor;
 import org.opencb.cellbase.core.api.queries.RepeatsQuery;
-import org.opencb.cellbase.core.config.CellBaseConfiguration;
+import org.opencb.cellbase.core.config.AnnotationProperties;
+import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.cellbase.lib.impl.core.RepeatsIndex;
 import org.opencb.cellbase.lib.impl.core.RepeatsMongoDBAdaptor;
+import org.opencb.commons.datastore.core.ObjectMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class RepeatsManager extends AbstractManager implements AggregationApi<RepeatsQuery, Repeat> {
 
     private RepeatsMongoDBAdaptor repeatsDBAdaptor;
+    // Loaded the first time it is needed, only if enabled in the annotation configuration
+    private volatile RepeatsIndex repeatsIndex;
+    private volatile boolean repeatsIndexFailed;
+    // An empty repeats index, i.e. repeats not loaded yet, is read again from the database after this time
+    private static final long EMPTY_REPEATS_INDEX_RETRY_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private volatile long repeatsIndexRetryTime;
 
-    public RepeatsManager(String species, String assembly, CellBaseConfiguration configuration) {
-        super(species, assembly, configuration);
+    public RepeatsManager(String species, String assembly, CellBaseManagerFactory managers) {
+        super(species, assembly, managers);
         this.init();
     }
 
@@ -40,6 +55,91 @@ public class RepeatsManager extends AbstractManager implements AggregationApi<Re
         return repeatsDBAdaptor;
     }
 
+    /**
+     * Repeats overlapping each region, from the in-memory index if enabled, from the database otherwise.
+     * @param regions regions
+     * @return one result per region, in the same order
+     */
+    public List<CellBaseDataResult<Repeat>> getByRegions(List<Region> regions) {
+        RepeatsIndex index = getRepeatsIndex();
+        if (index == null) {
+            List<RepeatsQuery> queries = new ArrayList<>(regions.size());
+            for (Region region : regions) {
+                RepeatsQuery query = new RepeatsQuery();
+                query.setRegions(Collections.singletonList(region));
+                queries.add(query);
+            }
+            return search(queries);
+        }
+
+        List<CellBaseDataResult<Repeat>> results = new ArrayList<>(regions.size());
+        for (Region region : regions) {
+            long startTime = System.currentTimeMillis();
+            List<Repeat> repeats = index.query(region);
+            results.add(new CellBaseDataResult<>(region.toString(), (int) (System.currentTimeMillis() - startTime),
+                    new ArrayList<>(), repeats.size(), repeats, repeats.size()));
+        }
+        return results;
+    }
+
+    /**
+     * Repeats are read once from the database, the first time they are needed. While they are not loaded the empty index
+     * is kept and read again every EMPTY_REPEATS_INDEX_RETRY_NANOS.
+     * @return the repeats index, null if disabled or too large
+     */
+    private RepeatsIndex getRepeatsIndex() {
+        AnnotationProperties annotationProperties = configuration.getAnnotation();
+        if (annotationProperties == null || !annotationProperties.isRepeatsIndex() || repeatsIndexFailed) {
+            return null;
+        }
+        RepeatsIndex index = repeatsIndex;
+        if (needsRepeatsIndex(index)) {
+            synchronized (this) {
+                index = repeatsIndex;
+                if (needsRepeatsIndex(index) && !repeatsIndexFailed) {
+                    long maxMemory = annotationProperties.getIndexMaxMemoryMb() * 1024 * 1024;
+                    index = repeatsDBAdaptor.loadIndex(maxMemory);
+                    if (index == null) {
+                        // Not retried, repeats are read from the database from now on
+                        repeatsIndexFailed = true;
+                        logger.warn("Repeats of {} {} do not fit in {} MB, repeats index disabled", species, assembly,
+                                annotationProperties.getIndexMaxMemoryMb());
+                    } else {
+                        if (index.size() == 0) {
+                            repeatsIndexRetryTime = System.nanoTime() + EMPTY_REPEATS_INDEX_RETRY_NANOS;
+                            logger.debug("No repeats found for {} {}, repeats are read again in {} s", species, assembly,
+                                    TimeUnit.NANOSECONDS.toSeconds(EMPTY_REPEATS_INDEX_RETRY_NANOS));
+                        } else {
+                            logger.info("Repeats index of {} {} loaded: {}", species, assembly, index.getStats().safeToString());
+                        }
+                        repeatsIndex = index;
+                    }
+                }
+            }
+        }
+        return index;
+    }
+
+    private boolean needsRepeatsIndex(RepeatsIndex index) {
+        return index == null || (index.size() == 0 && System.nanoTime() - repeatsIndexRetryTime >= 0);
+    }
+
+    public ObjectMap getIndexStats() {
+        AnnotationProperties annotationProperties = configuration.getAnnotation();
+        RepeatsIndex index = repeatsIndex;
+        ObjectMap stats = new ObjectMap();
+        stats.put("enabled", annotationProperties != null && annotationProperties.isRepeatsIndex());
+        stats.put("loaded", index != null && index.size() > 0);
+        stats.put("failed", repeatsIndexFailed);
+        if (annotationProperties != null) {
+            stats.put("maxMemory", annotationProperties.getIndexMaxMemoryMb() * 1024 * 1024);
+        }
+        if (index != null && index.size() > 0) {
+            stats.putAll(index.getStats());
+        }
+        return stats;
+    }
+
 //    public CellBaseDataResult getByRegion(Region region, QueryOptions options) {
 //        Query query = new Query("region", region.toString());
 //        return repeatsDBAdaptor.get(query, options);
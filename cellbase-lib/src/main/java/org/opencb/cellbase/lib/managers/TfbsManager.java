@@ -19,15 +19,14 @@ package org.opencb.cellbase.lib.managers;
 import org.opencb.cellbase.core.api.core.CellBaseCoreDBAdaptor;
 import org.opencb.cellbase.core.api.queries.TfbsQuery;
 import org.opencb.cellbase.core.common.regulatory.Tfbs;
-import org.opencb.cellbase.core.config.CellBaseConfiguration;
 import org.opencb.cellbase.lib.impl.core.GeneMongoDBAdaptor;
 
 public class TfbsManager extends AbstractManager implements AggregationApi<TfbsQuery, Tfbs> {
 
     private GeneMongoDBAdaptor geneDBAdaptor;
 
-    public TfbsManager(String species, String assembly, CellBaseConfiguration configuration) {
-        super(species, assembly, configuration);
+    public TfbsManager(String species, String assembly, CellBaseManagerFactory managers) {
+        super(species, assembly, managers);
         this.init();
     }
 
@@ -19,7 +19,6 @@ package org.opencb.cellbase.lib.managers;
 import org.opencb.biodata.models.core.Transcript;
 import org.opencb.cellbase.core.api.core.CellBaseCoreDBAdaptor;
 import org.opencb.cellbase.core.api.queries.TranscriptQuery;
-import org.opencb.cellbase.core.config.CellBaseConfiguration;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.impl.core.TranscriptMongoDBAdaptor;
 
@@ -32,8 +31,8 @@ public class TranscriptManager extends AbstractManager implements AggregationApi
 
     private TranscriptMongoDBAdaptor transcriptDBAdaptor;
 
-    public TranscriptManager(String species, String assembly, CellBaseConfiguration configuration) {
-        super(species, assembly, configuration);
+    public TranscriptManager(String species, String assembly, CellBaseManagerFactory managers) {
+        super(species, assembly, managers);
         this.init();
     }
 
@@ -16,6 +16,7 @@
 
 package org.opencb.cellbase.lib.managers;
 
+import org.bson.Document;
 import org.opencb.biodata.models.core.Gene;
 import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.Variant;
@@ -23,26 +24,28 @@ import org.opencb.biodata.models.variant.VariantBuilder;
 import org.opencb.biodata.models.variant.avro.SampleEntry;
 import org.opencb.biodata.models.variant.avro.Score;
 import org.opencb.biodata.models.variant.avro.VariantAnnotation;
-import org.opencb.biodata.models.variant.avro.VariantType;
 import org.opencb.cellbase.core.api.core.CellBaseCoreDBAdaptor;
 import org.opencb.cellbase.core.api.core.VariantDBAdaptor;
 import org.opencb.cellbase.core.api.queries.QueryException;
 import org.opencb.cellbase.core.api.queries.VariantQuery;
-import org.opencb.cellbase.core.config.CellBaseConfiguration;
+import org.opencb.cellbase.core.common.IntervalIndex;
+import org.opencb.cellbase.core.config.AnnotationProperties;
 import org.opencb.cellbase.core.exception.CellbaseException;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.core.variant.AnnotationBasedPhasedQueryManager;
 import org.opencb.cellbase.lib.impl.core.VariantMongoDBAdaptor;
+import org.opencb.cellbase.lib.variant.annotation.AnnotationCache;
+import org.opencb.cellbase.lib.variant.annotation.AnnotationOptions;
 import org.opencb.cellbase.lib.variant.annotation.VariantAnnotationCalculator;
 import org.opencb.cellbase.lib.variant.annotation.VariantAnnotationUtils;
 import org.opencb.cellbase.lib.variant.annotation.hgvs.HgvsCalculator;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 public class VariantManager extends AbstractManager implements AggregationApi<VariantQuery, Variant> {
@@ -52,19 +55,28 @@ public class VariantManager extends AbstractManager implements AggregationApi<Va
             + ":[(cipos_left)<](start)[<(cipos_right)]" + "[-[(ciend_left)<](end)[<(ciend_right)]]"
             + "[:(ref)]"
             + ":[(alt)|(left_ins_seq)...(right_ins_seq)]";
+    // Data releases are read from the metadata collection at most once per interval
+    private static final long DATA_RELEASES_CHECK_NANOS = TimeUnit.MINUTES.toNanos(1);
     private VariantMongoDBAdaptor variantDBAdaptor;
-    private CellBaseManagerFactory cellbaseManagerFactory;
     private GenomeManager genomeManager;
+    private AnnotationCache annotationCache;
+    private final AtomicLong dataReleasesCheckTime = new AtomicLong(System.nanoTime());
 
-    public VariantManager(String species, String assembly, CellBaseConfiguration configuration) throws CellbaseException {
-        super(species, assembly, configuration);
+    public VariantManager(String species, String assembly, CellBaseManagerFactory managers) throws CellbaseException {
+        super(species, assembly, managers);
         this.init();
     }
 
     private void init() throws CellbaseException {
         variantDBAdaptor = dbAdaptorFactory.getVariationDBAdaptor(species, assembly);
-        cellbaseManagerFactory = new CellBaseManagerFactory(configuration);
-        genomeManager = cellbaseManagerFactory.getGenomeManager(species, assembly);
+        genomeManager = managers.getGenomeManager(species, assembly);
+
+        AnnotationProperties annotationProperties = configuration.getAnnotation();
+        if (annotationProperties != null && annotationProperties.getCacheSize() > 0) {
+            annotationCache = new AnnotationCache(annotationProperties.getCacheSize(), annotationProperties.getCacheTtlSeconds());
+            logger.info("Annotation cache enabled for {} {}: {} annotations, {} s", species, assembly,
+                    annotationProperties.getCacheSize(), annotationProperties.getCacheTtlSeconds());
+        }
     }
 
     @Override
@@ -92,11 +104,11 @@ public class VariantManager extends AbstractManager implements AggregationApi<Va
         List<Variant> variantList = parseVariants(variants);
         HgvsCalculator hgvsCalculator = new HgvsCalculator(genomeManager);
         List<CellBaseDataResult<String>> results = new ArrayList<>();
-        VariantAnnotationCalculator variantAnnotationCalculator = new VariantAnnotationCalculator(species, assembly,
-                cellbaseManagerFactory);
-        List<Gene> batchGeneList = variantAnnotationCalculator.getBatchGeneList(variantList);
+        VariantAnnotationCalculator variantAnnotationCalculator = managers.getVariantAnnotationCalculator(species, assembly);
+        IntervalIndex<Gene> geneIndex = variantAnnotationCalculator
+                .getGeneIndex(variantAnnotationCalculator.getBatchGeneList(variantList));
         for (Variant variant : variantList) {
-            List<Gene> variantGeneList = variantAnnotationCalculator.getAffectedGenes(batchGeneList, variant);
+            List<Gene> variantGeneList = variantAnnotationCalculator.getAffectedGenes(geneIndex, variant);
             List<String> hgvsStrings = hgvsCalculator.run(variant, variantGeneList, false);
             results.add(new CellBaseDataResult<>(variant.getId(), 0, new ArrayList<>(), hgvsStrings.size(), hgvsStrings, -1));
         }
@@ -112,8 +124,7 @@ public class VariantManager extends AbstractManager implements AggregationApi<Va
      */
     public CellBaseDataResult<Variant> getNormalizationByVariant(String variants) throws CellbaseException {
         List<Variant> variantList = parseVariants(variants);
-        VariantAnnotationCalculator variantAnnotationCalculator = new VariantAnnotationCalculator(species, assembly,
-                cellbaseManagerFactory);
+        VariantAnnotationCalculator variantAnnotationCalculator = managers.getVariantAnnotationCalculator(species, assembly);
         List<Variant> normalisedVariants = variantAnnotationCalculator.normalizer(variantList);
         return new CellBaseDataResult<>(variants, 0, new ArrayList<>(), normalisedVariants.size(), normalisedVariants, -1);
     }
@@ -167,13 +178,50 @@ public class VariantManager extends AbstractManager implements AggregationApi<Va
             queryOptions.put("consequenceTypeSource", consequenceTypeSource);
         }
 
-        VariantAnnotationCalculator variantAnnotationCalculator = new VariantAnnotationCalculator(species, assembly,
-                cellbaseManagerFactory);
-        List<CellBaseDataResult<VariantAnnotation>> queryResults =
-                variantAnnotationCalculator.getAnnotationByVariantList(variantList, queryOptions);
+        if (annotationCache != null) {
+            checkDataReleases();
+        }
+        VariantAnnotationCalculator variantAnnotationCalculator = managers.getVariantAnnotationCalculator(species, assembly);
+        List<CellBaseDataResult<VariantAnnotation>> queryResults = variantAnnotationCalculator
+                .getAnnotationByVariantList(variantList, AnnotationOptions.parse(queryOptions), annotationCache);
         return queryResults;
     }
 
+    /**
+     * Reads the data releases from the metadata collection, written when data is loaded, and removes the cached annotations
+     * calculated with a changed data. Only one request checks them per interval, the others use the cache as it is.
+     */
+    private void checkDataReleases() {
+        long checkTime = dataReleasesCheckTime.get();
+        long now = System.nanoTime();
+        if (now - checkTime < 0 || !dataReleasesCheckTime.compareAndSet(checkTime, now + DATA_RELEASES_CHECK_NANOS)) {
+            return;
+        }
+        try {
+            Map<String, Set<String>> sources = new HashMap<>();
+            for (Object result : dbAdaptorFactory.getMetaDBAdaptor(species, assembly).getAll().getResults()) {
+                Document document = (Document) result;
+                sources.computeIfAbsent(String.valueOf(document.get("data")), data -> new TreeSet<>())
+                        .add(document.get("source") + ":" + document.get("version") + ":" + document.get("downloadDate"));
+            }
+            Map<String, String> releases = new HashMap<>();
+            sources.forEach((data, dataSources) -> releases.put(data, String.join(",", dataSources)));
+            int removed = annotationCache.updateDataReleases(releases);
+            if (removed > 0) {
+                logger.info("Data releases changed for {} {}, {} cached annotations removed", species, assembly, removed);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Data releases of {} {} could not be read, cached annotations kept: {}", species, assembly, e.getMessage());
+        }
+    }
+
+    /**
+     * @return the annotation cache, null if disabled in the configuration
+     */
+    public AnnotationCache getAnnotationCache() {
+        return annotationCache;
+    }
+
     private List<Variant> parseVariants(String variantsString) {
         List<Variant> variants = null;
         if (variantsString != null && !variantsString.isEmpty()) {
@@ -266,15 +314,7 @@ public class VariantManager extends AbstractManager implements AggregationApi<Va
     }
 
     public List<CellBaseDataResult<Score>> getFunctionalScoreVariant(List<Variant> variants, QueryOptions options) {
-        List<CellBaseDataResult<Score>> cellBaseDataResults = new ArrayList<>(variants.size());
-        for (Variant variant: variants) {
-            if (variant.getType() == VariantType.SNV) {
-                cellBaseDataResults.add(getFunctionalScoreVariant(variant, options));
-            } else {
-                cellBaseDataResults.add(new CellBaseDataResult<>(variant.toString(), 0, Collections.emptyList(), 0));
-            }
-        }
-        return cellBaseDataResults;
+        return variantDBAdaptor.getFunctionalScoreVariant(variants, options);
     }
 
     public List<CellBaseDataResult<Variant>> getPopulationFrequencyByVariant(List<Variant> variants, QueryOptions queryOptions) {
@@ -17,15 +17,14 @@
 package org.opencb.cellbase.lib.managers;
 
 import org.opencb.cellbase.core.api.core.CellBaseCoreDBAdaptor;
-import org.opencb.cellbase.core.config.CellBaseConfiguration;
 import org.opencb.cellbase.lib.impl.core.XRefMongoDBAdaptor;
 
 public class XrefManager extends AbstractManager implements FeatureApi {
 
     private XRefMongoDBAdaptor xRefDBAdaptor;
 
-    public XrefManager(String species, String assembly, CellBaseConfiguration configuration) {
-        super(species, assembly, configuration);
+    public XrefManager(String species, String assembly, CellBaseManagerFactory managers) {
+        super(species, assembly, managers);
         this.init();
     }
 
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.cellbase.lib.EtlCommons;
+import org.opencb.commons.datastore.core.ObjectMap;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Size and time bounded cache of variant annotations, keyed by the normalised variant and the annotation options of the
+ * request. Least recently used annotations are evicted first. Annotations are copied in and out of the cache so that
+ * callers can modify the returned objects.
+ *
+ * Only variants whose annotation depends on nothing but the variant itself are cached: no sample data (phase), no
+ * structural variant information and no previous annotation to be merged.
+ *
+ * Data is loaded by a separate process, so the cache is told about the data releases found in the metadata collection
+ * through {@link #updateDataReleases(Map)}: the annotations calculated with the annotators using a changed data are removed.
+ */
+public class AnnotationCache {
+
+    /**
+     * Annotators using each data of the metadata collection. A change in any other data, e.g. genome or gene, removes
+     * all the cached annotations.
+     */
+    private static final Map<String, List<String>> DATA_ANNOTATORS;
+
+    static {
+        Map<String, List<String>> dataAnnotators = new HashMap<>();
+        dataAnnotators.put(EtlCommons.CLINICAL_VARIANTS_DATA, Arrays.asList("clinical", "traitAssociation"));
+        dataAnnotators.put(EtlCommons.VARIATION_DATA, Arrays.asList("variation", "populationFrequencies"));
+        dataAnnotators.put(EtlCommons.VARIATION_FUNCTIONAL_SCORE_DATA, Collections.singletonList("functionalScore"));
+        dataAnnotators.put(EtlCommons.CONSERVATION_DATA, Collections.singletonList("conservation"));
+        dataAnnotators.put(EtlCommons.REPEATS_DATA, Collections.singletonList("repeats"));
+        dataAnnotators.put(EtlCommons.GENOME_INFO_DATA, Collections.singletonList("cytoband"));
+        DATA_ANNOTATORS = Collections.unmodifiableMap(dataAnnotators);
+    }
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final LinkedHashMap<Key, Entry> entries;
+    // Release of each data the cached annotations were calculated with, guarded by entries
+    private Map<String, String> dataReleases;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public AnnotationCache(int maxSize, long ttlSeconds) {
+        this(maxSize, TimeUnit.SECONDS.toNanos(ttlSeconds), System::nanoTime);
+    }
+
+    AnnotationCache(int maxSize, long ttlNanos, LongSupplier clock) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Annotation cache size must be greater than 0, " + maxSize + " found");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlNanos;
+        this.clock = clock;
+        // Access order, the eldest entry is the least recently used one
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > AnnotationCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param variant normalised variant
+     * @return true if the annotation of the variant can be cached
+     */
+    public static boolean isCacheable(Variant variant) {
+        if (variant.getAnnotation() != null || variant.getSv() != null) {
+            return false;
+        }
+        if (variant.getStudies() != null) {
+            for (StudyEntry studyEntry : variant.getStudies()) {
+                if (studyEntry.getSamples() != null && !studyEntry.getSamples().isEmpty()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param variant normalised variant
+     * @param annotationOptions options of the request
+     * @return a copy of the cached annotation, null if not cached or expired
+     */
+    public VariantAnnotation get(Variant variant, AnnotationOptions annotationOptions) {
+        Key key = new Key(variant.toString(), annotationOptions);
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && clock.getAsLong() - entry.time > ttlNanos) {
+                entries.remove(key);
+                expirations.increment();
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return VariantAnnotation.newBuilder(entry.annotation).build();
+    }
+
+    /**
+     * @param variant normalised variant
+     * @param annotationOptions options of the request
+     * @param variantAnnotation annotation of the variant, a copy is cached
+     */
+    public void put(Variant variant, AnnotationOptions annotationOptions, VariantAnnotation variantAnnotation) {
+        Entry entry = new Entry(VariantAnnotation.newBuilder(variantAnnotation).build(), clock.getAsLong());
+        synchronized (entries) {
+            entries.put(new Key(variant.toString(), annotationOptions), entry);
+        }
+    }
+
+    /**
+     * Removes the annotations calculated with an annotator, i.e. when the data used by the annotator is updated.
+     * @param annotator annotator name, e.g. clinical, populationFrequencies
+     * @return number of annotations removed
+     */
+    public int invalidate(String annotator) {
+        int removed = 0;
+        synchronized (entries) {
+            Iterator<Key> iterator = entries.keySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().annotationOptions.contains(annotator)) {
+                    iterator.remove();
+                    removed++;
+                }
+            }
+        }
+        invalidations.add(removed);
+        return removed;
+    }
+
+    /**
+     * Removes the annotations calculated with the annotators whose data release changed since the previous call. The first
+     * call only records the releases.
+     * @param releases release of each data of the metadata collection, e.g. the sources and versions of clinical_variants
+     * @return number of annotations removed
+     */
+    public int updateDataReleases(Map<String, String> releases) {
+        synchronized (entries) {
+            Map<String, String> previousReleases = dataReleases;
+            dataReleases = new HashMap<>(releases);
+            if (previousReleases == null || previousReleases.equals(releases)) {
+                return 0;
+            }
+
+            Set<String> changedData = new HashSet<>(previousReleases.keySet());
+            changedData.addAll(releases.keySet());
+            changedData.removeIf(data -> Objects.equals(previousReleases.get(data), releases.get(data)));
+            Set<String> annotators = new HashSet<>();
+            for (String data : changedData) {
+                if (!DATA_ANNOTATORS.containsKey(data)) {
+                    int removed = entries.size();
+                    invalidateAll();
+                    return removed;
+                }
+                annotators.addAll(DATA_ANNOTATORS.get(data));
+            }
+            int removed = 0;
+            for (String annotator : annotators) {
+                removed += invalidate(annotator);
+            }
+            return removed;
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            invalidations.add(entries.size());
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public ObjectMap getStats() {
+        long numHits = hits.sum();
+        long numMisses = misses.sum();
+        ObjectMap stats = new ObjectMap();
+        stats.put("size", size());
+        stats.put("maxSize", maxSize);
+        stats.put("ttlSeconds", TimeUnit.NANOSECONDS.toSeconds(ttlNanos));
+        stats.put("hits", numHits);
+        stats.put("misses", numMisses);
+        stats.put("hitRatio", numHits + numMisses > 0 ? numHits / (double) (numHits + numMisses) : 0);
+        stats.put("evictions", evictions.sum());
+        stats.put("expirations", expirations.sum());
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+
+    private static final class Key {
+        private final String variant;
+        private final AnnotationOptions annotationOptions;
+        private final int hashCode;
+
+        Key(String variant, AnnotationOptions annotationOptions) {
+            this.variant = variant;
+            this.annotationOptions = annotationOptions;
+            this.hashCode = Objects.hash(variant, annotationOptions);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hashCode == key.hashCode && variant.equals(key.variant) && annotationOptions.equals(key.annotationOptions);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class Entry {
+        private final VariantAnnotation annotation;
+        private final long time;
+
+        Entry(VariantAnnotation annotation, long time) {
+            this.annotation = annotation;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.opencb.commons.datastore.core.QueryOptions;
+
+import java.util.*;
+
+/**
+ * Options of one annotation request: annotators to run, normalisation and phasing behaviour, padding of structural
+ * variants, etc. Immutable, so that a single VariantAnnotationCalculator can serve concurrent requests.
+ */
+public final class AnnotationOptions {
+
+    public static final List<String> DEFAULT_ANNOTATORS = Collections.unmodifiableList(Arrays.asList("variation",
+            "traitAssociation", "conservation", "functionalScore", "consequenceType", "expression", "geneDisease",
+            "drugInteraction", "geneConstraints", "mirnaTargets", "populationFrequencies", "repeats", "cytoband", "hgvs"));
+
+    private static final List<String> GENE_FIELDS = Collections.unmodifiableList(Arrays.asList("name", "id", "chromosome",
+            "start", "end", "transcripts.id", "transcripts.proteinId", "transcripts.start", "transcripts.end",
+            "transcripts.cDnaSequence", "transcripts.proteinSequence", "transcripts.strand", "transcripts.cdsLength",
+            "transcripts.flags", "transcripts.biotype", "transcripts.genomicCodingStart", "transcripts.genomicCodingEnd",
+            "transcripts.cdnaCodingStart", "transcripts.cdnaCodingEnd", "transcripts.exons.start", "transcripts.exons.cdsStart",
+            "transcripts.exons.end", "transcripts.exons.cdsEnd", "transcripts.exons.sequence", "transcripts.exons.phase",
+            "transcripts.exons.exonNumber", "mirna.matures", "mirna.sequence", "mirna.matures.cdnaStart",
+            "transcripts.exons.genomicCodingStart", "transcripts.exons.genomicCodingEnd", "mirna.matures.cdnaEnd"));
+
+    /**
+     * Options used when no query options are given: all the default annotators, no normalisation, phased annotation and
+     * imprecise searches.
+     */
+    public static final AnnotationOptions DEFAULT = parse(QueryOptions.empty());
+
+    private final Set<String> annotators;
+    private final List<String> includeGeneFields;
+    private final boolean normalize;
+    private final boolean decompose;
+    private final boolean phased;
+    private final boolean imprecise;
+    private final int svExtraPadding;
+    private final int cnvExtraPadding;
+    private final boolean checkAminoAcidChange;
+    private final String consequenceTypeSource;
+
+    private AnnotationOptions(Set<String> annotators, boolean normalize, boolean decompose, boolean phased, boolean imprecise,
+                              int svExtraPadding, int cnvExtraPadding, boolean checkAminoAcidChange,
+                              String consequenceTypeSource) {
+        this.annotators = Collections.unmodifiableSet(annotators);
+        this.includeGeneFields = Collections.unmodifiableList(getIncludedGeneFields(annotators));
+        this.normalize = normalize;
+        this.decompose = decompose;
+        this.phased = phased;
+        this.imprecise = imprecise;
+        this.svExtraPadding = svExtraPadding;
+        this.cnvExtraPadding = cnvExtraPadding;
+        this.checkAminoAcidChange = checkAminoAcidChange;
+        this.consequenceTypeSource = consequenceTypeSource;
+    }
+
+    /**
+     * Reads the annotation options from the query options of a request.
+     * @param queryOptions include/exclude annotators, normalize, skipDecompose, ignorePhase (or deprecated phased),
+     *                     imprecise, svExtraPadding, cnvExtraPadding, checkAminoAcidChange and consequenceTypeSource
+     * @return the annotation options, defaults are used for absent options
+     */
+    public static AnnotationOptions parse(QueryOptions queryOptions) {
+        if (queryOptions == null) {
+            queryOptions = QueryOptions.empty();
+        }
+
+        // We process include and exclude query options to know which annotators to use.
+        // Include parameter has preference over exclude.
+        Set<String> annotators;
+        List<String> includeList = queryOptions.getAsStringList("include");
+        if (includeList.size() > 0) {
+            annotators = new HashSet<>(includeList);
+        } else {
+            annotators = new HashSet<>(DEFAULT_ANNOTATORS);
+            queryOptions.getAsStringList("exclude").forEach(annotators::remove);
+        }
+
+        // Default behaviour no normalization
+        boolean normalize = queryOptions.get("normalize") != null && (Boolean) queryOptions.get("normalize");
+
+        // Default behaviour decompose
+        boolean decompose = queryOptions.get("skipDecompose") == null || !queryOptions.getBoolean("skipDecompose");
+
+        boolean phased;
+        // New parameter "ignorePhase" present overrides presence of old "phased" parameter
+        if (queryOptions.get("ignorePhase") != null) {
+            phased = !queryOptions.getBoolean("ignorePhase");
+        // Old parameter "phased" present but new one ("ignorePhase") absent - use old one. Probably someone who has not
+        // yet moved to using the new one.
+        } else if (queryOptions.get("phased") != null) {
+            phased = queryOptions.getBoolean("phased");
+        // Default behaviour - calculate phased annotation
+        } else {
+            phased = true;
+        }
+
+        // Default behaviour - enable imprecise searches
+        boolean imprecise = queryOptions.get("imprecise") == null || queryOptions.getBoolean("imprecise");
+
+        // Default behaviour - no extra padding for structural variants nor CNVs
+        int svExtraPadding = queryOptions.get("svExtraPadding") != null ? (Integer) queryOptions.get("svExtraPadding") : 0;
+        int cnvExtraPadding = queryOptions.get("cnvExtraPadding") != null ? (Integer) queryOptions.get("cnvExtraPadding") : 0;
+
+        boolean checkAminoAcidChange = queryOptions.get("checkAminoAcidChange") != null
+                && (Boolean) queryOptions.get("checkAminoAcidChange");
+
+        String consequenceTypeSource = queryOptions.get("consequenceTypeSource") != null
+                ? (String) queryOptions.get("consequenceTypeSource") : null;
+
+        return new AnnotationOptions(annotators, normalize, decompose, phased, imprecise, svExtraPadding, cnvExtraPadding,
+                checkAminoAcidChange, consequenceTypeSource);
+    }
+
+    private static List<String> getIncludedGeneFields(Set<String> annotators) {
+        // This list contains all the fields to be returned by overlapping genes
+        List<String> includeGeneFields = new ArrayList<>(GENE_FIELDS);
+        if (annotators.contains("expression")) {
+            includeGeneFields.add("annotation.expression");
+        }
+        if (annotators.contains("geneDisease")) {
+            includeGeneFields.add("annotation.diseases");
+        }
+        if (annotators.contains("drugInteraction")) {
+            includeGeneFields.add("annotation.drugs");
+        }
+        if (annotators.contains("geneConstraints")) {
+            includeGeneFields.add("annotation.constraints");
+        }
+        if (annotators.contains("mirnaTargets")) {
+            includeGeneFields.add("annotation.targets");
+            includeGeneFields.add("mirna.matures.id");
+        }
+        return includeGeneFields;
+    }
+
+    public boolean contains(String annotator) {
+        return annotators.contains(annotator);
+    }
+
+    public Set<String> getAnnotators() {
+        return annotators;
+    }
+
+    public List<String> getIncludeGeneFields() {
+        return includeGeneFields;
+    }
+
+    public boolean isNormalize() {
+        return normalize;
+    }
+
+    public boolean isDecompose() {
+        return decompose;
+    }
+
+    public boolean isPhased() {
+        return phased;
+    }
+
+    public boolean isImprecise() {
+        return imprecise;
+    }
+
+    public int getSvExtraPadding() {
+        return svExtraPadding;
+    }
+
+    public int getCnvExtraPadding() {
+        return cnvExtraPadding;
+    }
+
+    public boolean isCheckAminoAcidChange() {
+        return checkAminoAcidChange;
+    }
+
+    public String getConsequenceTypeSource() {
+        return consequenceTypeSource;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        AnnotationOptions that = (AnnotationOptions) o;
+        return normalize == that.normalize
+                && decompose == that.decompose
+                && phased == that.phased
+                && imprecise == that.imprecise
+                && svExtraPadding == that.svExtraPadding
+                && cnvExtraPadding == that.cnvExtraPadding
+                && checkAminoAcidChange == that.checkAminoAcidChange
+                && annotators.equals(that.annotators)
+                && Objects.equals(consequenceTypeSource, that.consequenceTypeSource);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(annotators, normalize, decompose, phased, imprecise, svExtraPadding, cnvExtraPadding,
+                checkAminoAcidChange, consequenceTypeSource);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("AnnotationOptions{");
+        sb.append("annotators=").append(annotators);
+        sb.append(", normalize=").append(normalize);
+        sb.append(", decompose=").append(decompose);
+        sb.append(", phased=").append(phased);
+        sb.append(", imprecise=").append(imprecise);
+        sb.append(", svExtraPadding=").append(svExtraPadding);
+        sb.append(", cnvExtraPadding=").append(cnvExtraPadding);
+        sb.append(", checkAminoAcidChange=").append(checkAminoAcidChange);
+        sb.append(", consequenceTypeSource='").append(consequenceTypeSource).append('\'');
+        sb.append('}');
+        return sb.toString();
+    }
+}
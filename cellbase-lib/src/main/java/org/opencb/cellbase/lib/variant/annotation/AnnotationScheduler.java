@@ -0,0 +1,159 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Long-lived thread pool shared by the asynchronous sub-annotators (variation, conservation, functionalScore, clinical,
+ * repeats, cytoband) of every VariantAnnotationCalculator built from the same CellBaseManagerFactory. Keeps track of
+ * the queue depth and of the time each sub-annotator spends waiting and running.
+ *
+ * The queue is bounded. Once it is full, tasks are run by the thread submitting them, which slows requests down instead
+ * of piling up tasks in memory.
+ */
+public class AnnotationScheduler {
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+    // Queued tasks per thread, one annotation batch queues one task per sub-annotator
+    private static final int QUEUE_SIZE_PER_THREAD = 64;
+
+    private final ThreadPoolExecutor executor;
+    private final Map<String, AnnotatorStats> annotatorStats;
+
+    private static Logger logger = LoggerFactory.getLogger(AnnotationScheduler.class);
+
+    public AnnotationScheduler(int numThreads) {
+        this(numThreads, numThreads * QUEUE_SIZE_PER_THREAD);
+    }
+
+    public AnnotationScheduler(int numThreads, int queueSize) {
+        AtomicInteger threadCounter = new AtomicInteger();
+        // Idle threads are released so that schedulers owned by discarded factories do not keep threads alive
+        this.executor = new ThreadPoolExecutor(numThreads, numThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "annotation-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, (runnable, pool) -> {
+                    if (pool.isShutdown()) {
+                        throw new RejectedExecutionException("AnnotationScheduler is shut down");
+                    }
+                    runnable.run();
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.annotatorStats = new ConcurrentHashMap<>();
+
+        logger.debug("AnnotationScheduler created with {} threads and a queue of {} tasks", numThreads, queueSize);
+    }
+
+    /**
+     * Schedules one sub-annotator task.
+     * @param annotator name of the sub-annotator, used to aggregate latency metrics
+     * @param task the annotation task
+     * @param <T> type returned by the task
+     * @return future completed with the task result, or exceptionally with whatever the task threw
+     */
+    public <T> CompletableFuture<T> submit(String annotator, Callable<T> task) {
+        AnnotatorStats stats = annotatorStats.computeIfAbsent(annotator, k -> new AnnotatorStats());
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long queuedTime = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                long startTime = System.nanoTime();
+                try {
+                    future.complete(task.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    stats.add(startTime - queuedTime, System.nanoTime() - startTime);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public ObjectMap getStats() {
+        ObjectMap stats = new ObjectMap();
+        stats.put("numThreads", executor.getMaximumPoolSize());
+        stats.put("poolSize", executor.getPoolSize());
+        stats.put("activeThreads", executor.getActiveCount());
+        stats.put("queueSize", executor.getQueue().size());
+        stats.put("completedTasks", executor.getCompletedTaskCount());
+
+        Map<String, ObjectMap> annotators = new TreeMap<>();
+        for (Map.Entry<String, AnnotatorStats> entry : annotatorStats.entrySet()) {
+            annotators.put(entry.getKey(), entry.getValue().toObjectMap());
+        }
+        stats.put("annotators", annotators);
+        return stats;
+    }
+
+    /**
+     * Tasks already submitted are still run, new ones complete exceptionally with a RejectedExecutionException.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    private static class AnnotatorStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final LongAdder runNanos = new LongAdder();
+        private final LongAccumulator maxRunNanos = new LongAccumulator(Math::max, 0);
+
+        void add(long wait, long run) {
+            count.increment();
+            waitNanos.add(wait);
+            runNanos.add(run);
+            maxRunNanos.accumulate(run);
+        }
+
+        ObjectMap toObjectMap() {
+            long n = count.sum();
+            ObjectMap objectMap = new ObjectMap();
+            objectMap.put("count", n);
+            objectMap.put("avgWaitMs", n > 0 ? waitNanos.sum() / n / 1000000.0 : 0);
+            objectMap.put("avgRunMs", n > 0 ? runNanos.sum() / n / 1000000.0 : 0);
+            objectMap.put("maxRunMs", maxRunNanos.get() / 1000000.0);
+            return objectMap;
+        }
+    }
+}
@@ -24,10 +24,7 @@ import org.opencb.biodata.models.variant.annotation.ConsequenceTypeMappings;
 import org.opencb.biodata.models.variant.avro.ConsequenceType;
 import org.opencb.biodata.models.variant.avro.ProteinVariantAnnotation;
 import org.opencb.biodata.models.variant.avro.SequenceOntologyTerm;
-import org.opencb.cellbase.core.api.core.GenomeDBAdaptor;
 import org.opencb.cellbase.core.api.core.VariantDBAdaptor;
-import org.opencb.cellbase.lib.managers.GenomeManager;
-import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,7 +45,7 @@ public abstract class ConsequenceTypeCalculator {
     protected Gene gene;
     protected Transcript transcript;
     protected Variant variant;
-    protected GenomeManager genomeManager;
+    protected GenomicSequenceBatch genomicSequenceBatch;
     protected Boolean imprecise = true;
     protected int svExtraPadding = 0;
     protected int cnvExtraPadding = 0;
@@ -324,6 +321,16 @@ public abstract class ConsequenceTypeCalculator {
         return new SequenceOntologyTerm(ConsequenceTypeMappings.getSoAccessionString(name), name);
     }
 
+    /**
+     * Genomic nucleotide at the given position of the variant chromosome, used to complete codons beyond the transcript
+     * sequence. Read from the sequence windows of the annotation batch, shared by all its variants and transcripts.
+     * @param position genomic position
+     * @return nucleotide at that position
+     */
+    protected char getGenomicNucleotide(int position) {
+        return genomicSequenceBatch.getNucleotide(variant.getChromosome(), position);
+    }
+
     protected int updateNegativeInsertionCodonArrays(String reverseTranscriptSequence,
                                                      char[] formattedReferenceCodon1Array,
                                                      int reverseTranscriptSequencePosition, int modifiedCodonPosition,
@@ -332,12 +339,8 @@ public abstract class ConsequenceTypeCalculator {
             if (reverseTranscriptSequencePosition >= reverseTranscriptSequence.length()) {
                 int genomicCoordinate = transcript.getStart()
                         - (reverseTranscriptSequencePosition - reverseTranscriptSequence.length() + 1);
-                Query query = new Query(GenomeDBAdaptor.QueryParams.REGION.key(), variant.getChromosome()
-                        + ":" + genomicCoordinate
-                        + "-" + (genomicCoordinate + 1));
                 modifiedCodonArray[modifiedCodonPosition] = VariantAnnotationUtils.COMPLEMENTARY_NT
-                        .get(genomeManager.getGenomicSequence(query, new QueryOptions())
-                                .getResults().get(0).getSequence().charAt(0));
+                        .get(getGenomicNucleotide(genomicCoordinate));
             } else {
                 modifiedCodonArray[modifiedCodonPosition] = VariantAnnotationUtils.COMPLEMENTARY_NT.get(
                         reverseTranscriptSequence.charAt(reverseTranscriptSequencePosition));
@@ -360,14 +363,7 @@ public abstract class ConsequenceTypeCalculator {
         for (; modifiedCodonPosition < 3; modifiedCodonPosition++) {  // Concatenate reference codon nts after alternative nts
             if (transcriptSequencePosition >= transcriptSequence.length()) {
                 int genomicCoordinate = transcript.getEnd() + (transcriptSequencePosition - transcriptSequence.length()) + 1;
-//                        modifiedCodonArray[modifiedCodonPosition] = ((GenomeSequenceFeature) genomeDBAdaptor.getSequenceByRegion(
-//                                variant.getChromosome(), genomicCoordinate, genomicCoordinate + 1,
-//                                new QueryOptions()).getResult().get(0)).getSequence().charAt(0);
-                Query query = new Query(GenomeDBAdaptor.QueryParams.REGION.key(), variant.getChromosome()
-                        + ":" + genomicCoordinate
-                        + "-" + (genomicCoordinate + 1));
-                modifiedCodonArray[modifiedCodonPosition] = genomeManager.getGenomicSequence(query, new QueryOptions())
-                        .getResults().get(0).getSequence().charAt(0);
+                modifiedCodonArray[modifiedCodonPosition] = getGenomicNucleotide(genomicCoordinate);
             } else {
                 modifiedCodonArray[modifiedCodonPosition] = transcriptSequence.charAt(transcriptSequencePosition);
             }
@@ -22,10 +22,8 @@ import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.ConsequenceType;
 import org.opencb.biodata.models.variant.avro.ProteinVariantAnnotation;
 import org.opencb.biodata.models.variant.avro.VariantType;
-import org.opencb.cellbase.core.api.core.GenomeDBAdaptor;
 import org.opencb.cellbase.core.api.core.VariantDBAdaptor;
 import org.opencb.cellbase.lib.managers.GenomeManager;
-import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 
 import java.util.ArrayList;
@@ -40,8 +38,12 @@ public class ConsequenceTypeDeletionCalculator extends ConsequenceTypeGenericReg
 //    private GenomeDBAdaptor genomeDBAdaptor;
 
     public ConsequenceTypeDeletionCalculator(GenomeManager genomeManager) {
+        this(new GenomicSequenceBatch(genomeManager));
+    }
+
+    ConsequenceTypeDeletionCalculator(GenomicSequenceBatch genomicSequenceBatch) {
         super();
-        this.genomeManager = genomeManager;
+        this.genomicSequenceBatch = genomicSequenceBatch;
     }
 
     @Override
@@ -215,12 +217,7 @@ public class ConsequenceTypeDeletionCalculator extends ConsequenceTypeGenericReg
                 if (i >= transcriptSequence.length()) {
                     int genomicCoordinate = transcript.getEnd() + (transcriptSequence.length() - i + 1); // + 1 since i moves
                     // in base 0 (see above)
-                    Query query = new Query(GenomeDBAdaptor.QueryParams.REGION.key(), variant.getChromosome()
-                            + ":" + genomicCoordinate
-                            + "-" + (genomicCoordinate + 1));
-                    substitutingNt = VariantAnnotationUtils.COMPLEMENTARY_NT
-                            .get(genomeManager.getGenomicSequence(query, new QueryOptions()).getResults().get(0)
-                                    .getSequence().charAt(0));
+                    substitutingNt = VariantAnnotationUtils.COMPLEMENTARY_NT.get(getGenomicNucleotide(genomicCoordinate));
                 } else {
                     // Paste reference nts after deletion in the corresponding codon position
                     substitutingNt = VariantAnnotationUtils.COMPLEMENTARY_NT.get(transcriptSequence.charAt(i));
@@ -325,11 +322,7 @@ public class ConsequenceTypeDeletionCalculator extends ConsequenceTypeGenericReg
                 // Means we've reached the beginning of the transcript, i.e. transcript.start
                 if (i < 0) {
                     int genomicCoordinate = transcript.getStart() + i; // recall that i is negative if we get here
-                    Query query = new Query(GenomeDBAdaptor.QueryParams.REGION.key(), variant.getChromosome()
-                            + ":" + genomicCoordinate
-                            + "-" + (genomicCoordinate + 1));
-                    substitutingNt = genomeManager
-                            .getGenomicSequence(query, new QueryOptions()).getResults().get(0).getSequence().charAt(0);
+                    substitutingNt = getGenomicNucleotide(genomicCoordinate);
                 } else {
                     // Paste reference nts after deletion in the corresponding codon position
                     substitutingNt = transcriptSequence.charAt(i);
@@ -429,15 +422,8 @@ public class ConsequenceTypeDeletionCalculator extends ConsequenceTypeGenericReg
             for (codonPosition = variantPhaseShift1; codonPosition < 3; codonPosition++) {
                 if (i >= reverseTranscriptSequence.length()) {
                     int genomicCoordinate = transcript.getStart() - (i - reverseTranscriptSequence.length() + 1);
-//                    modifiedCodonArray[codonPosition] = VariantAnnotationUtils.COMPLEMENTARY_NT.
-//                            get(((GenomeSequenceFeature) genomeDBAdaptor.getSequenceByRegion(variant.getChromosome(),
-//                                    genomicCoordinate, genomicCoordinate + 1,
-//                                    new QueryOptions()).getResult().get(0)).getSequence().charAt(0));
-                    Query query = new Query(GenomeDBAdaptor.QueryParams.REGION.key(), variant.getChromosome()
-                            + ":" + genomicCoordinate
-                            + "-" + (genomicCoordinate + 1));
-                    modifiedCodonArray[codonPosition] = VariantAnnotationUtils.COMPLEMENTARY_NT.
-                            get(genomeManager.getGenomicSequence(query, new QueryOptions()).getResults().get(0).getSequence().charAt(0));
+                    modifiedCodonArray[codonPosition] = VariantAnnotationUtils.COMPLEMENTARY_NT
+                            .get(getGenomicNucleotide(genomicCoordinate));
                 } else {
                     // Paste reference nts after deletion in the corresponding codon position
                     modifiedCodonArray[codonPosition] = VariantAnnotationUtils.COMPLEMENTARY_NT.get(reverseTranscriptSequence.charAt(i));
@@ -533,14 +519,7 @@ public class ConsequenceTypeDeletionCalculator extends ConsequenceTypeGenericReg
             for (codonPosition = variantPhaseShift1; codonPosition < 3; codonPosition++) {
                 if (i >= transcriptSequence.length()) {
                     int genomicCoordinate = transcript.getEnd() + (i - transcriptSequence.length()) + 1;
-//                    modifiedCodonArray[codonPosition] = ((GenomeSequenceFeature) genomeDBAdaptor
-//                            .getSequenceByRegion(variant.getChromosome(), genomicCoordinate, genomicCoordinate + 1,
-//                                    new QueryOptions()).getResult().get(0)).getSequence().charAt(0);
-                    Query query = new Query(GenomeDBAdaptor.QueryParams.REGION.key(), variant.getChromosome()
-                            + ":" + genomicCoordinate
-                            + "-" + (genomicCoordinate + 1));
-                    modifiedCodonArray[codonPosition] = genomeManager
-                            .getGenomicSequence(query, new QueryOptions()).getResults().get(0).getSequence().charAt(0);
+                    modifiedCodonArray[codonPosition] = getGenomicNucleotide(genomicCoordinate);
                 } else {
                     // Paste reference nts after deletion in the corresponding codon position
                     modifiedCodonArray[codonPosition] = transcriptSequence.charAt(i);
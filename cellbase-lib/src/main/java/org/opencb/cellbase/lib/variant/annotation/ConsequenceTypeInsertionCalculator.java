@@ -44,7 +44,11 @@ public class ConsequenceTypeInsertionCalculator extends ConsequenceTypeCalculato
 //    private GenomeDBAdaptor genomeDBAdaptor;
 
     public ConsequenceTypeInsertionCalculator(GenomeManager genomeManager) {
-        this.genomeManager = genomeManager;
+        this(new GenomicSequenceBatch(genomeManager));
+    }
+
+    ConsequenceTypeInsertionCalculator(GenomicSequenceBatch genomicSequenceBatch) {
+        this.genomicSequenceBatch = genomicSequenceBatch;
     }
 
     public List<ConsequenceType> run(Variant inputVariant, List<Gene> geneList, boolean[] overlapsRegulatoryRegion,
@@ -39,7 +39,11 @@ public class ConsequenceTypeMNVCalculator extends ConsequenceTypeGenericRegionCa
 
 
     public ConsequenceTypeMNVCalculator(GenomeManager genomeManager) {
-        this.genomeManager = genomeManager;
+        this(new GenomicSequenceBatch(genomeManager));
+    }
+
+    ConsequenceTypeMNVCalculator(GenomicSequenceBatch genomicSequenceBatch) {
+        this.genomicSequenceBatch = genomicSequenceBatch;
     }
 
     public List<ConsequenceType> run(Variant inputVariant, List<Gene> geneList, boolean[] overlapsRegulatoryRegion,
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.opencb.biodata.models.core.GenomeSequenceFeature;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.cellbase.lib.managers.GenomeManager;
+import org.opencb.commons.datastore.core.QueryOptions;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Genomic sequence read by the consequence type calculators of an annotation batch to complete codons beyond the
+ * transcript sequence. The sequence is fetched in windows aligned to WINDOW_SIZE, which are kept for the whole batch so
+ * that neighbouring variants share them. Not thread safe, one instance per batch.
+ */
+final class GenomicSequenceBatch {
+
+    static final int WINDOW_SIZE = 1000;
+
+    private final Function<Region, String> sequenceFetcher;
+    private final Map<String, String> windows = new HashMap<>();
+
+    GenomicSequenceBatch(GenomeManager genomeManager) {
+        this(region -> {
+            List<GenomeSequenceFeature> results = genomeManager.getSequence(region, QueryOptions.empty()).getResults();
+            return results == null || results.isEmpty() ? null : results.get(0).getSequence();
+        });
+    }
+
+    GenomicSequenceBatch(Function<Region, String> sequenceFetcher) {
+        this.sequenceFetcher = sequenceFetcher;
+    }
+
+    /**
+     * @param chromosome chromosome
+     * @param position genomic position
+     * @return nucleotide at that position
+     */
+    char getNucleotide(String chromosome, int position) {
+        int windowStart = ((position - 1) / WINDOW_SIZE) * WINDOW_SIZE + 1;
+        String key = chromosome + ":" + windowStart;
+        // Missing windows are kept too, so that they are not fetched again
+        String window;
+        if (windows.containsKey(key)) {
+            window = windows.get(key);
+        } else {
+            window = sequenceFetcher.apply(new Region(chromosome, windowStart, windowStart + WINDOW_SIZE - 1));
+            windows.put(key, window);
+        }
+        int index = position - windowStart;
+        if (window != null && index < window.length()) {
+            return window.charAt(index);
+        }
+        // Window truncated, e.g. at the end of the chromosome
+        return sequenceFetcher.apply(new Region(chromosome, position, position)).charAt(0);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.ConsequenceType;
+import org.opencb.biodata.models.variant.avro.ProteinVariantAnnotation;
+import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.cellbase.lib.managers.ProteinManager;
+import org.opencb.commons.datastore.core.QueryOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Non-synonymous consequence types of an annotation batch. Their protein annotation, i.e. SIFT/PolyPhen and REVEL
+ * scores and UniProt features, is fetched for all of them at once when the consequence types of the whole batch are
+ * calculated.
+ */
+final class ProteinAnnotationBatch {
+
+    private final List<Variant> variants = new ArrayList<>();
+    private final List<ConsequenceType> consequenceTypes = new ArrayList<>();
+    // Protein annotation as returned by the consequence type calculator, only position and aa change are set
+    private final List<ProteinVariantAnnotation> proteinVariants = new ArrayList<>();
+
+    void add(Variant variant, ConsequenceType consequenceType) {
+        variants.add(variant);
+        consequenceTypes.add(consequenceType);
+        proteinVariants.add(consequenceType.getProteinVariantAnnotation());
+    }
+
+    /**
+     * Fetches the protein annotation of all the consequence types added. Consequence types whose protein annotation was
+     * already replaced in the meantime (i.e. by the phased adjustment) are left untouched.
+     *
+     * @param proteinManager protein manager of the species and assembly
+     */
+    void setProteinAnnotations(ProteinManager proteinManager) {
+        if (variants.isEmpty()) {
+            return;
+        }
+        List<String> transcriptIds = new ArrayList<>(consequenceTypes.size());
+        for (ConsequenceType consequenceType : consequenceTypes) {
+            transcriptIds.add(getTranscriptId(consequenceType));
+        }
+
+        List<CellBaseDataResult<ProteinVariantAnnotation>> results = proteinManager.getVariantAnnotation(variants,
+                transcriptIds, proteinVariants, new QueryOptions());
+        for (int i = 0; i < consequenceTypes.size(); i++) {
+            ConsequenceType consequenceType = consequenceTypes.get(i);
+            if (consequenceType.getProteinVariantAnnotation() == proteinVariants.get(i)) {
+                consequenceType.setProteinVariantAnnotation(results.get(i).getNumResults() > 0
+                        ? results.get(i).getResults().get(0)
+                        : null);
+            }
+        }
+    }
+
+    static String getTranscriptId(ConsequenceType consequenceType) {
+        String transcriptId = consequenceType.getTranscriptId();
+        // transcript may contain version, e.g. ENST00000382011.9. sift/polyphen do NOT contain version, so remove version
+        if (transcriptId != null && transcriptId.indexOf('.') >= 0) {
+            transcriptId = transcriptId.substring(0, transcriptId.indexOf('.'));
+        }
+        return transcriptId;
+    }
+}
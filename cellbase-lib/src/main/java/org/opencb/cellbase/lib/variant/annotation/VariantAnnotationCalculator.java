@@ -29,6 +29,7 @@ import org.opencb.cellbase.core.api.core.ConservationDBAdaptor;
 import org.opencb.cellbase.core.api.core.RegulationDBAdaptor;
 import org.opencb.cellbase.core.api.core.VariantDBAdaptor;
 import org.opencb.cellbase.core.api.queries.*;
+import org.opencb.cellbase.core.common.IntervalIndex;
 import org.opencb.cellbase.core.exception.CellbaseException;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.managers.*;
@@ -41,7 +42,6 @@ import java.util.*;
 import java.util.concurrent.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 import static org.opencb.cellbase.core.variant.PhasedQueryManager.*;
 
@@ -56,32 +56,27 @@ import static org.opencb.cellbase.core.variant.PhasedQueryManager.*;
 public class VariantAnnotationCalculator {
     private static final String EMPTY_STRING = "";
     private static final String ALTERNATE = "1";
-    private GenomeManager genomeManager;
-    private GeneManager geneManager;
-    private RegulatoryManager regulationManager;
-    private VariantManager variantManager;
-    private ClinicalManager clinicalManager;
-    private RepeatsManager repeatsManager;
-    private ProteinManager proteinManager;
+    // Genes closer than this to a variant are considered affected by it (upstream/downstream consequence types)
+    private static final int GENE_FLANK = 5000;
+    // No request state is kept in the calculator, options of each request are passed as an AnnotationOptions object,
+    // so that one calculator per species and assembly can be shared by concurrent requests
+    private final GenomeManager genomeManager;
+    private final GeneManager geneManager;
+    private final RegulatoryManager regulationManager;
+    private final VariantManager variantManager;
+    private final ClinicalManager clinicalManager;
+    private final RepeatsManager repeatsManager;
+    private final ProteinManager proteinManager;
     private ConservationDBAdaptor conservationManager;
-    private Set<String> annotatorSet;
-    private List<String> includeGeneFields;
-
-    private final VariantNormalizer normalizer;
-    private boolean normalize = false;
-    private boolean decompose = true;
-    private boolean phased = true;
-    private Boolean imprecise = true;
-    private Integer svExtraPadding = 0;
-    private Integer cnvExtraPadding = 0;
-    private Boolean checkAminoAcidChange = false;
-    private String consequenceTypeSource = null;
+    private final AnnotationScheduler annotationScheduler;
+    private final HgvsCalculator hgvsCalculator;
 
     private static Logger logger = LoggerFactory.getLogger(VariantAnnotationCalculator.class);
-    private static HgvsCalculator hgvsCalculator;
 
     private static final String REGULATORY_REGION_FEATURE_TYPE_ATTRIBUTE = "featureType";
     private static final String TF_BINDING_SITE = RegulationDBAdaptor.FeatureType.TF_binding_site.name();
+    private static final String TF_BINDING_SITE_MOTIF = RegulationDBAdaptor.FeatureType.TF_binding_site_motif.name();
+    private static final int MAX_BATCH_REGULATORY_REGION_LENGTH = 10000;
     private static final String REGION = "region";
     private static final String MERGE = "merge";
 
@@ -95,17 +90,18 @@ public class VariantAnnotationCalculator {
 //        this.conservationManager = cellbaseManagerFactory.getConservationManager(species, assembly);
         this.clinicalManager = cellbaseManagerFactory.getClinicalManager(species, assembly);
         this.repeatsManager = cellbaseManagerFactory.getRepeatsManager(species, assembly);
-
-        // Initialises normaliser configuration with default values. HEADS UP: configuration might be updated
-        // at parseQueryParam
-        this.normalizer = new VariantNormalizer(getNormalizerConfig());
-
-         hgvsCalculator = new HgvsCalculator(genomeManager);
+        this.annotationScheduler = cellbaseManagerFactory.getAnnotationScheduler();
+        this.hgvsCalculator = new HgvsCalculator(genomeManager);
 
         logger.debug("VariantAnnotationMongoDBAdaptor: in 'constructor'");
     }
 
-    private VariantNormalizer.VariantNormalizerConfig getNormalizerConfig() {
+    private VariantNormalizer getNormalizer(boolean decompose) {
+        // VariantNormalizer keeps its configuration, a new one is created for every request
+        return new VariantNormalizer(getNormalizerConfig(decompose));
+    }
+
+    private VariantNormalizer.VariantNormalizerConfig getNormalizerConfig(boolean decompose) {
         return (new VariantNormalizer.VariantNormalizerConfig())
                 .setReuseVariants(false)
                 .setNormalizeAlleles(false)
@@ -118,9 +114,10 @@ public class VariantAnnotationCalculator {
             throws QueryException, IllegalAccessException {
         long dbTimeStart = System.currentTimeMillis();
 
-        parseQueryParam(queryOptions);
-        List<Gene> batchGeneList = getBatchGeneList(Collections.singletonList(variant));
-        List<Gene> geneList = getAffectedGenes(batchGeneList, variant);
+        AnnotationOptions annotationOptions = AnnotationOptions.parse(queryOptions);
+        List<Gene> batchGeneList = getBatchGeneList(Collections.singletonList(variant), annotationOptions,
+                annotationOptions.getIncludeGeneFields());
+        List<Gene> geneList = getAffectedGenes(getGeneIndex(batchGeneList), variant, annotationOptions);
 
         // TODO the last 'true' parameter needs to be changed by annotatorSet.contains("regulatory") once is ready
         List<ConsequenceType> consequenceTypeList = getConsequenceTypeList(variant, geneList, true,
@@ -141,22 +138,57 @@ public class VariantAnnotationCalculator {
     }
 
     public List<Variant> normalizer(List<Variant> variants) {
-        return normalizer.apply(variants);
+        return getNormalizer(true).apply(variants);
     }
 
     public List<CellBaseDataResult<VariantAnnotation>> getAnnotationByVariantList(List<Variant> variantList,
                                                                            QueryOptions queryOptions)
             throws InterruptedException, ExecutionException, QueryException, IllegalAccessException {
+        return getAnnotationByVariantList(variantList, AnnotationOptions.parse(queryOptions));
+    }
+
+    /**
+     * Annotates a batch of variants. Safe to call concurrently, all the options of the request are in annotationOptions.
+     * @param variantList variants to annotate, their annotation is set or updated
+     * @param annotationOptions annotators to run and the rest of options of the request
+     * @return one result per variant in variantList, several annotations per result for decomposed MNVs
+     * @throws InterruptedException if interrupted while waiting for the annotators
+     * @throws ExecutionException if any annotator fails
+     * @throws QueryException if any query built for the annotators is not valid
+     * @throws IllegalAccessException if any query built for the annotators is not valid
+     */
+    public List<CellBaseDataResult<VariantAnnotation>> getAnnotationByVariantList(List<Variant> variantList,
+                                                                                  AnnotationOptions annotationOptions)
+            throws InterruptedException, ExecutionException, QueryException, IllegalAccessException {
+        return getAnnotationByVariantList(variantList, annotationOptions, null);
+    }
+
+    /**
+     * Annotates a batch of variants. Annotations found in annotationCache are not calculated again, the ones calculated
+     * are added to the cache.
+     * @param variantList variants to annotate, their annotation is set or updated
+     * @param annotationOptions annotators to run and the rest of options of the request
+     * @param annotationCache cache of annotations, null to calculate all of them
+     * @return one result per variant in variantList, several annotations per result for decomposed MNVs
+     * @throws InterruptedException if interrupted while waiting for the annotators
+     * @throws ExecutionException if any annotator fails
+     * @throws QueryException if any query built for the annotators is not valid
+     * @throws IllegalAccessException if any query built for the annotators is not valid
+     */
+    public List<CellBaseDataResult<VariantAnnotation>> getAnnotationByVariantList(List<Variant> variantList,
+                                                                                  AnnotationOptions annotationOptions,
+                                                                                  AnnotationCache annotationCache)
+            throws InterruptedException, ExecutionException, QueryException, IllegalAccessException {
 
         logger.debug("Annotating  batch");
-        parseQueryParam(queryOptions);
+        logger.debug("Annotation options: {}", annotationOptions);
 
         if (variantList == null || variantList.isEmpty()) {
             return new ArrayList<>();
         }
         List<Variant> normalizedVariantList;
-        if (normalize) {
-            normalizedVariantList = normalizer.apply(variantList);
+        if (annotationOptions.isNormalize()) {
+            normalizedVariantList = getNormalizer(annotationOptions.isDecompose()).apply(variantList);
         } else {
             normalizedVariantList = variantList;
         }
@@ -165,21 +197,52 @@ public class VariantAnnotationCalculator {
         // Normalized variants already contain updated VariantAnnotation objects since runAnnotationProcess will
         // write on them if available (if not will create and set them) - i.e. no need to use variantAnnotationList
         // really
-        List<VariantAnnotation> variantAnnotationList = runAnnotationProcess(normalizedVariantList);
+        if (annotationCache == null) {
+            runAnnotationProcess(normalizedVariantList, annotationOptions);
+        } else {
+            runCachedAnnotationProcess(normalizedVariantList, annotationOptions, annotationCache);
+        }
 
-        return generateCellBaseDataResultList(variantList, normalizedVariantList, startTime);
+        return generateCellBaseDataResultList(variantList, normalizedVariantList, annotationOptions.isDecompose(), startTime);
+    }
+
+    private void runCachedAnnotationProcess(List<Variant> normalizedVariantList, AnnotationOptions annotationOptions,
+                                            AnnotationCache annotationCache)
+            throws InterruptedException, ExecutionException, QueryException, IllegalAccessException {
+        // Variants not found in the cache are annotated as one batch in their original order so that consecutive
+        // phased variants are still adjusted together; variants with phase information are never cached
+        List<Variant> notCachedVariantList = new ArrayList<>(normalizedVariantList.size());
+        List<Variant> cacheableVariantList = new ArrayList<>(normalizedVariantList.size());
+        for (Variant variant : normalizedVariantList) {
+            if (AnnotationCache.isCacheable(variant)) {
+                VariantAnnotation variantAnnotation = annotationCache.get(variant, annotationOptions);
+                if (variantAnnotation != null) {
+                    variant.setAnnotation(variantAnnotation);
+                    continue;
+                }
+                cacheableVariantList.add(variant);
+            }
+            notCachedVariantList.add(variant);
+        }
+
+        if (!notCachedVariantList.isEmpty()) {
+            runAnnotationProcess(notCachedVariantList, annotationOptions);
+            for (Variant variant : cacheableVariantList) {
+                annotationCache.put(variant, annotationOptions, variant.getAnnotation());
+            }
+        }
     }
 
     private List<CellBaseDataResult<VariantAnnotation>> generateCellBaseDataResultList(List<Variant> variantList,
                                                                          List<Variant> normalizedVariantList,
-                                                                         long startTime) {
+                                                                         boolean decompose, long startTime) {
 
         List<CellBaseDataResult<VariantAnnotation>> annotationResultList = new ArrayList<>(variantList.size());
 
         // Return only one result per CellBaseDataResult if either
         //   - size original variant list and normalised one is the same
         //   - MNV decomposition is switched OFF, i.e. queryOptions.skipDecompose = true and therefore
-        //   this.decompose = false
+        //   decompose = false
         if (!decompose || variantList.size() == normalizedVariantList.size()) {
             for (int i = 0; i < variantList.size(); i++) {
                 CellBaseDataResult<VariantAnnotation> cellBaseDataResult = new CellBaseDataResult<>(variantList.get(i).toString(),
@@ -245,15 +308,16 @@ public class VariantAnnotationCalculator {
         return variantCellBaseDataResult.first();
     }
 
-    private List<Gene> setGeneAnnotation(List<Gene> batchGeneList, Variant variant) throws QueryException, IllegalAccessException {
+    private List<Gene> setGeneAnnotation(IntervalIndex<Gene> geneIndex, Variant variant, AnnotationOptions annotationOptions)
+            throws QueryException, IllegalAccessException {
         // Fetch overlapping genes for this variant
-        List<Gene> geneList = getAffectedGenes(batchGeneList, variant);
+        List<Gene> geneList = getAffectedGenes(geneIndex, variant, annotationOptions);
         VariantAnnotation variantAnnotation = variant.getAnnotation();
 
         /*
          * Gene Annotation
          */
-        if (annotatorSet.contains("expression")) {
+        if (annotationOptions.contains("expression")) {
             variantAnnotation.setGeneExpression(new ArrayList<>());
             for (Gene gene : geneList) {
                 // refseq genes don't have annotation (yet)
@@ -263,7 +327,7 @@ public class VariantAnnotationCalculator {
             }
         }
 
-        if (annotatorSet.contains("geneDisease")) {
+        if (annotationOptions.contains("geneDisease")) {
             variantAnnotation.setGeneTraitAssociation(new ArrayList<>());
             for (Gene gene : geneList) {
                 if (gene.getAnnotation() != null && gene.getAnnotation().getDiseases() != null) {
@@ -272,7 +336,7 @@ public class VariantAnnotationCalculator {
             }
         }
 
-        if (annotatorSet.contains("drugInteraction")) {
+        if (annotationOptions.contains("drugInteraction")) {
             variantAnnotation.setGeneDrugInteraction(new ArrayList<>());
             for (Gene gene : geneList) {
                 if (gene.getAnnotation() != null && gene.getAnnotation().getDrugs() != null) {
@@ -281,7 +345,7 @@ public class VariantAnnotationCalculator {
             }
         }
 
-        if (annotatorSet.contains("geneConstraints")) {
+        if (annotationOptions.contains("geneConstraints")) {
             variantAnnotation.setGeneConstraints(new ArrayList<>());
             for (Gene gene : geneList) {
                 if (gene.getAnnotation() != null && gene.getAnnotation().getConstraints() != null) {
@@ -290,7 +354,7 @@ public class VariantAnnotationCalculator {
             }
         }
 
-        if (annotatorSet.contains("mirnaTargets")) {
+        if (annotationOptions.contains("mirnaTargets")) {
             variantAnnotation.setGeneMirnaTargets(new ArrayList<>());
             for (Gene gene : geneList) {
                 if (gene.getMirna() != null && gene.getMirna().getMatures() != null) {
@@ -349,7 +413,7 @@ public class VariantAnnotationCalculator {
 //        return stringBuilder.toString();
 //    }
 
-    private List<VariantAnnotation> runAnnotationProcess(List<Variant> normalizedVariantList)
+    private List<VariantAnnotation> runAnnotationProcess(List<Variant> normalizedVariantList, AnnotationOptions annotationOptions)
             throws InterruptedException, ExecutionException, QueryException, IllegalAccessException {
         long globalStartTime = System.currentTimeMillis();
         long startTime;
@@ -358,60 +422,75 @@ public class VariantAnnotationCalculator {
         List<VariantAnnotation> variantAnnotationList = new ArrayList<>(normalizedVariantList.size());
 
         /*
-         * Next three async blocks calculate annotations using Futures, this will be calculated in a different thread.
-         * Once the main loop has finished then they will be stored. This provides a ~30% of performance improvement.
+         * Next async blocks calculate annotations using Futures, this will be calculated in the threads of the shared
+         * annotation scheduler. Once the main loop has finished then they will be stored. This provides a ~30% of
+         * performance improvement.
          */
-        ExecutorService fixedThreadPool = Executors.newFixedThreadPool(5);
         FutureVariationAnnotator futureVariationAnnotator = null;
-        Future<List<CellBaseDataResult<Variant>>> variationFuture = null;
-        List<Gene> batchGeneList = getBatchGeneList(normalizedVariantList);
+        CompletableFuture<List<CellBaseDataResult<Variant>>> variationFuture = null;
+        List<Gene> batchGeneList = getBatchGeneList(normalizedVariantList, annotationOptions,
+                annotationOptions.getIncludeGeneFields());
+        IntervalIndex<Gene> geneIndex = getGeneIndex(batchGeneList);
 
-        if (annotatorSet.contains("variation") || annotatorSet.contains("populationFrequencies")) {
+        if (annotationOptions.contains("variation") || annotationOptions.contains("populationFrequencies")) {
             futureVariationAnnotator = new FutureVariationAnnotator(normalizedVariantList, new QueryOptions("include",
                     "id,annotation.populationFrequencies,annotation.additionalAttributes.dgvSpecificAttributes")
-                    .append("imprecise", imprecise));
-            variationFuture = fixedThreadPool.submit(futureVariationAnnotator);
+                    .append("imprecise", annotationOptions.isImprecise()));
+            variationFuture = annotationScheduler.submit("variation", futureVariationAnnotator);
         }
 
         FutureConservationAnnotator futureConservationAnnotator = null;
-        Future<List<CellBaseDataResult>> conservationFuture = null;
-        if (annotatorSet.contains("conservation")) {
-            futureConservationAnnotator = new FutureConservationAnnotator(normalizedVariantList, QueryOptions.empty());
-            conservationFuture = fixedThreadPool.submit(futureConservationAnnotator);
+        CompletableFuture<List<CellBaseDataResult<Score>>> conservationFuture = null;
+        if (annotationOptions.contains("conservation")) {
+            futureConservationAnnotator = new FutureConservationAnnotator(normalizedVariantList, QueryOptions.empty(),
+                    annotationOptions);
+            conservationFuture = annotationScheduler.submit("conservation", futureConservationAnnotator);
         }
 
         FutureVariantFunctionalScoreAnnotator futureVariantFunctionalScoreAnnotator = null;
-        Future<List<CellBaseDataResult<Score>>> variantFunctionalScoreFuture = null;
-        if (annotatorSet.contains("functionalScore")) {
+        CompletableFuture<List<CellBaseDataResult<Score>>> variantFunctionalScoreFuture = null;
+        if (annotationOptions.contains("functionalScore")) {
             futureVariantFunctionalScoreAnnotator = new FutureVariantFunctionalScoreAnnotator(normalizedVariantList, QueryOptions.empty());
-            variantFunctionalScoreFuture = fixedThreadPool.submit(futureVariantFunctionalScoreAnnotator);
+            variantFunctionalScoreFuture = annotationScheduler.submit("functionalScore", futureVariantFunctionalScoreAnnotator);
         }
 
         FutureClinicalAnnotator futureClinicalAnnotator = null;
-        Future<List<CellBaseDataResult<Variant>>> clinicalFuture = null;
+        CompletableFuture<List<CellBaseDataResult<Variant>>> clinicalFuture = null;
         // "clinical" is deprecated, replaced with traitAssociation
-        if (annotatorSet.contains("clinical") || annotatorSet.contains("traitAssociation")) {
+        if (annotationOptions.contains("clinical") || annotationOptions.contains("traitAssociation")) {
             QueryOptions queryOptions = new QueryOptions();
-            queryOptions.add(ClinicalDBAdaptor.QueryParams.PHASE.key(), phased);
-            queryOptions.add(ClinicalDBAdaptor.QueryParams.CHECK_AMINO_ACID_CHANGE.key(), checkAminoAcidChange);
+            queryOptions.add(ClinicalDBAdaptor.QueryParams.PHASE.key(), annotationOptions.isPhased());
+            queryOptions.add(ClinicalDBAdaptor.QueryParams.CHECK_AMINO_ACID_CHANGE.key(), annotationOptions.isCheckAminoAcidChange());
             futureClinicalAnnotator = new FutureClinicalAnnotator(normalizedVariantList, batchGeneList, queryOptions);
-            clinicalFuture = fixedThreadPool.submit(futureClinicalAnnotator);
+            clinicalFuture = annotationScheduler.submit("clinical", futureClinicalAnnotator);
         }
 
         FutureRepeatsAnnotator futureRepeatsAnnotator = null;
-        Future<List<CellBaseDataResult<Repeat>>> repeatsFuture = null;
-        if (annotatorSet.contains("repeats")) {
-            futureRepeatsAnnotator = new FutureRepeatsAnnotator(normalizedVariantList);
-            repeatsFuture = fixedThreadPool.submit(futureRepeatsAnnotator);
+        CompletableFuture<List<CellBaseDataResult<Repeat>>> repeatsFuture = null;
+        if (annotationOptions.contains("repeats")) {
+            futureRepeatsAnnotator = new FutureRepeatsAnnotator(normalizedVariantList, annotationOptions);
+            repeatsFuture = annotationScheduler.submit("repeats", futureRepeatsAnnotator);
         }
 
         FutureCytobandAnnotator futureCytobandAnnotator = null;
-        Future<List<CellBaseDataResult<Cytoband>>> cytobandFuture = null;
-        if (annotatorSet.contains("cytoband")) {
-            futureCytobandAnnotator = new FutureCytobandAnnotator(normalizedVariantList, QueryOptions.empty());
-            cytobandFuture = fixedThreadPool.submit(futureCytobandAnnotator);
+        CompletableFuture<List<CellBaseDataResult<Cytoband>>> cytobandFuture = null;
+        if (annotationOptions.contains("cytoband")) {
+            futureCytobandAnnotator = new FutureCytobandAnnotator(normalizedVariantList, QueryOptions.empty(), annotationOptions);
+            cytobandFuture = annotationScheduler.submit("cytoband", futureCytobandAnnotator);
+        }
+
+        // Regulatory overlaps of the whole batch are resolved with a single query before the consequence type
+        // calculators run
+        List<boolean[]> regulatoryRegionOverlapList = null;
+        if (annotationOptions.contains("consequenceType")) {
+            regulatoryRegionOverlapList = getRegulatoryRegionOverlaps(normalizedVariantList);
         }
 
+        // SIFT/PolyPhen scores and UniProt features of missense variants are fetched for the whole batch after the loop
+        ProteinAnnotationBatch proteinAnnotationBatch = new ProteinAnnotationBatch();
+        // Genomic sequence completing codons beyond transcript ends is fetched once for neighbouring variants
+        GenomicSequenceBatch genomicSequenceBatch = new GenomicSequenceBatch(genomeManager);
+
         /*
          * We iterate over all variants to get the rest of the annotations and to create the VariantAnnotation objects
          */
@@ -434,7 +513,7 @@ public class VariantAnnotationCalculator {
             variantAnnotation.setReference(normalizedVariantList.get(i).getReference());
             variantAnnotation.setAlternate(normalizedVariantList.get(i).getAlternate());
 
-            List<Gene> variantGeneList = setGeneAnnotation(batchGeneList, normalizedVariantList.get(i));
+            List<Gene> variantGeneList = setGeneAnnotation(geneIndex, normalizedVariantList.get(i), annotationOptions);
 
             // Better not run hgvs calculation with a Future for the following reasons:
             //   * geneList is needed in order to calculate the hgvs for ALL VARIANTS
@@ -446,7 +525,7 @@ public class VariantAnnotationCalculator {
             //   FOR INDELS
             // Given that the number of indels is expected to be negligible if compared to the number of SNVs, the
             // decision is to run it synchronously
-            if (annotatorSet.contains("hgvs")) {
+            if (annotationOptions.contains("hgvs")) {
                 try {
                     // Decided to always set normalize = false for a number of reasons:
                     //   * was raising problems with the normalizer - it could potentially fail in weird multiallelic
@@ -471,12 +550,13 @@ public class VariantAnnotationCalculator {
                 }
             }
 
-            if (annotatorSet.contains("consequenceType")) {
+            if (annotationOptions.contains("consequenceType")) {
                 try {
                     List<ConsequenceType> consequenceTypeList = getConsequenceTypeList(normalizedVariantList.get(i),
-                        variantGeneList, true, QueryOptions.empty());
+                        variantGeneList, regulatoryRegionOverlapList.get(i), proteinAnnotationBatch, genomicSequenceBatch,
+                        QueryOptions.empty());
                     variantAnnotation.setConsequenceTypes(consequenceTypeList);
-                    if (phased) {
+                    if (annotationOptions.isPhased()) {
                         checkAndAdjustPhasedConsequenceTypes(normalizedVariantList.get(i), variantBuffer);
                     }
                     variantAnnotation
@@ -500,10 +580,14 @@ public class VariantAnnotationCalculator {
 
         // Adjust phase of two last variants - if still anything remaining to adjust. This can happen if the two last
         // variants in the batch are phased and the distance between them < 3nts
-        if (phased && variantBuffer.size() > 1) {
+        if (annotationOptions.isPhased() && variantBuffer.size() > 1) {
             adjustPhasedConsequenceTypes(variantBuffer.toArray());
         }
 
+        if (annotationOptions.contains("consequenceType")) {
+            proteinAnnotationBatch.setProteinAnnotations(proteinManager);
+        }
+
         logger.debug("Main loop iteration annotation performance is {}ms for {} variants", System.currentTimeMillis()
                 - startTime, normalizedVariantList.size());
 
@@ -512,7 +596,7 @@ public class VariantAnnotationCalculator {
          * Method 'processResults' has been implemented in the same class for sanity.
          */
         if (futureVariationAnnotator != null) {
-            futureVariationAnnotator.processResults(variationFuture, variantAnnotationList, annotatorSet);
+            futureVariationAnnotator.processResults(variationFuture, variantAnnotationList, annotationOptions.getAnnotators());
         }
         if (futureConservationAnnotator != null) {
             futureConservationAnnotator.processResults(conservationFuture, variantAnnotationList);
@@ -529,30 +613,38 @@ public class VariantAnnotationCalculator {
         if (futureCytobandAnnotator != null) {
             futureCytobandAnnotator.processResults(cytobandFuture, variantAnnotationList);
         }
-        fixedThreadPool.shutdown();
-
 
         logger.debug("Total batch annotation performance is {}ms for {} variants", System.currentTimeMillis()
                 - globalStartTime, normalizedVariantList.size());
+        if (logger.isDebugEnabled()) {
+            logger.debug("Annotation scheduler status: {}", annotationScheduler.getStats().toJson());
+        }
         return variantAnnotationList;
     }
 
     public List<Gene> getBatchGeneList(List<Variant> variantList)
             throws QueryException, IllegalAccessException {
-        List<Region> regionList = variantListToRegionList(variantList);
+        // All gene fields are returned
+        return getBatchGeneList(variantList, AnnotationOptions.DEFAULT, null);
+    }
+
+    private List<Gene> getBatchGeneList(List<Variant> variantList, AnnotationOptions annotationOptions,
+                                        List<String> includeGeneFields)
+            throws QueryException, IllegalAccessException {
+        List<Region> regionList = variantListToRegionList(variantList, annotationOptions);
         // Add +-5Kb for gene search
         for (Region region : regionList) {
-            region.setStart(Math.max(1, region.getStart() - 5000));
-            region.setEnd(region.getEnd() + 5000);
+            region.setStart(Math.max(1, region.getStart() - GENE_FLANK));
+            region.setEnd(region.getEnd() + GENE_FLANK);
         }
 
         List<Gene> geneList = new ArrayList<>();
         GeneQuery geneQuery = new GeneQuery();
         geneQuery.setIncludes(includeGeneFields);
         geneQuery.setRegions(regionList);
-        if (StringUtils.isNotEmpty(consequenceTypeSource)) {
+        if (StringUtils.isNotEmpty(annotationOptions.getConsequenceTypeSource())) {
             // sources can be "ensembl" and/or "refseq". query is validated before execution, will fail if invalid value
-            String[] sources = consequenceTypeSource.split(",");
+            String[] sources = annotationOptions.getConsequenceTypeSource().split(",");
             for (String source : sources) {
                 if (source.equalsIgnoreCase(VariantDBAdaptor.QueryParams.ENSEMBL.key())) {
                     geneQuery.setSource(Collections.singletonList(VariantDBAdaptor.QueryParams.ENSEMBL.key()));
@@ -572,58 +664,6 @@ public class VariantAnnotationCalculator {
         return geneList;
     }
 
-    private void parseQueryParam(QueryOptions queryOptions) {
-        // We process include and exclude query options to know which annotators to use.
-        // Include parameter has preference over exclude.
-        annotatorSet = getAnnotatorSet(queryOptions);
-        logger.debug("Annotators to use: {}", annotatorSet.toString());
-
-        // This field contains all the fields to be returned by overlapping genes
-        includeGeneFields = getIncludedGeneFields(annotatorSet);
-
-        // Default behaviour no normalization
-        normalize = (queryOptions.get("normalize") != null && (Boolean) queryOptions.get("normalize"));
-        logger.debug("normalize = {}", normalize);
-
-        // Default behaviour decompose
-        decompose = (queryOptions.get("skipDecompose") == null || !queryOptions.getBoolean("skipDecompose"));
-        logger.debug("decompose = {}", decompose);
-        // Must update normaliser configuration since normaliser was created on constructor
-        normalizer.getConfig().setDecomposeMNVs(decompose);
-
-        // New parameter "ignorePhase" present overrides presence of old "phased" parameter
-        if (queryOptions.get("ignorePhase") != null) {
-            phased = !queryOptions.getBoolean("ignorePhase");
-        // Old parameter "phased" present but new one ("ignorePhase") absent - use old one. Probably someone who has not
-        // yet moved to using the new one.
-        } else if (queryOptions.get("phased") != null) {
-            phased = queryOptions.getBoolean("phased");
-        // Default behaviour - calculate phased annotation
-        } else {
-            phased = true;
-        }
-        logger.debug("phased = {}", phased);
-
-        // Default behaviour - enable imprecise searches
-        imprecise = (queryOptions.get("imprecise") == null || queryOptions.getBoolean("imprecise"));
-        logger.debug("imprecise = {}", imprecise);
-
-        // Default behaviour - no extra padding for structural variants
-        svExtraPadding = (queryOptions.get("svExtraPadding") != null ? (Integer) queryOptions.get("svExtraPadding") : 0);
-        logger.debug("svExtraPadding = {}", svExtraPadding);
-
-        // Default behaviour - no extra padding for CNV
-        cnvExtraPadding = (queryOptions.get("cnvExtraPadding") != null ? (Integer) queryOptions.get("cnvExtraPadding") : 0);
-        logger.debug("cnvExtraPadding = {}", cnvExtraPadding);
-
-        checkAminoAcidChange = (queryOptions.get("checkAminoAcidChange") != null && (Boolean) queryOptions.get("checkAminoAcidChange"));
-        logger.debug("checkAminoAcidChange = {}", checkAminoAcidChange);
-
-        consequenceTypeSource = (queryOptions.get("consequenceTypeSource") != null
-                ? (String) queryOptions.get("consequenceTypeSource") : null);
-        logger.debug("consequenceTypeSource = {}", consequenceTypeSource);
-    }
-
 //    private void mergeAnnotation(VariantAnnotation destination, VariantAnnotation origin) {
 //        destination.setChromosome(origin.getChromosome());
 //        destination.setStart(origin.getStart());
@@ -1024,64 +1064,59 @@ public class VariantAnnotationCalculator {
         return mostSevereConsequencetype;
     }
 
-    private Set<String> getAnnotatorSet(QueryOptions queryOptions) {
-        Set<String> annotatorSet;
-        List<String> includeList = queryOptions.getAsStringList("include");
-        if (includeList.size() > 0) {
-            annotatorSet = new HashSet<>(includeList);
-        } else {
-            annotatorSet = new HashSet<>(Arrays.asList("variation", "traitAssociation", "conservation", "functionalScore",
-                    "consequenceType", "expression", "geneDisease", "drugInteraction", "geneConstraints", "mirnaTargets",
-                    "populationFrequencies", "repeats", "cytoband", "hgvs"));
-            List<String> excludeList = queryOptions.getAsStringList("exclude");
-            excludeList.forEach(annotatorSet::remove);
-        }
-        return annotatorSet;
+    public List<Gene> getAffectedGenes(List<Gene> batchGeneList, Variant variant) {
+        return getAffectedGenes(getGeneIndex(batchGeneList), variant, AnnotationOptions.DEFAULT);
     }
 
-    private List<String> getIncludedGeneFields(Set<String> annotatorSet) {
-            List<String> includeGeneFields = new ArrayList<>(Arrays.asList("name", "id", "chromosome", "start", "end", "transcripts.id",
-                "transcripts.proteinId", "transcripts.start", "transcripts.end", "transcripts.cDnaSequence", "transcripts.proteinSequence",
-                "transcripts.strand", "transcripts.cdsLength", "transcripts.flags", "transcripts.biotype",
-                "transcripts.genomicCodingStart", "transcripts.genomicCodingEnd", "transcripts.cdnaCodingStart",
-                "transcripts.cdnaCodingEnd", "transcripts.exons.start", "transcripts.exons.cdsStart", "transcripts.exons.end",
-                "transcripts.exons.cdsEnd", "transcripts.exons.sequence", "transcripts.exons.phase",
-                "transcripts.exons.exonNumber", "mirna.matures", "mirna.sequence", "mirna.matures.cdnaStart",
-                "transcripts.exons.genomicCodingStart", "transcripts.exons.genomicCodingEnd",
-                "mirna.matures.cdnaEnd"));
+    /**
+     * Builds the interval index used to find the genes affected by each variant of a batch. Must be built once per
+     * batch and reused across variants.
+     * @param batchGeneList genes overlapping any of the variants in the batch
+     * @return index over the gene coordinates
+     */
+    public IntervalIndex<Gene> getGeneIndex(List<Gene> batchGeneList) {
+        return new IntervalIndex<>(batchGeneList, Gene::getChromosome, Gene::getStart, Gene::getEnd);
+    }
 
-        if (annotatorSet.contains("expression")) {
-            includeGeneFields.add("annotation.expression");
-        }
-        if (annotatorSet.contains("geneDisease")) {
-            includeGeneFields.add("annotation.diseases");
-        }
-        if (annotatorSet.contains("drugInteraction")) {
-            includeGeneFields.add("annotation.drugs");
-        }
-        if (annotatorSet.contains("geneConstraints")) {
-            includeGeneFields.add("annotation.constraints");
-        }
-        if (annotatorSet.contains("mirnaTargets")) {
-            includeGeneFields.add("annotation.targets");
-            includeGeneFields.add("mirna.matures.id");
-        }
-        return includeGeneFields;
+    /**
+     * Genes within GENE_FLANK of any of the regions of the variant. Genes are returned in the same order as in the
+     * batch gene list, and a gene is repeated once for every region it overlaps (e.g. both breakends of a translocation).
+     * @param geneIndex index built with getGeneIndex
+     * @param variant variant
+     * @return affected genes
+     */
+    public List<Gene> getAffectedGenes(IntervalIndex<Gene> geneIndex, Variant variant) {
+        return getAffectedGenes(geneIndex, variant, AnnotationOptions.DEFAULT);
     }
 
-    public List<Gene> getAffectedGenes(List<Gene> batchGeneList, Variant variant) {
-        List<Gene> geneList = new ArrayList<>(batchGeneList.size());
-        for (Gene gene : batchGeneList) {
-            for (Region region : variantToRegionList(variant)) {
-                if (region.getChromosome().equals(gene.getChromosome()) && gene.getStart() <= (region.getEnd() + 5000)
-                        && gene.getEnd() >= Math.max(1, region.getStart() - 5000)) {
-                    geneList.add(gene);
-                }
+    private List<Gene> getAffectedGenes(IntervalIndex<Gene> geneIndex, Variant variant, AnnotationOptions annotationOptions) {
+        List<Region> regionList = variantToRegionList(variant, annotationOptions);
+        int[] geneIds;
+        if (regionList.size() == 1) {
+            geneIds = queryGeneIndex(geneIndex, regionList.get(0));
+        } else {
+            geneIds = new int[0];
+            for (Region region : regionList) {
+                int[] regionGeneIds = queryGeneIndex(geneIndex, region);
+                int offset = geneIds.length;
+                geneIds = Arrays.copyOf(geneIds, offset + regionGeneIds.length);
+                System.arraycopy(regionGeneIds, 0, geneIds, offset, regionGeneIds.length);
             }
+            Arrays.sort(geneIds);
+        }
+
+        List<Gene> geneList = new ArrayList<>(geneIds.length);
+        for (int geneId : geneIds) {
+            geneList.add(geneIndex.get(geneId));
         }
         return geneList;
     }
 
+    private int[] queryGeneIndex(IntervalIndex<Gene> geneIndex, Region region) {
+        return geneIndex.queryIds(region.getChromosome(), Math.max(1, region.getStart() - GENE_FLANK),
+                region.getEnd() + GENE_FLANK);
+    }
+
 //    private List<Gene> getGenesInRange(String chromosome, int start, int end, String includeFields) {
 //        QueryOptions queryOptions = new QueryOptions("include", includeFields);
 //
@@ -1104,13 +1139,8 @@ public class VariantAnnotationCalculator {
     private ProteinVariantAnnotation getProteinAnnotation(Variant variant, ConsequenceType consequenceType) {
         ProteinVariantAnnotation proteinVariantAnnotation = null;
         if (consequenceType.getProteinVariantAnnotation() != null) {
-            String transcriptId = consequenceType.getTranscriptId();
-            // transcript may contain version, e.g. ENST00000382011.9. sift/polyphen do NOT contain version, so remove version
-            if (transcriptId != null && transcriptId.contains("\\.")) {
-                transcriptId = transcriptId.split("\\.")[0];
-            }
             CellBaseDataResult<ProteinVariantAnnotation> results = proteinManager.getVariantAnnotation(variant,
-                    transcriptId,
+                    ProteinAnnotationBatch.getTranscriptId(consequenceType),
                     consequenceType.getProteinVariantAnnotation().getPosition(),
                     consequenceType.getProteinVariantAnnotation().getReference(),
                     consequenceType.getProteinVariantAnnotation().getAlternate(), new QueryOptions());
@@ -1122,23 +1152,24 @@ public class VariantAnnotationCalculator {
         return proteinVariantAnnotation;
     }
 
-    private ConsequenceTypeCalculator getConsequenceTypeCalculator(Variant variant) throws UnsupportedURLVariantFormat {
+    private ConsequenceTypeCalculator getConsequenceTypeCalculator(Variant variant, GenomicSequenceBatch genomicSequenceBatch)
+            throws UnsupportedURLVariantFormat {
         switch (VariantAnnotationUtils.getVariantType(variant)) {
             case SNV:
                 return new ConsequenceTypeSNVCalculator();
             case INSERTION:
-                return new ConsequenceTypeInsertionCalculator(genomeManager);
+                return new ConsequenceTypeInsertionCalculator(genomicSequenceBatch);
             case DELETION:
-                return new ConsequenceTypeDeletionCalculator(genomeManager);
+                return new ConsequenceTypeDeletionCalculator(genomicSequenceBatch);
             case MNV:
-                return new ConsequenceTypeMNVCalculator(genomeManager);
+                return new ConsequenceTypeMNVCalculator(genomicSequenceBatch);
             case CNV:
                 if (variant.getSv().getCopyNumber() == null) {
                     return new ConsequenceTypeGenericRegionCalculator();
                 } else if (variant.getSv().getCopyNumber() > 2) {
                     return new ConsequenceTypeCNVGainCalculator();
                 } else {
-                    return new ConsequenceTypeDeletionCalculator(genomeManager);
+                    return new ConsequenceTypeDeletionCalculator(genomicSequenceBatch);
                 }
             case DUPLICATION:
                 return new ConsequenceTypeCNVGainCalculator();
@@ -1151,6 +1182,135 @@ public class VariantAnnotationCalculator {
         }
     }
 
+    /**
+     * Resolves the regulatory overlaps of a whole batch. All regulatory features overlapping the batch regions are
+     * fetched in one query, projecting only featureType and coordinates, and each variant is then resolved in memory
+     * following the same rules as getRegulatoryRegionOverlaps(Variant). Variants spanning more than
+     * MAX_BATCH_REGULATORY_REGION_LENGTH are still queried one by one, since those queries are limited to one result.
+     *
+     * @param variantList variants of the batch
+     * @return one {overlapsAny, overlapsTfbs} pair per variant, in the same order as variantList
+     */
+    private List<boolean[]> getRegulatoryRegionOverlaps(List<Variant> variantList) throws QueryException, IllegalAccessException {
+        List<List<Region>> variantRegionLists = new ArrayList<>(variantList.size());
+        List<Region> batchRegionList = new ArrayList<>(variantList.size());
+        for (Variant variant : variantList) {
+            List<Region> regionList = variantToRegulatoryRegionList(variant);
+            boolean batchable = true;
+            for (Region region : regionList) {
+                batchable &= region.getEnd() - region.getStart() < MAX_BATCH_REGULATORY_REGION_LENGTH;
+            }
+            if (batchable) {
+                variantRegionLists.add(regionList);
+                batchRegionList.addAll(regionList);
+            } else {
+                variantRegionLists.add(null);
+            }
+        }
+
+        IntervalIndex<RegulatoryFeature> regulatoryFeatureIndex = getRegulatoryFeatureIndex(mergeRegions(batchRegionList));
+
+        List<boolean[]> overlapsRegulatoryRegionList = new ArrayList<>(variantList.size());
+        for (int i = 0; i < variantList.size(); i++) {
+            Variant variant = variantList.get(i);
+            List<Region> regionList = variantRegionLists.get(i);
+            if (regionList == null) {
+                overlapsRegulatoryRegionList.add(getRegulatoryRegionOverlaps(variant));
+            } else {
+                // Point queries (SNVs, breakends) have always considered TFBS motifs as TFBS, range queries do not
+                boolean includeMotifs = VariantType.SNV.equals(variant.getType())
+                        || VariantType.BREAKEND.equals(variant.getType());
+                boolean[] overlapsRegulatoryRegion = getRegulatoryRegionOverlaps(regulatoryFeatureIndex, regionList.get(0),
+                        includeMotifs);
+                // Breakends only check the mate if the first breakend does not overlap any regulatory region
+                if (!overlapsRegulatoryRegion[0] && regionList.size() > 1) {
+                    overlapsRegulatoryRegion = getRegulatoryRegionOverlaps(regulatoryFeatureIndex, regionList.get(1),
+                            includeMotifs);
+                }
+                overlapsRegulatoryRegionList.add(overlapsRegulatoryRegion);
+            }
+        }
+        return overlapsRegulatoryRegionList;
+    }
+
+    private IntervalIndex<RegulatoryFeature> getRegulatoryFeatureIndex(List<Region> regionList) {
+        List<RegulatoryFeature> regulatoryFeatureList = new ArrayList<>();
+        if (!regionList.isEmpty()) {
+            RegulationQuery query = new RegulationQuery();
+            query.setExcludes(Collections.singletonList("_id"));
+            query.setIncludes(Arrays.asList("chromosome", "start", "end", REGULATORY_REGION_FEATURE_TYPE_ATTRIBUTE));
+            query.setRegions(regionList);
+            try (CellBaseIterator<RegulatoryFeature> iterator = regulationManager.iterator(query)) {
+                while (iterator.hasNext()) {
+                    regulatoryFeatureList.add(iterator.next());
+                }
+            }
+        }
+        return new IntervalIndex<>(regulatoryFeatureList, RegulatoryFeature::getChromosome, RegulatoryFeature::getStart,
+                RegulatoryFeature::getEnd);
+    }
+
+    private boolean[] getRegulatoryRegionOverlaps(IntervalIndex<RegulatoryFeature> regulatoryFeatureIndex, Region region,
+                                                  boolean includeMotifs) {
+        // 0: overlaps any regulatory region type
+        // 1: overlaps transcription factor binding site
+        boolean[] overlapsRegulatoryRegion = {false, false};
+        for (int id : regulatoryFeatureIndex.queryIds(region.getChromosome(), region.getStart(), region.getEnd())) {
+            overlapsRegulatoryRegion[0] = true;
+            String regulatoryRegionType = regulatoryFeatureIndex.get(id).getFeatureType();
+            if (TF_BINDING_SITE.equals(regulatoryRegionType)
+                    || (includeMotifs && TF_BINDING_SITE_MOTIF.equals(regulatoryRegionType))) {
+                overlapsRegulatoryRegion[1] = true;
+                break;
+            }
+        }
+        return overlapsRegulatoryRegion;
+    }
+
+    /**
+     * Regions checked by getRegulatoryRegionOverlaps(Variant): breakends are checked at the exact position of both
+     * breakends, insertions include the preceding nucleotide.
+     */
+    private List<Region> variantToRegulatoryRegionList(Variant variant) {
+        if (VariantType.SNV.equals(variant.getType())) {
+            return Collections.singletonList(new Region(variant.getChromosome(), variant.getStart(), variant.getStart()));
+        } else if (VariantType.INDEL.equals(variant.getType()) && StringUtils.isBlank(variant.getReference())) {
+            return Collections.singletonList(new Region(variant.getChromosome(), variant.getStart() - 1, variant.getEnd()));
+        } else if (!VariantType.BREAKEND.equals(variant.getType())) {
+            return Collections.singletonList(new Region(variant.getChromosome(), variant.getStart(), variant.getEnd()));
+        } else {
+            List<Region> regionList = new ArrayList<>(2);
+            int position = Math.max(1, variant.getStart());
+            regionList.add(new Region(variant.getChromosome(), position, position));
+            if (variant.getSv() != null && variant.getSv().getBreakend() != null
+                    && variant.getSv().getBreakend().getMate() != null) {
+                int matePosition = Math.max(1, variant.getSv().getBreakend().getMate().getPosition());
+                regionList.add(new Region(variant.getSv().getBreakend().getMate().getChromosome(), matePosition, matePosition));
+            }
+            return regionList;
+        }
+    }
+
+    /**
+     * Sorts regions and merges those overlapping or adjacent to keep the batch query as small as possible.
+     */
+    private List<Region> mergeRegions(List<Region> regionList) {
+        List<Region> sortedRegionList = new ArrayList<>(regionList);
+        sortedRegionList.sort(Comparator.comparing(Region::getChromosome).thenComparingInt(Region::getStart));
+        List<Region> mergedRegionList = new ArrayList<>(sortedRegionList.size());
+        Region current = null;
+        for (Region region : sortedRegionList) {
+            if (current != null && current.getChromosome().equals(region.getChromosome())
+                    && region.getStart() <= current.getEnd() + 1) {
+                current.setEnd(Math.max(current.getEnd(), region.getEnd()));
+            } else {
+                current = new Region(region.getChromosome(), region.getStart(), region.getEnd());
+                mergedRegionList.add(current);
+            }
+        }
+        return mergedRegionList;
+    }
+
     private boolean[] getRegulatoryRegionOverlaps(Variant variant) throws QueryException, IllegalAccessException {
         // 0: overlaps any regulatory region type
         // 1: overlaps transcription factor binding site
@@ -1262,21 +1422,39 @@ public class VariantAnnotationCalculator {
         if (regulatoryAnnotation) {
             overlapsRegulatoryRegion = getRegulatoryRegionOverlaps(variant);
         }
-        ConsequenceTypeCalculator consequenceTypeCalculator = getConsequenceTypeCalculator(variant);
+        return getConsequenceTypeList(variant, geneList, overlapsRegulatoryRegion, null,
+                new GenomicSequenceBatch(genomeManager), queryOptions);
+    }
+
+    /**
+     * @param proteinAnnotationBatch if not null, non-synonymous consequence types are added to it to get their protein
+     *                               annotation later in batch; if null it is fetched right away
+     * @param genomicSequenceBatch genomic sequence windows shared by the variants of the batch
+     */
+    private List<ConsequenceType> getConsequenceTypeList(Variant variant, List<Gene> geneList,
+                                                         boolean[] overlapsRegulatoryRegion,
+                                                         ProteinAnnotationBatch proteinAnnotationBatch,
+                                                         GenomicSequenceBatch genomicSequenceBatch, QueryOptions queryOptions)
+            throws QueryException, IllegalAccessException {
+        ConsequenceTypeCalculator consequenceTypeCalculator = getConsequenceTypeCalculator(variant, genomicSequenceBatch);
         List<ConsequenceType> consequenceTypeList = consequenceTypeCalculator.run(variant, geneList,
                 overlapsRegulatoryRegion, queryOptions);
         if (variant.getType() == VariantType.SNV
                 || Variant.inferType(variant.getReference(), variant.getAlternate()) == VariantType.SNV) {
             for (ConsequenceType consequenceType : consequenceTypeList) {
                 if (nonSynonymous(consequenceType, variant.getChromosome().equals("MT"))) {
-                    consequenceType.setProteinVariantAnnotation(getProteinAnnotation(variant, consequenceType));
+                    if (proteinAnnotationBatch != null && consequenceType.getProteinVariantAnnotation() != null) {
+                        proteinAnnotationBatch.add(variant, consequenceType);
+                    } else {
+                        consequenceType.setProteinVariantAnnotation(getProteinAnnotation(variant, consequenceType));
+                    }
                 }
             }
         }
         return consequenceTypeList;
     }
 
-    private List<Region> variantListToRegionList(List<Variant> variantList) {
+    private List<Region> variantListToRegionList(List<Variant> variantList, AnnotationOptions annotationOptions) {
 //        return variantList.stream().map((variant) -> variantToRegion(variant)).collect(Collectors.toList());
 
         // In great majority of cases returned region list size will equal variant list; this will happen except when
@@ -1284,13 +1462,16 @@ public class VariantAnnotationCalculator {
         List<Region> regionList = new ArrayList<>(variantList.size());
 
         for (Variant variant : variantList) {
-            regionList.addAll(variantToRegionList(variant));
+            regionList.addAll(variantToRegionList(variant, annotationOptions));
         }
 
         return regionList;
     }
 
-    private List<Region> variantToRegionList(Variant variant) {
+    private List<Region> variantToRegionList(Variant variant, AnnotationOptions annotationOptions) {
+        boolean imprecise = annotationOptions.isImprecise();
+        int svExtraPadding = annotationOptions.getSvExtraPadding();
+        int cnvExtraPadding = annotationOptions.getCnvExtraPadding();
         // Variant type checked in expected order of frequency of occurrence to minimize number of checks
         // SNV
         if (VariantType.SNV.equals(variant.getType())) {
@@ -1311,10 +1492,10 @@ public class VariantAnnotationCalculator {
         // BREAKEND
         } else if (VariantType.BREAKEND.equals(variant.getType())) {
             List<Region> regionList = new ArrayList<>(2);
-            regionList.add(startBreakpointToRegion(variant));
+            regionList.add(startBreakpointToRegion(variant, annotationOptions));
             Variant breakendMate = VariantBuilder.getMateBreakend(variant);
             if (breakendMate != null) {
-                regionList.add(startBreakpointToRegion(breakendMate));
+                regionList.add(startBreakpointToRegion(breakendMate, annotationOptions));
             }
             return regionList;
         // Short deletions and symbolic variants (no BREAKENDS expected althought not checked either)
@@ -1332,7 +1513,10 @@ public class VariantAnnotationCalculator {
         }
     }
 
-    private List<Region> breakpointsToRegionList(Variant variant) {
+    private List<Region> breakpointsToRegionList(Variant variant, AnnotationOptions annotationOptions) {
+        boolean imprecise = annotationOptions.isImprecise();
+        int svExtraPadding = annotationOptions.getSvExtraPadding();
+        int cnvExtraPadding = annotationOptions.getCnvExtraPadding();
         List<Region> regionList = new ArrayList<>();
 
         switch (variant.getType()) {
@@ -1351,10 +1535,10 @@ public class VariantAnnotationCalculator {
                 }
                 break;
             case BREAKEND:
-                regionList.add(startBreakpointToRegion(variant));
+                regionList.add(startBreakpointToRegion(variant, annotationOptions));
                 Variant breakendMate = VariantBuilder.getMateBreakend(variant);
                 if (breakendMate != null) {
-                    regionList.add(startBreakpointToRegion(breakendMate));
+                    regionList.add(startBreakpointToRegion(breakendMate, annotationOptions));
                 }
                 break;
             default:
@@ -1378,8 +1562,9 @@ public class VariantAnnotationCalculator {
         return regionList;
     }
 
-    private Region startBreakpointToRegion(Variant variant) {
-        if (imprecise && variant.getSv() != null) {
+    private Region startBreakpointToRegion(Variant variant, AnnotationOptions annotationOptions) {
+        if (annotationOptions.isImprecise() && variant.getSv() != null) {
+            int svExtraPadding = annotationOptions.getSvExtraPadding();
             return new Region(variant.getChromosome(), variant.getSv().getCiStartLeft() != null
                     ? variant.getSv().getCiStartLeft() - svExtraPadding : variant.getStart(),
                     variant.getSv().getCiStartRight() != null
@@ -1415,10 +1600,6 @@ public class VariantAnnotationCalculator {
                                    List<VariantAnnotation> variantAnnotationList,
                                    Set<String> annotatorSet) throws InterruptedException, ExecutionException {
 
-            while (!variationFuture.isDone()) {
-                Thread.sleep(1);
-            }
-
             List<CellBaseDataResult<Variant>> variationCellBaseDataResults = variationFuture.get();
             if (variationCellBaseDataResults != null) {
                 for (int i = 0; i < variantAnnotationList.size(); i++) {
@@ -1444,52 +1625,51 @@ public class VariantAnnotationCalculator {
         }
     }
 
-    class FutureConservationAnnotator implements Callable<List<CellBaseDataResult>> {
+    class FutureConservationAnnotator implements Callable<List<CellBaseDataResult<Score>>> {
         private List<Variant> variantList;
 
         private QueryOptions queryOptions;
+        private AnnotationOptions annotationOptions;
 
-        FutureConservationAnnotator(List<Variant> variantList, QueryOptions queryOptions) {
+        FutureConservationAnnotator(List<Variant> variantList, QueryOptions queryOptions, AnnotationOptions annotationOptions) {
             this.variantList = variantList;
             this.queryOptions = queryOptions;
+            this.annotationOptions = annotationOptions;
         }
 
         @Override
-        public List<CellBaseDataResult> call() throws Exception {
+        public List<CellBaseDataResult<Score>> call() throws Exception {
             long startTime = System.currentTimeMillis();
 
-            List<CellBaseDataResult> cellBaseDataResultList = new ArrayList<>(variantList.size());
-
             logger.debug("Query conservation");
-            // Want to return only one CellBaseDataResult object per Variant
-            for (Variant variant : variantList) {
-
+            // All the regions of the batch are fetched at once, breakends have two regions
+            List<Region> regionList = new ArrayList<>(variantList.size());
+            int[] numRegions = new int[variantList.size()];
+            for (int i = 0; i < variantList.size(); i++) {
                 // Truncate region size of SVs to avoid server collapse
-                List<Region> regionList
-                        = variantToRegionList(variant)
-                        .stream()
-                        .map(region -> region.size() > 50
-                                ? (new Region(region.getChromosome(), region.getStart(), region.getStart() + 49))
-                                : region).collect(Collectors.toList());
-
-//                List<CellBaseDataResult> tmpCellBaseDataResultList = genomeManager
-//                        .getAllScoresByRegionList(regionList, queryOptions);
-
-                GenomeQuery query = new GenomeQuery();
-                query.setRegions(regionList);
-                List<CellBaseDataResult<GenomicScoreRegion<Float>>> tmpCellBaseDataResultList = genomeManager.getConservation(
-                        queryOptions, regionList);
-
-                // There may be more than one CellBaseDataResult per variant for breakends
-                // Reuse one of the CellBaseDataResult objects returned by the adaptor
-                CellBaseDataResult newCellBaseDataResult = tmpCellBaseDataResultList.get(0);
-                if (tmpCellBaseDataResultList.size() > 1) {
-                    // Reuse one of the CellBaseDataResult objects - new result is the set formed by the scores corresponding
-                    // to the two breakpoints
-                    newCellBaseDataResult.getResults().addAll(tmpCellBaseDataResultList.get(1).getResults());
+                for (Region region : variantToRegionList(variantList.get(i), annotationOptions)) {
+                    regionList.add(region.size() > 50
+                            ? new Region(region.getChromosome(), region.getStart(), region.getStart() + 49)
+                            : region);
+                    numRegions[i]++;
+                }
+            }
+            List<CellBaseDataResult<Score>> tmpCellBaseDataResultList = genomeManager.getConservationScores(queryOptions,
+                    regionList);
+
+            // Want to return only one CellBaseDataResult object per Variant
+            List<CellBaseDataResult<Score>> cellBaseDataResultList = new ArrayList<>(variantList.size());
+            int regionIndex = 0;
+            for (int i = 0; i < variantList.size(); i++) {
+                // Reuse one of the CellBaseDataResult objects returned by the adaptor - for breakends the new result is
+                // the set formed by the scores corresponding to the two breakpoints
+                CellBaseDataResult<Score> newCellBaseDataResult = tmpCellBaseDataResultList.get(regionIndex);
+                for (int j = 1; j < numRegions[i]; j++) {
+                    newCellBaseDataResult.getResults().addAll(tmpCellBaseDataResultList.get(regionIndex + j).getResults());
                     newCellBaseDataResult.setNumResults(newCellBaseDataResult.getResults().size());
                     newCellBaseDataResult.setNumMatches(newCellBaseDataResult.getResults().size());
                 }
+                regionIndex += numRegions[i];
                 cellBaseDataResultList.add(newCellBaseDataResult);
             }
 
@@ -1498,18 +1678,13 @@ public class VariantAnnotationCalculator {
             return cellBaseDataResultList;
         }
 
-        public void processResults(Future<List<CellBaseDataResult>> conservationFuture,
+        public void processResults(Future<List<CellBaseDataResult<Score>>> conservationFuture,
                                    List<VariantAnnotation> variantAnnotationList)
                 throws InterruptedException, ExecutionException {
-            while (!conservationFuture.isDone()) {
-                Thread.sleep(1);
-            }
-
-            List<CellBaseDataResult> conservationCellBaseDataResults = conservationFuture.get();
+            List<CellBaseDataResult<Score>> conservationCellBaseDataResults = conservationFuture.get();
             if (conservationCellBaseDataResults != null) {
                 for (int i = 0; i < variantAnnotationList.size(); i++) {
-                    variantAnnotationList.get(i)
-                            .setConservation((List<Score>) conservationCellBaseDataResults.get(i).getResults());
+                    variantAnnotationList.get(i).setConservation(conservationCellBaseDataResults.get(i).getResults());
                 }
             }
         }
@@ -1543,10 +1718,6 @@ public class VariantAnnotationCalculator {
                                    List<VariantAnnotation> variantAnnotationList)
                 throws InterruptedException, ExecutionException {
 
-            while (!variantFunctionalScoreFuture.isDone()) {
-                Thread.sleep(1);
-            }
-
             List<CellBaseDataResult<Score>> variantFunctionalScoreCellBaseDataResults = variantFunctionalScoreFuture.get();
             if (variantFunctionalScoreCellBaseDataResults != null) {
                 for (int i = 0; i < variantAnnotationList.size(); i++) {
@@ -1590,10 +1761,6 @@ public class VariantAnnotationCalculator {
                                    List<VariantAnnotation> variantAnnotationList)
                 throws InterruptedException, ExecutionException {
 //            try {
-            while (!clinicalFuture.isDone()) {
-                Thread.sleep(1);
-            }
-
             List<CellBaseDataResult<Variant>> clinicalCellBaseDataResults = clinicalFuture.get();
             if (clinicalCellBaseDataResults != null) {
                 for (int i = 0; i < variantAnnotationList.size(); i++) {
@@ -1701,9 +1868,11 @@ public class VariantAnnotationCalculator {
     class FutureRepeatsAnnotator implements Callable<List<CellBaseDataResult<Repeat>>> {
         private List<Variant> variantList;
         private QueryOptions queryOptions;
+        private AnnotationOptions annotationOptions;
 
-        FutureRepeatsAnnotator(List<Variant> variantList) {
+        FutureRepeatsAnnotator(List<Variant> variantList, AnnotationOptions annotationOptions) {
             this.variantList = variantList;
+            this.annotationOptions = annotationOptions;
         }
 
         public List<CellBaseDataResult<Repeat>> call() throws Exception {
@@ -1714,13 +1883,8 @@ public class VariantAnnotationCalculator {
             logger.debug("Query repeats");
             // Want to return only one CellBaseDataResult object per Variant
             for (Variant variant : variantList) {
-                List<RepeatsQuery> queries = new ArrayList<>();
-                for (Region region :  breakpointsToRegionList(variant)) {
-                    RepeatsQuery query = new RepeatsQuery();
-                    query.setRegions(Collections.singletonList(region));
-                    queries.add(query);
-                }
-                List<CellBaseDataResult<Repeat>> tmpCellBaseDataResultList = repeatsManager.search(queries);
+                List<CellBaseDataResult<Repeat>> tmpCellBaseDataResultList = repeatsManager.getByRegions(
+                        breakpointsToRegionList(variant, annotationOptions));
 
                 // There may be more than one CellBaseDataResult per variant for non SNV variants since there will be
                 // two breakpoints
@@ -1749,10 +1913,6 @@ public class VariantAnnotationCalculator {
                                    List<VariantAnnotation> variantAnnotationResults)
                 throws InterruptedException, ExecutionException {
 //            try {
-            while (!repeatsFuture.isDone()) {
-                Thread.sleep(1);
-            }
-
             List<CellBaseDataResult<Repeat>> cellBaseDataResultList = repeatsFuture.get();
             if (cellBaseDataResultList != null) {
                 for (int i = 0; i < variantAnnotationResults.size(); i++) {
@@ -1769,10 +1929,12 @@ public class VariantAnnotationCalculator {
     class FutureCytobandAnnotator implements Callable<List<CellBaseDataResult<Cytoband>>> {
         private List<Variant> variantList;
         private QueryOptions queryOptions;
+        private AnnotationOptions annotationOptions;
 
-        FutureCytobandAnnotator(List<Variant> variantList, QueryOptions queryOptions) {
+        FutureCytobandAnnotator(List<Variant> variantList, QueryOptions queryOptions, AnnotationOptions annotationOptions) {
             this.variantList = variantList;
             this.queryOptions = queryOptions;
+            this.annotationOptions = annotationOptions;
         }
 
         @Override
@@ -1783,7 +1945,8 @@ public class VariantAnnotationCalculator {
             logger.debug("Query cytoband");
             // Want to return only one CellBaseDataResult object per Variant
             for (Variant variant : variantList) {
-                List<CellBaseDataResult<Cytoband>> tmpCellBaseDataResultList = genomeManager.getCytobands(breakpointsToRegionList(variant));
+                List<CellBaseDataResult<Cytoband>> tmpCellBaseDataResultList = genomeManager.getCytobands(breakpointsToRegionList(variant,
+                        annotationOptions));
 
                 // There may be more than one CellBaseDataResult per variant for non SNV variants since there will be
                 // two breakpoints
@@ -1809,10 +1972,6 @@ public class VariantAnnotationCalculator {
         public void processResults(Future<List<CellBaseDataResult<Cytoband>>> cytobandFuture,
                                    List<VariantAnnotation> variantAnnotationList)
                 throws InterruptedException, ExecutionException {
-            while (!cytobandFuture.isDone()) {
-                Thread.sleep(1);
-            }
-
             List<CellBaseDataResult<Cytoband>> cellBaseDataResultList = cytobandFuture.get();
             if (cellBaseDataResultList != null) {
                 if (cellBaseDataResultList.isEmpty()) {
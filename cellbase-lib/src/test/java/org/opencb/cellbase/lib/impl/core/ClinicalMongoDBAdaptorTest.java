@@ -31,6 +31,7 @@ import org.opencb.biodata.models.variant.avro.SampleEntry;
 import org.opencb.cellbase.core.api.core.ClinicalDBAdaptor;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.GenericMongoDBAdaptorTest;
+import org.opencb.cellbase.lib.managers.GenomeManager;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 
@@ -527,6 +528,47 @@ public class ClinicalMongoDBAdaptorTest extends GenericMongoDBAdaptorTest {
 
     }
 
+    @Test
+    public void batchQueryTest() throws Exception {
+
+        // Load test data
+        clearDB(GRCH37_DBNAME);
+        Path path = Paths.get(getClass()
+                .getResource("/clinicalMongoDBAdaptor/nativeGet/clinical_variants.full.test.json.gz").toURI());
+        loadRunner.load(path, "clinical_variants");
+
+        ClinicalMongoDBAdaptor clinicalDBAdaptor = dbAdaptorFactory.getClinicalDBAdaptor("hsapiens", "GRCh37");
+        List<Gene> geneList = loadGeneList();
+        QueryOptions queryOptions = new QueryOptions(ClinicalDBAdaptor.QueryParams.CHECK_AMINO_ACID_CHANGE.key(), true);
+
+        // Protein coding variants matched by amino acid change, genomic matches, a missing variant and a repeated one
+        List<Variant> variants = Arrays.asList(new Variant("19:45411034:G:A"),
+                new Variant("2:170361068:G:C"),
+                new Variant("1:227071449:G:A"),
+                new Variant("1:1:T:A"),
+                new Variant("2:170361030:-:T"),
+                new Variant("19:45411034:G:A"),
+                new Variant("1:10363911:G:C"));
+        List<CellBaseDataResult<Variant>> batchResults = clinicalDBAdaptor.getByVariant(variants, geneList, queryOptions);
+
+        // Expected results are those of the per-variant queries
+        GenomeManager genomeManager = cellBaseManagerFactory.getGenomeManager("hsapiens", "GRCh37");
+        assertEquals(variants.size(), batchResults.size());
+        for (int i = 0; i < variants.size(); i++) {
+            CellBaseDataResult<Variant> expected = clinicalDBAdaptor.getClinicalVariant(variants.get(i), genomeManager,
+                    geneList, queryOptions);
+            assertEquals(variants.get(i).toString(), batchResults.get(i).getId());
+            assertEquals(expected.getNumResults(), batchResults.get(i).getNumResults());
+            assertEquals(expected.getNumMatches(), batchResults.get(i).getNumMatches());
+            for (int j = 0; j < expected.getNumResults(); j++) {
+                assertEquals(expected.getResults().get(j).toString(), batchResults.get(i).getResults().get(j).toString());
+            }
+        }
+        assertTrue(containsAccession(batchResults.get(1), "COSM4624460"));
+        assertEquals(0, batchResults.get(3).getNumResults());
+        assertEquals(0, batchResults.get(6).getNumResults());
+    }
+
     private List<Gene> loadGeneList() throws URISyntaxException, IOException {
         ObjectMapper jsonObjectMapper = new ObjectMapper();
         jsonObjectMapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
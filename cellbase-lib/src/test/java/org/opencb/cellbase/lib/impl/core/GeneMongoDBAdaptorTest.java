@@ -16,13 +16,19 @@
 
 package org.opencb.cellbase.lib.impl.core;
 
+import com.mongodb.client.MongoDatabase;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.hamcrest.CoreMatchers;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.opencb.biodata.models.variant.avro.Constraint;
 import org.opencb.biodata.models.core.Gene;
+import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.avro.Expression;
 import org.opencb.biodata.models.variant.avro.ExpressionCall;
+import org.opencb.cellbase.core.api.core.CellBaseCoreDBAdaptor;
 import org.opencb.cellbase.core.api.queries.GeneQuery;
 import org.opencb.cellbase.core.api.queries.LogicalList;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
@@ -36,6 +42,10 @@ import java.util.stream.Collectors;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Created by fjlopez on 08/10/15.
@@ -163,5 +173,142 @@ public class GeneMongoDBAdaptorTest extends GenericMongoDBAdaptorTest {
         assertEquals(1, cellBaseDataResult.getNumResults());
     }
 
+    /**
+     * Pages through all the genes with skip and with cursors, counting the documents MongoDB examines with the profiler.
+     */
+    @Test
+    public void testCursor() throws Exception {
+        int pageSize = 2;
+        List<String> skipIds = new ArrayList<>();
+        long skipDocsExamined = countDocsExamined(geneDBAdaptor, "gene", () -> {
+            int skip = 0;
+            CellBaseDataResult<Gene> cellBaseDataResult;
+            do {
+                GeneQuery geneQuery = new GeneQuery();
+                geneQuery.setIncludes(Arrays.asList("id", "name"));
+                geneQuery.setLimit(pageSize);
+                geneQuery.setSkip(skip);
+                cellBaseDataResult = geneDBAdaptor.query(geneQuery);
+                cellBaseDataResult.getResults().forEach(gene -> skipIds.add(gene.getId()));
+                skip += pageSize;
+            } while (cellBaseDataResult.getNumResults() == pageSize);
+        });
+
+        List<String> cursorIds = new ArrayList<>();
+        long cursorDocsExamined = countDocsExamined(geneDBAdaptor, "gene", () -> {
+            String cursor = MongoDBAdaptor.CURSOR_START;
+            while (cursor != null) {
+                GeneQuery geneQuery = new GeneQuery();
+                geneQuery.setIncludes(Arrays.asList("id", "name"));
+                geneQuery.setLimit(pageSize);
+                geneQuery.setCursor(cursor);
+                CellBaseDataResult<Gene> cellBaseDataResult = geneDBAdaptor.query(geneQuery);
+                cellBaseDataResult.getResults().forEach(gene -> cursorIds.add(gene.getId()));
+                cursor = cellBaseDataResult.getAttributes() != null
+                        ? cellBaseDataResult.getAttributes().getString(CellBaseCoreDBAdaptor.CURSOR)
+                        : null;
+            }
+        });
+
+        logger.debug("Documents examined, skip: {}, cursor: {}", skipDocsExamined, cursorDocsExamined);
+        assertEquals(25, cursorIds.size());
+        assertEquals(new HashSet<>(skipIds), new HashSet<>(cursorIds));
+        assertTrue(cursorDocsExamined < skipDocsExamined);
+    }
+
+    @Test
+    public void testCursorEncoding() {
+        ObjectId objectId = new ObjectId();
+        assertEquals(objectId, MongoDBAdaptor.decodeCursor(MongoDBAdaptor.encodeCursor(objectId)));
+        assertEquals("1:1000:A:C", MongoDBAdaptor.decodeCursor(MongoDBAdaptor.encodeCursor("1:1000:A:C")));
+        assertEquals(42L, MongoDBAdaptor.decodeCursor(MongoDBAdaptor.encodeCursor(42)));
+        assertThrows(IllegalArgumentException.class, () -> MongoDBAdaptor.decodeCursor("not a cursor"));
+    }
+
+    @Test
+    public void testCursorIndexed() {
+        Set<String> cursorFields = Collections.singleton("annotation.consequenceTypes.geneName");
+        assertTrue(MongoDBAdaptor.isCursorIndexed(new BsonDocument(), cursorFields));
+        assertTrue(MongoDBAdaptor.isCursorIndexed(BsonDocument.parse("{'annotation.consequenceTypes.geneName': 'BRCA2'}"),
+                cursorFields));
+        assertTrue(MongoDBAdaptor.isCursorIndexed(BsonDocument.parse("{$and: [{'annotation.consequenceTypes.geneName': "
+                + "{$in: ['BRCA1', 'BRCA2']}}, {type: 'SNV'}]}"), cursorFields));
+        assertTrue(MongoDBAdaptor.isCursorIndexed(BsonDocument.parse("{$or: [{'annotation.consequenceTypes.geneName': 'BRCA1'}, "
+                + "{'annotation.consequenceTypes.geneName': 'BRCA2'}]}"), cursorFields));
 
-}
\ No newline at end of file
+        assertFalse(MongoDBAdaptor.isCursorIndexed(BsonDocument.parse("{type: 'SNV'}"), cursorFields));
+        assertFalse(MongoDBAdaptor.isCursorIndexed(BsonDocument.parse("{'annotation.consequenceTypes.geneName': {$gt: 'B'}}"),
+                cursorFields));
+        assertFalse(MongoDBAdaptor.isCursorIndexed(BsonDocument.parse("{$or: [{'annotation.consequenceTypes.geneName': 'BRCA1'}, "
+                + "{type: 'SNV'}]}"), cursorFields));
+    }
+
+    /**
+     * Queries of several regions, merged into chunk id queries, return the same genes as the queries of each region.
+     */
+    @Test
+    public void testQueryRegions() throws Exception {
+        List<String> regions = Arrays.asList("1:11869-14409", "1:10000-70000", "1:65000-65100", "1:300000-366052",
+                "1:11869-14409", "1:200000000-200001000", "2:1-100000", "1:69091");
+        for (Integer limit : Arrays.asList(null, 1)) {
+            List<GeneQuery> geneQueries = new ArrayList<>();
+            for (String region : regions) {
+                GeneQuery geneQuery = new GeneQuery();
+                geneQuery.setRegions(Collections.singletonList(Region.parseRegion(region)));
+                geneQuery.setIncludes(Arrays.asList("id", "name"));
+                geneQuery.setLimit(limit);
+                geneQueries.add(geneQuery);
+            }
+
+            List<CellBaseDataResult<Gene>> results = geneDBAdaptor.query(geneQueries);
+
+            assertEquals(regions.size(), results.size());
+            for (int i = 0; i < regions.size(); i++) {
+                Set<String> expectedIds = getIds(geneDBAdaptor.query(geneQueries.get(i)).getResults());
+                Set<String> ids = getIds(results.get(i).getResults());
+                assertEquals(results.get(i).getNumResults(), results.get(i).getResults().size());
+                if (limit == null) {
+                    assertEquals(expectedIds, ids, regions.get(i));
+                } else {
+                    // Any of the genes of the region
+                    assertEquals(expectedIds.size(), ids.size(), regions.get(i));
+                    Set<String> allIds = getIds(geneDBAdaptor.query(GeneQuery.GeneQueryBuilder.aGeneQuery()
+                            .withRegions(geneQueries.get(i).getRegions()).build()).getResults());
+                    assertTrue(allIds.containsAll(ids), regions.get(i));
+                }
+                // Only the included fields, the position fields read to split the results are removed
+                results.get(i).getResults().forEach(gene -> assertNull(gene.getChromosome()));
+            }
+        }
+    }
+
+    private static Set<String> getIds(List<Gene> genes) {
+        return genes.stream().map(Gene::getId).collect(Collectors.toSet());
+    }
+
+    /**
+     * @param dbAdaptor adaptor of the database queried
+     * @param collection collection queried
+     * @param queries queries to profile
+     * @return documents examined by MongoDB for the queries of the collection
+     */
+    static long countDocsExamined(MongoDBAdaptor dbAdaptor, String collection, Runnable queries) {
+        MongoDatabase database = dbAdaptor.mongoDataStore.getMongoClient().getDatabase(GRCH37_DBNAME);
+        database.runCommand(new Document("profile", 0));
+        database.getCollection("system.profile").drop();
+        database.runCommand(new Document("profile", 2));
+        try {
+            queries.run();
+        } finally {
+            database.runCommand(new Document("profile", 0));
+        }
+        long docsExamined = 0;
+        for (Document operation : database.getCollection("system.profile").find(new Document("ns", GRCH37_DBNAME + "." + collection))) {
+            Object operationDocsExamined = operation.get("docsExamined");
+            if (operationDocsExamined != null) {
+                docsExamined += ((Number) operationDocsExamined).longValue();
+            }
+        }
+        return docsExamined;
+    }
+}
@@ -24,6 +24,7 @@ import org.opencb.biodata.models.core.Chromosome;
 import org.opencb.biodata.models.core.GenomeSequenceFeature;
 import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.avro.Cytoband;
+import org.opencb.biodata.models.variant.avro.Score;
 import org.opencb.cellbase.core.api.queries.GenomeQuery;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.GenericMongoDBAdaptorTest;
@@ -37,6 +38,7 @@ import java.util.Collections;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 /**
  * Created by fjlopez on 18/04/16.
@@ -58,6 +60,9 @@ public class GenomeMongoDBAdaptorTest extends GenericMongoDBAdaptorTest {
         path = Paths.get(getClass()
                 .getResource("/genome/genome_sequence.test.json.gz").toURI());
         loadRunner.load(path, "genome_sequence");
+        path = Paths.get(getClass()
+                .getResource("/conservation/gerp/conservation_19.json.gz").toURI());
+        loadRunner.load(path, "conservation");
         dbAdaptor = dbAdaptorFactory.getGenomeDBAdaptor("hsapiens", "GRCh37");
     }
 
@@ -135,4 +140,29 @@ public class GenomeMongoDBAdaptorTest extends GenericMongoDBAdaptorTest {
         }
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetConservationScores() {
+        // First region spans the two documents of the test file
+        List<Region> regions = Arrays.asList(new Region("19:338590-338610"), new Region("19:338650-338650"),
+                new Region("19:1000-1010"));
+        List<CellBaseDataResult<Score>> cellBaseDataResultList = dbAdaptor.getConservationScores(regions, new QueryOptions());
+        List<CellBaseDataResult> expected = dbAdaptor.getAllScoresByRegionList(regions, new QueryOptions());
+
+        assertEquals(3, cellBaseDataResultList.size());
+        assertEquals(21, cellBaseDataResultList.get(0).getNumResults());
+        assertEquals(1, cellBaseDataResultList.get(1).getNumResults());
+        assertEquals(0, cellBaseDataResultList.get(2).getNumResults());
+        assertNull(expected.get(2).getResults());
+        for (int i = 0; i < 2; i++) {
+            assertEquals(regions.get(i).toString(), cellBaseDataResultList.get(i).getId());
+            List<Score> scores = cellBaseDataResultList.get(i).getResults();
+            for (int j = 0; j < scores.size(); j++) {
+                Score expectedScore = (Score) expected.get(i).getResults().get(j);
+                assertEquals("gerp", scores.get(j).getSource());
+                assertEquals(expectedScore.getSource(), scores.get(j).getSource());
+                assertEquals(expectedScore.getScore(), scores.get(j).getScore());
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.core;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.models.variant.avro.Repeat;
+import org.opencb.cellbase.core.api.queries.RepeatsQuery;
+import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.cellbase.lib.GenericMongoDBAdaptorTest;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class RepeatsMongoDBAdaptorTest extends GenericMongoDBAdaptorTest {
+
+    private RepeatsMongoDBAdaptor dbAdaptor;
+
+    public RepeatsMongoDBAdaptorTest() throws Exception {
+        super();
+    }
+
+    @BeforeAll
+    public void setUp() throws Exception {
+        clearDB(GRCH37_DBNAME);
+        Path path = Paths.get(getClass().getResource("/variant-annotation/repeats.json.gz").toURI());
+        loadRunner.load(path, "repeats");
+        dbAdaptor = dbAdaptorFactory.getRepeatsDBAdaptor("hsapiens", "GRCh37");
+    }
+
+    @Test
+    public void testLoadIndex() throws Exception {
+        RepeatsIndex repeatsIndex = dbAdaptor.loadIndex(Long.MAX_VALUE);
+        assertNotNull(repeatsIndex);
+        assertEquals(15, repeatsIndex.size());
+        assertTrue(repeatsIndex.getResidentSize() > 0);
+
+        // Same repeats as the database
+        List<Region> regions = Arrays.asList(new Region("1", 10001, 10001), new Region("1", 19845, 20000),
+                new Region("1", 1822099, 1900000), new Region("15", 102446000, 102447000), new Region("X", 1, 100),
+                new Region("MT", 1, 16569));
+        for (Region region : regions) {
+            RepeatsQuery query = new RepeatsQuery();
+            query.setRegions(Collections.singletonList(region));
+            CellBaseDataResult<Repeat> expected = dbAdaptor.query(query);
+            assertEquals(new HashSet<>(expected.getResults()), new HashSet<>(repeatsIndex.query(region)), region.toString());
+        }
+    }
+
+    @Test
+    public void testLoadIndexMaxMemory() throws Exception {
+        assertNull(dbAdaptor.loadIndex(1024));
+    }
+}
@@ -30,6 +30,9 @@ import org.opencb.biodata.models.variant.avro.*;
 import org.opencb.cellbase.core.api.queries.QueryException;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.GenericMongoDBAdaptorTest;
+import org.opencb.cellbase.lib.managers.ProteinManager;
+import org.opencb.cellbase.lib.variant.annotation.AnnotationCache;
+import org.opencb.cellbase.lib.variant.annotation.AnnotationOptions;
 import org.opencb.cellbase.lib.variant.annotation.VariantAnnotationCalculator;
 import org.opencb.commons.datastore.core.QueryOptions;
 
@@ -37,6 +40,9 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -115,6 +121,44 @@ public class VariantAnnotationCalculatorTest extends GenericMongoDBAdaptorTest {
 
     }
 
+    /**
+     * The protein annotation of a batch, REVEL scores included, is the same as the one of each protein variant on its own.
+     */
+    @Test
+    public void testBatchProteinVariantAnnotation() throws Exception {
+        ProteinManager proteinManager = cellBaseManagerFactory.getProteinManager("hsapiens", "GRCh37");
+        Variant brca2Variant = new Variant("13", 32893271, "A", "G");
+        List<Variant> variants = Arrays.asList(brca2Variant, brca2Variant, brca2Variant, new Variant("13", 32893271, "A", "T"),
+                brca2Variant, new Variant("1", 1000, "A", "C"));
+        List<String> transcriptIds = Arrays.asList("ENST00000544455", "ENST00000380152", "ENST00000544455", "ENST00000380152",
+                "ENST00000380152", "ENST00000000001");
+        List<ProteinVariantAnnotation> proteinVariants = Arrays.asList(createProteinVariant(42, "TYR", "CYS"),
+                createProteinVariant(42, "TYR", "CYS"), createProteinVariant(42, "TYR", "CYS"), createProteinVariant(42, "TYR", "PHE"),
+                createProteinVariant(42, "TYR", "STOP"), createProteinVariant(231, "ASP", "GLU"));
+
+        List<CellBaseDataResult<ProteinVariantAnnotation>> results = proteinManager.getVariantAnnotation(variants, transcriptIds,
+                proteinVariants, new QueryOptions());
+        assertEquals(variants.size(), results.size());
+        for (int i = 0; i < variants.size(); i++) {
+            ProteinVariantAnnotation proteinVariant = proteinVariants.get(i);
+            CellBaseDataResult<ProteinVariantAnnotation> expected = proteinManager.getVariantAnnotation(variants.get(i),
+                    transcriptIds.get(i), proteinVariant.getPosition(), proteinVariant.getReference(), proteinVariant.getAlternate(),
+                    new QueryOptions());
+            assertEquals(expected.first(), results.get(i).first(), transcriptIds.get(i) + " " + proteinVariant.getAlternate());
+        }
+        for (int i = 0; i < 3; i++) {
+            assertTrue(results.get(i).first().getSubstitutionScores().contains(new Score(0.987, "revel", "")));
+        }
+    }
+
+    private ProteinVariantAnnotation createProteinVariant(int position, String reference, String alternate) {
+        ProteinVariantAnnotation proteinVariantAnnotation = new ProteinVariantAnnotation();
+        proteinVariantAnnotation.setPosition(position);
+        proteinVariantAnnotation.setReference(reference);
+        proteinVariantAnnotation.setAlternate(alternate);
+        return proteinVariantAnnotation;
+    }
+
     @Test
     public void testExonAnnotation() throws Exception {
         QueryOptions queryOptions = new QueryOptions("useCache", false);
@@ -687,21 +731,81 @@ public class VariantAnnotationCalculatorTest extends GenericMongoDBAdaptorTest {
 
 //    }
 
+    @Test
+    public void testConcurrentAnnotation() throws Exception {
+        List<String> variants = Arrays.asList("19:33167329:AC:TT", "MT:1438:A:G", "13:20763612:C:T", "18:30913143:T:-",
+                "1:816505:-:AGAGAGAG", "22:18512237:-:AGTT");
+        // Requests with different options run at the same time on the same calculator
+        List<QueryOptions> optionsList = Arrays.asList(
+                new QueryOptions("normalize", true).append("skipDecompose", false),
+                new QueryOptions("normalize", true).append("skipDecompose", true).append("ignorePhase", true),
+                new QueryOptions("exclude", "hgvs,conservation").append("imprecise", false));
+
+        List<String> expected = new ArrayList<>();
+        for (QueryOptions queryOptions : optionsList) {
+            expected.add(annotateToJson(variants, queryOptions));
+        }
+
+        int numRequests = 48;
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < numRequests; i++) {
+                QueryOptions queryOptions = optionsList.get(i % optionsList.size());
+                futures.add(executorService.submit(() -> annotateToJson(variants, queryOptions)));
+            }
+            for (int i = 0; i < numRequests; i++) {
+                assertEquals(expected.get(i % optionsList.size()), futures.get(i).get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testAnnotationCache() throws Exception {
+        List<String> variants = Arrays.asList("19:33167329:AC:TT", "MT:1438:A:G", "13:20763612:C:T", "18:30913143:T:-",
+                "1:816505:-:AGAGAGAG", "22:18512237:-:AGTT");
+        QueryOptions queryOptions = new QueryOptions("normalize", true);
+        String expected = annotateToJson(variants, queryOptions);
+
+        AnnotationCache annotationCache = new AnnotationCache(100, 3600);
+        AnnotationOptions annotationOptions = AnnotationOptions.parse(queryOptions);
+        // First run fills the cache, second one is served from it
+        for (int i = 0; i < 2; i++) {
+            List<Variant> variantList = variants.stream().map(Variant::new).collect(Collectors.toList());
+            List<CellBaseDataResult<VariantAnnotation>> results = variantAnnotationCalculator
+                    .getAnnotationByVariantList(variantList, annotationOptions, annotationCache);
+            assertEquals(expected, jsonObjectMapper.writeValueAsString(results.stream().map(CellBaseDataResult::getResults)
+                    .collect(Collectors.toList())));
+        }
+        // Every annotation cached by the first run is used by the second one
+        long misses = (long) annotationCache.getStats().get("misses");
+        assertTrue(misses >= variants.size());
+        assertEquals(misses, (long) annotationCache.getStats().get("hits"));
+        assertEquals(misses, annotationCache.size());
+    }
+
+    private String annotateToJson(List<String> variants, QueryOptions queryOptions) throws Exception {
+        List<Variant> variantList = variants.stream().map(Variant::new).collect(Collectors.toList());
+        List<CellBaseDataResult<VariantAnnotation>> results = variantAnnotationCalculator.getAnnotationByVariantList(variantList,
+                new QueryOptions(queryOptions));
+        List<List<VariantAnnotation>> annotations = results.stream().map(CellBaseDataResult::getResults)
+                .collect(Collectors.toList());
+        return jsonObjectMapper.writeValueAsString(annotations);
+    }
+
     @Test
     public void testCellBaseDataResultGroupingDecomposedMNVs() throws Exception {
 
         QueryOptions queryOptions = (new QueryOptions("normalize", true));
         queryOptions.put("skipDecompose", false);
 
-        // Creating here a local VariantAnnotationCalculator since this test requires setting normalizer decompose
-        // option to true which probably breaks some other tests.
-        VariantAnnotationCalculator localScopeCalculator = new VariantAnnotationCalculator("hsapiens",
-                "GRCh37", cellBaseManagerFactory);
-
         // One MNV and one singleton SNV. Two CellBaseDataResults must be returned: first with two VariantAnnotation objects
         // and id corresponding to the original MNV call. Second with just one VariantAnnotation object.
+        // Decompose option only applies to this call, the calculator is shared with the rest of tests.
         List<CellBaseDataResult<VariantAnnotation>> cellBaseDataResultList =
-                localScopeCalculator
+                variantAnnotationCalculator
                         .getAnnotationByVariantList(Arrays.asList(new Variant("19:33167329:AC:TT"),
                                 new Variant("MT:1438:A:G")),
                                 queryOptions);
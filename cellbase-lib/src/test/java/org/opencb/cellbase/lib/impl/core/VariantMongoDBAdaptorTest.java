@@ -16,6 +16,7 @@
 
 package org.opencb.cellbase.lib.impl.core;
 
+import com.mongodb.client.MongoCollection;
 import org.bson.Document;
 import org.hamcrest.CoreMatchers;
 import org.junit.jupiter.api.Disabled;
@@ -24,24 +25,37 @@ import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.VariantBuilder;
 import org.opencb.biodata.models.variant.avro.PopulationFrequency;
 import org.opencb.biodata.models.variant.avro.SampleEntry;
+import org.opencb.biodata.models.variant.avro.Score;
 import org.opencb.biodata.models.variant.avro.VariantType;
+import org.opencb.cellbase.core.api.core.CellBaseCoreDBAdaptor;
 import org.opencb.cellbase.core.api.core.VariantDBAdaptor;
+import org.opencb.cellbase.core.api.queries.LogicalList;
+import org.opencb.cellbase.core.api.queries.VariantQuery;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.GenericMongoDBAdaptorTest;
+import org.opencb.cellbase.lib.indexer.IndexManager;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
 /**
@@ -300,4 +314,231 @@ public class VariantMongoDBAdaptorTest extends GenericMongoDBAdaptorTest {
         assertEquals(VariantType.INDEL, variantCellBaseDataResult.getResults().get(0).getType());
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetByVariantBatch() {
+        VariantMongoDBAdaptor variationDBAdaptor = dbAdaptorFactory.getVariationDBAdaptor("hsapiens", "GRCh37");
+        List<Variant> variants = Arrays.asList(Variant.parseVariant("10:118187036:T:C"),
+                Variant.parseVariant("22:17438072:G:-"),
+                Variant.parseVariant("1:62165739:A:T"),
+                Variant.parseVariant("1:1:A:C"),
+                Variant.parseVariant("1:62165740:T:G"),
+                Variant.parseVariant("17:64224271:C:T"));
+        QueryOptions queryOptions = new QueryOptions("include",
+                "id,annotation.populationFrequencies,annotation.additionalAttributes.dgvSpecificAttributes");
+
+        String include = queryOptions.getString("include");
+        List<CellBaseDataResult> oneByOneResults = variationDBAdaptor.getByVariant(variants, queryOptions);
+        List<CellBaseDataResult<Variant>> batchResults = variationDBAdaptor.getByVariantBatch(variants, queryOptions);
+        // The options of the caller are not modified
+        assertEquals(include, queryOptions.getString("include"));
+
+        assertEquals(variants.size(), batchResults.size());
+        for (int i = 0; i < variants.size(); i++) {
+            assertEquals(oneByOneResults.get(i).getNumResults(), batchResults.get(i).getNumResults());
+            assertEquals(oneByOneResults.get(i).getNumMatches(), batchResults.get(i).getNumMatches());
+            for (int j = 0; j < batchResults.get(i).getNumResults(); j++) {
+                Variant expected = (Variant) oneByOneResults.get(i).getResults().get(j);
+                Variant actual = batchResults.get(i).getResults().get(j);
+                assertEquals(expected.getId(), actual.getId());
+                assertEquals(expected.getAnnotation().getPopulationFrequencies(),
+                        actual.getAnnotation().getPopulationFrequencies());
+            }
+        }
+        assertEquals(0, batchResults.get(3).getNumResults());
+        assertEquals("rs191078597", batchResults.get(0).getResults().get(0).getId());
+        assertEquals("rs76677441", batchResults.get(1).getResults().get(0).getId());
+
+        // The limit applies to the matches of each variant, not to the documents of a chunk
+        QueryOptions limitOptions = new QueryOptions(queryOptions);
+        limitOptions.put(QueryOptions.LIMIT, 1);
+        batchResults = variationDBAdaptor.getByVariantBatch(variants, limitOptions);
+        for (int i = 0; i < variants.size(); i++) {
+            assertEquals(Math.min(1, oneByOneResults.get(i).getNumResults()), batchResults.get(i).getNumResults());
+        }
+    }
+
+    /**
+     * Batched CADD lookups of a dense exome-like batch, every SNV of 40 exons of 100bp as found in exome VCFs, must return
+     * the same scores as one lookup per variant.
+     */
+    @Test
+    public void testGetFunctionalScoreVariantBatch() throws Exception {
+        List<int[]> exons = new ArrayList<>();
+        for (int exon = 0; exon < 40; exon++) {
+            // Exons every 2750bp so that some of the documents span two chunks
+            int exonStart = 69000 + exon * 2750;
+            exons.add(new int[]{exonStart, exonStart + 99});
+        }
+        List<Variant> variants = loadCaddScores("1", exons, 10);
+        // Indels get no CADD score
+        variants.add(new Variant("1:69005:A:-"));
+
+        VariantMongoDBAdaptor variationDBAdaptor = dbAdaptorFactory.getVariationDBAdaptor("hsapiens", "GRCh37");
+        List<CellBaseDataResult<Score>> oneByOneResults = getFunctionalScoresOneByOne(variationDBAdaptor, variants);
+        List<CellBaseDataResult<Score>> batchResults = variationDBAdaptor.getFunctionalScoreVariant(variants, new QueryOptions());
+
+        assertEquals(variants.size(), batchResults.size());
+        for (int i = 0; i < variants.size(); i++) {
+            assertEquals(oneByOneResults.get(i).getResults(), batchResults.get(i).getResults());
+        }
+        assertEquals(2, batchResults.get(0).getNumResults());
+        assertEquals(0, batchResults.get(variants.size() - 1).getNumResults());
+    }
+
+    /**
+     * Documents spanning two chunks queried in different CADD_CHUNKS_PER_QUERY pages are returned once.
+     */
+    @Test
+    public void testGetFunctionalScoreVariantBatchPages() throws Exception {
+        // One document across each chunk boundary, so that the chunks of the batch cross a page boundary
+        List<int[]> ranges = new ArrayList<>();
+        for (int chunk = 70; chunk < 70 + VariantMongoDBAdaptor.CADD_CHUNKS_PER_QUERY + 30; chunk++) {
+            ranges.add(new int[]{chunk * 1000 - 20, chunk * 1000 + 19});
+        }
+        List<Variant> variants = loadCaddScores("2", ranges, 0);
+
+        VariantMongoDBAdaptor variationDBAdaptor = dbAdaptorFactory.getVariationDBAdaptor("hsapiens", "GRCh37");
+        List<CellBaseDataResult<Score>> oneByOneResults = getFunctionalScoresOneByOne(variationDBAdaptor, variants);
+        List<CellBaseDataResult<Score>> batchResults = variationDBAdaptor.getFunctionalScoreVariant(variants, new QueryOptions());
+
+        assertEquals(variants.size(), batchResults.size());
+        for (int i = 0; i < variants.size(); i++) {
+            // One raw and one scaled score
+            assertEquals(2, batchResults.get(i).getNumResults(), variants.get(i).toString());
+            assertEquals(oneByOneResults.get(i).getResults(), batchResults.get(i).getResults(), variants.get(i).toString());
+        }
+    }
+
+    /**
+     * Pages through the variants of a gene with skip and with cursors, counting the documents MongoDB examines with the
+     * profiler. Cursors are only used once the (gene, _id) index exists.
+     */
+    @Test
+    public void testCursorByGene() throws Exception {
+        String gene = "CURSOR1";
+        MongoCollection<Document> collection = dbAdaptorFactory.getVariationDBAdaptor("hsapiens", "GRCh37").mongoDataStore
+                .getMongoClient().getDatabase(GRCH37_DBNAME).getCollection("variation");
+        Document template = collection.find().first();
+        template.remove("_id");
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            Document document = new Document(template);
+            document.put("id", "cursor" + i);
+            document.put("start", 1000 + i);
+            document.put("end", 1000 + i);
+            Document annotation = new Document((Document) template.get("annotation"));
+            annotation.put("consequenceTypes", Collections.singletonList(new Document("geneName", i % 3 == 0 ? gene : "CURSOR2")));
+            document.put("annotation", annotation);
+            documents.add(document);
+        }
+        collection.insertMany(documents);
+
+        // Without the index the matches would be sorted by _id in memory for every page, skip is used instead
+        VariantMongoDBAdaptor variationDBAdaptor = dbAdaptorFactory.getVariationDBAdaptor("hsapiens", "GRCh37");
+        ObjectMap attributes = queryGenePage(variationDBAdaptor, gene, null, MongoDBAdaptor.CURSOR_START).getAttributes();
+        assertTrue(attributes == null || !attributes.containsKey(CellBaseCoreDBAdaptor.CURSOR));
+
+        new IndexManager(cellBaseConfiguration).createMongoDBIndexes("variation", "hsapiens", "grch37", true);
+        // New factory, indexes are read again
+        VariantMongoDBAdaptor indexedDBAdaptor = new MongoDBAdaptorFactory(cellBaseConfiguration)
+                .getVariationDBAdaptor("hsapiens", "GRCh37");
+
+        int pageSize = 10;
+        List<String> skipIds = new ArrayList<>();
+        long skipDocsExamined = GeneMongoDBAdaptorTest.countDocsExamined(indexedDBAdaptor, "variation", () -> {
+            int skip = 0;
+            CellBaseDataResult<Variant> result;
+            do {
+                result = queryGenePage(indexedDBAdaptor, gene, skip, null);
+                result.getResults().forEach(variant -> skipIds.add(variant.getId()));
+                skip += pageSize;
+            } while (result.getNumResults() == pageSize);
+        });
+
+        List<String> cursorIds = new ArrayList<>();
+        long cursorDocsExamined = GeneMongoDBAdaptorTest.countDocsExamined(indexedDBAdaptor, "variation", () -> {
+            String cursor = MongoDBAdaptor.CURSOR_START;
+            while (cursor != null) {
+                CellBaseDataResult<Variant> result = queryGenePage(indexedDBAdaptor, gene, null, cursor);
+                result.getResults().forEach(variant -> cursorIds.add(variant.getId()));
+                cursor = result.getAttributes() != null ? result.getAttributes().getString(CellBaseCoreDBAdaptor.CURSOR) : null;
+            }
+        });
+
+        logger.debug("Documents examined, skip: {}, cursor: {}", skipDocsExamined, cursorDocsExamined);
+        assertEquals(100, cursorIds.size());
+        assertEquals(new HashSet<>(skipIds), new HashSet<>(cursorIds));
+        // Pages are read from the index in _id order and stop at the limit, so each match is examined once instead of
+        // sorting all the matches for every page. Some slack is left for the evaluation of the candidate plans
+        assertTrue(cursorDocsExamined <= cursorIds.size() + pageSize, "Documents examined: " + cursorDocsExamined);
+    }
+
+    private CellBaseDataResult<Variant> queryGenePage(VariantMongoDBAdaptor variationDBAdaptor, String gene, Integer skip,
+                                                      String cursor) {
+        VariantQuery query = new VariantQuery();
+        query.setGenes(new LogicalList<>(Collections.singletonList(gene)));
+        query.setLimit(10);
+        query.setSkip(skip);
+        query.setCursor(cursor);
+        return variationDBAdaptor.query(query);
+    }
+
+    /**
+     * Loads a raw and a scaled CADD document of random scores for each range.
+     *
+     * @param chromosome chromosome of the documents
+     * @param ranges start and end of the SNVs of each document
+     * @param flank positions covered by each document before and after its SNVs
+     * @return an SNV of every position within the ranges
+     * @throws Exception if the documents can not be loaded
+     */
+    private List<Variant> loadCaddScores(String chromosome, List<int[]> ranges, int flank) throws Exception {
+        String[] alternates = {"A", "C", "G", "T"};
+        Random random = new Random(42);
+        List<Variant> variants = new ArrayList<>();
+        Path caddPath = Files.createTempFile("cadd", ".json.gz");
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(caddPath))))) {
+            for (int[] range : ranges) {
+                int start = range[0] - flank;
+                int end = range[1] + flank;
+                List<Long> rawValues = new ArrayList<>();
+                List<Long> scaledValues = new ArrayList<>();
+                for (int position = start; position <= end; position++) {
+                    long raw = 0;
+                    long scaled = 0;
+                    for (int j = 0; j < 4; j++) {
+                        raw = (raw << 16) | (random.nextInt(2000) + 900);
+                        scaled = (scaled << 16) | random.nextInt(4000);
+                    }
+                    rawValues.add(raw);
+                    scaledValues.add(scaled);
+                    if (position >= range[0] && position <= range[1]) {
+                        variants.add(new Variant(chromosome, position, "N", alternates[random.nextInt(4)]));
+                    }
+                }
+                writer.println("{\"chromosome\":\"" + chromosome + "\",\"start\":" + start + ",\"end\":" + end
+                        + ",\"source\":\"cadd_raw\",\"values\":" + rawValues + "}");
+                writer.println("{\"chromosome\":\"" + chromosome + "\",\"start\":" + start + ",\"end\":" + end
+                        + ",\"source\":\"cadd_scaled\",\"values\":" + scaledValues + "}");
+            }
+        }
+        try {
+            loadRunner.load(caddPath, "cadd");
+        } finally {
+            Files.delete(caddPath);
+        }
+        return variants;
+    }
+
+    private List<CellBaseDataResult<Score>> getFunctionalScoresOneByOne(VariantMongoDBAdaptor variationDBAdaptor,
+                                                                        List<Variant> variants) {
+        List<CellBaseDataResult<Score>> results = new ArrayList<>(variants.size());
+        for (Variant variant : variants) {
+            results.add(variant.getType() == VariantType.SNV
+                    ? variationDBAdaptor.getFunctionalScoreVariant(variant, new QueryOptions())
+                    : new CellBaseDataResult<>(variant.toString(), 0, Collections.emptyList(), 0));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.managers;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.opencb.cellbase.core.config.CellBaseConfiguration;
+import org.opencb.cellbase.core.exception.CellbaseException;
+import org.opencb.cellbase.lib.impl.core.MongoDBAdaptorFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CellBaseManagerFactoryTest {
+
+    private static final String SPECIES = "hsapiens";
+    private static final String ASSEMBLY = "GRCh37";
+
+    private static CellBaseConfiguration cellBaseConfiguration;
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @BeforeAll
+    public static void setUp() throws Exception {
+        cellBaseConfiguration = CellBaseConfiguration.load(
+                CellBaseManagerFactoryTest.class.getClassLoader().getResourceAsStream("configuration.test.yaml"),
+                CellBaseConfiguration.ConfigurationFileFormat.YAML);
+    }
+
+    @Test
+    public void testSharedManagers() throws Exception {
+        CellBaseManagerFactory cellBaseManagerFactory = new CellBaseManagerFactory(cellBaseConfiguration);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<VariantManager>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executorService.submit(() -> cellBaseManagerFactory.getVariantManager(SPECIES, ASSEMBLY)));
+            }
+            VariantManager variantManager = cellBaseManagerFactory.getVariantManager(SPECIES, ASSEMBLY);
+            for (Future<VariantManager> future : futures) {
+                assertSame(variantManager, future.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        // All the managers use the DB adaptors of the factory
+        assertSame(cellBaseManagerFactory.getDBAdaptorFactory().getGeneDBAdaptor(SPECIES, ASSEMBLY),
+                cellBaseManagerFactory.getGeneManager(SPECIES, ASSEMBLY).getDBAdaptor());
+        assertSame(cellBaseManagerFactory.getDBAdaptorFactory().getGenomeDBAdaptor(SPECIES, ASSEMBLY),
+                cellBaseManagerFactory.getGenomeManager(SPECIES, ASSEMBLY).getDBAdaptor());
+        assertSame(cellBaseManagerFactory.getDBAdaptorFactory().getVariationDBAdaptor(SPECIES, ASSEMBLY),
+                cellBaseManagerFactory.getVariantManager(SPECIES, ASSEMBLY).getDBAdaptor());
+
+        assertThrows(CellbaseException.class, () -> cellBaseManagerFactory.getGeneManager("unknown", ASSEMBLY));
+    }
+
+    @Test
+    public void testSameInstances() throws Exception {
+        CellBaseManagerFactory cellBaseManagerFactory = new CellBaseManagerFactory(cellBaseConfiguration);
+        List<Object> managers = buildManagers(cellBaseManagerFactory);
+        List<Object> sameManagers = buildManagers(cellBaseManagerFactory);
+        for (int i = 0; i < managers.size(); i++) {
+            assertSame(managers.get(i), sameManagers.get(i));
+        }
+        assertSame(cellBaseManagerFactory.getGenomeManager(SPECIES, ASSEMBLY), cellBaseManagerFactory.getGenomeManager(SPECIES));
+        assertSame(cellBaseManagerFactory.getVariantAnnotationCalculator(SPECIES, ASSEMBLY),
+                cellBaseManagerFactory.getVariantAnnotationCalculator(SPECIES, ASSEMBLY));
+        assertSame(cellBaseManagerFactory.getAnnotationScheduler(), cellBaseManagerFactory.getAnnotationScheduler());
+
+        MongoDBAdaptorFactory dbAdaptorFactory = cellBaseManagerFactory.getDBAdaptorFactory();
+        assertSame(dbAdaptorFactory.getGeneDBAdaptor(SPECIES, ASSEMBLY), dbAdaptorFactory.getGeneDBAdaptor(SPECIES, ASSEMBLY));
+        assertSame(dbAdaptorFactory.getGenomeDBAdaptor(SPECIES, ASSEMBLY), dbAdaptorFactory.getGenomeDBAdaptor(SPECIES, ASSEMBLY));
+        assertSame(dbAdaptorFactory.getVariationDBAdaptor(SPECIES, ASSEMBLY),
+                dbAdaptorFactory.getVariationDBAdaptor(SPECIES, ASSEMBLY));
+        assertSame(dbAdaptorFactory.getProteinDBAdaptor(SPECIES, ASSEMBLY), dbAdaptorFactory.getProteinDBAdaptor(SPECIES, ASSEMBLY));
+        assertSame(dbAdaptorFactory.getRepeatsDBAdaptor(SPECIES, ASSEMBLY), dbAdaptorFactory.getRepeatsDBAdaptor(SPECIES, ASSEMBLY));
+        assertSame(dbAdaptorFactory.getXRefDBAdaptor(SPECIES, ASSEMBLY), dbAdaptorFactory.getXRefDBAdaptor(SPECIES, ASSEMBLY));
+
+        // Managers of another factory are not shared
+        assertNotSame(cellBaseManagerFactory.getGeneManager(SPECIES, ASSEMBLY),
+                new CellBaseManagerFactory(cellBaseConfiguration).getGeneManager(SPECIES, ASSEMBLY));
+    }
+
+    /**
+     * Compares building the full manager set with a factory per manager, as managers used to do, with one shared factory.
+     */
+    @Test
+    @Tag("benchmark")
+    public void benchmarkStartup() throws Exception {
+        // Warm up class loading so it is not accounted to the first run
+        buildManagers(null);
+
+        long usedBefore = usedMemory();
+        long start = System.nanoTime();
+        List<Object> perManagerFactory = buildManagers(null);
+        long perManagerFactoryTime = System.nanoTime() - start;
+        long perManagerFactoryHeap = usedMemory() - usedBefore;
+
+        usedBefore = usedMemory();
+        start = System.nanoTime();
+        List<Object> sharedFactory = buildManagers(new CellBaseManagerFactory(cellBaseConfiguration));
+        long sharedFactoryTime = System.nanoTime() - start;
+        long sharedFactoryHeap = usedMemory() - usedBefore;
+
+        assertEquals(perManagerFactory.size(), sharedFactory.size());
+        logger.info("Factory per manager: {} ms, {} KB", perManagerFactoryTime / 1000000, perManagerFactoryHeap / 1024);
+        logger.info("Shared factory: {} ms, {} KB", sharedFactoryTime / 1000000, sharedFactoryHeap / 1024);
+    }
+
+    /**
+     * @param sharedFactory factory of all the managers, null to build every manager with a new factory
+     * @return one manager of each type
+     * @throws CellbaseException if the managers can not be built
+     */
+    private List<Object> buildManagers(CellBaseManagerFactory sharedFactory) throws CellbaseException {
+        List<Object> managers = new ArrayList<>();
+        managers.add(getFactory(sharedFactory).getGeneManager(SPECIES, ASSEMBLY));
+        managers.add(getFactory(sharedFactory).getTranscriptManager(SPECIES, ASSEMBLY));
+        managers.add(getFactory(sharedFactory).getVariantManager(SPECIES, ASSEMBLY));
+        managers.add(getFactory(sharedFactory).getProteinManager(SPECIES, ASSEMBLY));
+        managers.add(getFactory(sharedFactory).getGenomeManager(SPECIES, ASSEMBLY));
+        managers.add(getFactory(sharedFactory).getClinicalManager(SPECIES, ASSEMBLY));
+        managers.add(getFactory(sharedFactory).getRegulatoryManager(SPECIES, ASSEMBLY));
+        managers.add(getFactory(sharedFactory).getXrefManager(SPECIES, ASSEMBLY));
+        managers.add(getFactory(sharedFactory).getRepeatsManager(SPECIES, ASSEMBLY));
+        managers.add(getFactory(sharedFactory).getTFManager(SPECIES, ASSEMBLY));
+        managers.add(getFactory(sharedFactory).getOntologyManager(SPECIES, ASSEMBLY));
+        managers.add(getFactory(sharedFactory).getMetaManager());
+        managers.add(getFactory(sharedFactory).getFileManager());
+        return managers;
+    }
+
+    private CellBaseManagerFactory getFactory(CellBaseManagerFactory sharedFactory) {
+        return sharedFactory != null ? sharedFactory : new CellBaseManagerFactory(cellBaseConfiguration);
+    }
+
+    private long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.managers;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.cellbase.core.common.PackedSequenceFile;
+import org.opencb.cellbase.lib.GenericMongoDBAdaptorTest;
+import org.opencb.commons.datastore.core.QueryOptions;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class GenomeManagerTest extends GenericMongoDBAdaptorTest {
+
+    // Packed sequence of chromosome 1, whose first 1999 nt are N in the database
+    private static final String PACKED_SEQUENCE = "ACGTACGTAC";
+
+    public GenomeManagerTest() throws IOException {
+        super();
+    }
+
+    @BeforeAll
+    public void setUp() throws Exception {
+        clearDB(GRCH37_DBNAME);
+        Path path = Paths.get(getClass().getResource("/genome/genome_sequence.test.json.gz").toURI());
+        loadRunner.load(path, "genome_sequence");
+    }
+
+    @Test
+    public void testPackedSequenceFile() throws Exception {
+        Path genomeSequenceDir = Files.createTempDirectory("genome_sequence");
+        writePackedSequenceFile(genomeSequenceDir);
+        cellBaseConfiguration.getAnnotation().setGenomeSequenceDir(genomeSequenceDir.toString());
+        GenomeManager genomeManager = new GenomeManager("hsapiens", "GRCh37", cellBaseManagerFactory);
+
+        assertEquals(PACKED_SEQUENCE, getSequence(genomeManager, new Region("1", 1, 10)));
+        // Chromosomes not in the packed file are read from the database
+        assertEquals("GAGAAAAAACC", getSequence(genomeManager, new Region("17", 63971994, 63972004)));
+    }
+
+    @Test
+    public void testMissingPackedSequenceFile() throws Exception {
+        Path genomeSequenceDir = Files.createTempDirectory("genome_sequence");
+        cellBaseConfiguration.getAnnotation().setGenomeSequenceDir(genomeSequenceDir.toString());
+        GenomeManager genomeManager = new GenomeManager("hsapiens", "GRCh37", cellBaseManagerFactory);
+
+        assertEquals(StringUtils.repeat("N", 10), getSequence(genomeManager, new Region("1", 1, 10)));
+        assertEquals("GAGAAAAAACC", getSequence(genomeManager, new Region("17", 63971994, 63972004)));
+
+        // The missing file is not looked for again until the retry interval elapses
+        writePackedSequenceFile(genomeSequenceDir);
+        assertEquals(StringUtils.repeat("N", 10), getSequence(genomeManager, new Region("1", 1, 10)));
+    }
+
+    private void writePackedSequenceFile(Path genomeSequenceDir) throws IOException {
+        Path path = genomeSequenceDir.resolve("homo_sapiens_grch37").resolve(PackedSequenceFile.FILE_NAME);
+        Files.createDirectories(path.getParent());
+        try (PackedSequenceFile.Writer writer = new PackedSequenceFile.Writer(path)) {
+            writer.write("1", "chromosome", "GRCh37", PACKED_SEQUENCE);
+        }
+    }
+
+    private String getSequence(GenomeManager genomeManager, Region region) {
+        return genomeManager.getSequence(region, QueryOptions.empty()).getResults().get(0).getSequence();
+    }
+}
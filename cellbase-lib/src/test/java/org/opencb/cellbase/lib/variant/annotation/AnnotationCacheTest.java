@@ -0,0 +1,202 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantBuilder;
+import org.opencb.biodata.models.variant.avro.*;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.commons.datastore.core.QueryOptions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnnotationCacheTest {
+
+    private static final AnnotationOptions ALL = AnnotationOptions.DEFAULT;
+    private static final AnnotationOptions CONSEQUENCE_TYPE = AnnotationOptions.parse(new QueryOptions("include", "consequenceType"));
+
+    @Test
+    public void testByteIdenticalAnnotations() throws Exception {
+        ObjectMapper jsonObjectMapper = new ObjectMapper();
+        jsonObjectMapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
+        jsonObjectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+        AnnotationCache annotationCache = new AnnotationCache(10, 3600);
+        Variant variant = new Variant("19:45411941:T:C");
+        VariantAnnotation variantAnnotation = createAnnotation(variant);
+        byte[] expected = jsonObjectMapper.writeValueAsBytes(variantAnnotation);
+
+        annotationCache.put(variant, ALL, variantAnnotation);
+        // Changes made by the caller after caching are not seen
+        variantAnnotation.getConsequenceTypes().get(0).setGeneName("modified");
+
+        VariantAnnotation cached = annotationCache.get(new Variant("19:45411941:T:C"), ALL);
+        assertNotSame(variantAnnotation, cached);
+        assertArrayEquals(expected, jsonObjectMapper.writeValueAsBytes(cached));
+
+        // Nor changes made to the returned copies
+        cached.getPopulationFrequencies().clear();
+        assertArrayEquals(expected, jsonObjectMapper.writeValueAsBytes(annotationCache.get(variant, ALL)));
+    }
+
+    @Test
+    public void testKeyedByOptions() {
+        AnnotationCache annotationCache = new AnnotationCache(10, 3600);
+        Variant variant = new Variant("19:45411941:T:C");
+        annotationCache.put(variant, ALL, createAnnotation(variant));
+
+        assertNotNull(annotationCache.get(variant, AnnotationOptions.parse(new QueryOptions())));
+        assertNull(annotationCache.get(variant, CONSEQUENCE_TYPE));
+        assertNull(annotationCache.get(variant, AnnotationOptions.parse(new QueryOptions("ignorePhase", true))));
+        assertNull(annotationCache.get(new Variant("19:45411941:T:G"), ALL));
+
+        ObjectMap stats = annotationCache.getStats();
+        assertEquals(1L, stats.get("hits"));
+        assertEquals(3L, stats.get("misses"));
+    }
+
+    @Test
+    public void testSizeBound() {
+        AnnotationCache annotationCache = new AnnotationCache(3, 3600);
+        for (int i = 1; i <= 3; i++) {
+            Variant variant = new Variant("1:" + i + ":A:C");
+            annotationCache.put(variant, ALL, createAnnotation(variant));
+        }
+        // 1:1 is used, 1:2 becomes the least recently used one
+        assertNotNull(annotationCache.get(new Variant("1:1:A:C"), ALL));
+        Variant variant = new Variant("1:4:A:C");
+        annotationCache.put(variant, ALL, createAnnotation(variant));
+
+        assertEquals(3, annotationCache.size());
+        assertNull(annotationCache.get(new Variant("1:2:A:C"), ALL));
+        assertNotNull(annotationCache.get(new Variant("1:1:A:C"), ALL));
+        assertEquals(1L, annotationCache.getStats().get("evictions"));
+    }
+
+    @Test
+    public void testTtl() {
+        AtomicLong clock = new AtomicLong();
+        AnnotationCache annotationCache = new AnnotationCache(10, TimeUnit.SECONDS.toNanos(60), clock::get);
+        Variant variant = new Variant("19:45411941:T:C");
+        annotationCache.put(variant, ALL, createAnnotation(variant));
+
+        clock.set(TimeUnit.SECONDS.toNanos(60));
+        assertNotNull(annotationCache.get(variant, ALL));
+        clock.set(TimeUnit.SECONDS.toNanos(61));
+        assertNull(annotationCache.get(variant, ALL));
+        assertEquals(0, annotationCache.size());
+        assertEquals(1L, annotationCache.getStats().get("expirations"));
+    }
+
+    @Test
+    public void testInvalidate() {
+        AnnotationCache annotationCache = new AnnotationCache(10, 3600);
+        Variant variant = new Variant("19:45411941:T:C");
+        annotationCache.put(variant, ALL, createAnnotation(variant));
+        annotationCache.put(variant, CONSEQUENCE_TYPE, createAnnotation(variant));
+
+        // Only annotations calculated with the clinical annotator are removed
+        assertEquals(1, annotationCache.invalidate("traitAssociation"));
+        assertNull(annotationCache.get(variant, ALL));
+        assertNotNull(annotationCache.get(variant, CONSEQUENCE_TYPE));
+
+        annotationCache.invalidateAll();
+        assertEquals(0, annotationCache.size());
+        assertEquals(2L, annotationCache.getStats().get("invalidations"));
+    }
+
+    @Test
+    public void testUpdateDataReleases() {
+        AnnotationCache annotationCache = new AnnotationCache(10, 3600);
+        Variant variant = new Variant("19:45411941:T:C");
+        Map<String, String> releases = new HashMap<>();
+        releases.put("clinical_variants", "clinvar:2020.10:20201001");
+        releases.put("gene", "ensembl:104:20210501");
+
+        // The first releases are only recorded
+        annotationCache.put(variant, ALL, createAnnotation(variant));
+        annotationCache.put(variant, CONSEQUENCE_TYPE, createAnnotation(variant));
+        assertEquals(0, annotationCache.updateDataReleases(releases));
+        assertEquals(0, annotationCache.updateDataReleases(releases));
+
+        // A new clinical release only removes the annotations of the clinical annotators
+        releases.put("clinical_variants", "clinvar:2021.04:20210401");
+        assertEquals(1, annotationCache.updateDataReleases(releases));
+        assertNull(annotationCache.get(variant, ALL));
+        assertNotNull(annotationCache.get(variant, CONSEQUENCE_TYPE));
+
+        // Any annotation may use the genes
+        releases.put("gene", "ensembl:105:20211001");
+        assertEquals(1, annotationCache.updateDataReleases(releases));
+        assertEquals(0, annotationCache.size());
+        assertEquals(2L, annotationCache.getStats().get("invalidations"));
+    }
+
+    @Test
+    public void testIsCacheable() {
+        assertTrue(AnnotationCache.isCacheable(new Variant("19:45411941:T:C")));
+
+        Variant annotated = new Variant("19:45411941:T:C");
+        annotated.setAnnotation(new VariantAnnotation());
+        assertFalse(AnnotationCache.isCacheable(annotated));
+
+        VariantBuilder variantBuilder = new VariantBuilder("19", 45411941, 45411941, "T", "C");
+        variantBuilder.setSampleDataKeys(Arrays.asList("PS", "GT"));
+        variantBuilder.setSamples(Collections.singletonList(new SampleEntry(null, null, Arrays.asList("45411941", "0|1"))));
+        assertFalse(AnnotationCache.isCacheable(variantBuilder.build()));
+
+        assertFalse(AnnotationCache.isCacheable(new Variant("1:1000<1010<1020-2000<2010<2020:A:<DEL>")));
+    }
+
+    private VariantAnnotation createAnnotation(Variant variant) {
+        VariantAnnotation variantAnnotation = new VariantAnnotation();
+        variantAnnotation.setChromosome(variant.getChromosome());
+        variantAnnotation.setStart(variant.getStart());
+        variantAnnotation.setReference(variant.getReference());
+        variantAnnotation.setAlternate(variant.getAlternate());
+        variantAnnotation.setId("rs429358");
+
+        ConsequenceType consequenceType = new ConsequenceType();
+        consequenceType.setGeneName("APOE");
+        consequenceType.setEnsemblGeneId("ENSG00000130203");
+        consequenceType.setSequenceOntologyTerms(new ArrayList<>(Collections.singletonList(
+                new SequenceOntologyTerm("SO:0001583", "missense_variant"))));
+        variantAnnotation.setConsequenceTypes(new ArrayList<>(Collections.singletonList(consequenceType)));
+
+        PopulationFrequency populationFrequency = new PopulationFrequency();
+        populationFrequency.setStudy("GNOMAD_GENOMES");
+        populationFrequency.setPopulation("ALL");
+        populationFrequency.setRefAllele(variant.getReference());
+        populationFrequency.setAltAllele(variant.getAlternate());
+        populationFrequency.setAltAlleleFreq(0.15f);
+        populationFrequency.setRefAlleleFreq(0.85f);
+        variantAnnotation.setPopulationFrequencies(new ArrayList<>(Collections.singletonList(populationFrequency)));
+        return variantAnnotation;
+    }
+}
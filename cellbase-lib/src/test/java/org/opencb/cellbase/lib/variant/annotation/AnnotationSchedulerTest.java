@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnnotationSchedulerTest {
+
+    @Test
+    public void testOrdering() throws Exception {
+        AnnotationScheduler scheduler = new AnnotationScheduler(1);
+        try {
+            List<Integer> runOrder = Collections.synchronizedList(new ArrayList<>());
+            List<CompletableFuture<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                int value = i;
+                futures.add(scheduler.submit("variation", () -> {
+                    runOrder.add(value);
+                    return value;
+                }));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(i, futures.get(i).get(10, TimeUnit.SECONDS).intValue());
+            }
+            // A single thread runs the tasks in the order they were submitted
+            for (int i = 0; i < runOrder.size(); i++) {
+                assertEquals(i, runOrder.get(i).intValue());
+            }
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testErrorPropagation() throws Exception {
+        AnnotationScheduler scheduler = new AnnotationScheduler(2);
+        try {
+            IllegalStateException error = new IllegalStateException("clinical failed");
+            CompletableFuture<Object> failed = scheduler.submit("clinical", () -> {
+                throw error;
+            });
+            CompletableFuture<String> succeeded = scheduler.submit("conservation", () -> "ok");
+
+            ExecutionException exception = assertThrows(ExecutionException.class, () -> failed.get(10, TimeUnit.SECONDS));
+            assertSame(error, exception.getCause());
+            // Other tasks are not affected
+            assertEquals("ok", succeeded.get(10, TimeUnit.SECONDS));
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testBoundedConcurrency() throws Exception {
+        int numThreads = 3;
+        AnnotationScheduler scheduler = new AnnotationScheduler(numThreads, 100);
+        try {
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+            List<CompletableFuture<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                futures.add(scheduler.submit("variation", () -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.sleep(10);
+                    running.decrementAndGet();
+                    return 0;
+                }));
+            }
+            for (CompletableFuture<Integer> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+
+            assertTrue(maxRunning.get() <= numThreads, "Up to " + numThreads + " tasks expected, " + maxRunning.get() + " found");
+            assertTrue(maxRunning.get() > 1);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testQueueFull() throws Exception {
+        AnnotationScheduler scheduler = new AnnotationScheduler(1, 1);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<String> blocking = scheduler.submit("variation", () -> {
+                release.await();
+                return Thread.currentThread().getName();
+            });
+            // Waits for the pool thread to take the first task so that the second one fills the queue
+            while (scheduler.getActiveCount() == 0) {
+                Thread.sleep(1);
+            }
+            CompletableFuture<String> queued = scheduler.submit("variation", () -> Thread.currentThread().getName());
+            assertEquals(1, scheduler.getQueueSize());
+
+            // Run by the submitting thread rather than queued
+            CompletableFuture<String> overflow = scheduler.submit("variation", () -> Thread.currentThread().getName());
+            assertTrue(overflow.isDone());
+            assertEquals(Thread.currentThread().getName(), overflow.get());
+
+            release.countDown();
+            assertTrue(blocking.get(10, TimeUnit.SECONDS).startsWith("annotation-"));
+            assertTrue(queued.get(10, TimeUnit.SECONDS).startsWith("annotation-"));
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testShutdown() {
+        AnnotationScheduler scheduler = new AnnotationScheduler(1);
+        scheduler.shutdown();
+        assertTrue(scheduler.isShutdown());
+
+        CompletableFuture<String> future = scheduler.submit("variation", () -> "ok");
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof RejectedExecutionException);
+    }
+}
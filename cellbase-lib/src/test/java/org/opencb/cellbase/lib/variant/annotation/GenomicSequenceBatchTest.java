@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.junit.jupiter.api.Test;
+import org.opencb.biodata.models.core.Region;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class GenomicSequenceBatchTest {
+
+    // Chromosome 1 of 2500 nt: ACGTACGT...
+    private static final int CHROMOSOME_LENGTH = 2500;
+
+    @Test
+    public void testNearbyVariants() {
+        List<Region> fetches = new ArrayList<>();
+        GenomicSequenceBatch genomicSequenceBatch = new GenomicSequenceBatch(countingFetcher(fetches));
+
+        // Codons of 50 neighbouring variants completed with the nucleotides after each of them
+        for (int start = 1100; start < 1600; start += 10) {
+            for (int position = start + 1; position <= start + 3; position++) {
+                assertEquals(getNucleotide(position), genomicSequenceBatch.getNucleotide("1", position));
+            }
+        }
+        assertEquals(1, fetches.size());
+        assertEquals(1001, fetches.get(0).getStart());
+        assertEquals(2000, fetches.get(0).getEnd());
+
+        // The next window is fetched once
+        assertEquals(getNucleotide(2001), genomicSequenceBatch.getNucleotide("1", 2001));
+        assertEquals(getNucleotide(1999), genomicSequenceBatch.getNucleotide("1", 1999));
+        assertEquals(getNucleotide(2002), genomicSequenceBatch.getNucleotide("1", 2002));
+        assertEquals(2, fetches.size());
+    }
+
+    @Test
+    public void testChromosomeEnd() {
+        List<Region> fetches = new ArrayList<>();
+        GenomicSequenceBatch genomicSequenceBatch = new GenomicSequenceBatch(countingFetcher(fetches));
+
+        // The last window is truncated by the chromosome end
+        assertEquals(getNucleotide(CHROMOSOME_LENGTH), genomicSequenceBatch.getNucleotide("1", CHROMOSOME_LENGTH));
+        assertEquals(getNucleotide(2001), genomicSequenceBatch.getNucleotide("1", 2001));
+        assertEquals(1, fetches.size());
+    }
+
+    private Function<Region, String> countingFetcher(List<Region> fetches) {
+        return region -> {
+            fetches.add(region);
+            if (region.getStart() > CHROMOSOME_LENGTH) {
+                return null;
+            }
+            StringBuilder sequence = new StringBuilder();
+            for (int position = region.getStart(); position <= Math.min(region.getEnd(), CHROMOSOME_LENGTH); position++) {
+                sequence.append(getNucleotide(position));
+            }
+            return sequence.toString();
+        };
+    }
+
+    private char getNucleotide(int position) {
+        return "ACGT".charAt((position - 1) % 4);
+    }
+}
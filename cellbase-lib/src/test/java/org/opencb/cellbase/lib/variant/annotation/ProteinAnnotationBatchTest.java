@@ -0,0 +1,39 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.junit.jupiter.api.Test;
+import org.opencb.biodata.models.variant.avro.ConsequenceType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ProteinAnnotationBatchTest {
+
+    @Test
+    public void testGetTranscriptId() {
+        ConsequenceType consequenceType = new ConsequenceType();
+        consequenceType.setTranscriptId("ENST00000382011.9");
+        assertEquals("ENST00000382011", ProteinAnnotationBatch.getTranscriptId(consequenceType));
+
+        consequenceType.setTranscriptId("ENST00000382011");
+        assertEquals("ENST00000382011", ProteinAnnotationBatch.getTranscriptId(consequenceType));
+
+        consequenceType.setTranscriptId(null);
+        assertNull(ProteinAnnotationBatch.getTranscriptId(consequenceType));
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.server.rest;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.StopWatch;
+import org.opencb.cellbase.core.config.CellBaseConfiguration;
+import org.opencb.cellbase.core.exception.CellbaseException;
+import org.opencb.cellbase.lib.managers.CellBaseManagerFactory;
+import org.opencb.cellbase.lib.monitor.Monitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletContext;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+
+/**
+ * Objects shared by all the REST resources of one web application: the configuration, the managers and the JSON mapper.
+ * They are built once, by CellBaseServerContextListener when the application is deployed or by the first request
+ * otherwise, and stored as an attribute of the servlet context.
+ */
+public class CellBaseServerContext {
+
+    public static final String ATTRIBUTE = CellBaseServerContext.class.getName();
+
+    private final CellBaseConfiguration configuration;
+    private final CellBaseManagerFactory managerFactory;
+    private final Monitor monitor;
+    private final ObjectMapper jsonObjectMapper;
+    private final ObjectWriter jsonObjectWriter;
+    private final String startDate;
+    private final StopWatch watch;
+    private final long initTime;
+
+    private static Logger logger = LoggerFactory.getLogger(CellBaseServerContext.class);
+
+    public CellBaseServerContext(CellBaseConfiguration configuration) {
+        long start = System.nanoTime();
+        this.configuration = configuration;
+
+        startDate = new SimpleDateFormat("yyyyMMdd_HHmmss").format(Calendar.getInstance().getTime());
+        watch = new StopWatch();
+        watch.start();
+
+        jsonObjectMapper = new ObjectMapper();
+        jsonObjectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        jsonObjectMapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
+        jsonObjectWriter = jsonObjectMapper.writer();
+
+        managerFactory = new CellBaseManagerFactory(configuration);
+        monitor = new Monitor(managerFactory.getMetaManager());
+        initTime = (System.nanoTime() - start) / 1000000;
+    }
+
+    public static CellBaseServerContext load(Path cellbaseHome) throws IOException {
+        logger.debug("CELLBASE_HOME set to: {}", cellbaseHome);
+        return new CellBaseServerContext(CellBaseConfiguration.load(cellbaseHome.resolve("conf").resolve("configuration.yml")));
+    }
+
+    /**
+     * Returns the context of the web application, building it if CellBaseServerContextListener has not done it yet.
+     * @param servletContext servlet context of the web application
+     * @return the context shared by all the resources
+     * @throws CellbaseException if no CELLBASE_HOME is found or the configuration cannot be read
+     */
+    public static CellBaseServerContext get(ServletContext servletContext) throws CellbaseException {
+        CellBaseServerContext context = (CellBaseServerContext) servletContext.getAttribute(ATTRIBUTE);
+        if (context == null) {
+            synchronized (CellBaseServerContext.class) {
+                context = (CellBaseServerContext) servletContext.getAttribute(ATTRIBUTE);
+                if (context == null) {
+                    try {
+                        context = load(getCellBaseHome(servletContext));
+                    } catch (IOException e) {
+                        throw new CellbaseException("Error reading CellBase configuration: " + e.getMessage());
+                    }
+                    logger.info("CellBase server context initialised in {} ms", context.getInitTime());
+                    servletContext.setAttribute(ATTRIBUTE, context);
+                }
+            }
+        }
+        return context;
+    }
+
+    private static Path getCellBaseHome(ServletContext servletContext) throws CellbaseException {
+        // We must load the configuration file from CELLBASE_HOME
+        String cellbaseHome = System.getenv("CELLBASE_HOME");
+        if (StringUtils.isEmpty(cellbaseHome)) {
+            // ENV variable isn't set, try the servlet context instead
+            if (StringUtils.isNotEmpty(servletContext.getInitParameter("CELLBASE_HOME"))) {
+                cellbaseHome = servletContext.getInitParameter("CELLBASE_HOME");
+            } else {
+                logger.error("No valid configuration directory provided!");
+                throw new CellbaseException("No CELLBASE_HOME found");
+            }
+        }
+        return Paths.get(cellbaseHome);
+    }
+
+    /**
+     * Releases the resources of the managers, called when the web application is undeployed.
+     */
+    public void close() {
+        managerFactory.close();
+    }
+
+    public CellBaseConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    public CellBaseManagerFactory getManagerFactory() {
+        return managerFactory;
+    }
+
+    public Monitor getMonitor() {
+        return monitor;
+    }
+
+    public ObjectMapper getJsonObjectMapper() {
+        return jsonObjectMapper;
+    }
+
+    public ObjectWriter getJsonObjectWriter() {
+        return jsonObjectWriter;
+    }
+
+    public String getStartDate() {
+        return startDate;
+    }
+
+    public StopWatch getWatch() {
+        return watch;
+    }
+
+    /**
+     * @return milliseconds spent building the managers, not including reading the configuration
+     */
+    public long getInitTime() {
+        return initTime;
+    }
+}
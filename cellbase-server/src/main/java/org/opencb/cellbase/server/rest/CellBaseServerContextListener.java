@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.server.rest;
+
+import org.opencb.cellbase.core.exception.CellbaseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Builds the CellBaseServerContext when the web application is deployed so the first request does not pay for it.
+ */
+public class CellBaseServerContextListener implements ServletContextListener {
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Override
+    public void contextInitialized(ServletContextEvent servletContextEvent) {
+        try {
+            CellBaseServerContext.get(servletContextEvent.getServletContext());
+        } catch (CellbaseException e) {
+            // Not fatal here, the first request will try again and report the error
+            logger.error("Error initialising CellBase server context: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent servletContextEvent) {
+        CellBaseServerContext context = (CellBaseServerContext) servletContextEvent.getServletContext()
+                .getAttribute(CellBaseServerContext.ATTRIBUTE);
+        servletContextEvent.getServletContext().removeAttribute(CellBaseServerContext.ATTRIBUTE);
+        if (context != null) {
+            context.close();
+        }
+    }
+}
@@ -16,9 +16,9 @@
 
 package org.opencb.cellbase.server.rest;
 
-import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.module.jsonSchema.JsonSchema;
@@ -40,7 +40,6 @@ import org.opencb.commons.datastore.core.Query;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
@@ -49,10 +48,9 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.core.*;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import java.io.IOException;
-import java.nio.file.Paths;
-import java.text.SimpleDateFormat;
+import java.io.OutputStream;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
 
 @Path("/{version}/{species}")
 @Produces("text/plain")
@@ -71,12 +69,11 @@ public class GenericRestWSServer implements IWSServer {
     protected static ObjectWriter jsonObjectWriter;
     protected String SERVICE_START_DATE;
     protected StopWatch WATCH;
-    protected AtomicBoolean initialized;
     protected long startTime;
     protected Logger logger;
 
     /**
-     * Loading properties file just one time to be more efficient. All methods
+     * Loaded just one time per application, see CellBaseServerContext. All methods
      * will check parameters so to avoid extra operations this config can load
      * versions and species
      */
@@ -87,6 +84,7 @@ public class GenericRestWSServer implements IWSServer {
     private static final String OK = "ok";
     // this webservice has no species, do not validate
     private static final String DONT_CHECK_SPECIES = "do not validate species";
+    private static final int STREAMING_BUFFER_SIZE = 8192;
 
     public GenericRestWSServer(@PathParam("version") String version, @Context UriInfo uriInfo, @Context HttpServletRequest hsr)
             throws VersionException, IOException, CellbaseException {
@@ -106,43 +104,18 @@ public class GenericRestWSServer implements IWSServer {
         initQuery();
     }
 
-    private void init() throws IOException, CellbaseException {
-        // we need to make sure we only init one single time
-        if (initialized == null || initialized.compareAndSet(false, true)) {
-            initialized = new AtomicBoolean(true);
-
-            SERVICE_START_DATE = new SimpleDateFormat("yyyyMMdd_HHmmss").format(Calendar.getInstance().getTime());
-            WATCH = new StopWatch();
-            WATCH.start();
-
-            jsonObjectMapper = new ObjectMapper();
-            jsonObjectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
-            jsonObjectMapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
-            jsonObjectWriter = jsonObjectMapper.writer();
-
-            logger = LoggerFactory.getLogger(this.getClass());
-
-            // We must load the configuration file from CELLBASE_HOME, this must happen only the first time!
-            String cellbaseHome = System.getenv("CELLBASE_HOME");
-            if (StringUtils.isEmpty(cellbaseHome)) {
-                // ENV variable isn't set, try the servlet context instead
-                ServletContext context = httpServletRequest.getServletContext();
-                if (StringUtils.isNotEmpty(context.getInitParameter("CELLBASE_HOME"))) {
-                    cellbaseHome = context.getInitParameter("CELLBASE_HOME");
-                } else {
-                    logger.error("No valid configuration directory provided!");
-                    throw new CellbaseException("No CELLBASE_HOME found");
-                }
-            }
-
-            logger.debug("CELLBASE_HOME set to: {}", cellbaseHome);
-
-            cellBaseConfiguration = CellBaseConfiguration.load(Paths.get(cellbaseHome).resolve("conf").resolve("configuration.yml"));
-            cellBaseManagerFactory = new CellBaseManagerFactory(cellBaseConfiguration);
-
-            // Initialize Monitor
-            monitor = new Monitor(cellBaseManagerFactory.getMetaManager());
-        }
+    private void init() throws CellbaseException {
+        logger = LoggerFactory.getLogger(this.getClass());
+
+        // Configuration and managers are built only once per application and shared by all the resource instances
+        CellBaseServerContext context = CellBaseServerContext.get(httpServletRequest.getServletContext());
+        SERVICE_START_DATE = context.getStartDate();
+        WATCH = context.getWatch();
+        jsonObjectMapper = context.getJsonObjectMapper();
+        jsonObjectWriter = context.getJsonObjectWriter();
+        cellBaseConfiguration = context.getConfiguration();
+        cellBaseManagerFactory = context.getManagerFactory();
+        monitor = context.getMonitor();
     }
 
     private void initQuery() throws VersionException {
@@ -375,10 +348,10 @@ public class GenericRestWSServer implements IWSServer {
     }
 
     protected Response createJsonResponse(CellBaseDataResponse queryResponse) {
+        if (isStreamResponses()) {
+            return createStreamingJsonResponse(queryResponse);
+        }
         try {
-            if (CollectionUtils.isNotEmpty(queryResponse.getResponses()) && queryResponse.getResponses().get(0) != null) {
-                System.out.println("queryResponse.getResponses().get(0).toString() = " + queryResponse.getResponses().get(0).toString());
-            }
             String value = jsonObjectWriter.writeValueAsString(queryResponse);
             ResponseBuilder ok = Response.ok(value, MediaType.APPLICATION_JSON_TYPE.withCharset("utf-8"));
             return buildResponse(ok);
@@ -389,6 +362,109 @@ public class GenericRestWSServer implements IWSServer {
         }
     }
 
+    /**
+     * Writes the response envelope and then each data result straight to the output stream, so the whole JSON is never
+     * held in memory. The output is gzip compressed when the client accepts it.
+     */
+    private Response createStreamingJsonResponse(CellBaseDataResponse queryResponse) {
+        boolean gzip = acceptsGzip(httpServletRequest);
+        StreamingOutput streamingOutput = outputStream -> {
+            try {
+                writeJsonResponse(queryResponse, jsonObjectWriter, outputStream, gzip);
+            } catch (IOException e) {
+                // Headers are already sent, the client will get a truncated response
+                logger.error("Error writing response for {}: {}", uriInfo.getAbsolutePath(), e.getMessage());
+                throw e;
+            }
+        };
+
+        ResponseBuilder ok = Response.ok(streamingOutput, MediaType.APPLICATION_JSON_TYPE.withCharset("utf-8"))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            ok.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return buildResponse(ok);
+    }
+
+    /**
+     * Writes the response as jsonObjectWriter.writeValue would, but one data result at a time.
+     *
+     * @param queryResponse response to write
+     * @param writer writer of the envelope fields and of each data result
+     * @param outputStream stream to write to, closed when done
+     * @param gzip whether to gzip compress the output
+     * @throws IOException if the response can not be written
+     */
+    static void writeJsonResponse(CellBaseDataResponse<?> queryResponse, ObjectWriter writer, OutputStream outputStream, boolean gzip)
+            throws IOException {
+        OutputStream out = gzip ? new GZIPOutputStream(outputStream, STREAMING_BUFFER_SIZE) : outputStream;
+        try (JsonGenerator generator = writer.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            writeJsonResponse(generator, writer, queryResponse);
+        }
+    }
+
+    private static void writeJsonResponse(JsonGenerator generator, ObjectWriter writer, CellBaseDataResponse<?> queryResponse)
+            throws IOException {
+        // Same fields, in the same order, that jsonObjectWriter writes for CellBaseDataResponse
+        generator.writeStartObject();
+        if (queryResponse.getApiVersion() != null) {
+            generator.writeStringField("apiVersion", queryResponse.getApiVersion());
+        }
+        generator.writeNumberField("time", queryResponse.getTime());
+        if (queryResponse.getEvents() != null) {
+            generator.writeFieldName("events");
+            writer.writeValue(generator, queryResponse.getEvents());
+        }
+        if (queryResponse.getParams() != null) {
+            generator.writeFieldName("params");
+            writer.writeValue(generator, queryResponse.getParams());
+        }
+        if (queryResponse.getResponses() != null) {
+            generator.writeArrayFieldStart("responses");
+            for (CellBaseDataResult<?> cellBaseDataResult : queryResponse.getResponses()) {
+                writer.writeValue(generator, cellBaseDataResult);
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    private boolean isStreamResponses() {
+        return cellBaseConfiguration.getServer() == null || cellBaseConfiguration.getServer().getRest() == null
+                || cellBaseConfiguration.getServer().getRest().isStreamResponses();
+    }
+
+    /**
+     * Checks the Accept-Encoding header, e.g. "gzip, deflate, br" or "gzip;q=0.8, identity".
+     *
+     * @param request HTTP request, may be null
+     * @return true if the client accepts a gzip compressed response
+     */
+    static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request != null ? request.getHeader(HttpHeaders.ACCEPT_ENCODING) : null;
+        if (StringUtils.isEmpty(acceptEncoding)) {
+            return false;
+        }
+        for (String encoding : acceptEncoding.split(",")) {
+            String[] parts = encoding.trim().split(";");
+            String name = parts[0].trim();
+            if ("gzip".equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name) || "*".equals(name)) {
+                for (int i = 1; i < parts.length; i++) {
+                    String parameter = parts[i].trim();
+                    if (parameter.startsWith("q=")) {
+                        try {
+                            return Double.parseDouble(parameter.substring(2)) > 0;
+                        } catch (NumberFormatException e) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
     private Response buildResponse(ResponseBuilder responseBuilder) {
         return responseBuilder
                 .header("Access-Control-Allow-Origin", "*")
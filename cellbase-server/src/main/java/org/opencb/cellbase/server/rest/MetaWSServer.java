@@ -28,6 +28,7 @@ import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.SpeciesUtils;
 import org.opencb.cellbase.lib.managers.MetaManager;
 import org.opencb.cellbase.lib.monitor.HealthStatus;
+import org.opencb.cellbase.lib.variant.annotation.AnnotationCache;
 import org.opencb.cellbase.server.exception.VersionException;
 import org.opencb.cellbase.server.rest.clinical.ClinicalWSServer;
 import org.opencb.cellbase.server.rest.feature.GeneWSServer;
@@ -39,6 +40,7 @@ import org.opencb.cellbase.server.rest.genomic.RegionWSServer;
 import org.opencb.cellbase.server.rest.genomic.VariantWSServer;
 import org.opencb.cellbase.server.rest.regulatory.RegulatoryWSServer;
 import org.opencb.cellbase.server.rest.regulatory.TfWSServer;
+import org.opencb.commons.datastore.core.ObjectMap;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.*;
@@ -62,6 +64,7 @@ public class MetaWSServer extends GenericRestWSServer {
 
     private static final String PONG = "pong";
     private static final String STATUS = "status";
+    private static final String ANNOTATION_STATS = "annotationStats";
 //    private static final String HEALTH = "health";
 //    private static final String LOCALHOST_REST_API = "http://localhost:8080/cellbase";
 
@@ -234,6 +237,40 @@ public class MetaWSServer extends GenericRestWSServer {
 
     }
 
+    @GET
+    @Path("/{species}/annotationStats")
+    @ApiOperation(httpMethod = "GET", value = "Reports the hits, misses and evictions of the variant annotation cache, the "
+            + "load of the annotation thread pool and the size of the in-memory cytoband and repeats indexes.",
+            response = Map.class, responseContainer = "QueryResponse")
+    public Response getAnnotationStats(@PathParam("species")
+                                       @ApiParam(name = "species", value = ParamConstants.SPECIES_DESCRIPTION, required = true)
+                                               String species,
+                                       @ApiParam(name = "assembly", value = ParamConstants.ASSEMBLY_DESCRIPTION)
+                                       @QueryParam("assembly") String assembly) {
+        try {
+            if (StringUtils.isEmpty(assembly)) {
+                assembly = SpeciesUtils.getDefaultAssembly(cellBaseConfiguration, species).getName();
+            }
+            AnnotationCache annotationCache = cellBaseManagerFactory.getVariantManager(species, assembly).getAnnotationCache();
+            ObjectMap stats = new ObjectMap();
+            stats.put("cache", annotationCache != null ? annotationCache.getStats() : new ObjectMap("enabled", false));
+            stats.put("scheduler", cellBaseManagerFactory.getAnnotationScheduler().getStats());
+            ObjectMap indexes = new ObjectMap();
+            indexes.put("cytoband", cellBaseManagerFactory.getGenomeManager(species, assembly).getCytobandIndexStats());
+            indexes.put("repeats", cellBaseManagerFactory.getRepeatsManager(species, assembly).getIndexStats());
+            stats.put("indexes", indexes);
+
+            CellBaseDataResult<ObjectMap> queryResult = new CellBaseDataResult<>();
+            queryResult.setId(ANNOTATION_STATS);
+            queryResult.setTime(0);
+            queryResult.setNumResults(1);
+            queryResult.setResults(Collections.singletonList(stats));
+            return createOkResponse(queryResult);
+        } catch (CellbaseException e) {
+            return createErrorResponse(e);
+        }
+    }
+
     @GET
     @Path("/api")
     @ApiOperation(value = "API", response = Map.class)
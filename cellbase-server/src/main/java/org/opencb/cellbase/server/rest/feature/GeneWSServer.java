@@ -328,7 +328,9 @@ public class GeneWSServer extends GenericRestWSServer {
                     paramType = "query"),
             @ApiImplicitParam(name = "skip", value = ParamConstants.SKIP_DESCRIPTION,
                     required = false, defaultValue = ParamConstants.DEFAULT_SKIP, dataType = "java.util.List",
-                    paramType = "query")
+                    paramType = "query"),
+            @ApiImplicitParam(name = "cursor", value = ParamConstants.CURSOR_DESCRIPTION,
+                    required = false, dataType = "string", paramType = "query")
     })
     public Response getAll(@QueryParam(ParamConstants.SPLIT_RESULT_PARAM) @ApiParam(name = ParamConstants.SPLIT_RESULT_PARAM,
             value = ParamConstants.SPLIT_RESULT_DESCRIPTION,
@@ -585,7 +587,9 @@ public class GeneWSServer extends GenericRestWSServer {
                     paramType = "query"),
             @ApiImplicitParam(name = "skip", value = ParamConstants.SKIP_DESCRIPTION,
                     required = false, defaultValue = ParamConstants.DEFAULT_SKIP, dataType = "java.util.List",
-                    paramType = "query")
+                    paramType = "query"),
+            @ApiImplicitParam(name = "cursor", value = ParamConstants.CURSOR_DESCRIPTION,
+                    required = false, dataType = "string", paramType = "query")
     })
     public Response getSNPByGenes(@PathParam("genes")
                 @ApiParam(name = "genes", value = ParamConstants.GENE_XREF_IDS) String genes) {
@@ -383,7 +383,9 @@ public class VariantWSServer extends GenericRestWSServer {
                     paramType = "query"),
             @ApiImplicitParam(name = "skip", value = ParamConstants.SKIP_DESCRIPTION,
                     required = false, defaultValue = ParamConstants.DEFAULT_SKIP, dataType = "java.util.List",
-                    paramType = "query")
+                    paramType = "query"),
+            @ApiImplicitParam(name = "cursor", value = ParamConstants.CURSOR_DESCRIPTION,
+                    required = false, dataType = "string", paramType = "query")
     })
     public Response search() {
         try {
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.server.rest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CellBaseServerContextTest {
+
+    private Path cellbaseHome;
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        cellbaseHome = Files.createTempDirectory("cellbase-home");
+        Files.createDirectories(cellbaseHome.resolve("conf"));
+        try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream("configuration.yml")) {
+            Files.copy(inputStream, cellbaseHome.resolve("conf").resolve("configuration.yml"));
+        }
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(cellbaseHome)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void testGetSharedContext() throws Exception {
+        ServletContext servletContext = createServletContext();
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<CellBaseServerContext>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executorService.submit(() -> CellBaseServerContext.get(servletContext)));
+            }
+            CellBaseServerContext context = CellBaseServerContext.get(servletContext);
+            for (Future<CellBaseServerContext> future : futures) {
+                assertSame(context, future.get());
+            }
+            assertSame(context.getManagerFactory().getMetaManager(), context.getManagerFactory().getMetaManager());
+
+            // Each web application gets its own context
+            assertNotSame(context, CellBaseServerContext.get(createServletContext()));
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    /**
+     * Compares the cost of building the configuration and managers for every request, as resources used to do, with
+     * getting the ones shared by the application.
+     */
+    @Test
+    @Tag("benchmark")
+    public void benchmarkRequestInit() throws Exception {
+        int numPerRequestInits = 200;
+        int numSharedInits = 100000;
+
+        long start = System.nanoTime();
+        CellBaseServerContext.get(createServletContext());
+        long coldStart = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < numPerRequestInits; i++) {
+            // What every request used to do: read configuration.yml and build the factory and the monitor
+            assertNotNull(CellBaseServerContext.load(cellbaseHome).getMonitor());
+        }
+        double perRequestInit = (System.nanoTime() - start) / (double) numPerRequestInits;
+
+        ServletContext servletContext = createServletContext();
+        CellBaseServerContext.get(servletContext);
+        start = System.nanoTime();
+        for (int i = 0; i < numSharedInits; i++) {
+            assertNotNull(CellBaseServerContext.get(servletContext).getMonitor());
+        }
+        double sharedInit = (System.nanoTime() - start) / (double) numSharedInits;
+
+        logger.info("Cold start: {} ms", coldStart / 1000000);
+        logger.info("Per-request init before: {} us/request", (long) (perRequestInit / 1000));
+        logger.info("Per-request init after: {} ns/request", (long) sharedInit);
+        assertTrue(sharedInit < perRequestInit);
+    }
+
+    private ServletContext createServletContext() {
+        Map<String, Object> attributes = new ConcurrentHashMap<>();
+        String home = cellbaseHome.toString();
+        return (ServletContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{ServletContext.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getAttribute":
+                            return attributes.get(args[0]);
+                        case "setAttribute":
+                            attributes.put((String) args[0], args[1]);
+                            return null;
+                        case "removeAttribute":
+                            attributes.remove(args[0]);
+                            return null;
+                        case "getInitParameter":
+                            return "CELLBASE_HOME".equals(args[0]) ? home : null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.server.rest;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.junit.jupiter.api.Test;
+import org.opencb.biodata.models.core.Gene;
+import org.opencb.cellbase.core.CellBaseDataResponse;
+import org.opencb.cellbase.core.config.CellBaseConfiguration;
+import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.commons.datastore.core.Event;
+import org.opencb.commons.datastore.core.ObjectMap;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.HttpHeaders;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GenericRestWSServerTest {
+
+    @Test
+    public void testWriteJsonResponse() throws IOException {
+        ObjectWriter writer = createWriter();
+
+        List<CellBaseDataResult<Gene>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Gene gene = new Gene();
+            gene.setId("ENSG0000000000" + i);
+            gene.setName("GENE" + i);
+            gene.setChromosome("1");
+            gene.setStart(1000 * i);
+            gene.setEnd(1000 * i + 500);
+            results.add(new CellBaseDataResult<>("region" + i, i, Collections.emptyList(), 1, Collections.singletonList(gene), 1));
+        }
+        results.add(new CellBaseDataResult<>("empty", 0, null, 0, Collections.emptyList(), 0));
+        CellBaseDataResponse<Gene> response = new CellBaseDataResponse<>("v5", 12,
+                Collections.singletonList(new Event(Event.Type.WARNING, "warning")), new ObjectMap("species", "hsapiens"), results);
+        assertStreamedEquals(writer, response);
+
+        // Null fields are left out as Jackson does
+        assertStreamedEquals(writer, new CellBaseDataResponse<>());
+        CellBaseDataResponse<Gene> noResponses = new CellBaseDataResponse<>();
+        noResponses.setApiVersion("v5");
+        noResponses.setParams(new ObjectMap());
+        assertStreamedEquals(writer, noResponses);
+    }
+
+    @Test
+    public void testAcceptsGzip() {
+        assertFalse(GenericRestWSServer.acceptsGzip(null));
+        assertFalse(GenericRestWSServer.acceptsGzip(createRequest(null)));
+        assertFalse(GenericRestWSServer.acceptsGzip(createRequest("")));
+        assertFalse(GenericRestWSServer.acceptsGzip(createRequest("deflate, br")));
+        assertFalse(GenericRestWSServer.acceptsGzip(createRequest("gzip;q=0")));
+        assertFalse(GenericRestWSServer.acceptsGzip(createRequest("gzip;q=0.0, identity")));
+        assertFalse(GenericRestWSServer.acceptsGzip(createRequest("gzip;q=abc")));
+
+        assertTrue(GenericRestWSServer.acceptsGzip(createRequest("gzip")));
+        assertTrue(GenericRestWSServer.acceptsGzip(createRequest("GZIP")));
+        assertTrue(GenericRestWSServer.acceptsGzip(createRequest("gzip, deflate, br")));
+        assertTrue(GenericRestWSServer.acceptsGzip(createRequest("deflate, gzip;q=0.8, identity")));
+        assertTrue(GenericRestWSServer.acceptsGzip(createRequest("x-gzip")));
+        assertTrue(GenericRestWSServer.acceptsGzip(createRequest("*")));
+    }
+
+    /**
+     * @param writer writer of the server
+     * @param response response to write
+     * @throws IOException if the response can not be written
+     */
+    private void assertStreamedEquals(ObjectWriter writer, CellBaseDataResponse<?> response) throws IOException {
+        String expected = writer.writeValueAsString(response);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        GenericRestWSServer.writeJsonResponse(response, writer, outputStream, false);
+        assertEquals(expected, outputStream.toString("UTF-8"));
+
+        outputStream = new ByteArrayOutputStream();
+        GenericRestWSServer.writeJsonResponse(response, writer, outputStream, true);
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int n = inputStream.read(buffer); n >= 0; n = inputStream.read(buffer)) {
+                uncompressed.write(buffer, 0, n);
+            }
+            assertArrayEquals(expected.getBytes("UTF-8"), uncompressed.toByteArray());
+        }
+    }
+
+    /**
+     * @return the JSON writer the server uses
+     * @throws IOException if the default configuration can not be read
+     */
+    private ObjectWriter createWriter() throws IOException {
+        try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream("configuration.yml")) {
+            return new CellBaseServerContext(CellBaseConfiguration.load(inputStream)).getJsonObjectWriter();
+        }
+    }
+
+    private HttpServletRequest createRequest(String acceptEncoding) {
+        return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{HttpServletRequest.class},
+                (proxy, method, args) -> {
+                    if ("getHeader".equals(method.getName())) {
+                        return HttpHeaders.ACCEPT_ENCODING.equalsIgnoreCase((String) args[0]) ? acceptEncoding : null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}